@@ -0,0 +1,303 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Measures the number of bytes allocated per operation by the most common
+ * operations, using the allocation counter the JVM keeps for each thread, and
+ * compares them to the thresholds in <code>allocation-thresholds.properties</code>.
+ * <p>
+ * Each operation is repeated in a number of rounds, of which the first are
+ * only there to let the JIT compiler settle. The smallest average of the
+ * remaining rounds is used, since allocations can only be added by
+ * disturbances, never removed.
+ * <p>
+ * Run as a program to print the measurements, with <code>--check</code> to
+ * exit with a failure when any threshold is exceeded. The same check is run
+ * as part of the tests of this module.
+ */
+public final class AllocationHarness {
+
+    /**
+     * An operation to measure. Everything done in {@link #setUp()} is
+     * excluded from the measurement.
+     */
+    abstract static class Operation {
+
+        /**
+         * The number of times the operation is done per round.
+         */
+        final int mCount;
+
+        Operation(int count) {
+            mCount = count;
+        }
+
+        void setUp() {
+        }
+
+        abstract void run();
+
+        void tearDown() {
+        }
+
+    }
+
+    /**
+     * The number of objects in the measured meshes.
+     */
+    static final int SIZE = 1000;
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 10;
+
+    private static final String THRESHOLDS = "allocation-thresholds.properties";
+
+    private final com.sun.management.ThreadMXBean mThreads;
+
+    private final long mThreadId = Thread.currentThread().getId();
+
+    private AllocationHarness(com.sun.management.ThreadMXBean threads) {
+        mThreads = threads;
+    }
+
+    /**
+     * Creates a harness for the current thread.
+     * 
+     * @return The harness, or null in case the JVM does not count allocations
+     *         per thread.
+     */
+    static AllocationHarness create() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        final com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean)threads;
+        if (!counters.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        counters.setThreadAllocatedMemoryEnabled(true);
+        return new AllocationHarness(counters);
+    }
+
+    /**
+     * Measures an operation.
+     * 
+     * @param op The operation.
+     * @return The number of bytes allocated per operation.
+     */
+    long measure(Operation op) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            op.setUp();
+            final long before = mThreads.getThreadAllocatedBytes(mThreadId);
+            op.run();
+            final long after = mThreads.getThreadAllocatedBytes(mThreadId);
+            op.tearDown();
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, (after - before) / op.mCount);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Measures all operations.
+     * 
+     * @return The number of bytes allocated per operation, by name.
+     */
+    Map<String, Long> measureAll() {
+        final Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Operation> entry : operations().entrySet()) {
+            result.put(entry.getKey(), measure(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the operations to measure.
+     * 
+     * @return The operations, by name.
+     */
+    static Map<String, Operation> operations() {
+        final Map<String, Operation> ops = new LinkedHashMap<String, Operation>();
+        final Object[] leaves = Mesh.leaves(SIZE);
+
+        ops.put("add", new Operation(SIZE) {
+            private DuctTape mTape;
+
+            @Override
+            void setUp() {
+                mTape = new DuctTape();
+            }
+
+            @Override
+            void run() {
+                final DuctTape dt = mTape;
+                for (int i = 0; i < SIZE; i++) {
+                    dt.add(leaves[i]);
+                }
+            }
+        });
+
+        ops.put("remove", new Operation(SIZE) {
+            private DuctTape mTape;
+
+            @Override
+            void setUp() {
+                mTape = new DuctTape();
+                mTape.add(leaves);
+            }
+
+            @Override
+            void run() {
+                final DuctTape dt = mTape;
+                for (int i = 0; i < SIZE; i++) {
+                    dt.remove(leaves[i]);
+                }
+            }
+        });
+
+        ops.put("applyFirst", new Operation(1) {
+            private DuctTape mTape;
+
+            @Override
+            void setUp() {
+                mTape = Mesh.consumerMesh(SIZE, 4, 1);
+            }
+
+            @Override
+            void run() {
+                mTape.apply();
+            }
+        });
+
+        final DuctTape applied = Mesh.consumerMesh(SIZE, 4, 1);
+        applied.apply();
+        final Object extra = Mesh.consumers(1, 4, true)[0];
+        ops.put("applyChanged", new Operation(1) {
+            @Override
+            void setUp() {
+                applied.add(extra);
+            }
+
+            @Override
+            void run() {
+                applied.apply();
+            }
+
+            @Override
+            void tearDown() {
+                applied.remove(extra);
+                applied.apply();
+            }
+        });
+
+        ops.put("toDotString", new Operation(1) {
+            @Override
+            void run() {
+                applied.toDotString();
+            }
+        });
+        return ops;
+    }
+
+    /**
+     * Loads the checked in thresholds.
+     * 
+     * @return The maximum number of bytes allowed per operation, by name.
+     * @throws IOException If the thresholds cannot be read.
+     */
+    static Properties thresholds() throws IOException {
+        final Properties thresholds = new Properties();
+        final InputStream in = AllocationHarness.class.getResourceAsStream(THRESHOLDS);
+        if (in == null) {
+            throw new IOException("Missing " + THRESHOLDS);
+        }
+        try {
+            thresholds.load(in);
+        } finally {
+            in.close();
+        }
+        return thresholds;
+    }
+
+    /**
+     * Compares measurements with the thresholds.
+     * 
+     * @param measured The measured bytes per operation, by name.
+     * @param thresholds The thresholds, by name.
+     * @return A description of every exceeded or missing threshold, one per
+     *         line, or an empty string when all is well.
+     */
+    static String check(Map<String, Long> measured, Properties thresholds) {
+        final StringBuilder failures = new StringBuilder();
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            final String name = entry.getKey();
+            final String threshold = thresholds.getProperty(name);
+            if (threshold == null) {
+                failures.append(name).append(": no threshold\n");
+            } else if (entry.getValue() > Long.parseLong(threshold.trim())) {
+                failures.append(name).append(": ").append(entry.getValue())
+                        .append(" bytes/op exceeds ").append(threshold.trim()).append('\n');
+            }
+        }
+        return failures.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        final AllocationHarness harness = create();
+        if (harness == null) {
+            System.err.println("This JVM does not count allocations per thread");
+            System.exit(2);
+        }
+        final Map<String, Long> measured = harness.measureAll();
+        final Properties thresholds = thresholds();
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            System.out.println(entry.getKey() + " = " + entry.getValue() + " bytes/op (threshold "
+                    + thresholds.getProperty(entry.getKey(), "none") + ")");
+        }
+        if (args.length > 0 && args[0].equals("--check")) {
+            final String failures = check(measured, thresholds);
+            if (failures.length() > 0) {
+                System.err.print(failures);
+                System.exit(1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Measures gluing a mesh of objects injected with a shared provider, for
+ * different numbers of objects, injected fields per class and tags.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ApplyBenchmark {
+
+    @Param({
+            "100", "1000"
+    })
+    public int size;
+
+    @Param({
+            "1", "4", "16"
+    })
+    public int fields;
+
+    /**
+     * The number of tags on the provider, where 0 also means that the fields
+     * are not tagged.
+     */
+    @Param({
+            "0", "1", "4"
+    })
+    public int tags;
+
+    /**
+     * A tape that has not been applied yet, created before each call.
+     */
+    private DuctTape mFresh;
+
+    /**
+     * A tape that has already been applied.
+     */
+    private DuctTape mApplied;
+
+    /**
+     * An object to add and remove to make the applied tape need gluing again.
+     */
+    private Object mExtra;
+
+    @Setup(Level.Trial)
+    public void createApplied() {
+        mApplied = Mesh.consumerMesh(size, fields, tags);
+        mApplied.apply();
+        mExtra = Mesh.consumers(1, fields, tags > 0)[0];
+    }
+
+    @Setup(Level.Invocation)
+    public void createFresh() {
+        mFresh = Mesh.consumerMesh(size, fields, tags);
+    }
+
+    /**
+     * Glues a mesh for the first time.
+     */
+    @Benchmark
+    public DuctTape applyFirst() {
+        mFresh.apply();
+        return mFresh;
+    }
+
+    /**
+     * Glues a mesh that has not changed since it was last glued.
+     */
+    @Benchmark
+    public DuctTape applyUnchanged() {
+        mApplied.apply();
+        return mApplied;
+    }
+
+    /**
+     * Glues a mesh again after an object has been added or removed.
+     */
+    @Benchmark
+    public DuctTape applyChanged() {
+        if (mApplied.isRobust()) {
+            mApplied.add(mExtra);
+        }
+        mApplied.apply();
+        mApplied.remove(mExtra);
+        mApplied.apply();
+        return mApplied;
+    }
+
+}
@@ -0,0 +1,119 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Measures describing a glued mesh as text and as a graph.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DebugOutputBenchmark {
+
+    /**
+     * Discards all output, to measure the streaming variants on their own.
+     */
+    private static final class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            return this;
+        }
+
+        @Override
+        public Writer append(char c) {
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    @Param({
+            "100", "1000", "5000"
+    })
+    public int size;
+
+    private DuctTape mTape;
+
+    private final Writer mNull = new NullWriter();
+
+    @Setup(Level.Trial)
+    public void createTape() {
+        mTape = Mesh.consumerMesh(size, 4, 1);
+        mTape.apply();
+    }
+
+    @Benchmark
+    public String toDotString() {
+        return mTape.toDotString();
+    }
+
+    @Benchmark
+    public Writer toDotStringStreamed() throws IOException {
+        mTape.toDotString(mNull);
+        return mNull;
+    }
+
+    @Benchmark
+    public String toText() {
+        return mTape.toString();
+    }
+
+}
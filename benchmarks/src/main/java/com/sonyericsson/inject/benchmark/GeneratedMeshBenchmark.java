@@ -0,0 +1,123 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.test.MeshGenerator;
+
+/**
+ * Measures populating and gluing generated meshes of distinct classes, with
+ * shared interfaces, tags, factories and cycles, for different numbers of
+ * classes.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GeneratedMeshBenchmark {
+
+    /**
+     * The number of classes, where larger meshes like 100000 can be given with
+     * -p size=100000 since the time grows faster than linearly.
+     */
+    @Param({
+            "100", "1000", "10000"
+    })
+    public int size;
+
+    /**
+     * The share of classes that are added as factories.
+     */
+    @Param({
+            "0", "0.5"
+    })
+    public float factories;
+
+    private MeshGenerator mGenerator;
+
+    /**
+     * A populated tape that has not been applied yet, created before each
+     * call.
+     */
+    private DuctTape mFresh;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        mGenerator = new MeshGenerator(1);
+        mGenerator.setClasses(size);
+        mGenerator.setDepth(8);
+        mGenerator.setFanOut(3);
+        mGenerator.setClassesPerInterface(4);
+        mGenerator.setTagDensity(0.1f);
+        mGenerator.setFactoryRatio(factories);
+        mGenerator.setCycleRatio(0.05f);
+        mGenerator.generate();
+    }
+
+    @Setup(Level.Invocation)
+    public void createFresh() {
+        mFresh = new DuctTape();
+        mGenerator.populate(mFresh);
+    }
+
+    /**
+     * Adds everything in a generated mesh to an empty tape.
+     */
+    @Benchmark
+    public DuctTape populate() {
+        final DuctTape dt = new DuctTape();
+        mGenerator.populate(dt);
+        return dt;
+    }
+
+    /**
+     * Glues a generated mesh for the first time.
+     */
+    @Benchmark
+    public DuctTape applyFirst() {
+        mFresh.apply();
+        return mFresh;
+    }
+
+}
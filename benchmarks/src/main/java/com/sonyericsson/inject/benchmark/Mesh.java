@@ -0,0 +1,304 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import static com.sonyericsson.inject.DuctTape.ORDERED;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+/**
+ * The classes the benchmarks are made of, and helpers to put them together
+ * into object meshes of given sizes and shapes.
+ */
+final class Mesh {
+
+    /**
+     * The tag used by the tagged injections.
+     */
+    static final int T = 1;
+
+    interface A {
+    }
+
+    interface B {
+    }
+
+    static class Leaf implements A {
+    }
+
+    static class Provider implements B {
+    }
+
+    static class G1 implements Gluey {
+
+        @Glue
+        B m0;
+
+    }
+
+    static class G4 implements Gluey {
+
+        @Glue
+        B m0;
+
+        @Glue
+        B m1;
+
+        @Glue
+        B m2;
+
+        @Glue
+        B m3;
+
+    }
+
+    static class G16 implements Gluey {
+
+        @Glue
+        B m0;
+
+        @Glue
+        B m1;
+
+        @Glue
+        B m2;
+
+        @Glue
+        B m3;
+
+        @Glue
+        B m4;
+
+        @Glue
+        B m5;
+
+        @Glue
+        B m6;
+
+        @Glue
+        B m7;
+
+        @Glue
+        B m8;
+
+        @Glue
+        B m9;
+
+        @Glue
+        B m10;
+
+        @Glue
+        B m11;
+
+        @Glue
+        B m12;
+
+        @Glue
+        B m13;
+
+        @Glue
+        B m14;
+
+        @Glue
+        B m15;
+
+    }
+
+    static class T1 implements Gluey {
+
+        @Glue(T)
+        B m0;
+
+    }
+
+    static class T4 implements Gluey {
+
+        @Glue(T)
+        B m0;
+
+        @Glue(T)
+        B m1;
+
+        @Glue(T)
+        B m2;
+
+        @Glue(T)
+        B m3;
+
+    }
+
+    static class T16 implements Gluey {
+
+        @Glue(T)
+        B m0;
+
+        @Glue(T)
+        B m1;
+
+        @Glue(T)
+        B m2;
+
+        @Glue(T)
+        B m3;
+
+        @Glue(T)
+        B m4;
+
+        @Glue(T)
+        B m5;
+
+        @Glue(T)
+        B m6;
+
+        @Glue(T)
+        B m7;
+
+        @Glue(T)
+        B m8;
+
+        @Glue(T)
+        B m9;
+
+        @Glue(T)
+        B m10;
+
+        @Glue(T)
+        B m11;
+
+        @Glue(T)
+        B m12;
+
+        @Glue(T)
+        B m13;
+
+        @Glue(T)
+        B m14;
+
+        @Glue(T)
+        B m15;
+
+    }
+
+    /**
+     * Depends on all leaves, why it must come after them when sorted.
+     */
+    static class Middle implements Gluey, A {
+
+        @Glue
+        Leaf[] m1;
+
+    }
+
+    static class Ordered implements Gluey {
+
+        @Glue(ORDERED)
+        A[] m1;
+
+    }
+
+    static class Unordered implements Gluey {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    private Mesh() {
+    }
+
+    /**
+     * Creates objects that are injected through the given number of fields
+     * each.
+     * 
+     * @param count The number of objects.
+     * @param fields The number of injected fields per object: 1, 4 or 16.
+     * @param tagged Whether the fields are tagged.
+     * @return The objects.
+     */
+    static Object[] consumers(int count, int fields, boolean tagged) {
+        final Object[] objs = new Object[count];
+        for (int i = 0; i < count; i++) {
+            switch (fields) {
+                case 1:
+                    objs[i] = (tagged ? new T1() : new G1());
+                    break;
+                case 4:
+                    objs[i] = (tagged ? new T4() : new G4());
+                    break;
+                case 16:
+                    objs[i] = (tagged ? new T16() : new G16());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported number of fields " + fields);
+            }
+        }
+        return objs;
+    }
+
+    /**
+     * Creates a tape with consumers and a provider for all of them.
+     * 
+     * @param count The number of consumers.
+     * @param fields The number of injected fields per consumer.
+     * @param tags The number of tags on the provider, where the tag injected
+     *            with comes last. No tags means that the fields are not
+     *            tagged either.
+     * @return The tape, not yet applied.
+     */
+    static DuctTape consumerMesh(int count, int fields, int tags) {
+        final DuctTape dt = new DuctTape();
+        dt.add(consumers(count, fields, tags > 0));
+        if (tags > 0) {
+            final int[] providerTags = new int[tags];
+            for (int i = 0; i < tags; i++) {
+                providerTags[i] = T + tags - 1 - i;
+            }
+            dt.add(new Provider(), providerTags);
+        } else {
+            dt.add(new Provider());
+        }
+        return dt;
+    }
+
+    /**
+     * Creates plain objects without injections.
+     * 
+     * @param count The number of objects.
+     * @return The objects.
+     */
+    static Object[] leaves(int count) {
+        final Object[] objs = new Object[count];
+        for (int i = 0; i < count; i++) {
+            objs[i] = new Leaf();
+        }
+        return objs;
+    }
+
+}
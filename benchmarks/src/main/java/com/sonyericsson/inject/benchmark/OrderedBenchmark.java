@@ -0,0 +1,104 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Measures gluing an array that must be sorted by dependency, compared to the
+ * same array without sorting. The array holds leaves and objects that depend
+ * on all the leaves.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderedBenchmark {
+
+    /**
+     * The number of objects that depend on all leaves.
+     */
+    private static final int MIDDLES = 16;
+
+    /**
+     * The number of leaves.
+     */
+    @Param({
+            "100", "1000"
+    })
+    public int size;
+
+    private DuctTape mOrdered;
+
+    private DuctTape mUnordered;
+
+    @Setup(Level.Invocation)
+    public void createTapes() {
+        mOrdered = createTape(new Mesh.Ordered());
+        mUnordered = createTape(new Mesh.Unordered());
+    }
+
+    private DuctTape createTape(Object root) {
+        final DuctTape dt = new DuctTape();
+        dt.add(Mesh.leaves(size));
+        for (int i = 0; i < MIDDLES; i++) {
+            dt.add(new Mesh.Middle());
+        }
+        dt.add(root);
+        return dt;
+    }
+
+    @Benchmark
+    public DuctTape applyOrdered() {
+        mOrdered.apply();
+        return mOrdered;
+    }
+
+    @Benchmark
+    public DuctTape applyUnordered() {
+        mUnordered.apply();
+        return mUnordered;
+    }
+
+}
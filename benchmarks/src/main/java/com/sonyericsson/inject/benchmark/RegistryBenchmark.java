@@ -0,0 +1,147 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Measures adding objects to and removing objects from tapes of different
+ * sizes, without gluing.
+ */
+@State(Scope.Thread)
+@Fork(1)
+public class RegistryBenchmark {
+
+    @Param({
+            "1000", "10000", "100000"
+    })
+    public int size;
+
+    private Object[] mObjects;
+
+    private Object mExtra;
+
+    /**
+     * A tape with all objects, filled once.
+     */
+    private DuctTape mFilled;
+
+    /**
+     * A tape with all objects, filled again before each call since the
+     * benchmark empties it.
+     */
+    @State(Scope.Thread)
+    public static class Refilled {
+
+        DuctTape mTape;
+
+        @Setup(Level.Invocation)
+        public void fill(RegistryBenchmark benchmark) {
+            mTape = new DuctTape();
+            mTape.add(benchmark.mObjects);
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void createObjects() {
+        mObjects = Mesh.leaves(size);
+        mExtra = new Mesh.Leaf();
+        mFilled = new DuctTape();
+        mFilled.add(mObjects);
+    }
+
+    /**
+     * Adds all objects to an empty tape.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public DuctTape addAll() {
+        final DuctTape dt = new DuctTape();
+        dt.add(mObjects);
+        return dt;
+    }
+
+    /**
+     * Removes all objects, in the order they were added.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public DuctTape removeAll(Refilled refilled) {
+        refilled.mTape.remove(mObjects);
+        return refilled.mTape;
+    }
+
+    /**
+     * Adds one object to a filled tape and removes it again.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public DuctTape addRemoveOne() {
+        mFilled.add(mExtra);
+        mFilled.remove(mExtra);
+        return mFilled;
+    }
+
+    /**
+     * Removes an object that is not in a filled tape.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public DuctTape removeMissing() {
+        mFilled.remove(mExtra);
+        return mFilled;
+    }
+
+}
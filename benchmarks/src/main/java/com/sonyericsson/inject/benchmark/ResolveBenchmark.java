@@ -0,0 +1,388 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+/**
+ * Measures resolving which factories can produce their objects, through deep
+ * chains of factories and through factories depending on each other in a
+ * cycle.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResolveBenchmark {
+
+    static class D0 implements Gluey, Singleton {
+
+        @Glue
+        D1 m1;
+
+    }
+
+    static class D1 implements Gluey, Singleton {
+
+        @Glue
+        D2 m1;
+
+    }
+
+    static class D2 implements Gluey, Singleton {
+
+        @Glue
+        D3 m1;
+
+    }
+
+    static class D3 implements Gluey, Singleton {
+
+        @Glue
+        D4 m1;
+
+    }
+
+    static class D4 implements Gluey, Singleton {
+
+        @Glue
+        D5 m1;
+
+    }
+
+    static class D5 implements Gluey, Singleton {
+
+        @Glue
+        D6 m1;
+
+    }
+
+    static class D6 implements Gluey, Singleton {
+
+        @Glue
+        D7 m1;
+
+    }
+
+    static class D7 implements Gluey, Singleton {
+
+        @Glue
+        D8 m1;
+
+    }
+
+    static class D8 implements Gluey, Singleton {
+
+        @Glue
+        D9 m1;
+
+    }
+
+    static class D9 implements Gluey, Singleton {
+
+        @Glue
+        D10 m1;
+
+    }
+
+    static class D10 implements Gluey, Singleton {
+
+        @Glue
+        D11 m1;
+
+    }
+
+    static class D11 implements Gluey, Singleton {
+
+        @Glue
+        D12 m1;
+
+    }
+
+    static class D12 implements Gluey, Singleton {
+
+        @Glue
+        D13 m1;
+
+    }
+
+    static class D13 implements Gluey, Singleton {
+
+        @Glue
+        D14 m1;
+
+    }
+
+    static class D14 implements Gluey, Singleton {
+
+        @Glue
+        D15 m1;
+
+    }
+
+    static class D15 implements Gluey, Singleton {
+
+        @Glue
+        D16 m1;
+
+    }
+
+    static class D16 implements Gluey, Singleton {
+
+        @Glue
+        D17 m1;
+
+    }
+
+    static class D17 implements Gluey, Singleton {
+
+        @Glue
+        D18 m1;
+
+    }
+
+    static class D18 implements Gluey, Singleton {
+
+        @Glue
+        D19 m1;
+
+    }
+
+    static class D19 implements Gluey, Singleton {
+
+        @Glue
+        D20 m1;
+
+    }
+
+    static class D20 implements Gluey, Singleton {
+
+        @Glue
+        D21 m1;
+
+    }
+
+    static class D21 implements Gluey, Singleton {
+
+        @Glue
+        D22 m1;
+
+    }
+
+    static class D22 implements Gluey, Singleton {
+
+        @Glue
+        D23 m1;
+
+    }
+
+    static class D23 implements Gluey, Singleton {
+
+        @Glue
+        D24 m1;
+
+    }
+
+    static class D24 implements Gluey, Singleton {
+
+        @Glue
+        D25 m1;
+
+    }
+
+    static class D25 implements Gluey, Singleton {
+
+        @Glue
+        D26 m1;
+
+    }
+
+    static class D26 implements Gluey, Singleton {
+
+        @Glue
+        D27 m1;
+
+    }
+
+    static class D27 implements Gluey, Singleton {
+
+        @Glue
+        D28 m1;
+
+    }
+
+    static class D28 implements Gluey, Singleton {
+
+        @Glue
+        D29 m1;
+
+    }
+
+    static class D29 implements Gluey, Singleton {
+
+        @Glue
+        D30 m1;
+
+    }
+
+    static class D30 implements Gluey, Singleton {
+
+        @Glue
+        D31 m1;
+
+    }
+
+    static class D31 implements Singleton {
+    }
+
+    static class Y0 implements Gluey, Singleton {
+
+        @Glue
+        Y1 m1;
+
+    }
+
+    static class Y1 implements Gluey, Singleton {
+
+        @Glue
+        Y2 m1;
+
+    }
+
+    static class Y2 implements Gluey, Singleton {
+
+        @Glue
+        Y3 m1;
+
+    }
+
+    static class Y3 implements Gluey, Singleton {
+
+        @Glue
+        Y4 m1;
+
+    }
+
+    static class Y4 implements Gluey, Singleton {
+
+        @Glue
+        Y5 m1;
+
+    }
+
+    static class Y5 implements Gluey, Singleton {
+
+        @Glue
+        Y6 m1;
+
+    }
+
+    static class Y6 implements Gluey, Singleton {
+
+        @Glue
+        Y7 m1;
+
+    }
+
+    static class Y7 implements Gluey, Singleton {
+
+        @Glue
+        Y0 m1;
+
+    }
+
+    private static final Class<?>[] CHAIN = {
+            D0.class, D1.class, D2.class, D3.class, D4.class, D5.class, D6.class, D7.class,
+            D8.class, D9.class, D10.class, D11.class, D12.class, D13.class, D14.class,
+            D15.class, D16.class, D17.class, D18.class, D19.class, D20.class, D21.class,
+            D22.class, D23.class, D24.class, D25.class, D26.class, D27.class, D28.class,
+            D29.class, D30.class, D31.class
+    };
+
+    private static final Class<?>[] CYCLE = {
+            Y0.class, Y1.class, Y2.class, Y3.class, Y4.class, Y5.class, Y6.class, Y7.class
+    };
+
+    /**
+     * The number of factories to go through from the demanded one, at most
+     * 32.
+     */
+    @Param({
+            "1", "8", "32"
+    })
+    public int depth;
+
+    private DuctTape mTape;
+
+    @Setup(Level.Invocation)
+    public void createTape() {
+        mTape = new DuctTape();
+        mTape.add(CHAIN);
+        mTape.add(CYCLE);
+
+        /* NOTE: A tape with nothing but factories is never glued */
+        mTape.add(new Mesh.Leaf());
+    }
+
+    /**
+     * Produces an object at the given depth from the end of a chain of
+     * factories, where each depends on the next.
+     */
+    @Benchmark
+    public Object resolveChain() {
+        return mTape.get(CHAIN[CHAIN.length - depth]);
+    }
+
+    /**
+     * Produces an object from a cycle of eight factories.
+     */
+    @Benchmark
+    public Object resolveCycle() {
+        return mTape.get(Y0.class);
+    }
+
+}
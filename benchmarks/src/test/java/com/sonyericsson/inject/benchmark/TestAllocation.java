@@ -0,0 +1,76 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.benchmark;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that the most common operations do
+ * not allocate more than the checked in thresholds allow.
+ */
+public class TestAllocation extends TestCase {
+
+    /**
+     * Make sure no operation exceeds its threshold. Nothing is checked on JVMs
+     * that do not count allocations per thread.
+     */
+    public void testThresholds() throws IOException {
+        AllocationHarness harness = AllocationHarness.create();
+        if (harness == null) {
+            return;
+        }
+        Map<String, Long> measured = harness.measureAll();
+        String failures = AllocationHarness.check(measured, AllocationHarness.thresholds());
+        assertEquals(measured.toString(), "", failures);
+    }
+
+    /**
+     * Make sure that exceeded and missing thresholds are reported, while
+     * measurements at or below their thresholds pass.
+     */
+    public void testCheck() {
+        Properties thresholds = new Properties();
+        thresholds.setProperty("add", "64");
+        thresholds.setProperty("remove", " 16 ");
+
+        Map<String, Long> measured = new LinkedHashMap<String, Long>();
+        measured.put("add", 64L);
+        measured.put("remove", 0L);
+        assertEquals("", AllocationHarness.check(measured, thresholds));
+
+        measured.put("add", 65L);
+        measured.put("apply", 1L);
+        assertEquals("add: 65 bytes/op exceeds 64\napply: no threshold\n",
+                AllocationHarness.check(measured, thresholds));
+    }
+
+}
@@ -0,0 +1,234 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+import android.content.Context;
+
+/**
+ * <p>
+ * An immutable recording of the objects that the factories of a
+ * {@link com.sonyericsson.inject.DuctTape} produced, and of how they were
+ * injected. The recording can be used to create any number of identical
+ * object meshes, where each call to {@link #instantiate()} only constructs the
+ * objects and assigns the recorded fields, without any of the validation and
+ * scanning done by {@link com.sonyericsson.inject.DuctTape#apply()}.
+ * </p>
+ * <p>
+ * This is useful when the same small object mesh is needed many times, e.g.
+ * once for each row of a list. The objects to create are added as
+ * {@link java.lang.Class} objects to a tape, which is glued together once and
+ * turned into a blueprint by
+ * {@link com.sonyericsson.inject.DuctTape#createBlueprint()}:
+ * </p>
+ * 
+ * <pre>
+ * DuctTape dt = new DuctTape();
+ * dt.add(sharedService);
+ * dt.add(RowPresenter.class);
+ * dt.add(RowBinder.class);
+ * dt.get(RowPresenter.class);
+ * Blueprint blueprint = dt.createBlueprint();
+ * int presenter = blueprint.indexOf(RowPresenter.class);
+ * ...
+ * RowPresenter row = (RowPresenter)blueprint.instantiate()[presenter];
+ * </pre>
+ * <p>
+ * Every instance gets its own products of all factories that were used,
+ * singletons as well as others, while objects that were added to the tape as
+ * they are, like <code>sharedService</code> above, are shared by all
+ * instances. The fields of shared objects are never touched.
+ * </p>
+ * <p>
+ * Views inflated from layouts, drawables and XML parsers are looked up again
+ * for every instance, so that no two instances share them. Other resources and
+ * the services of the context are shared. Views found among the added views
+ * or in the activity cannot be recorded, and neither can arrays holding views,
+ * drawables or XML parsers.
+ * </p>
+ * 
+ * @see com.sonyericsson.inject.DuctTape#createBlueprint()
+ */
+public final class Blueprint {
+
+    /**
+     * The value of an assignment is a constant.
+     */
+    static final int CONSTANT = -1;
+
+    /**
+     * The value of an assignment is a copy of an array, where some entries are
+     * created objects.
+     */
+    static final int ARRAY = -2;
+
+    /**
+     * The value of an assignment is a view or resource that is looked up again
+     * in a context.
+     */
+    static final int RESOLVE = -3;
+
+    /**
+     * The classes of the objects to create.
+     */
+    private final Class<?>[] mClasses;
+
+    /**
+     * The index of the created object to assign for each assignment.
+     */
+    private final int[] mTargets;
+
+    /**
+     * The field to assign for each assignment.
+     */
+    private final Field[] mFields;
+
+    /**
+     * The index of the created object to assign for each assignment, or
+     * {@link #CONSTANT}, {@link #ARRAY} or {@link #RESOLVE}.
+     */
+    private final int[] mSources;
+
+    /**
+     * The constant or array to copy, or the context to look up in, for each
+     * assignment.
+     */
+    private final Object[] mValues;
+
+    /**
+     * The entries of each copied array that are created objects, as pairs of
+     * entry index and object index, or null when there are none.
+     */
+    private final int[][] mSlots;
+
+    /**
+     * The ID of the view or resource to look up for each assignment.
+     */
+    private final int[] mIds;
+
+    Blueprint(Class<?>[] classes, int[] targets, Field[] fields, int[] sources,
+            Object[] values, int[][] slots, int[] ids) {
+        mClasses = classes;
+        mTargets = targets;
+        mFields = fields;
+        mSources = sources;
+        mValues = values;
+        mSlots = slots;
+        mIds = ids;
+    }
+
+    /**
+     * Gives the number of objects created by each call to
+     * {@link #instantiate()}.
+     * 
+     * @return The number of objects.
+     */
+    public int size() {
+        return mClasses.length;
+    }
+
+    /**
+     * Finds the position of an object of the given type among the objects
+     * created by {@link #instantiate()}.
+     * 
+     * @param clazz The type to look for.
+     * @return The index of the first object of the type, or -1 when no such
+     *         object is created.
+     */
+    public int indexOf(Class<?> clazz) {
+        final Class<?>[] classes = mClasses;
+        final int classesLen = classes.length;
+        for (int i = 0; i < classesLen; i++) {
+            if (clazz.isAssignableFrom(classes[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a new object mesh identical to the one that was recorded.
+     * 
+     * @return The created objects, in the same order every time.
+     * @throws GluingException when an object cannot be created, or a view or
+     *         resource cannot be found.
+     * @see #indexOf(Class)
+     */
+    public Object[] instantiate() throws GluingException {
+
+        /* Construct all objects */
+        final Class<?>[] classes = mClasses;
+        final int objsLen = classes.length;
+        final Object[] objs = new Object[objsLen];
+        for (int i = 0; i < objsLen; i++) {
+            objs[i] = DuctTape.construct(classes[i]);
+        }
+
+        /* Assign all fields */
+        final int[] targets = mTargets;
+        final Field[] fields = mFields;
+        final int[] sources = mSources;
+        final Object[] values = mValues;
+        final int[][] slots = mSlots;
+        final int[] ids = mIds;
+        final int assignmentsLen = targets.length;
+        try {
+            for (int i = 0; i < assignmentsLen; i++) {
+                final int source = sources[i];
+                Object value;
+                if (source >= 0) {
+                    value = objs[source];
+                } else if (source == ARRAY) {
+                    final Object template = values[i];
+                    final int len = Array.getLength(template);
+                    value = Array.newInstance(template.getClass().getComponentType(), len);
+                    System.arraycopy(template, 0, value, 0, len);
+                    final int[] entries = slots[i];
+                    if (entries != null) {
+                        final Object[] array = (Object[])value;
+                        final int entriesLen = entries.length;
+                        for (int j = 0; j < entriesLen; j += 2) {
+                            array[entries[j]] = objs[entries[j + 1]];
+                        }
+                    }
+                } else if (source == RESOLVE) {
+                    value = DuctTape.resolve((Context)values[i], fields[i].getType(), ids[i]);
+                } else {
+                    value = values[i];
+                }
+                fields[i].set(objs[targets[i]], value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Internal error", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Internal error", e);
+        }
+        return objs;
+    }
+
+}
@@ -0,0 +1,666 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+
+/**
+ * <p>
+ * A {@link com.sonyericsson.inject.DuctTape} that can be shared between
+ * threads. Objects can be added and removed from any thread at any time, even
+ * while {@link #apply()} is running in another thread.
+ * </p>
+ * <p>
+ * Additions and removals are not made to the object mesh directly. Instead
+ * they are queued, and carried out in the order they were made by the next call
+ * to {@link #apply()}, which then glues a consistent snapshot of the mesh.
+ * Changes made while {@link #apply()} is running, e.g. from a constructor
+ * called by it, are left for the call after that.
+ * </p>
+ * <p>
+ * Calls to {@link #apply()} and the other methods that work on the mesh
+ * itself are serialized. Actions taken by a thread before it adds or removes an
+ * object happen-before the call to {@link #apply()} that carries out the
+ * change, and all injections made by {@link #apply()} happen-before any later
+ * call to {@link #apply()}, {@link #isRobust()} or any of the other methods
+ * working on the mesh returns, in any thread.
+ * </p>
+ * <p>
+ * Changes can still be made while the tape is frozen by {@link #freeze()}.
+ * They stay queued until {@link #thaw()} is called.
+ * </p>
+ * <p>
+ * Only the methods of {@link com.sonyericsson.inject.DuctTape} found here are
+ * available. There is no support for child tapes, for blueprints, for tracing
+ * or operation counts, or for writing the mesh to an
+ * {@link java.lang.Appendable} or {@link java.io.DataOutput}. Use a
+ * {@link com.sonyericsson.inject.DuctTape} owned by a single thread for those.
+ * </p>
+ * 
+ * @see com.sonyericsson.inject.DuctTape
+ */
+public class ConcurrentDuctTape {
+
+    private static final class Change {
+
+        /**
+         * Add all objects with the given tags.
+         */
+        public static final int ADD = 0;
+
+        /**
+         * Remove all objects.
+         */
+        public static final int REMOVE = 1;
+
+        /**
+         * Remove all objects having any of the given tags.
+         */
+        public static final int REMOVE_TAGGED = 2;
+
+        /**
+         * Remove the given tag from the object.
+         */
+        public static final int REMOVE_TAG = 3;
+
+        /**
+         * Remove everything.
+         */
+        public static final int CLEAR = 4;
+
+        /**
+         * Weakly add all objects with the given tags.
+         */
+        public static final int ADD_WEAK = 5;
+
+        public final int mKind;
+
+        public final Object[] mObjects;
+
+        public final int[] mTags;
+
+        public Change(int kind, Object[] objs, int[] tags) {
+            mKind = kind;
+            mObjects = objs;
+            mTags = tags;
+        }
+
+    }
+
+    /**
+     * The tape holding the object mesh. Only accessed while holding its lock.
+     */
+    private final DuctTape mTape;
+
+    /**
+     * Changes made since the last call to apply(), in the order they were
+     * made.
+     */
+    private final ConcurrentLinkedQueue<Change> mChanges = new ConcurrentLinkedQueue<Change>();
+
+    /**
+     * Creates an empty and robust instance without any connection to the
+     * Android system.
+     */
+    public ConcurrentDuctTape() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty and robust instance, living in the given Android
+     * context.
+     * 
+     * @param ctxt The context to be used by the instance.
+     */
+    public ConcurrentDuctTape(Context ctxt) {
+        mTape = new DuctTape(ctxt);
+    }
+
+    /**
+     * Convenience method to add an object without any tags.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @see DuctTape#add(Object)
+     */
+    public final void add(Object obj) {
+        add(obj, null);
+    }
+
+    /**
+     * Convenience method to add an array of objects without any tags. The
+     * objects are added together by the same call to {@link #apply()}.
+     * 
+     * @param objs The objects to add to the list of objects to be glued.
+     * @see DuctTape#add(Object[])
+     */
+    public final void add(Object[] objs) {
+        mChanges.add(new Change(Change.ADD, objs.clone(), null));
+    }
+
+    /**
+     * Convenience method to add an object with only a single tag.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @param tag Tag to be set on the object.
+     * @see DuctTape#add(Object, int)
+     */
+    public final void add(Object obj, int tag) {
+        mChanges.add(new Change(Change.ADD, new Object[] {
+            obj
+        }, new int[] {
+            tag
+        }));
+    }
+
+    /**
+     * Convenience method to add a sequence of objects. The sequence is
+     * enumerated by this call, and the objects are added together by the same
+     * call to {@link #apply()}.
+     * 
+     * @param objs An object enumerating the objects to be added.
+     * @see DuctTape#add(Iterable)
+     */
+    public final void add(Iterable<?> objs) {
+        mChanges.add(new Change(Change.ADD, toArray(objs), null));
+    }
+
+    /**
+     * Adds an object to the object mesh and tags it with the given tags.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @param tags Tags to be set on the object, or <code>null</code> in case
+     *            no tags should be set.
+     * @see DuctTape#add(Object, int[])
+     */
+    public final void add(Object obj, int[] tags) {
+        mChanges.add(new Change(Change.ADD, new Object[] {
+            obj
+        }, (tags != null ? tags.clone() : null)));
+    }
+
+    /**
+     * Convenience method to weakly add an object without any tags.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @see DuctTape#addWeak(Object)
+     */
+    public final void addWeak(Object obj) {
+        addWeak(obj, null);
+    }
+
+    /**
+     * Weakly adds an object to the object mesh and tags it with the given
+     * tags. The object is referenced strongly until the change is carried out.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @param tags Tags to be set on the object, or <code>null</code> in case
+     *            no tags should be set.
+     * @see DuctTape#addWeak(Object, int[])
+     */
+    public final void addWeak(Object obj, int[] tags) {
+        mChanges.add(new Change(Change.ADD_WEAK, new Object[] {
+            obj
+        }, (tags != null ? tags.clone() : null)));
+    }
+
+    /**
+     * Removes an object from the object mesh.
+     * 
+     * @param obj The object to remove.
+     * @see DuctTape#remove(Object)
+     */
+    public final void remove(Object obj) {
+        mChanges.add(new Change(Change.REMOVE, new Object[] {
+            obj
+        }, null));
+    }
+
+    /**
+     * Convenience method to remove an array of objects. The objects are
+     * removed together by the same call to {@link #apply()}.
+     * 
+     * @param objs The objects to remove.
+     * @see DuctTape#remove(Object[])
+     */
+    public final void remove(Object[] objs) {
+        mChanges.add(new Change(Change.REMOVE, objs.clone(), null));
+    }
+
+    /**
+     * Convenience method to remove a sequence of objects. The sequence is
+     * enumerated by this call, and the objects are removed together by the same
+     * call to {@link #apply()}.
+     * 
+     * @param objs An object enumerating the objects to be removed.
+     * @see DuctTape#remove(Iterable)
+     */
+    public final void remove(Iterable<?> objs) {
+        mChanges.add(new Change(Change.REMOVE, toArray(objs), null));
+    }
+
+    /**
+     * Removes all objects having any of the given tags.
+     * 
+     * @param tags Tags on objects to remove.
+     * @see DuctTape#remove(int[])
+     */
+    public final void remove(int[] tags) {
+        mChanges.add(new Change(Change.REMOVE_TAGGED, null, tags.clone()));
+    }
+
+    /**
+     * Removes all objects having the given tag.
+     * 
+     * @param tag Tag on objects to remove.
+     * @see DuctTape#remove(int)
+     */
+    public final void remove(int tag) {
+        mChanges.add(new Change(Change.REMOVE_TAGGED, null, new int[] {
+            tag
+        }));
+    }
+
+    /**
+     * Removes a tag from an object.
+     * 
+     * @param obj Object on which to remove the tag.
+     * @param tag The tag to remove.
+     * @see DuctTape#remove(Object, int)
+     */
+    public final void remove(Object obj, int tag) {
+        mChanges.add(new Change(Change.REMOVE_TAG, new Object[] {
+            obj
+        }, new int[] {
+            tag
+        }));
+    }
+
+    /**
+     * Removes everything from the object mesh. Objects added after this call
+     * are kept.
+     * 
+     * @see DuctTape#clear()
+     */
+    public final void clear() {
+        mChanges.add(new Change(Change.CLEAR, null, null));
+    }
+
+    /**
+     * Releases the objects produced by singleton factories that were not
+     * injected anywhere by the last call to {@link #apply()}.
+     * 
+     * @return The number of released objects.
+     * @see DuctTape#trim()
+     */
+    public final int trim() {
+        synchronized (mTape) {
+            return mTape.trim();
+        }
+    }
+
+    /**
+     * Gives the current status of the glued object mesh, including changes
+     * that have not yet been carried out.
+     * 
+     * @return <code>true</code> when all objects has been properly injected.
+     * @see DuctTape#isRobust()
+     */
+    public final boolean isRobust() {
+        synchronized (mTape) {
+            return mChanges.isEmpty() && mTape.isRobust();
+        }
+    }
+
+    /**
+     * Turns collection of statistics on or off.
+     * 
+     * @param enabled <code>true</code> to collect statistics.
+     * @see DuctTape#setStatsEnabled(boolean)
+     */
+    public final void setStatsEnabled(boolean enabled) {
+        synchronized (mTape) {
+            mTape.setStatsEnabled(enabled);
+        }
+    }
+
+    /**
+     * Gives the statistics collected the last time the mesh was glued
+     * together.
+     * 
+     * @return A copy of the statistics, or null when collection is off or the
+     *         mesh has not been glued together since it was turned on.
+     * @see DuctTape#getStats()
+     */
+    public final GlueStats getStats() {
+        synchronized (mTape) {
+            return mTape.getStats();
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and glues the resulting object
+     * mesh together.
+     * 
+     * @throws GluingException when an injection fails.
+     * @see DuctTape#apply()
+     */
+    public final void apply() throws GluingException {
+        synchronized (mTape) {
+            update();
+            mTape.apply();
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and glues the resulting object
+     * mesh together with the values assigned in parallel.
+     * 
+     * @param executor The executor to assign the values on, or null to assign
+     *            them on the calling thread.
+     * @throws GluingException when an injection fails.
+     * @see DuctTape#apply(Executor)
+     */
+    public final void apply(Executor executor) throws GluingException {
+        synchronized (mTape) {
+            update();
+            mTape.apply(executor);
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and looks up the object of the
+     * given type.
+     * 
+     * @param clazz The type of the object to look up.
+     * @param tags The tags of the object.
+     * @return The object, or null when there is no such object and the lookup
+     *         is optional.
+     * @throws GluingException when there is no single object of the type
+     *             available, or when the mesh cannot be glued together.
+     * @see DuctTape#get(Class, int...)
+     */
+    public final <T> T get(Class<T> clazz, int... tags) throws GluingException {
+        synchronized (mTape) {
+            update();
+            return mTape.get(clazz, tags);
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and looks up all objects of the
+     * given type.
+     * 
+     * @param clazz The type of the objects to look up.
+     * @param tags The tags of the objects.
+     * @return The objects. The array must not be modified.
+     * @throws GluingException when the mesh cannot be glued together.
+     * @see DuctTape#getAll(Class, int...)
+     */
+    public final <T> T[] getAll(Class<T> clazz, int... tags) throws GluingException {
+        synchronized (mTape) {
+            update();
+            return mTape.getAll(clazz, tags);
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and injects an object that is not
+     * part of the object mesh.
+     * 
+     * @param target The object to inject.
+     * @throws GluingException when a field cannot be injected, or when the mesh
+     *             cannot be glued together.
+     * @see DuctTape#inject(Object)
+     */
+    public final void inject(Object target) throws GluingException {
+        synchronized (mTape) {
+            update();
+            mTape.inject(target);
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and prepares the gluing of the
+     * resulting object mesh without assigning anything, so that it can be done
+     * on a background thread.
+     * 
+     * @see DuctTape#prepareApply()
+     */
+    public final void prepareApply() {
+        synchronized (mTape) {
+            update();
+            mTape.prepareApply();
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and completes the gluing prepared
+     * by {@link #prepareApply()}. Any change carried out makes this call fall
+     * back to a complete {@link #apply()}.
+     * 
+     * @throws GluingException when an injection fails.
+     * @see DuctTape#commit()
+     */
+    public final void commit() throws GluingException {
+        synchronized (mTape) {
+            update();
+            mTape.commit();
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, and starts inflating the layouts
+     * the next call to {@link #apply()} is likely to need.
+     * 
+     * @param executor The executor to run the inflations on.
+     * @see DuctTape#preInflate(Executor)
+     */
+    public final void preInflate(Executor executor) {
+        synchronized (mTape) {
+            update();
+            mTape.preInflate(executor);
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, glues the resulting object mesh
+     * together and starts the objects in it.
+     * 
+     * @throws GluingException when the injection fails, or when an object
+     *             throws while being started or stopped.
+     * @see DuctTape#start()
+     */
+    public final void start() throws GluingException {
+        start(null);
+    }
+
+    /**
+     * Carries out all changes made so far, glues the resulting object mesh
+     * together and starts the objects in it, in parallel where possible.
+     * 
+     * @param executor The executor to start the objects on, or null to start
+     *            them on the calling thread.
+     * @throws GluingException when the injection fails, or when an object
+     *             throws while being started or stopped.
+     * @see DuctTape#start(Executor)
+     */
+    public final void start(Executor executor) throws GluingException {
+        synchronized (mTape) {
+            update();
+            mTape.start(executor);
+        }
+    }
+
+    /**
+     * Stops all objects that have been started.
+     * 
+     * @throws GluingException when an object throws while being stopped.
+     * @see DuctTape#stop()
+     */
+    public final void stop() throws GluingException {
+        synchronized (mTape) {
+            mTape.stop();
+        }
+    }
+
+    /**
+     * Carries out all changes made so far, glues the resulting object mesh
+     * together and freezes it. Changes made while frozen are queued until
+     * {@link #thaw()} is called.
+     * 
+     * @return The record of all injections.
+     * @throws GluingException when the mesh cannot be glued together.
+     * @see DuctTape#freeze()
+     */
+    public final GlueGraph freeze() throws GluingException {
+        synchronized (mTape) {
+            update();
+            return mTape.freeze();
+        }
+    }
+
+    /**
+     * Allows the queued changes to be carried out again.
+     * 
+     * @see DuctTape#thaw()
+     */
+    public final void thaw() {
+        synchronized (mTape) {
+            mTape.thaw();
+        }
+    }
+
+    /**
+     * Tells whether the tape is frozen.
+     * 
+     * @return <code>true</code> between the calls to {@link #freeze()} and
+     *         {@link #thaw()}.
+     * @see DuctTape#isFrozen()
+     */
+    public final boolean isFrozen() {
+        synchronized (mTape) {
+            return mTape.isFrozen();
+        }
+    }
+
+    /**
+     * Creates a short text describing the status of the last applied mesh.
+     * 
+     * @return A single line status text.
+     * @see DuctTape#toShortString()
+     */
+    public final String toShortString() {
+        synchronized (mTape) {
+            return mTape.toShortString();
+        }
+    }
+
+    /**
+     * Creates a graph description of the last applied mesh.
+     * 
+     * @return A graph in the DOT language.
+     * @see DuctTape#toDotString()
+     */
+    public final String toDotString() {
+        synchronized (mTape) {
+            return mTape.toDotString();
+        }
+    }
+
+    /**
+     * Creates a text describing the last applied mesh.
+     * 
+     * @return A multi-line text.
+     * @see DuctTape#toString()
+     */
+    @Override
+    public final String toString() {
+        synchronized (mTape) {
+            return mTape.toString();
+        }
+    }
+
+    /**
+     * Carries out the queued changes on the tape. Must be called while holding
+     * the lock of the tape.
+     */
+    private void update() {
+        /*
+         * NOTE: Only the changes queued when this call starts are carried out,
+         * so that changes made during the call (e.g. by constructors during
+         * apply) cannot keep it running.
+         */
+        final DuctTape tape = mTape;
+        if (tape.isFrozen()) {
+            return;
+        }
+        int changesLen = mChanges.size();
+        while (changesLen-- > 0) {
+            final Change change = mChanges.poll();
+            if (change == null) {
+                break;
+            }
+            final Object[] objs = change.mObjects;
+            switch (change.mKind) {
+                case Change.ADD:
+                    for (Object obj : objs) {
+                        tape.add(obj, change.mTags);
+                    }
+                    break;
+                case Change.REMOVE:
+                    tape.remove(objs);
+                    break;
+                case Change.REMOVE_TAGGED:
+                    tape.remove(change.mTags);
+                    break;
+                case Change.REMOVE_TAG:
+                    tape.remove(objs[0], change.mTags[0]);
+                    break;
+                case Change.CLEAR:
+                    tape.clear();
+                    break;
+                case Change.ADD_WEAK:
+                    tape.addWeak(objs[0], change.mTags);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown change " + change.mKind);
+            }
+        }
+    }
+
+    private static Object[] toArray(Iterable<?> objs) {
+        ArrayList<Object> list = new ArrayList<Object>();
+        for (Object obj : objs) {
+            list.add(obj);
+        }
+        return list.toArray();
+    }
+
+}
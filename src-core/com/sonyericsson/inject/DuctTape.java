@@ -26,14 +26,25 @@
 
 package com.sonyericsson.inject;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.xmlpull.v1.XmlPullParser;
 
@@ -136,6 +147,28 @@ import android.view.inputmethod.InputMethodManager;
  * The same procedure can be applied regardless weather objects were removed,
  * added or both.
  * </p>
+ * <p>
+ * Objects can also be fetched from the mesh directly, using the same rules as
+ * for injections:
+ * </p>
+ * 
+ * <pre>
+ * MyService service = dt.get(MyService.class);
+ * </pre>
+ * <p>
+ * In the same way an object that only consumes what the mesh has to offer can
+ * be injected without becoming part of the mesh, which is much cheaper than
+ * adding it and gluing the whole mesh together again:
+ * </p>
+ * 
+ * <pre>
+ * dt.inject(myPresenter);
+ * </pre>
+ * <p>
+ * An instance of this class must only be used by one thread at a time. When
+ * objects are added or removed from several threads, use
+ * {@link com.sonyericsson.inject.ConcurrentDuctTape} instead.
+ * </p>
  * <a name="InjectedFields"></a> <h3>Injected Fields</h3>
  * <p>
  * To make values become injected into an object the class must fist be marked
@@ -303,7 +336,57 @@ import android.view.inputmethod.InputMethodManager;
  * Normally a factory creates a new instance of the object for each injection.
  * This behavior can however be changed by making the class implementing the
  * {@link com.sonyericsson.inject.Singleton} interface. That tells the framework
- * that the same object instance should be used for all injections.
+ * that the same object instance should be used for all injections. An object
+ * keeps the instances injected into it when the mesh is glued again, and new
+ * ones are only created for injections that are new to the object. Other
+ * products implementing the {@link com.sonyericsson.inject.Recyclable}
+ * interface are instead reset and used again once the objects they were
+ * injected into have been removed.
+ * </p>
+ * <p>
+ * When the same mesh of factory products is needed over and over again, the
+ * mesh can be recorded by {@link #createBlueprint()} and then recreated without
+ * any validation, see {@link com.sonyericsson.inject.Blueprint}.
+ * </p>
+ * <a name="Lifecycle"></a> <h3>Lifecycle</h3>
+ * <p>
+ * Objects implementing the {@link com.sonyericsson.inject.Startable} interface
+ * can be started by calling {@link #start()} instead of {@link #apply()}. The
+ * objects are then started after everything they depend on has been started,
+ * and {@link #stop()} stops them in the reverse order. By giving an
+ * {@link java.util.concurrent.Executor} to
+ * {@link #start(java.util.concurrent.Executor)} the objects that do not depend
+ * on each other are started in parallel.
+ * </p>
+ * <a name="Hierarchy"></a> <h3>Hierarchy</h3>
+ * <p>
+ * An instance can be created as a child of another instance by using
+ * {@link #DuctTape(DuctTape, Context)}. The child sees everything that is
+ * available in its parent, without copying any of it, following these rules:
+ * </p>
+ * <p>
+ * <ul>
+ * <li>A field that takes a single object is injected with an object from the
+ * child whenever the child has one, i.e. the objects of the child shadow those
+ * of the parent. Only when there is none the object is taken from the parent.</li>
+ * <li>An array is injected with the objects from the parent followed by the
+ * objects from the child, i.e. the child extends the parent. Arrays tagged
+ * with {@link #ORDERED} are still sorted by dependency.</li>
+ * <li>Objects from the parent are looked up just as by
+ * {@link #getAll(Class, int...)}, why products of singleton factories in the
+ * parent are shared with all children. Such a product is produced the first
+ * time any child asks for it, and it then becomes part of the parent for as
+ * long as its factory is, i.e. it is glued together by every later call to
+ * {@link #apply()} on the parent. Factories in the parent producing other
+ * classes are not used by the children.</li>
+ * <li>Objects from the parent are never injected by the child, nor started by
+ * {@link #start()} of the child.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * A child is no longer robust when its parent is changed, and the next call to
+ * {@link #apply()} glues it together again. The lookups made in the parent are
+ * remembered by the parent until it is changed.
  * </p>
  * <a name="ContextAwareness"></a> <h3>Context Awareness</h3>
  * <p>
@@ -366,6 +449,22 @@ import android.view.inputmethod.InputMethodManager;
  * field where it is injected the search for an injectable object is considered
  * to have failed.
  * </p>
+ * <p>
+ * Inflating layouts can be a costly part of {@link #apply()}. By calling
+ * {@link #preInflate(java.util.concurrent.Executor)} ahead of time the layouts
+ * are instead inflated in the background, and picked up when needed.
+ * </p>
+ * <p>
+ * Since views must be handled on the main thread, {@link #apply()} can also be
+ * split in two. {@link #prepareApply()} does all work that does not involve
+ * views, and may be called on a background thread, while {@link #commit()}
+ * looks up the views and assigns all injected values on the main thread.
+ * </p>
+ * <p>
+ * Activities and views usually live shorter than the instance they are added
+ * to. When added with {@link #addWeak(Object)} they can be garbage collected
+ * once nothing else refers to them, and are then removed from the mesh.
+ * </p>
  * <a name="DebugOutput"></a> <h3>Debug Output</h3>
  * <p>
  * Apart from the standard {@link #toString()} and {@link #toShortString()} that
@@ -382,6 +481,19 @@ import android.view.inputmethod.InputMethodManager;
  * alt="Sample graph depicting an object mesh created by DuctTape." border="0"
  * />
  * </p>
+ * <p>
+ * For tools, such as ones computing fan-in or comparing meshes between
+ * releases, {@link #toJson(Appendable)} and {@link #writeGraph(java.io.DataOutput)}
+ * describe all objects and references in a structured form that is easy to
+ * parse.
+ * </p>
+ * <p>
+ * When running on a Java runtime with the JDK Flight Recorder, events are
+ * emitted in the "Duct Tape" category each time the mesh is glued together,
+ * each time a factory creates an object, each time a layout is inflated and for
+ * each batch of objects that is added or removed. On other runtimes, such as
+ * Android, no events are emitted.
+ * </p>
  */
 public class DuctTape {
 
@@ -391,6 +503,48 @@ public class DuctTape {
      */
     private static final int ARRAY_INCREMENT_SIZE = 16;
 
+    /**
+     * The number of recycled products kept for reuse by each factory.
+     */
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * Origin of objects added to the mesh.
+     */
+    private static final int ORIGIN_ADDED = 0;
+
+    /**
+     * Origin of objects produced by factories.
+     */
+    private static final int ORIGIN_PRODUCT = 1;
+
+    /**
+     * Origin of objects read through from the parent.
+     */
+    private static final int ORIGIN_INHERITED = 2;
+
+    /**
+     * Origin of views found in the view hierarchy or inflated.
+     */
+    private static final int ORIGIN_VIEW = 3;
+
+    /**
+     * Origin of resources.
+     */
+    private static final int ORIGIN_RESOURCE = 4;
+
+    /**
+     * Origin of other objects provided by a context.
+     */
+    private static final int ORIGIN_SERVICE = 5;
+
+    /**
+     * The names of the origins of objects, as used in exports.
+     */
+    private static final String[] ORIGINS = {
+            "added", "product", "inherited", "view", "resource", "service"
+    };
+
     /**
      * Optimization so we only have to allocate this array once.
      */
@@ -454,6 +608,158 @@ public class DuctTape {
      */
     private Node mPendingRemoval;
 
+    /**
+     * Injection points of each class that has been injected, so that
+     * reflection only needs to be done once per class.
+     */
+    /*
+     * NOTE: This field is not static for the same reason as oneTag.
+     */
+    private HashMap<Class<?>, InjectionPoint[]> mPlans;
+
+    /**
+     * Layouts being inflated in advance, by ID, or null when
+     * {@link #preInflate(Executor)} has not been called since the last call to
+     * apply().
+     */
+    private HashMap<Integer, Inflation> mInflations;
+
+    /**
+     * The number of changes made to the object mesh, used to detect changes
+     * made after {@link #prepareApply()}.
+     */
+    private int mModCount;
+
+    /**
+     * The plan made by {@link #prepareApply()}, or null when there is none.
+     */
+    private Plan mPlan;
+
+    /**
+     * The answers given by {@link #getAll(Class, int...)}, by type and tags,
+     * or null when none are available.
+     */
+    private HashMap<TaggedClass, Object[]> mAnswers;
+
+    /**
+     * The answers given by {@link #getAll(Class, int...)} that include weakly
+     * added objects, by type and tags, or null when none are available. They
+     * are only weakly referenced so that the objects can still be collected.
+     */
+    private HashMap<TaggedClass, WeakReference<Object[]>> mWeakAnswers;
+
+    /**
+     * The number of changes made to the object mesh when the answers were
+     * given.
+     */
+    private int mAnswersModCount;
+
+    /**
+     * The dependency sequence used to sort injections by dependency, or null
+     * when no such injections have been made.
+     */
+    private Sequence mSequence;
+
+    /**
+     * The dependency sequence of all objects in the mesh, used to start and
+     * stop objects in the right order and to sort the answers of
+     * {@link #getAll(Class, int...)}, or null when it is not held on to.
+     */
+    private Sequence mLifecycle;
+
+    /**
+     * The dependency sequence of all objects in the mesh when only weakly
+     * referenced because it refers to weakly added objects, or null when
+     * there is none.
+     */
+    private WeakReference<Sequence> mWeakLifecycle;
+
+    /**
+     * The number of changes made to the object mesh when the dependency
+     * sequence of all objects was last updated.
+     */
+    private int mLifecycleModCount;
+
+    /**
+     * The objects that have been started, in the order they were started, or
+     * null when no objects have been started.
+     */
+    private ArrayList<Startable> mStarted;
+
+    /**
+     * The instance to read through to for objects not available in this
+     * instance, or null when there is none.
+     */
+    private DuctTape mParent;
+
+    /**
+     * The generation of the parent at the time this instance was last glued
+     * together.
+     */
+    private int mParentGeneration;
+
+    /**
+     * The nodes representing objects of the parent that were injected by the
+     * last call to {@link #apply()}, or null when there is no parent.
+     */
+    private IdentityHashMap<Object, Node> mInherited;
+
+    /**
+     * The record of all injections made when the instance was frozen, or null
+     * when it is not frozen.
+     */
+    private GlueGraph mFrozen;
+
+    /**
+     * Whether statistics are collected.
+     */
+    private boolean mStatsEnabled;
+
+    /**
+     * The statistics of the last time the mesh was glued together, or null
+     * when there are none.
+     */
+    private GlueStats mStats;
+
+    /**
+     * The record of resolution decisions, or null when not recording.
+     */
+    private Trace mTrace;
+
+    /**
+     * The counts of basic operations, or null when not counting.
+     */
+    private OperationCounts mCounts;
+
+    /**
+     * The queue of weakly added objects that have been collected, or null
+     * when no object has been added weakly.
+     */
+    private ReferenceQueue<Object> mCollected;
+
+    /**
+     * The number of weakly added objects in the mesh.
+     */
+    private int mNumWeak;
+
+    /**
+     * The number of factories with recyclable products.
+     */
+    private int mNumRecyclable;
+
+    /**
+     * Removed objects whose recyclable products are recycled by the next call
+     * to {@link #apply()}, unless added again before that, or null when there
+     * are none.
+     */
+    private ArrayList<Object> mDropped;
+
+    /**
+     * The number of operations in progress that need the weakly added objects
+     * to be strongly referenced.
+     */
+    private int mPinned;
+
     /**
      * The minimum value of a tag set on an object. An object may be tagged with
      * any integer equal to or between this value and {@link #MAX_TAG}.
@@ -487,6 +793,22 @@ public class DuctTape {
      */
     public static final int OPTIONAL = 0x00ffffff;
 
+    /**
+     * A weak reference to an object added with
+     * {@link DuctTape#addWeak(Object, int[])}, leading back to its node once
+     * the object has been collected.
+     */
+    private static final class WeakObject extends WeakReference<Object> {
+
+        public final Node mNode;
+
+        public WeakObject(Object obj, Node node, ReferenceQueue<Object> queue) {
+            super(obj, queue);
+            mNode = node;
+        }
+
+    }
+
     /**
      * Tag that makes injected references become sorted by dependency. It can
      * only be used together with {@link com.sonyericsson.inject.Glue} and makes
@@ -510,10 +832,13 @@ public class DuctTape {
         @Override
         public final boolean equals(Object obj) {
             /*
-             * Since we hash on the class all we need here is to find the
-             * matching tag set.
+             * NOTE: Classes with the same hash code still need to be told
+             * apart.
              */
             TaggedClass tc = (TaggedClass)obj;
+            if (tc.mClazz != mClazz) {
+                return false;
+            }
             final int[] currTags = mTags;
             final int[] tags = tc.mTags;
             final int currTagLen = currTags.length;
@@ -536,6 +861,18 @@ public class DuctTape {
 
     }
 
+    /**
+     * The products of one class injected through one injection point by the
+     * last glue, in order, and how many of them this glue has injected again.
+     */
+    private static final class Tracked {
+
+        public final ArrayList<Node> mProducts = new ArrayList<Node>();
+
+        public int mNext;
+
+    }
+
     private static final class Implementors {
 
         public Object[] mObjects;
@@ -678,11 +1015,36 @@ public class DuctTape {
          */
         public Node mProduct;
 
+        /**
+         * The product released by trim(), which is used again instead of
+         * creating a new object as long as it is still alive, or null.
+         */
+        public WeakReference<Object> mReleased;
+
+        /**
+         * Recycled products to hand out instead of creating new ones, or null
+         * when there are none.
+         */
+        public Object[] mPool;
+
+        public int mPoolLen;
+
+        /**
+         * Indicates whether products are recycled when no longer used.
+         */
+        public boolean mRecyclable;
+
         /**
          * Indicates whether the factory produces a singleton or not.
          */
         public boolean mNonSingleton;
 
+        /**
+         * Indicates whether the product has been asked for through get(), and
+         * must be produced even when nothing is injected with it.
+         */
+        public boolean mDemanded;
+
         /**
          * Next factory in the list of factories.
          */
@@ -708,6 +1070,7 @@ public class DuctTape {
             mClazz = clazz;
             mStatus = NOT_PROCESSED;
             mNonSingleton = !Singleton.class.isAssignableFrom(clazz);
+            mRecyclable = mNonSingleton && Recyclable.class.isAssignableFrom(clazz);
         }
 
     }
@@ -720,22 +1083,6 @@ public class DuctTape {
          */
         public static final int WILL_BE_SORTED = 0x00000001;
 
-        /**
-         * The node has has been merged into another node in the dependency
-         * chain.
-         */
-        public static final int MERGED = 0x00000002;
-
-        /**
-         * The node is the head of a list of merged nodes.
-         */
-        public static final int MERGED_HEAD = 0x00000004;
-
-        /**
-         * The node has already been visited in the dependency calculation.
-         */
-        public static final int VISITED = 0x00000008;
-
         /**
          * The node should not be reused. Create a new instance instead.
          */
@@ -747,10 +1094,15 @@ public class DuctTape {
 
         public int mChildrenLen;
 
-        public int mLastVisit;
-
         public Object mObject;
 
+        /**
+         * The reference to a weakly added object, or null when the object is
+         * added as usual. The object is then only kept in mObject while
+         * pinned.
+         */
+        public WeakObject mWeak;
+
         /*
          * NOTE: Preparation for when objects can originate from different
          * contexts, and will need their resources to be fetched from the right
@@ -758,7 +1110,14 @@ public class DuctTape {
          */
         public Context mContext;
 
-        public Node mNextMerged;
+        /**
+         * The products of non-singleton factories injected into the object by
+         * the last glue, as pairs of injection point and product node. The
+         * same products are injected again by the next glue.
+         */
+        public Object[] mProducts;
+
+        public int mProductsLen;
 
         public Node mNext;
 
@@ -847,76 +1206,1252 @@ public class DuctTape {
 
     }
 
-    private static boolean isResolvable(Factory f, final Context ctxt, final View[] views,
-            final int viewsLen, final Node nodes, final int numNodes, final Factory factories,
-            final int numFactories, Factory[] path, HashMap<Integer, Object> idCache) {
+    private static final class InjectionPoint {
 
-        int pathIdx = 0;
-        boolean valid = false;
+        /**
+         * The injected field, already made accessible.
+         */
+        public Field mField;
 
-        /* Provide fast access */
-        Resources res = null;
-        if (ctxt != null) {
-            res = ctxt.getResources();
-        }
-        resolve: while (true) {
-            switch (f.mStatus) {
-                case Factory.EXECUTED:
-                    /* Fall through */
-                case Factory.RESOLVABLE:
-                    return true;
-                case Factory.UNRESOLVABLE:
-                    return false;
-                default:
-                    /*
-                     * Set factory into pending state during validation This is
-                     * done to be able to resolve circular dependencies when
-                     * calculating the validity.
-                     */
-                    f.mStatus = Factory.PROCESSING;
+        /**
+         * The tags given by the {@link Glue} annotation on the field.
+         */
+        public int[] mTags;
 
-                    /* See if there is already something in progress */
-                    ResolveContinuation cont = f.mCont;
+        /**
+         * Number of tags that are not built-in tags.
+         */
+        public int mNumTags;
 
-                    /* Keep track of where we have been */
-                    path[pathIdx] = f;
+        /**
+         * Indicates whether the injection is mandatory or not.
+         */
+        public boolean mVital;
 
-                    /* Scan all injection points */
-                    Class<?> current;
-                    if (cont == null) {
-                        current = f.mClazz;
-                    } else {
-                        current = cont.mCurrent;
-                    }
-                    validation: while (Gluey.class.isAssignableFrom(current)) {
-                        Field[] fields;
-                        int fieldIdx;
-                        if (cont == null) {
-                            fields = current.getDeclaredFields();
-                            fieldIdx = 0;
-                        } else {
-                            fields = cont.mFields;
-                            fieldIdx = cont.mFieldIdx;
-                        }
-                        final int fieldsLen = fields.length;
-                        fieldscan: while (fieldIdx < fieldsLen) {
-                            /*
-                             * NOTE: Only mandatory injections needs to be
-                             * considered since the object can exists even
-                             * though the optional ones cannot be carried out.
-                             */
-                            Field field = fields[fieldIdx];
-                            final Glue injection;
-                            if (cont == null) {
-                                injection = getInjection(field);
-                            } else {
-                                injection = null;
-                            }
-                            if (injection != null || cont != null) {
-                                Class<?> clazz = null;
-                                final int[] tags;
-                                boolean vital;
-                                boolean sort;
+        /**
+         * Indicates whether the injection should be sorted by dependency.
+         */
+        public boolean mSort;
+
+        /**
+         * The last custom tag, used as resource ID when applicable.
+         */
+        public int mId;
+
+        /**
+         * The type of objects to inject, with primitives wrapped.
+         */
+        public Class<?> mClazz;
+
+        /**
+         * The array type of the field, or null in case the field is not an
+         * array.
+         */
+        public Class<?> mArray;
+
+    }
+
+    /**
+     * The objects visited when describing the mesh, in the order they were
+     * found, with the names used to tell objects of the same class apart.
+     */
+    private static final class Listing {
+
+        /**
+         * All visited objects, the nodes first.
+         */
+        public final ArrayList<Object> mAll = new ArrayList<Object>();
+
+        /**
+         * The position of each visited object in {@link #mAll}.
+         */
+        public final IdentityHashMap<Object, Integer> mIndex =
+                new IdentityHashMap<Object, Integer>();
+
+        /**
+         * The position of visited strings and wrapped primitives, which are
+         * considered the same when equal.
+         */
+        public final HashMap<Object, Integer> mValues = new HashMap<Object, Integer>();
+
+        /**
+         * The injection point through which each object not in the mesh was
+         * first found.
+         */
+        public final IdentityHashMap<Object, InjectionPoint> mFoundBy =
+                new IdentityHashMap<Object, InjectionPoint>();
+
+        /**
+         * The suffixes of objects sharing their class with other objects. Only
+         * valid after {@link #number()}.
+         */
+        public final IdentityHashMap<Object, String> mSuffixes =
+                new IdentityHashMap<Object, String>();
+
+        /**
+         * The package prefix common to all visited classes, or null.
+         */
+        public String mPrefix;
+
+        /**
+         * The length of the package prefix including the final dot.
+         */
+        public int mPrefixEnd;
+
+        /**
+         * The number of objects in the mesh, which come first in
+         * {@link #mAll}.
+         */
+        public int mNumNodes;
+
+        /**
+         * The number of references found in injected fields.
+         */
+        public int mNumEdges;
+
+        /**
+         * The origin of each object. Only valid after {@link DuctTape#export()}.
+         */
+        public int[] mOrigins;
+
+        /**
+         * The tags of each object, or null for objects without tags. Only
+         * valid after {@link DuctTape#export()}.
+         */
+        public int[][] mTags;
+
+        /**
+         * The number of tags of each object. Only valid after
+         * {@link DuctTape#export()}.
+         */
+        public int[] mTagsLen;
+
+        /**
+         * The position in {@link #mContextTable} of the context of each
+         * object, or -1 for objects without context. Only valid after
+         * {@link DuctTape#export()}.
+         */
+        public int[] mContexts;
+
+        /**
+         * All contexts of the objects. Only valid after
+         * {@link DuctTape#export()}.
+         */
+        public ArrayList<Context> mContextTable;
+
+        /**
+         * Adds an object unless it has already been visited.
+         * 
+         * @param obj The object.
+         * @param always Whether to add the object even if already visited.
+         * @return Whether the object was added.
+         */
+        public boolean add(Object obj, boolean always) {
+            final boolean value = isValue(obj.getClass());
+            if (!always && (mIndex.containsKey(obj) || (value && mValues.containsKey(obj)))) {
+                return false;
+            }
+            final int idx = mAll.size();
+            if (!mIndex.containsKey(obj)) {
+                mIndex.put(obj, idx);
+            }
+            if (value && !mValues.containsKey(obj)) {
+                mValues.put(obj, idx);
+            }
+            mAll.add(obj);
+            return true;
+        }
+
+        /**
+         * Gets the position of a visited object.
+         * 
+         * @param obj The object.
+         * @return The position in {@link #mAll}, or -1 if not visited.
+         */
+        public int indexOf(Object obj) {
+            Integer idx = mIndex.get(obj);
+            if (idx == null && isValue(obj.getClass())) {
+                idx = mValues.get(obj);
+            }
+            return (idx != null ? idx : -1);
+        }
+
+        /**
+         * Determines the suffixes of objects sharing their class with others.
+         */
+        public void number() {
+            final HashMap<Class<?>, int[]> counts = new HashMap<Class<?>, int[]>();
+            for (Object obj : mAll) {
+                int[] count = counts.get(obj.getClass());
+                if (count == null) {
+                    count = new int[2];
+                    counts.put(obj.getClass(), count);
+                }
+                count[0]++;
+            }
+            for (Object obj : mAll) {
+                final int[] count = counts.get(obj.getClass());
+                count[1]++;
+                if (count[0] > 1) {
+                    mSuffixes.put(obj, "#" + count[1]);
+                }
+            }
+        }
+
+    }
+
+    private static final class Vertex {
+
+        /**
+         * The object represented by this vertex.
+         */
+        public final Object mObject;
+
+        /**
+         * The position of the component in the dependency sequence. Only valid
+         * on the representative of a component. Positions are only compared
+         * with each other, and may be negative.
+         */
+        public int mOrd;
+
+        /**
+         * The representative of the component this vertex belongs to, i.e. the
+         * group of vertices with circular dependencies between them. Vertices
+         * without any circular dependencies represent themselves.
+         */
+        public Vertex mComp;
+
+        /**
+         * The next vertex belonging to the same component.
+         */
+        public Vertex mNextMember;
+
+        /**
+         * The position of this vertex among the vertices of its component.
+         */
+        public int mRank;
+
+        /**
+         * The vertices this vertex depends on, in the order of the children of
+         * its node.
+         */
+        public Vertex[] mDeps;
+
+        public int mDepsLen;
+
+        /**
+         * The dependencies found during the current update.
+         */
+        public Vertex[] mFound;
+
+        public int mFoundLen;
+
+        /**
+         * The update in which this vertex was last found in the mesh.
+         */
+        public int mStamp;
+
+        /**
+         * The update in which this vertex was last visited by the search.
+         */
+        public int mVisit;
+
+        /**
+         * The root the search found this vertex from, or null when not
+         * searched for yet.
+         */
+        public Vertex mRoot;
+
+        /**
+         * The index of this vertex among the roots of the last update. Only
+         * valid on roots.
+         */
+        public int mRootIndex;
+
+        /**
+         * The highest position given by the search from this vertex. Only
+         * valid on roots.
+         */
+        public int mEnd;
+
+        /**
+         * The number of levels of started objects this vertex depends on,
+         * including itself.
+         */
+        public int mLevel;
+
+        /**
+         * Visiting index used when finding the components.
+         */
+        public int mIndex;
+
+        /**
+         * Lowest visiting index reachable, used when finding the components.
+         */
+        public int mLow;
+
+        public Vertex(Object obj) {
+            mObject = obj;
+            mComp = this;
+        }
+
+        public final void addFound(Vertex dep) {
+            Vertex[] found = mFound;
+            final int foundLen = mFoundLen;
+            if (found == null || foundLen == found.length) {
+                Vertex[] temp = new Vertex[foundLen + ARRAY_INCREMENT_SIZE];
+                if (found != null) {
+                    System.arraycopy(found, 0, temp, 0, foundLen);
+                }
+                mFound = temp;
+                found = temp;
+            }
+            found[foundLen] = dep;
+            mFoundLen = foundLen + 1;
+        }
+
+        /**
+         * Replaces the dependencies with the ones found during the current
+         * update.
+         *
+         * @return True if the dependencies, or their order, changed.
+         */
+        public final boolean swapFound() {
+            final Vertex[] deps = mDeps;
+            final int depsLen = mDepsLen;
+            final Vertex[] found = mFound;
+            final int foundLen = mFoundLen;
+            boolean changed = (foundLen != depsLen);
+            for (int i = 0; i < foundLen && !changed; i++) {
+                changed = (found[i] != deps[i]);
+            }
+
+            /* Swap the arrays to reuse them in the next update */
+            if (deps != null) {
+                Arrays.fill(deps, 0, depsLen, null);
+            }
+            mDeps = found;
+            mDepsLen = foundLen;
+            mFound = deps;
+            mFoundLen = 0;
+            return changed;
+        }
+
+    }
+
+    /**
+     * <p>
+     * The dependency sequence of the objects in the mesh, kept between calls to
+     * apply() and updated with the changes made to the mesh since the last
+     * update.
+     * </p>
+     * <p>
+     * Objects with circular dependencies are grouped into components, and each
+     * component has a position in the sequence that is lower than the
+     * positions of all components that depend on it. The components are found
+     * by a search from the nodes in list order that visits the children of
+     * each node in order, so the same mesh always gives the same sequence no
+     * matter which changes led up to it.
+     * </p>
+     * <p>
+     * What the search finds from a node only depends on the nodes before it
+     * and on the dependencies of the objects reached. An update therefore
+     * keeps what was found from the unchanged nodes first and last in the
+     * list, and only searches again from the nodes in between. Objects found
+     * from the nodes in between are taken from the last nodes, whose other
+     * objects keep their order. Added objects, which end up first in the list,
+     * are then placed without searching the rest of the mesh again.
+     * </p>
+     */
+    private static final class Sequence {
+
+        private static final Comparator<Vertex> SEQUENCE = new Comparator<Vertex>() {
+            public int compare(Vertex lhs, Vertex rhs) {
+                final int lhsOrd = lhs.mComp.mOrd;
+                final int rhsOrd = rhs.mComp.mOrd;
+                if (lhsOrd != rhsOrd) {
+                    return (lhsOrd < rhsOrd ? -1 : 1);
+                }
+                return (lhs.mRank < rhs.mRank ? -1 : (lhs.mRank == rhs.mRank ? 0 : 1));
+            }
+        };
+
+        private final IdentityHashMap<Object, Vertex> mVertices = new IdentityHashMap<Object, Vertex>();
+
+        private final ArrayList<Vertex> mTouched = new ArrayList<Vertex>();
+
+        /**
+         * The components placed by the current update.
+         */
+        private final ArrayList<Vertex> mPlaced = new ArrayList<Vertex>();
+
+        /**
+         * The vertices the search started from at the last update, in node
+         * order.
+         */
+        private ArrayList<Vertex> mRoots = new ArrayList<Vertex>();
+
+        /**
+         * The vertices to start the search from at the current update.
+         */
+        private ArrayList<Vertex> mNewRoots = new ArrayList<Vertex>();
+
+        private Vertex[] mStack = new Vertex[ARRAY_INCREMENT_SIZE];
+
+        /**
+         * The position right before the positions given by the search from
+         * the first root.
+         */
+        private int mBase;
+
+        private int mStamp;
+
+        /**
+         * Whether the last call to touch() touched the vertex for the first
+         * time during the current update.
+         */
+        private boolean mFresh;
+
+        /**
+         * Gives the position of an object in the sequence. Objects that are
+         * part of the same component share the same position.
+         *
+         * @param obj The object to look up.
+         * @return The position, or {@link Integer#MAX_VALUE} in case the object
+         *         is not part of the sequence.
+         */
+        public final int position(Object obj) {
+            final Vertex v = mVertices.get(obj);
+            return (v != null ? v.mComp.mOrd : Integer.MAX_VALUE);
+        }
+
+        /**
+         * Gives the position of an object among the objects sharing the same
+         * position in the sequence.
+         *
+         * @param obj The object to look up.
+         * @return The position within the component, or 0 in case the object
+         *         is not part of the sequence.
+         */
+        public final int rank(Object obj) {
+            final Vertex v = mVertices.get(obj);
+            return (v != null ? v.mRank : 0);
+        }
+
+        /**
+         * Tells whether an object was part of the sequence at the last update.
+         *
+         * @param obj The object to look up.
+         * @return True if the object is part of the sequence.
+         */
+        public final boolean contains(Object obj) {
+            return mVertices.containsKey(obj);
+        }
+
+        /**
+         * Groups the objects of the given type into levels, so that the objects
+         * of each level only depend on objects of that type in earlier levels.
+         * Objects with circular dependencies among themselves end up in the
+         * same level. Dependencies through objects of other types are
+         * respected as well.
+         *
+         * @param type The type of objects to include.
+         * @return The levels in dependency order, each with its objects in
+         *         sequence order.
+         */
+        public final ArrayList<ArrayList<Object>> levels(Class<?> type) {
+            ArrayList<ArrayList<Object>> levels = new ArrayList<ArrayList<Object>>();
+            final int verticesLen = mVertices.size();
+            Vertex[] vertices = mVertices.values().toArray(new Vertex[verticesLen]);
+            Arrays.sort(vertices, SEQUENCE);
+
+            /* Visit one component at a time */
+            int start = 0;
+            while (start < verticesLen) {
+                final Vertex comp = vertices[start].mComp;
+                int end = start;
+                int level = 0;
+                boolean included = false;
+                while (end < verticesLen && vertices[end].mComp == comp) {
+                    final Vertex v = vertices[end++];
+                    final Vertex[] deps = v.mDeps;
+                    final int depsLen = v.mDepsLen;
+                    for (int i = 0; i < depsLen; i++) {
+                        final Vertex dep = deps[i];
+                        if (dep.mComp != comp && dep.mLevel > level) {
+                            level = dep.mLevel;
+                        }
+                    }
+                    if (type.isInstance(v.mObject)) {
+                        included = true;
+                    }
+                }
+
+                /* Put included objects on the level after their dependencies */
+                if (included) {
+                    if (level == levels.size()) {
+                        levels.add(new ArrayList<Object>());
+                    }
+                    final ArrayList<Object> objs = levels.get(level);
+                    level++;
+                    for (int i = start; i < end; i++) {
+                        final Object obj = vertices[i].mObject;
+                        if (type.isInstance(obj)) {
+                            objs.add(obj);
+                        }
+                    }
+                }
+                for (int i = start; i < end; i++) {
+                    vertices[i].mLevel = level;
+                }
+                start = end;
+            }
+            return levels;
+        }
+
+        /**
+         * Brings the sequence up to date with all nodes having the given flags
+         * set and the nodes they depend on.
+         *
+         * @param firstNode The first node in the list of all nodes.
+         * @param nodesLen The number of nodes in the list.
+         * @param rootFlags The flags a node must have to be included, or 0 to
+         *            include all nodes.
+         * @param counts The counts to add the placed components to, or null.
+         */
+        public final void update(Node firstNode, int nodesLen, int rootFlags,
+                OperationCounts counts) {
+            final int stamp = ++mStamp;
+            final ArrayList<Vertex> roots = mNewRoots;
+
+            /* Collect the current dependencies of all reachable nodes */
+            /*
+             * NOTE: A node is only traversed the first time its object is
+             * touched during the update.
+             */
+            Node[] stack = new Node[nodesLen];
+            Node root = firstNode;
+            while (root != null) {
+                if ((root.mFlags & rootFlags) == rootFlags) {
+                    final Vertex r = touch(root.mObject, stamp);
+                    if (mFresh) {
+                        roots.add(r);
+                        int stackLen = 0;
+                        stack[stackLen++] = root;
+                        while (stackLen > 0) {
+                            final Node node = stack[--stackLen];
+                            final Vertex v = touch(node.mObject, stamp);
+                            final Node[] children = node.mChildren;
+                            final int childrenLen = node.mChildrenLen;
+                            for (int i = 0; i < childrenLen; i++) {
+                                final Node child = children[i];
+                                final Vertex dep = touch(child.mObject, stamp);
+                                if (mFresh) {
+                                    if (stackLen == stack.length) {
+                                        Node[] temp = new Node[stackLen + ARRAY_INCREMENT_SIZE];
+                                        System.arraycopy(stack, 0, temp, 0, stackLen);
+                                        stack = temp;
+                                    }
+                                    stack[stackLen++] = child;
+                                }
+                                if (dep != v) {
+                                    v.addFound(dep);
+                                }
+                            }
+                        }
+                    }
+                }
+                root = root.mNext;
+            }
+
+            /* Find the roots kept first and last */
+            final ArrayList<Vertex> previous = mRoots;
+            final int rootsLen = roots.size();
+            final int previousLen = previous.size();
+            int first = 0;
+            while (first < rootsLen && first < previousLen
+                    && roots.get(first) == previous.get(first)) {
+                first++;
+            }
+            int tail = previousLen;
+            while (tail > first && tail - previousLen + rootsLen > first
+                    && previous.get(tail - 1) == roots.get(tail - 1 - previousLen + rootsLen)) {
+                tail--;
+            }
+
+            /* Search again from all roots that reached a changed vertex */
+            /*
+             * NOTE: The roots are given by their index at the last update,
+             * which is the same for the roots kept first. The roots kept last
+             * have the same index counted from the end.
+             */
+            final ArrayList<Vertex> touched = mTouched;
+            final int touchedLen = touched.size();
+            for (int i = 0; i < touchedLen; i++) {
+                final Vertex v = touched.get(i);
+                if (v.swapFound() && v.mRoot != null) {
+                    final int index = v.mRoot.mRootIndex;
+                    if (index < first) {
+                        first = index;
+                    }
+                    if (index >= tail) {
+                        tail = index + 1;
+                    }
+                }
+            }
+
+            /* Drop vertices no longer present */
+            if (mVertices.size() != touchedLen) {
+                Iterator<Vertex> it = mVertices.values().iterator();
+                while (it.hasNext()) {
+                    final Vertex v = it.next();
+                    if (v.mStamp != stamp) {
+                        if (v.mRoot != null) {
+                            final int index = v.mRoot.mRootIndex;
+                            if (index < first) {
+                                first = index;
+                            }
+                            if (index >= tail) {
+                                tail = index + 1;
+                            }
+                        }
+                        it.remove();
+                    }
+                }
+            }
+
+            /* Search everything again before running out of positions */
+            final int top = (previousLen > 0 ? previous.get(previousLen - 1).mEnd : mBase);
+            if (mBase < Integer.MIN_VALUE / 2 || top > Integer.MAX_VALUE / 2) {
+                first = 0;
+                tail = previousLen;
+            }
+
+            /* Count the vertices found from the roots searched again */
+            int missing = 0;
+            for (int i = 0; i < touchedLen; i++) {
+                final Vertex from = touched.get(i).mRoot;
+                if (from != null && from.mRootIndex >= first && from.mRootIndex < tail) {
+                    missing++;
+                }
+            }
+
+            /* Search */
+            final int prefixEnd = (first > 0 ? previous.get(first - 1).mEnd : mBase);
+            final int tailStart = (tail > 0 ? previous.get(tail - 1).mEnd : mBase) + 1;
+            final int end = search(first, tail - previousLen + rootsLen, tail, missing, stamp);
+
+            /* Fit the placed components between the positions kept */
+            final ArrayList<Vertex> placed = mPlaced;
+            final int placedLen = placed.size();
+            int base;
+            if (end < rootsLen) {
+                base = tailStart - 1 - placedLen;
+                if (first > 0 && base < prefixEnd) {
+
+                    /* Make room by moving the components kept last */
+                    final int delta = prefixEnd - base;
+                    for (int i = 0; i < touchedLen; i++) {
+                        final Vertex v = touched.get(i);
+                        if (v.mComp == v && v.mVisit != stamp && v.mRoot.mRootIndex >= tail) {
+                            v.mOrd += delta;
+                        }
+                    }
+                    for (int i = end; i < rootsLen; i++) {
+                        roots.get(i).mEnd += delta;
+                    }
+                    base = prefixEnd;
+                }
+            } else {
+                base = (first > 0 ? prefixEnd : 0);
+            }
+            for (int i = 0; i < placedLen; i++) {
+                placed.get(i).mOrd += base;
+            }
+            for (int i = first; i < end; i++) {
+                roots.get(i).mEnd += base;
+            }
+            if (first == 0) {
+                mBase = base;
+            }
+            if (counts != null) {
+                counts.mSequencePlacements += placedLen;
+            }
+
+            /* Remember the roots until the next update */
+            for (int i = 0; i < rootsLen; i++) {
+                roots.get(i).mRootIndex = i;
+            }
+            previous.clear();
+            mRoots = roots;
+            mNewRoots = previous;
+            placed.clear();
+            touched.clear();
+        }
+
+        private Vertex touch(Object obj, int stamp) {
+            Vertex v = mVertices.get(obj);
+            if (v == null) {
+                v = new Vertex(obj);
+                mVertices.put(obj, v);
+            }
+            mFresh = (v.mStamp != stamp);
+            if (mFresh) {
+                v.mStamp = stamp;
+                mTouched.add(v);
+            }
+            return v;
+        }
+
+        private int push(Vertex v, int stackLen) {
+            if (stackLen == mStack.length) {
+                Vertex[] temp = new Vertex[stackLen * 2];
+                System.arraycopy(mStack, 0, temp, 0, stackLen);
+                mStack = temp;
+            }
+            mStack[stackLen] = v;
+            return stackLen + 1;
+        }
+
+        /**
+         * Searches from the roots at the given indexes, and then from the
+         * following roots until all vertices found from the roots searched
+         * again have been found. The components are given positions starting
+         * from 1, and the roots the highest position given when searching from
+         * them.
+         *
+         * @return The index of the root after the last root searched.
+         */
+        private int search(int first, int last, int tail, int missing, int stamp) {
+            /*
+             * NOTE: The components are found using Tarjan's algorithm, which
+             * completes each component after all components it depends on. The
+             * roots are visited in node order to make the result predictable.
+             * Vertices found from the roots kept first count as visited, while
+             * vertices found from the roots kept last do not, since searching
+             * from an earlier root takes them over.
+             */
+            final ArrayList<Vertex> roots = mNewRoots;
+            final int rootsLen = roots.size();
+            if (first >= last && missing == 0) {
+                return first;
+            }
+            final int touchedLen = mTouched.size();
+            Vertex[] path = new Vertex[touchedLen];
+            int[] next = new int[touchedLen];
+            int stackLen = 0;
+            int index = 0;
+            int ord = 0;
+            int r = first;
+            while (r < last || (missing > 0 && r < rootsLen)) {
+                final Vertex root = roots.get(r);
+                if (root.mVisit == stamp
+                        || (root.mRoot != null && root.mRoot.mRootIndex < first)) {
+                    root.mEnd = ord;
+                    r++;
+                    continue;
+                }
+                if (root.mRoot != null && root.mRoot.mRootIndex < tail) {
+                    missing--;
+                }
+                int pathLen = 0;
+                path[pathLen] = root;
+                next[pathLen] = 0;
+                root.mIndex = ++index;
+                root.mLow = index;
+                root.mComp = null;
+                root.mNextMember = null;
+                root.mRoot = root;
+                root.mVisit = stamp;
+                stackLen = push(root, stackLen);
+                while (pathLen >= 0) {
+                    final Vertex v = path[pathLen];
+                    final int i = next[pathLen];
+                    if (i < v.mDepsLen) {
+                        next[pathLen] = i + 1;
+                        final Vertex dep = v.mDeps[i];
+                        final Vertex depRoot = dep.mRoot;
+                        if (dep.mVisit != stamp
+                                && (depRoot == null || depRoot.mRootIndex >= first)) {
+
+                            /* Visit dependency */
+                            if (depRoot != null && depRoot.mRootIndex < tail) {
+                                missing--;
+                            }
+                            dep.mIndex = ++index;
+                            dep.mLow = index;
+                            dep.mComp = null;
+                            dep.mNextMember = null;
+                            dep.mRoot = root;
+                            dep.mVisit = stamp;
+                            stackLen = push(dep, stackLen);
+                            pathLen++;
+                            path[pathLen] = dep;
+                            next[pathLen] = 0;
+                        } else if (dep.mComp == null && dep.mIndex < v.mLow) {
+                            /* Still on stack, i.e. part of a circle */
+                            v.mLow = dep.mIndex;
+                        }
+                    } else {
+
+                        /* Complete the component when this is its first vertex */
+                        if (v.mLow == v.mIndex) {
+                            v.mOrd = ++ord;
+                            mPlaced.add(v);
+                            int rank = 0;
+                            Vertex member;
+                            do {
+                                member = mStack[--stackLen];
+                                mStack[stackLen] = null;
+                                member.mComp = v;
+                                member.mRank = rank++;
+                                if (member != v) {
+                                    member.mNextMember = v.mNextMember;
+                                    v.mNextMember = member;
+                                }
+                            } while (member != v);
+                        }
+                        pathLen--;
+                        if (pathLen >= 0 && v.mLow < path[pathLen].mLow) {
+                            path[pathLen].mLow = v.mLow;
+                        }
+                    }
+                }
+                root.mEnd = ord;
+                r++;
+            }
+            return r;
+        }
+
+    }
+
+    private static final class Inflation implements Runnable {
+
+        /**
+         * The inflation has not been started yet.
+         */
+        public static final int PENDING = 0;
+
+        /**
+         * The inflation is currently running.
+         */
+        public static final int RUNNING = 1;
+
+        /**
+         * The inflation has completed, successfully or not.
+         */
+        public static final int DONE = 2;
+
+        /**
+         * The inflation was never started and will now be done elsewhere.
+         */
+        public static final int CANCELLED = 3;
+
+        private final Context mContext;
+
+        private final int mId;
+
+        private int mState;
+
+        private View mView;
+
+        public Inflation(Context ctxt, int id) {
+            mContext = ctxt;
+            mId = id;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (mState != PENDING) {
+                    return;
+                }
+                mState = RUNNING;
+            }
+
+            /* Make sure views are free to create handlers on this thread */
+            View v = null;
+            try {
+                if (Looper.myLooper() == null) {
+                    Looper.prepare();
+                }
+                v = ((LayoutInflater)mContext.getSystemService(Service.LAYOUT_INFLATER_SERVICE))
+                        .inflate(mId, null);
+            } catch (RuntimeException e) {
+                /*
+                 * NOTE: Nothing is propagated from here since apply() will fall
+                 * back to inflating the layout itself, and get the chance to
+                 * report any problems on the right thread.
+                 */
+            }
+            synchronized (this) {
+                mView = v;
+                mState = DONE;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Takes the result of the inflation, waiting for it to complete when it
+         * is already running.
+         *
+         * @return The inflated view, or null in case the inflation failed or
+         *         was never started.
+         */
+        public synchronized View take() {
+            if (mState == PENDING) {
+                mState = CANCELLED;
+                return null;
+            }
+            boolean interrupted = false;
+            while (mState == RUNNING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return mView;
+        }
+
+    }
+
+    /**
+     * Values to inject, collected during apply() to be assigned later. The
+     * assignments of each object are kept together.
+     */
+    private static final class Assignments {
+
+        /**
+         * The least number of assignments that is worth handing out to the
+         * executor as a separate task.
+         */
+        private static final int TASK_SIZE = 1024;
+
+        private Object[] mTargets = new Object[ARRAY_INCREMENT_SIZE];
+
+        private Field[] mFields = new Field[ARRAY_INCREMENT_SIZE];
+
+        private Object[] mValues = new Object[ARRAY_INCREMENT_SIZE];
+
+        private int mLen;
+
+        public final void add(Object target, Field field, Object value) {
+            final int len = mLen;
+            if (len == mTargets.length) {
+                final int newLen = len * 2;
+                Object[] targets = new Object[newLen];
+                System.arraycopy(mTargets, 0, targets, 0, len);
+                mTargets = targets;
+                Field[] fields = new Field[newLen];
+                System.arraycopy(mFields, 0, fields, 0, len);
+                mFields = fields;
+                Object[] values = new Object[newLen];
+                System.arraycopy(mValues, 0, values, 0, len);
+                mValues = values;
+            }
+            mTargets[len] = target;
+            mFields[len] = field;
+            mValues[len] = value;
+            mLen = len + 1;
+        }
+
+        /**
+         * Makes all assignments, splitting them into tasks for the executor
+         * without splitting the assignments of any object. Returns when all
+         * tasks have completed.
+         *
+         * @param executor The executor to run the tasks on.
+         */
+        public final void run(Executor executor) {
+            final int len = mLen;
+
+            /* Divide into tasks */
+            int[] bounds = new int[len / TASK_SIZE + 2];
+            int boundsLen = 0;
+            bounds[boundsLen++] = 0;
+            int end = TASK_SIZE;
+            while (end < len) {
+                final Object target = mTargets[end - 1];
+                while (end < len && mTargets[end] == target) {
+                    end++;
+                }
+                if (end < len) {
+                    bounds[boundsLen++] = end;
+                }
+                end += TASK_SIZE;
+            }
+            bounds[boundsLen] = len;
+
+            /* Hand out all tasks but the last */
+            /*
+             * NOTE: The last task is run on this thread, which would otherwise
+             * only be waiting.
+             */
+            final CountDownLatch done = new CountDownLatch(boundsLen);
+            Assignment[] tasks = new Assignment[boundsLen];
+            for (int i = 0; i < boundsLen; i++) {
+                final Assignment task = new Assignment(this, bounds[i], bounds[i + 1], done);
+                tasks[i] = task;
+                if (i == boundsLen - 1) {
+                    task.run();
+                } else {
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        task.run();
+                    }
+                }
+            }
+
+            /* Wait for all tasks to complete */
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            /* Report the first problem */
+            for (int i = 0; i < boundsLen; i++) {
+                final Throwable t = tasks[i].mError;
+                if (t instanceof Error) {
+                    throw (Error)t;
+                } else if (t != null) {
+                    internalError(t);
+                }
+            }
+        }
+
+        public final void run(int from, int to) throws IllegalAccessException {
+            final Object[] targets = mTargets;
+            final Field[] fields = mFields;
+            final Object[] values = mValues;
+            for (int i = from; i < to; i++) {
+                fields[i].set(targets[i], values[i]);
+            }
+        }
+
+    }
+
+    private static final class Assignment implements Runnable {
+
+        private final Assignments mAssignments;
+
+        private final int mFrom;
+
+        private final int mTo;
+
+        private final CountDownLatch mDone;
+
+        /**
+         * The problem that occurred while making the assignments, or null.
+         */
+        public Throwable mError;
+
+        public Assignment(Assignments assignments, int from, int to, CountDownLatch done) {
+            mAssignments = assignments;
+            mFrom = from;
+            mTo = to;
+            mDone = done;
+        }
+
+        public void run() {
+            try {
+                mAssignments.run(mFrom, mTo);
+            } catch (IllegalAccessException e) {
+                mError = e;
+            } catch (RuntimeException e) {
+                mError = e;
+            } catch (Error e) {
+                mError = e;
+            } finally {
+                mDone.countDown();
+            }
+        }
+
+    }
+
+    /**
+     * The outcome of prepareApply(), i.e. everything apply() would do except
+     * looking up views and assigning values.
+     */
+    private static final class Plan {
+
+        /**
+         * The number of changes made to the mesh when the plan was made.
+         */
+        public final int mModCount;
+
+        public final Assignments mAssignments = new Assignments();
+
+        /**
+         * The added views, to look up views by ID in.
+         */
+        public View[] mViews;
+
+        public int mViewsLen;
+
+        /**
+         * Injections of views, stored as target, field, class, ID, context and
+         * vitality in sequence.
+         */
+        public final ArrayList<Object> mLookups = new ArrayList<Object>();
+
+        /**
+         * The plan could not be made, why apply() must be used instead.
+         */
+        public boolean mFailed;
+
+        public Plan(int modCount) {
+            mModCount = modCount;
+        }
+
+        public final void addView(Object target, Field field, Class<?> clazz, int id,
+                Context ctxt, boolean vital) {
+            final ArrayList<Object> lookups = mLookups;
+            lookups.add(target);
+            lookups.add(field);
+            lookups.add(clazz);
+            lookups.add(id);
+            lookups.add(ctxt);
+            lookups.add(vital);
+        }
+
+    }
+
+    private static final class Startup implements Runnable {
+
+        private final Startable mObject;
+
+        private final CountDownLatch mDone;
+
+        /**
+         * The problem that occurred while starting the object, or null.
+         */
+        public Throwable mError;
+
+        public Startup(Startable obj, CountDownLatch done) {
+            mObject = obj;
+            mDone = done;
+        }
+
+        public void run() {
+            try {
+                mObject.start();
+            } catch (RuntimeException e) {
+                mError = e;
+            } catch (Error e) {
+                mError = e;
+            } finally {
+                mDone.countDown();
+            }
+        }
+
+    }
+
+    private static boolean isResolvable(Factory f, final Context ctxt, final View[] views,
+            final int viewsLen, final Node nodes, final int numNodes, final Factory factories,
+            final int numFactories, Factory[] path, HashMap<Integer, Object> idCache,
+            HashMap<Integer, Inflation> inflations, boolean deferViews, DuctTape parent,
+            GlueStats stats, Trace trace, OperationCounts counts) {
+
+        int pathIdx = 0;
+        boolean valid = false;
+
+        /* Collect statistics when enabled */
+        long startTime = 0;
+        if (stats != null) {
+            startTime = System.nanoTime();
+            stats.mResolveCalls++;
+        }
+
+        /* Provide fast access */
+        Resources res = null;
+        if (ctxt != null) {
+            res = ctxt.getResources();
+        }
+        resolve: while (true) {
+            switch (f.mStatus) {
+                case Factory.EXECUTED:
+                    /* Fall through */
+                case Factory.RESOLVABLE:
+                    if (stats != null) {
+                        stats.addValidationTime(startTime);
+                    }
+                    return true;
+                case Factory.UNRESOLVABLE:
+                    if (stats != null) {
+                        stats.addValidationTime(startTime);
+                    }
+                    return false;
+                default:
+                    /*
+                     * Set factory into pending state during validation This is
+                     * done to be able to resolve circular dependencies when
+                     * calculating the validity.
+                     */
+                    f.mStatus = Factory.PROCESSING;
+
+                    /* See if there is already something in progress */
+                    ResolveContinuation cont = f.mCont;
+                    if (trace != null && cont == null) {
+                        trace.add(Trace.ENTER, f.mClazz, 0, null);
+                    }
+
+                    /* Keep track of where we have been */
+                    path[pathIdx] = f;
+
+                    /* Scan all injection points */
+                    Class<?> current;
+                    if (cont == null) {
+                        current = f.mClazz;
+                    } else {
+                        current = cont.mCurrent;
+                    }
+                    validation: while (Gluey.class.isAssignableFrom(current)) {
+                        Field[] fields;
+                        int fieldIdx;
+                        if (cont == null) {
+                            fields = current.getDeclaredFields();
+                            fieldIdx = 0;
+                            if (stats != null) {
+                                stats.mReflectiveCalls++;
+                            }
+                            if (counts != null) {
+                                counts.mFieldScans++;
+                            }
+                        } else {
+                            fields = cont.mFields;
+                            fieldIdx = cont.mFieldIdx;
+                        }
+                        final int fieldsLen = fields.length;
+                        fieldscan: while (fieldIdx < fieldsLen) {
+                            /*
+                             * NOTE: Only mandatory injections needs to be
+                             * considered since the object can exists even
+                             * though the optional ones cannot be carried out.
+                             */
+                            Field field = fields[fieldIdx];
+                            final Glue injection;
+                            if (cont == null) {
+                                injection = getInjection(field);
+                            } else {
+                                injection = null;
+                            }
+                            if (injection != null || cont != null) {
+                                Class<?> clazz = null;
+                                final int[] tags;
+                                boolean vital;
+                                boolean sort;
                                 int numTags;
                                 int id;
                                 Class<?> array = null;
@@ -973,17 +2508,24 @@ public class DuctTape {
                                     boolean directArray = false;
                                     Node node = nodes;
                                     while (node != null) {
+                                        if (counts != null) {
+                                            counts.mNodeVisits++;
+                                        }
                                         Object candidate = node.mObject;
-                                        if (clazz.isInstance(candidate)) {
+                                        if (isInstance(clazz, candidate, counts)) {
 
                                             /*
                                              * Make sure we have the right
                                              * amount.
                                              */
-                                            if (numTags == 0 || node.hasTag(tags)) {
+                                            if (numTags == 0 || hasTag(node, tags, counts)) {
 
                                                 /* Ambiguous case */
                                                 if (directArray) {
+                                                    if (trace != null) {
+                                                        trace.add(Trace.REJECT, f.mClazz,
+                                                                Trace.SEVERAL, field);
+                                                    }
                                                     f.mStatus = Factory.UNRESOLVABLE;
                                                     break validation;
                                                 }
@@ -1002,6 +2544,10 @@ public class DuctTape {
                                                          * that this factory is
                                                          * invalid already here.
                                                          */
+                                                        if (trace != null) {
+                                                            trace.add(Trace.REJECT, f.mClazz,
+                                                                    Trace.SEVERAL, field);
+                                                        }
                                                         f.mStatus = Factory.UNRESOLVABLE;
                                                         break validation;
                                                     } else {
@@ -1038,8 +2584,8 @@ public class DuctTape {
                                                 }
                                             }
                                         } else if (!directArray && array != null
-                                                && array.isInstance(candidate)
-                                                && (numTags == 0 || node.hasTag(tags))) {
+                                                && isInstance(array, candidate, counts)
+                                                && (numTags == 0 || hasTag(node, tags, counts))) {
                                             found = true;
                                             resolvable = true;
                                             directArray = true;
@@ -1087,6 +2633,13 @@ public class DuctTape {
 
                                         /* First check for it in cache */
                                         Object obj = idCache.get(id);
+                                        if (stats != null) {
+                                            if (obj != null) {
+                                                stats.mIdCacheHits++;
+                                            } else {
+                                                stats.mIdCacheMisses++;
+                                            }
+                                        }
                                         if (obj != null) {
                                             if (View.class.isAssignableFrom(clazz)) {
                                                 resolvable = clazz.isInstance(obj);
@@ -1147,7 +2700,20 @@ public class DuctTape {
                                              * See if there is any matching
                                              * views
                                              */
-                                            if (View.class.isAssignableFrom(clazz)) {
+                                            if (View.class.isAssignableFrom(clazz) && deferViews) {
+
+                                                /*
+                                                 * Assume that the view can be
+                                                 * found when there is anywhere
+                                                 * to look for it.
+                                                 */
+                                                /*
+                                                 * NOTE: commit() falls back to
+                                                 * apply() if it turns out not
+                                                 * to be found.
+                                                 */
+                                                resolvable = (viewsLen > 0 || ctxt != null);
+                                            } else if (View.class.isAssignableFrom(clazz)) {
 
                                                 /* Check all views for ID */
                                                 View v = null;
@@ -1168,15 +2734,7 @@ public class DuctTape {
 
                                                 /* Attempt to inflate */
                                                 if (v == null && ctxt != null) {
-                                                    try {
-                                                        v = ((LayoutInflater)ctxt
-                                                                .getSystemService(Service.LAYOUT_INFLATER_SERVICE))
-                                                                .inflate(id, null);
-                                                    } catch (InflateException e) {
-                                                        /* Ignore */
-                                                    } catch (NotFoundException e) {
-                                                        /* Ignore */
-                                                    }
+                                                    v = inflate(ctxt, id, inflations, stats);
                                                 }
                                                 if (clazz.isInstance(v)) {
                                                     resolvable = true;
@@ -1221,6 +2779,10 @@ public class DuctTape {
                                     if (valid) {
                                         if (found) {
                                             if (array == null) {
+                                                if (trace != null) {
+                                                    trace.add(Trace.REJECT, f.mClazz,
+                                                            Trace.SEVERAL, field);
+                                                }
                                                 f.mStatus = Factory.UNRESOLVABLE;
                                                 break validation;
                                             } else {
@@ -1240,9 +2802,12 @@ public class DuctTape {
                                     if (candidate == null) {
                                         break;
                                     }
+                                    if (counts != null) {
+                                        counts.mFactoryVisits++;
+                                    }
 
                                     /* Check factory */
-                                    if ((numTags == 0 || candidate.hasTag(tags))
+                                    if ((numTags == 0 || hasTag(candidate, tags, counts))
                                             && clazz.isAssignableFrom(candidate.mClazz)) {
                                         /*
                                          * See if it matches what the current
@@ -1268,6 +2833,11 @@ public class DuctTape {
                                                 valid = false;
                                                 break;
                                             case Factory.PROCESSING: {
+                                                if (trace != null) {
+                                                    trace.add(Trace.CYCLE, f.mClazz, 0,
+                                                            candidate.mClazz);
+                                                }
+
                                                 /*
                                                  * NOTE: We can not allow
                                                  * non-singletons to be part of
@@ -1276,6 +2846,12 @@ public class DuctTape {
                                                  * infinite instantiation loop.
                                                  */
                                                 if (candidate.mNonSingleton) {
+                                                    if (trace != null) {
+                                                        trace.add(Trace.REJECT,
+                                                                candidate.mClazz,
+                                                                Trace.NON_SINGLETON_CYCLE,
+                                                                null);
+                                                    }
                                                     valid = false;
                                                     break;
                                                 }
@@ -1337,11 +2913,19 @@ public class DuctTape {
                                     candidate = candidate.mNext;
                                 }
 
+                                /* Fall back on what the parent has */
+                                if (!resolvable && vital && parent != null) {
+                                    resolvable = isInherited(parent, clazz, tags, array != null);
+                                }
+
                                 /*
                                  * Abort in case we could not find anything to
                                  * inject.
                                  */
                                 if (!resolvable && vital) {
+                                    if (trace != null) {
+                                        trace.add(Trace.REJECT, f.mClazz, Trace.NOTHING, field);
+                                    }
                                     f.mStatus = Factory.UNRESOLVABLE;
                                     break validation;
                                 }
@@ -1355,34 +2939,339 @@ public class DuctTape {
                             fieldIdx++;
                         }
 
-                        /* Walk up the hierarchy */
-                        current = current.getSuperclass();
-                    }
+                        /* Walk up the hierarchy */
+                        current = current.getSuperclass();
+                    }
+
+                    /* Resolve status */
+                    final Factory[] dependants = f.mDependants;
+                    if (f.mStatus == Factory.PROCESSING) {
+                        f.mStatus = Factory.RESOLVABLE;
+                    } else if (dependants != null) {
+
+                        /* Invalidate all dependants */
+                        final int dependantsLen = dependants.length;
+                        for (int i = 0; i < dependantsLen; i++) {
+                            dependants[i].mStatus = Factory.UNRESOLVABLE;
+                            if (trace != null) {
+                                trace.add(Trace.INVALIDATE, dependants[i].mClazz, 0, f.mClazz);
+                            }
+                        }
+                        f.mDependants = null;
+                    }
+                    if (trace != null) {
+                        trace.add(Trace.LEAVE, f.mClazz, f.mStatus, null);
+                    }
+                    valid = (f.mStatus == Factory.RESOLVABLE || f.mStatus == Factory.EXECUTED);
+                    break;
+            }
+
+            /* Handle previous continuation */
+            if (pathIdx == 0) {
+                if (stats != null) {
+                    stats.addValidationTime(startTime);
+                }
+                return (f.mStatus == Factory.RESOLVABLE || f.mStatus == Factory.EXECUTED);
+            } else {
+                pathIdx--;
+                f = path[pathIdx];
+            }
+        }
+    }
+
+    /**
+     * Looks up a view by ID, first among the views found so far, then in the
+     * added views, then in the activity and finally by inflating it.
+     *
+     * @return The view, or null if no view of the given type was found.
+     */
+    private static Object findView(Class<?> clazz, int id, Context ctxt, View[] views,
+            int viewsLen, HashMap<Integer, Object> idCache,
+            HashMap<Integer, Inflation> inflations, GlueStats stats) {
+
+        /* Check in cache */
+        Object o = idCache.get(id);
+        if (clazz.isInstance(o)) {
+            if (stats != null) {
+                stats.mIdCacheHits++;
+            }
+            return o;
+        }
+        if (stats != null) {
+            stats.mIdCacheMisses++;
+        }
+
+        /* Check all views for ID */
+        View v = null;
+        for (int l = 0; l < viewsLen; l++) {
+            View candidate = views[l].findViewById(id);
+            if (clazz.isInstance(candidate)) {
+                v = candidate;
+            }
+        }
+
+        /* Check activity for view when possible */
+        if (v == null && ctxt instanceof Activity) {
+            v = ((Activity)ctxt).findViewById(id);
+        }
+
+        /* Attempt to inflate */
+        if (v == null && ctxt != null) {
+            v = inflate(ctxt, id, inflations, stats);
+        }
+
+        /*
+         * Only use the view when it is compatible with the class we are
+         * looking for.
+         */
+        if (clazz.isInstance(v)) {
+            idCache.put(id, v);
+            return v;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether the parent can provide what an injection needs.
+     *
+     * @param parent The parent to look in.
+     * @param clazz The type of the injection.
+     * @param tags The tags of the injection.
+     * @param array True if the injection is an array.
+     * @return True if exactly one object is available, or at least one in the
+     *         case of an array.
+     */
+    private static boolean isInherited(DuctTape parent, Class<?> clazz, int[] tags,
+            boolean array) {
+        try {
+            final int len = parent.getAll(clazz, tags).length;
+            return (len == 1 || (array && len > 0));
+        } catch (GluingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives the generation of this instance, which changes whenever this
+     * instance or any of its ancestors is changed, including when weakly added
+     * objects have been collected.
+     *
+     * @return The generation.
+     */
+    private int generation() {
+        purge();
+        final DuctTape parent = mParent;
+        return (parent == null ? mModCount : mModCount + parent.generation());
+    }
+
+    /**
+     * Makes sure the instance is no longer robust in case the parent has been
+     * changed since it was glued together.
+     */
+    private void checkParent() {
+        final DuctTape parent = mParent;
+        if (parent != null) {
+            final int generation = parent.generation();
+            if (generation != mParentGeneration) {
+                mParentGeneration = generation;
+                mRobust = false;
+                mModCount++;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the set of objects is not changed while the instance is
+     * frozen.
+     */
+    private void checkFrozen() {
+        if (mFrozen != null) {
+            throw new IllegalStateException("Changing a frozen mesh");
+        }
+    }
+
+    /**
+     * Creates an instance of a factory class using its constructor without
+     * arguments.
+     *
+     * @param clazz The class to instantiate.
+     * @return The new instance.
+     * @throws GluingException when the instance could not be created.
+     */
+    static Object construct(Class<?> clazz) throws GluingException {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (InstantiationException e) {
+            throw new GluingException("Factory class " + clazz.getCanonicalName()
+                    + " is abstract");
+        } catch (IllegalAccessException e) {
+            throw new GluingException("Could not access constructor of "
+                    + clazz.getCanonicalName());
+        } catch (InvocationTargetException e) {
+            throw new GluingException("Uncaught exception during object creation",
+                    e.getCause());
+        } catch (SecurityException e) {
+            throw new GluingException("Not allowed to access constructor of "
+                    + clazz.getCanonicalName());
+        } catch (NoSuchMethodException e) {
+            throw new GluingException(clazz.getCanonicalName()
+                    + " has no constructor that takes zero arguments");
+        }
+    }
+
+    /**
+     * Gives a recycled product, or the object released by {@link #trim()}
+     * when it is still alive so that a singleton keeps its identity, or else
+     * creates a new one.
+     */
+    private static Object produce(Factory factory, GlueStats stats) throws GluingException {
+        final int poolLen = factory.mPoolLen;
+        if (poolLen > 0) {
+            final Object[] pool = factory.mPool;
+            final Object obj = pool[poolLen - 1];
+            pool[poolLen - 1] = null;
+            factory.mPoolLen = poolLen - 1;
+            return obj;
+        }
+        final WeakReference<Object> released = factory.mReleased;
+        if (released != null) {
+            factory.mReleased = null;
+            final Object obj = released.get();
+            if (obj != null) {
+                return obj;
+            }
+        }
+        return construct(factory.mClazz, stats);
+    }
+
+    /**
+     * Sorts the products tracked by the last glue by injection point and
+     * class, so that each can be found without searching.
+     * 
+     * @param products The pairs of injection point and product node tracked
+     *            by the last glue, or null.
+     * @param productsLen The length of the products.
+     * @return The products by injection point and class, or null when there
+     *         are none.
+     */
+    private static IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>> index(
+            Object[] products, int productsLen) {
+        if (products == null) {
+            return null;
+        }
+        IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>> index =
+                new IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>>();
+        for (int i = 0; i < productsLen; i += 2) {
+            final InjectionPoint point = (InjectionPoint)products[i];
+            final Node product = (Node)products[i + 1];
+            IdentityHashMap<Class<?>, Tracked> byClass = index.get(point);
+            if (byClass == null) {
+                byClass = new IdentityHashMap<Class<?>, Tracked>();
+                index.put(point, byClass);
+            }
+            final Class<?> clazz = product.mObject.getClass();
+            Tracked tracked = byClass.get(clazz);
+            if (tracked == null) {
+                tracked = new Tracked();
+                byClass.put(clazz, tracked);
+            }
+            tracked.mProducts.add(product);
+        }
+        return index;
+    }
 
-                    /* Resolve status */
-                    final Factory[] dependants = f.mDependants;
-                    if (f.mStatus == Factory.PROCESSING) {
-                        f.mStatus = Factory.RESOLVABLE;
-                    } else if (dependants != null) {
+    /**
+     * Finds the product that was injected into a slot by the last glue. The
+     * products of one class injected through one injection point are told
+     * apart by their order.
+     * 
+     * @param index The products tracked by the last glue, as given by
+     *            {@link #index(Object[], int)}, or null.
+     * @param point The injection point of the slot.
+     * @param clazz The class of the product.
+     * @return The product node, or null when the slot is new.
+     */
+    private static Node tracked(
+            IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>> index,
+            InjectionPoint point, Class<?> clazz) {
+        if (index == null) {
+            return null;
+        }
+        final IdentityHashMap<Class<?>, Tracked> byClass = index.get(point);
+        if (byClass == null) {
+            return null;
+        }
+        final Tracked tracked = byClass.get(clazz);
+        if (tracked == null || tracked.mNext == tracked.mProducts.size()) {
+            return null;
+        }
+        return tracked.mProducts.get(tracked.mNext);
+    }
 
-                        /* Invalidate all dependants */
-                        final int dependantsLen = dependants.length;
-                        for (int i = 0; i < dependantsLen; i++) {
-                            dependants[i].mStatus = Factory.UNRESOLVABLE;
-                        }
-                        f.mDependants = null;
-                    }
-                    valid = (f.mStatus == Factory.RESOLVABLE || f.mStatus == Factory.EXECUTED);
-                    break;
+    /**
+     * Remembers the product injected into a slot, so that the next glue
+     * injects it again, and moves on to the next product of its class
+     * tracked by the last glue for the same injection point.
+     * 
+     * @return The tracking, extended when necessary.
+     */
+    private static Object[] track(Object[] tracking, int trackingLen,
+            IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>> index,
+            InjectionPoint point, Node product) {
+        if (index != null) {
+            final IdentityHashMap<Class<?>, Tracked> byClass = index.get(point);
+            if (byClass != null) {
+                final Tracked tracked = byClass.get(product.mObject.getClass());
+                if (tracked != null) {
+                    tracked.mNext++;
+                }
+            }
+        }
+        if (tracking == null || trackingLen == tracking.length) {
+            Object[] temp = new Object[trackingLen + 2 * ARRAY_INCREMENT_SIZE];
+            if (tracking != null) {
+                System.arraycopy(tracking, 0, temp, 0, trackingLen);
             }
+            tracking = temp;
+        }
+        tracking[trackingLen] = point;
+        tracking[trackingLen + 1] = product;
+        return tracking;
+    }
 
-            /* Handle previous continuation */
-            if (pathIdx == 0) {
-                return (f.mStatus == Factory.RESOLVABLE || f.mStatus == Factory.EXECUTED);
-            } else {
-                pathIdx--;
-                f = path[pathIdx];
+    private static Object construct(Class<?> clazz, GlueStats stats) throws GluingException {
+        final Object event = FlightEvents.begin(FlightEvents.FACTORY);
+        if (stats == null && event == null) {
+            return construct(clazz);
+        }
+        final long start = System.nanoTime();
+        try {
+            return construct(clazz);
+        } finally {
+            if (stats != null) {
+                stats.mInstantiationTime += System.nanoTime() - start;
+                stats.mConstructorCalls++;
+                stats.mReflectiveCalls++;
             }
+            if (event != null) {
+                FlightEvents.commit(event, clazz.getName());
+            }
+        }
+    }
+
+    private static void assign(Assignments assignments, Object instance, Field field,
+            Object value, GlueStats stats) throws IllegalAccessException {
+        if (assignments != null) {
+            assignments.add(instance, field, value);
+        } else if (stats != null) {
+            final long start = System.nanoTime();
+            field.set(instance, value);
+            stats.mAssignmentTime += System.nanoTime() - start;
+            stats.mReflectiveCalls++;
+        } else {
+            field.set(instance, value);
         }
     }
 
@@ -1435,6 +3324,161 @@ public class DuctTape {
         }
     }
 
+    /**
+     * Looks up a view or resource again for a copy made from a blueprint,
+     * inflating views from their layouts.
+     * 
+     * @param ctxt The context the original was found in.
+     * @param clazz The type of the injection.
+     * @param id The ID of the layout or resource.
+     * @return A new instance.
+     * @throws GluingException when the view or resource could not be found.
+     */
+    static Object resolve(Context ctxt, Class<?> clazz, int id) throws GluingException {
+        Object obj = null;
+        if (View.class.isAssignableFrom(clazz)) {
+            obj = inflate(ctxt, id, null, null);
+        } else {
+            final Resources res = ctxt.getResources();
+            try {
+                if (clazz == Drawable.class) {
+                    obj = res.getDrawable(id);
+                } else {
+                    obj = res.getXml(id);
+                }
+            } catch (NotFoundException e) {
+                /* Ignore */
+            }
+        }
+        if (!clazz.isInstance(obj)) {
+            throw new GluingException("Unable to resolve 0x" + Integer.toHexString(id)
+                    + " as " + clazz.getCanonicalName());
+        }
+        return obj;
+    }
+
+    private static View inflate(Context ctxt, int id, HashMap<Integer, Inflation> inflations,
+            GlueStats stats) {
+
+        /* Use a view inflated in advance when there is one */
+        if (inflations != null) {
+            final Inflation inflation = inflations.remove(id);
+            if (inflation != null) {
+                View v = inflation.take();
+                if (v != null) {
+                    return v;
+                }
+            }
+        }
+
+        /* Inflate on the spot */
+        if (stats != null) {
+            stats.mInflations++;
+        }
+        final Object event = FlightEvents.begin(FlightEvents.INFLATION);
+        try {
+            return ((LayoutInflater)ctxt.getSystemService(Service.LAYOUT_INFLATER_SERVICE))
+                    .inflate(id, null);
+        } catch (InflateException e) {
+            /* Ignore */
+        } catch (NotFoundException e) {
+            /* Ignore */
+        } finally {
+            if (event != null) {
+                FlightEvents.commit(event, id);
+            }
+        }
+        return null;
+    }
+
+    private InjectionPoint[] getInjectionPoints(Class<?> clazz) {
+
+        /* Look in cache first */
+        HashMap<Class<?>, InjectionPoint[]> plans = mPlans;
+        if (plans == null) {
+            plans = new HashMap<Class<?>, InjectionPoint[]>();
+            mPlans = plans;
+        } else {
+            final InjectionPoint[] points = plans.get(clazz);
+            if (points != null) {
+                return points;
+            }
+        }
+
+        /* Visit all classes that are injection targets */
+        ArrayList<InjectionPoint> points = new ArrayList<InjectionPoint>();
+        Class<?> current = clazz;
+        final OperationCounts counts = mCounts;
+        while (Gluey.class.isAssignableFrom(current)) {
+            final Field[] fields = current.getDeclaredFields();
+            if (counts != null) {
+                counts.mFieldScans++;
+            }
+            final int fieldsLen = fields.length;
+            for (int j = 0; j < fieldsLen; j++) {
+                final Field field = fields[j];
+                final Glue injection = getInjection(field);
+                if (injection != null) {
+                    final InjectionPoint point = new InjectionPoint();
+                    final int[] tags = injection.value();
+                    final int tagsLen = tags.length;
+
+                    /* See if this injection is vital */
+                    boolean vital = true;
+                    boolean sort = false;
+                    int numTags = tagsLen;
+                    int id = 0;
+                    tagScan: for (int k = 0; k < tagsLen; k++) {
+                        final int tag = tags[k];
+                        switch (tag) {
+                            case OPTIONAL:
+                                vital = false;
+                                numTags--;
+                                if (sort) {
+                                    break tagScan;
+                                }
+                                break;
+                            case ORDERED:
+                                sort = true;
+                                numTags--;
+                                if (!vital) {
+                                    break tagScan;
+                                }
+                                break;
+                            default:
+                                id = tag;
+                                break;
+                        }
+                    }
+
+                    /* Ensure field is accessible */
+                    field.setAccessible(true);
+
+                    /* Extract injection type information */
+                    Class<?> type = field.getType();
+                    if (type.isArray()) {
+                        point.mArray = type;
+                        type = type.getComponentType();
+                    }
+                    point.mField = field;
+                    point.mTags = tags;
+                    point.mNumTags = numTags;
+                    point.mVital = vital;
+                    point.mSort = sort;
+                    point.mId = id;
+                    point.mClazz = wrapPrimitive(type);
+                    points.add(point);
+                }
+            }
+
+            /* Walk up hierarchy */
+            current = current.getSuperclass();
+        }
+        final InjectionPoint[] result = points.toArray(new InjectionPoint[points.size()]);
+        plans.put(clazz, result);
+        return result;
+    }
+
     private static boolean isPrimitive(Class<?> clazz) {
         return (clazz.isPrimitive() || clazz == int[].class || clazz == short[].class
                 || clazz == boolean[].class || clazz == long[].class || clazz == byte[].class
@@ -1452,7 +3496,7 @@ public class DuctTape {
         }
     }
 
-    private static String simpleName(int prefixLen, Object obj, ArrayList<Object> all) {
+    private static String simpleName(int prefixLen, Object obj, Listing listing) {
         Class<?> clazz = obj.getClass();
         if (clazz.isArray()) {
             StringBuilder result = new StringBuilder();
@@ -1480,7 +3524,7 @@ public class DuctTape {
                     if (i != 0) {
                         result.append(", ");
                     }
-                    result.append(simpleName(prefixLen, arr[i], all));
+                    result.append(simpleName(prefixLen, arr[i], listing));
                 }
                 result.append("]");
             }
@@ -1495,25 +3539,20 @@ public class DuctTape {
             return "'" + obj.toString() + "'";
         } else {
             String name = clazz.getCanonicalName().substring(prefixLen);
-            if (all != null) {
-                int id = 0;
-                int idx = 0;
-                for (Object ref : all) {
-                    if (ref.getClass() == clazz) {
-                        idx++;
-                    }
-                    if (ref == obj) {
-                        id = idx;
-                    }
-                }
-                if (idx > 1) {
-                    name += "#" + id;
-                }
+            final String suffix = listing.mSuffixes.get(obj);
+            if (suffix != null) {
+                name += suffix;
             }
             return name;
         }
     }
 
+    private static boolean isValue(Class<?> clazz) {
+        return (clazz == Integer.class || clazz == Boolean.class || clazz == Float.class
+                || clazz == Double.class || clazz == Long.class || clazz == Character.class
+                || clazz == Byte.class || clazz == Short.class || clazz == String.class);
+    }
+
     private static String commonPrefix(String prefix, String text) {
         if (text.startsWith("java.lang.") || text.startsWith("int") || text.startsWith("boolean")
                 || text.startsWith("float") || text.startsWith("double") || text.startsWith("long")
@@ -1549,7 +3588,33 @@ public class DuctTape {
         }
     }
 
+    /**
+     * Checks if an object is of the given type, counting the check when
+     * operations are counted.
+     */
+    private static boolean isInstance(Class<?> clazz, Object obj, OperationCounts counts) {
+        if (counts != null) {
+            counts.mInstanceChecks++;
+        }
+        return clazz.isInstance(obj);
+    }
+
+    /**
+     * Checks if an object or factory has any of the given tags, counting the
+     * check when operations are counted.
+     */
+    private static boolean hasTag(Tagged tagged, int[] tags, OperationCounts counts) {
+        if (counts != null) {
+            counts.mTagChecks++;
+        }
+        return tagged.hasTag(tags);
+    }
+
     private void removeNode(Node node) {
+        if (node.mWeak != null) {
+            node.mWeak = null;
+            mNumWeak--;
+        }
         final Node next = node.mNext;
         final Node prev = node.mPrev;
         if (prev != null) {
@@ -1566,7 +3631,251 @@ public class DuctTape {
         }
     }
 
+    /**
+     * Remembers a removed object, so that its recyclable products are recycled
+     * by the next call to {@link #apply()}.
+     */
+    private void drop(Object obj) {
+        if (mNumRecyclable > 0 && obj instanceof Gluey) {
+            ArrayList<Object> dropped = mDropped;
+            if (dropped == null) {
+                dropped = new ArrayList<Object>();
+                mDropped = dropped;
+            }
+            dropped.add(obj);
+        }
+    }
+
+    /**
+     * Forgets that an object added again was removed.
+     */
+    private void undrop(Object obj) {
+        final ArrayList<Object> dropped = mDropped;
+        for (int i = dropped.size() - 1; i >= 0; i--) {
+            if (dropped.get(i) == obj) {
+                dropped.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Recycles the recyclable products injected into removed objects, and the
+     * products injected into those in turn, keeping them for reuse by their
+     * factories.
+     */
+    private void recycle(ArrayList<Object> dropped) {
+        /* Look up factories and objects of the mesh once */
+        final OperationCounts counts = mCounts;
+        HashMap<Class<?>, Factory> factories = null;
+        IdentityHashMap<Object, Object> live = null;
+
+        /*
+         * NOTE: Recycled products are appended to the list, since their own
+         * products are no longer used either.
+         */
+        for (int i = 0; i < dropped.size(); i++) {
+            final Object obj = dropped.get(i);
+            final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+            final int pointsLen = points.length;
+            for (int j = 0; j < pointsLen; j++) {
+                final InjectionPoint point = points[j];
+                Object fieldVal;
+                try {
+                    fieldVal = point.mField.get(obj);
+                } catch (IllegalAccessException e) {
+                    internalError(e);
+                    continue;
+                }
+                if (!(fieldVal instanceof Recyclable) && !(fieldVal instanceof Object[])) {
+                    continue;
+                }
+                final Object[] refs = refs(fieldVal, point.mField.getType(), false, null);
+                final int refsLen = refs.length;
+                for (int k = 0; k < refsLen; k++) {
+                    final Object ref = refs[k];
+                    if (!(ref instanceof Recyclable)) {
+                        continue;
+                    }
+                    if (factories == null) {
+                        factories = new HashMap<Class<?>, Factory>();
+                        Factory factory = mFactories;
+                        while (factory != null) {
+                            if (factory.mRecyclable) {
+                                factories.put(factory.mClazz, factory);
+                            }
+                            factory = factory.mNext;
+                        }
+                        live = new IdentityHashMap<Object, Object>();
+                        Node node = mFirstNode;
+                        while (node != null) {
+                            if (counts != null) {
+                                counts.mNodeVisits++;
+                            }
+                            live.put(node.mObject, node);
+                            node = node.mNext;
+                        }
+                    }
+                    if (pool(ref, factories.get(ref.getClass()), live)) {
+                        dropped.add(ref);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Resets a product and keeps it for reuse by its factory, unless the
+     * factory is gone, already keeps enough products or the product is part
+     * of the mesh.
+     * 
+     * @param product The product to keep.
+     * @param factory The recyclable factory of the product, or null when
+     *            there is none.
+     * @param live The objects of the mesh.
+     * @return Whether the product was kept.
+     */
+    private static boolean pool(Object product, Factory factory,
+            IdentityHashMap<Object, Object> live) {
+        if (factory == null || factory.mPoolLen == POOL_SIZE) {
+            return false;
+        }
+        Object[] pool = factory.mPool;
+        if (pool == null) {
+            pool = new Object[POOL_SIZE];
+            factory.mPool = pool;
+        }
+        final int poolLen = factory.mPoolLen;
+        for (int i = 0; i < poolLen; i++) {
+            if (pool[i] == product) {
+                return false;
+            }
+        }
+        if (live.containsKey(product)) {
+            return false;
+        }
+        ((Recyclable)product).recycle();
+        pool[poolLen] = product;
+        factory.mPoolLen = poolLen + 1;
+        return true;
+    }
+
+    /**
+     * Lets go of the object of a node, keeping only a weak reference to it
+     * unless pinned.
+     */
+    private void makeWeak(Node node) {
+        ReferenceQueue<Object> collected = mCollected;
+        if (collected == null) {
+            collected = new ReferenceQueue<Object>();
+            mCollected = collected;
+        }
+        node.mWeak = new WeakObject(node.mObject, node, collected);
+        if (mPinned == 0) {
+            node.mObject = null;
+        }
+        mNumWeak++;
+    }
+
+    /**
+     * Removes the nodes of weakly added objects that have been collected.
+     */
+    private void purge() {
+        final ReferenceQueue<Object> collected = mCollected;
+        if (collected == null) {
+            return;
+        }
+        boolean purged = false;
+        WeakObject weakObj;
+        while ((weakObj = (WeakObject)collected.poll()) != null) {
+            /*
+             * NOTE: A node that has already been removed no longer refers to
+             * the reference.
+             */
+            final Node node = weakObj.mNode;
+            if (node.mWeak == weakObj) {
+                removeNode(node);
+                mNumNodes--;
+                purged = true;
+            }
+        }
+        if (purged) {
+            collected();
+        }
+    }
+
+    /**
+     * Makes sure that the mesh is glued together again after weakly added
+     * objects have been removed because they were collected.
+     */
+    private void collected() {
+        mRobust = false;
+        mModCount++;
+
+        /* Let go of the collected objects for good */
+        /*
+         * NOTE: The dependency sequence and the answers given by getAll()
+         * refer to objects of the mesh.
+         */
+        mSequence = null;
+        mAnswers = null;
+        mWeakAnswers = null;
+    }
+
+    /**
+     * Makes the weakly added objects strongly referenced until the matching
+     * call to {@link #unpin()}, removing those that have been collected. Calls
+     * may be nested.
+     */
+    private void pin() {
+        if (mPinned++ > 0) {
+            return;
+        }
+        purge();
+        if (mNumWeak == 0) {
+            return;
+        }
+        boolean purged = false;
+        Node node = mFirstNode;
+        while (node != null) {
+            final Node next = node.mNext;
+            final WeakObject weakObj = node.mWeak;
+            if (weakObj != null) {
+                final Object obj = weakObj.get();
+                if (obj != null) {
+                    node.mObject = obj;
+                } else {
+                    removeNode(node);
+                    mNumNodes--;
+                    purged = true;
+                }
+            }
+            node = next;
+        }
+        if (purged) {
+            collected();
+        }
+    }
+
+    /**
+     * Lets go of the weakly added objects again.
+     */
+    private void unpin() {
+        if (--mPinned > 0 || mNumWeak == 0) {
+            return;
+        }
+        Node node = mFirstNode;
+        while (node != null) {
+            if (node.mWeak != null) {
+                node.mObject = null;
+            }
+            node = node.mNext;
+        }
+    }
+
     private void removeFactory(Factory factory) {
+        if (factory.mRecyclable) {
+            mNumRecyclable--;
+        }
 
         /* Unlink */
         final Factory next = factory.mNext;
@@ -1598,7 +3907,10 @@ public class DuctTape {
         }
     }
 
-    private void add(Object obj, int[] tags, int len, Context ctxt, int res) {
+    private void add(Object obj, int[] tags, int len, Context ctxt, int res, boolean weak) {
+        checkFrozen();
+        purge();
+        final OperationCounts counts = mCounts;
 
         /* Filter out factories */
         if (obj instanceof Class<?>) {
@@ -1610,16 +3922,23 @@ public class DuctTape {
                 if (tags != null) {
                     factories.addTags(tags, len);
                 }
+                if (factories.mRecyclable) {
+                    mNumRecyclable++;
+                }
                 mFactories = factories;
             } else {
                 /* Ignore duplicates */
                 Factory factory = factories;
                 do {
+                    if (counts != null) {
+                        counts.mFactoryVisits++;
+                    }
                     if (factory.mClazz == clazz) {
                         Node product = factory.mProduct;
                         if (tags != null) {
                             factory.addTags(tags, len);
                             mRobust = false;
+                            mModCount++;
 
                             /* Also update tags on produced object */
                             if (product != null) {
@@ -1638,6 +3957,9 @@ public class DuctTape {
                 if (tags != null) {
                     factory.addTags(tags, len);
                 }
+                if (factory.mRecyclable) {
+                    mNumRecyclable++;
+                }
                 mFactories = factory;
             }
 
@@ -1678,16 +4000,31 @@ public class DuctTape {
                 if (tags != null) {
                     nodes.addTags(tags, len);
                 }
+                if (weak) {
+                    makeWeak(nodes);
+                }
                 mFirstNode = nodes;
                 mLastNode = nodes;
             } else {
                 /* Ignore duplicates */
                 Node node = nodes;
                 do {
-                    if (node.mObject == obj) {
+                    if (counts != null) {
+                        counts.mNodeVisits++;
+                    }
+                    final WeakObject weakObj = node.mWeak;
+                    if (node.mObject == obj || (weakObj != null && weakObj.get() == obj)) {
+
+                        /* Hold on to the object once added as usual */
+                        if (!weak && weakObj != null) {
+                            node.mWeak = null;
+                            node.mObject = obj;
+                            mNumWeak--;
+                        }
                         if (tags != null) {
                             node.addTags(tags, len);
                             mRobust = false;
+                            mModCount++;
                         }
                         return;
                     }
@@ -1700,11 +4037,18 @@ public class DuctTape {
                 if (tags != null) {
                     node.addTags(tags, len);
                 }
+                if (weak) {
+                    makeWeak(node);
+                }
                 mFirstNode = node;
             }
+            if (mDropped != null) {
+                undrop(obj);
+            }
             mNumNodes++;
         }
         mRobust = false;
+        mModCount++;
     }
 
     /**
@@ -1727,6 +4071,24 @@ public class DuctTape {
         mContext = ctxt;
     }
 
+    /**
+     * Creates an empty and robust instance as a child of another instance. All
+     * objects available in the parent are also available in the child, see
+     * <a href="#Hierarchy">Hierarchy</a>. Nothing is copied from the parent.
+     * <p>
+     * The parent must not be used by any other thread while the child is in
+     * use.
+     * 
+     * @param parent The instance to read through to.
+     * @param ctxt The context to be used by the instance, which might be the
+     *            context of the parent.
+     */
+    public DuctTape(DuctTape parent, Context ctxt) {
+        this(ctxt);
+        mParent = parent;
+        mParentGeneration = parent.generation();
+    }
+
     /**
      * Convenience method to add an object without any tags.
      * 
@@ -1746,10 +4108,14 @@ public class DuctTape {
      * @see #add(Object, int[])
      */
     public final void add(Object[] objs) {
+        final Object event = FlightEvents.begin(FlightEvents.CHANGE);
         final int objsLen = objs.length;
         for (int i = 0; i < objsLen; i++) {
             add(objs[i]);
         }
+        if (event != null) {
+            FlightEvents.commit(event, objsLen, 0, mNumNodes, mNumFactories);
+        }
     }
 
     /**
@@ -1775,8 +4141,14 @@ public class DuctTape {
      * @see #add(Object, int[])
      */
     public final void add(Iterable<?> objs) {
+        final Object event = FlightEvents.begin(FlightEvents.CHANGE);
+        int added = 0;
         for (Object obj : objs) {
             add(obj);
+            added++;
+        }
+        if (event != null) {
+            FlightEvents.commit(event, added, 0, mNumNodes, mNumFactories);
         }
     }
 
@@ -1787,27 +4159,69 @@ public class DuctTape {
      * tags already present on the object.
      * </p>
      * <p>
-     * {@link java.lang.Class} objects are treated specially in the sense that
-     * they are not directly added, but instead the object they represent is
-     * created on-demand when another object requires its type. These on-demand
-     * objects are persistent as long as the class object is not removed from
-     * the mesh (the removal is however not permanent until a call to
-     * {@link #apply()} is made).
-     * </p>
+     * {@link java.lang.Class} objects are treated specially in the sense that
+     * they are not directly added, but instead the object they represent is
+     * created on-demand when another object requires its type. These on-demand
+     * objects are persistent as long as the class object is not removed from
+     * the mesh (the removal is however not permanent until a call to
+     * {@link #apply()} is made).
+     * </p>
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @param tags Tags to be set on the object, or <code>null</code> in case
+     *            the object should be added without any tags.
+     * @see #remove(Object)
+     * @see #add(Object)
+     * @see #add(Object[])
+     * @see #add(Object, int)
+     */
+    public final void add(Object obj, int[] tags) {
+        if (tags != null) {
+            add(obj, tags, tags.length, mContext, 0, false);
+        } else {
+            add(obj, null, 0, mContext, 0, false);
+        }
+    }
+
+    /**
+     * Convenience method to weakly add an object without any tags.
+     * 
+     * @param obj The object to add to the list of objects to be glued.
+     * @see #addWeak(Object, int[])
+     */
+    public final void addWeak(Object obj) {
+        addWeak(obj, null);
+    }
+
+    /**
+     * Adds an object to the object mesh like {@link #add(Object, int[])}, but
+     * without keeping it from being garbage collected. This is meant for
+     * objects with a shorter life than the instance, like an
+     * {@link android.app.Activity} or a {@link android.view.View}, that would
+     * otherwise be kept alive, and injected into, until removed.
+     * <p>
+     * An object that is only referenced by the mesh is removed from it the
+     * next time an object is added or the mesh is used after the object has
+     * been collected, and the next call to {@link #apply()} then glues the
+     * mesh together again without it. Note that objects injected into another
+     * object of the mesh, into a product of a factory or into an object that
+     * has been started are referenced by those.
+     * <p>
+     * Adding an object again as usual makes the mesh hold on to it, while
+     * {@link java.lang.Class} objects are always added as usual.
      * 
      * @param obj The object to add to the list of objects to be glued.
      * @param tags Tags to be set on the object, or <code>null</code> in case
      *            the object should be added without any tags.
+     * @see #add(Object, int[])
      * @see #remove(Object)
-     * @see #add(Object)
-     * @see #add(Object[])
-     * @see #add(Object, int)
      */
-    public final void add(Object obj, int[] tags) {
+    public final void addWeak(Object obj, int[] tags) {
+        final boolean weak = !(obj instanceof Class<?>);
         if (tags != null) {
-            add(obj, tags, tags.length, mContext, 0);
+            add(obj, tags, tags.length, mContext, 0, weak);
         } else {
-            add(obj, null, 0, mContext, 0);
+            add(obj, null, 0, mContext, 0, weak);
         }
     }
 
@@ -1828,14 +4242,20 @@ public class DuctTape {
      * @see #remove(Iterable)
      */
     public final void remove(Object obj) {
+        checkFrozen();
+        final OperationCounts counts = mCounts;
         if (obj instanceof Class<?>) {
             final Class<?> clazz = (Class<?>)obj;
             Factory factory = mFactories;
             while (factory != null) {
+                if (counts != null) {
+                    counts.mFactoryVisits++;
+                }
                 if (factory.mClazz == clazz) {
                     removeFactory(factory);
                     mNumFactories--;
                     mRobust = false;
+                    mModCount++;
                     break;
                 }
                 factory = factory.mNext;
@@ -1843,10 +4263,16 @@ public class DuctTape {
         } else {
             Node node = mFirstNode;
             while (node != null) {
-                if (node.mObject == obj) {
+                if (counts != null) {
+                    counts.mNodeVisits++;
+                }
+                final WeakObject weakObj = node.mWeak;
+                if (node.mObject == obj || (weakObj != null && weakObj.get() == obj)) {
+                    drop(obj);
                     removeNode(node);
                     mNumNodes--;
                     mRobust = false;
+                    mModCount++;
                     return;
                 }
                 node = node.mNext;
@@ -1860,10 +4286,14 @@ public class DuctTape {
      * @param objs The objects to remove.
      */
     public final void remove(Object[] objs) {
+        final Object event = FlightEvents.begin(FlightEvents.CHANGE);
         final int objsLen = objs.length;
         for (int i = 0; i < objsLen; i++) {
             remove(objs[i]);
         }
+        if (event != null) {
+            FlightEvents.commit(event, 0, objsLen, mNumNodes, mNumFactories);
+        }
     }
 
     /**
@@ -1875,8 +4305,14 @@ public class DuctTape {
      *            in the mesh are ignored.
      */
     public final void remove(Iterable<?> objs) {
+        final Object event = FlightEvents.begin(FlightEvents.CHANGE);
+        int removed = 0;
         for (Object obj : objs) {
             remove(obj);
+            removed++;
+        }
+        if (event != null) {
+            FlightEvents.commit(event, 0, removed, mNumNodes, mNumFactories);
         }
     }
 
@@ -1892,25 +4328,44 @@ public class DuctTape {
      * @see #remove(Object)
      */
     public final void remove(int[] tags) {
-        boolean robust = mRobust;
+        checkFrozen();
+        final OperationCounts counts = mCounts;
+        boolean removed = false;
         Node node = mFirstNode;
         while (node != null) {
-            if (node.hasTag(tags)) {
+            if (counts != null) {
+                counts.mNodeVisits++;
+            }
+            if (hasTag(node, tags, counts)) {
+                if (node.mObject != null) {
+                    drop(node.mObject);
+                }
                 removeNode(node);
-                robust = false;
+                removed = true;
             }
             node = node.mNext;
         }
         Factory factory = mFactories;
         while (factory != null) {
-            if (factory.hasTag(tags)) {
+            if (counts != null) {
+                counts.mFactoryVisits++;
+            }
+            if (hasTag(factory, tags, counts)) {
                 removeFactory(factory);
                 mNumFactories--;
-                robust = false;
+                removed = true;
             }
             factory = factory.mNext;
         }
-        mRobust = robust;
+
+        /*
+         * NOTE: The change counter is bumped even when the mesh is already
+         * not robust, since a prepared plan must notice every removal.
+         */
+        if (removed) {
+            mRobust = false;
+            mModCount++;
+        }
     }
 
     /**
@@ -1938,6 +4393,7 @@ public class DuctTape {
      * @param tag The tag to remove.
      */
     public final void remove(Object obj, int tag) {
+        checkFrozen();
         if (obj instanceof Class<?>) {
             final Class<?> clazz = (Class<?>)obj;
             Factory factory = mFactories;
@@ -1960,6 +4416,7 @@ public class DuctTape {
                                 product.mTagsLen = tagsLen;
                             }
                             mRobust = false;
+                            mModCount++;
                             break search;
                         }
                     }
@@ -1970,7 +4427,8 @@ public class DuctTape {
         } else {
             Node node = mFirstNode;
             search: while (node != null) {
-                if (node.mObject == obj) {
+                final WeakObject weakObj = node.mWeak;
+                if (node.mObject == obj || (weakObj != null && weakObj.get() == obj)) {
                     int tagsLen = node.mTagsLen;
                     final int[] tags = node.mTags;
                     for (int j = 0; j < tagsLen; j++) {
@@ -1981,6 +4439,7 @@ public class DuctTape {
                             tagsLen--;
                             node.mTagsLen = tagsLen;
                             mRobust = false;
+                            mModCount++;
                             break search;
                         }
                     }
@@ -1995,17 +4454,95 @@ public class DuctTape {
      * Resets this instance to the same state as it had when it was first
      * constructed. This method is mainly intended as a way to recycle
      * instances.
+     * <p>
+     * Objects that have been started are still remembered, so that they are
+     * stopped by the next call to {@link #start()} or {@link #stop()}.
      */
     public final void clear() {
+        checkFrozen();
         mFactories = null;
         mNumFactories = 0;
         mFirstNode = null;
         mLastNode = null;
         mPendingRemoval = null;
+        mInflations = null;
+        mSequence = null;
+        mLifecycle = null;
+        mWeakLifecycle = null;
+        mAnswers = null;
+        mWeakAnswers = null;
+        mInherited = null;
         mNumNodes = 0;
+        mCollected = null;
+        mNumWeak = 0;
+        mNumRecyclable = 0;
+        mDropped = null;
+        mModCount++;
         mRobust = true;
     }
 
+    /**
+     * Releases the objects produced by singleton factories that were not
+     * injected anywhere, nor asked for through {@link #get(Class, int...)}, by
+     * the last call to {@link #apply()}, as well as the recycled products kept
+     * for reuse. This is meant to be called when the
+     * system is low on memory, e.g. from <code>onTrimMemory()</code> of an
+     * {@link android.app.Activity} or {@link android.app.Service}.
+     * <p>
+     * The mesh stays robust. A released object is only recreated when a later
+     * call to {@link #apply()} needs it, and the same object is then used again
+     * in case something else has kept it alive. Nothing is released while the
+     * mesh is frozen.
+     * 
+     * @return The number of released objects.
+     */
+    public final int trim() {
+        if (mFrozen != null) {
+            return 0;
+        }
+        int released = 0;
+
+        /*
+         * NOTE: An empty mesh is not glued together, why the factories keep
+         * their status from when it was last glued.
+         */
+        final boolean empty = !hasContent();
+        Factory factory = mFactories;
+        while (factory != null) {
+            final Node product = factory.mProduct;
+            if (product != null && !factory.mNonSingleton
+                    && (empty || factory.mStatus != Factory.EXECUTED)) {
+                factory.mReleased = new WeakReference<Object>(product.mObject);
+                factory.mProduct = null;
+                released++;
+            }
+            released += factory.mPoolLen;
+            factory.mPool = null;
+            factory.mPoolLen = 0;
+            factory = factory.mNext;
+        }
+        return released;
+    }
+
+    /**
+     * Tells whether there is anything to glue together, i.e. any added objects
+     * or any factories whose products have been asked for through
+     * {@link #get(Class, int...)}.
+     */
+    private boolean hasContent() {
+        if (mNumNodes > 0) {
+            return true;
+        }
+        Factory factory = mFactories;
+        while (factory != null) {
+            if (factory.mDemanded) {
+                return true;
+            }
+            factory = factory.mNext;
+        }
+        return false;
+    }
+
     /**
      * Gives the current status of the glued object mesh. Just after
      * {@link #apply()} has been executed the mesh is always robust, but adding
@@ -2020,7 +4557,146 @@ public class DuctTape {
      *         {@link #apply()} has not yet been called.
      */
     public final boolean isRobust() {
-        return mRobust;
+        purge();
+        return mRobust && (mParent == null || mParent.generation() == mParentGeneration);
+    }
+
+    /**
+     * Turns collection of statistics on or off. When on, statistics are
+     * collected each time the mesh is glued together, and are then available
+     * through {@link #getStats()} and {@link #toShortString()}. Collection is
+     * off by default, and then costs next to nothing.
+     * 
+     * @param enabled <code>true</code> to collect statistics.
+     * @see #getStats()
+     */
+    public final void setStatsEnabled(boolean enabled) {
+        mStatsEnabled = enabled;
+        if (!enabled) {
+            mStats = null;
+        }
+    }
+
+    /**
+     * Gives the statistics collected the last time the mesh was glued
+     * together.
+     * 
+     * @return A copy of the statistics, or null when collection is off or the
+     *         mesh has not been glued together since it was turned on.
+     * @see #setStatsEnabled(boolean)
+     */
+    public final GlueStats getStats() {
+        final GlueStats stats = mStats;
+        return (stats != null ? new GlueStats(stats) : null);
+    }
+
+    /**
+     * Starts or stops recording the decisions made while resolving what to
+     * inject: which factories are validated and the outcome, how many
+     * candidates each field has, why factories are rejected, circular
+     * dependencies and failed injections. Only the given number of the latest
+     * records are kept, and each record takes a few integers, why the
+     * recording can be left on.
+     * 
+     * @param records The number of records to keep, or 0 to stop recording.
+     * @see #dumpTrace()
+     */
+    public final void setTraceSize(int records) {
+        mTrace = (records > 0 ? new Trace(records) : null);
+    }
+
+    /**
+     * Renders the recorded resolution decisions as text, one line per
+     * decision with the oldest first.
+     * 
+     * @return The text, which is empty when nothing has been recorded.
+     * @see #setTraceSize(int)
+     */
+    public final String dumpTrace() {
+        final Trace trace = mTrace;
+        return (trace != null ? trace.dump() : "");
+    }
+
+    /**
+     * Attaches counts of the basic operations performed, like visits of
+     * objects and factories, checks of types and tags and listings of declared
+     * fields. The counts are meant for tests of how the work grows with the
+     * size of the mesh, and cost next to nothing when detached.
+     * 
+     * @param counts The counts to add to, or null to stop counting.
+     * @see OperationCounts
+     */
+    public final void setOperationCounts(OperationCounts counts) {
+        mCounts = counts;
+    }
+
+    /**
+     * Starts inflating the layouts that the next call to {@link #apply()} is
+     * likely to need, so that the inflation is moved out of that call. All
+     * injections of a {@link android.view.View} type identified by a layout ID
+     * are considered, both in the added objects and in the objects that the
+     * added {@link java.lang.Class} objects would produce.
+     * <p>
+     * Each layout is inflated by a separate task handed to the given executor,
+     * on a thread that is prepared with a {@link android.os.Looper} when it
+     * does not already have one. The next call to {@link #apply()} uses the
+     * inflated views instead of inflating the layouts itself, and waits for
+     * inflations that are still running. Inflations that have not yet been
+     * started are instead done by {@link #apply()} as usual, as are inflations
+     * that failed. Views that turn out not to be needed are discarded.
+     *
+     * @param executor The executor to run the inflations on.
+     * @see #apply()
+     */
+    public final void preInflate(Executor executor) {
+        pin();
+        try {
+            HashMap<Integer, Inflation> inflations = mInflations;
+
+            /* Collect layouts from added objects and factories */
+            Node node = mFirstNode;
+            Factory factory = mFactories;
+            while (node != null || factory != null) {
+                final Class<?> clazz;
+                final Context ctxt;
+                if (node != null) {
+                    clazz = node.mObject.getClass();
+                    ctxt = node.mContext;
+                    node = node.mNext;
+                } else {
+                    clazz = factory.mClazz;
+                    ctxt = factory.mContext;
+                    factory = factory.mNext;
+                }
+                if (ctxt != null && Gluey.class.isAssignableFrom(clazz)) {
+                    final InjectionPoint[] points = getInjectionPoints(clazz);
+                    final int pointsLen = points.length;
+                    for (int i = 0; i < pointsLen; i++) {
+                        final InjectionPoint point = points[i];
+                        final int id = point.mId;
+                        if ((id & 0xff000000) != 0 && View.class.isAssignableFrom(point.mClazz)) {
+                            if (inflations == null) {
+                                inflations = new HashMap<Integer, Inflation>();
+                                mInflations = inflations;
+                            } else if (inflations.containsKey(id)) {
+                                continue;
+                            }
+
+                            /* Start inflation */
+                            final Inflation inflation = new Inflation(ctxt, id);
+                            try {
+                                executor.execute(inflation);
+                                inflations.put(id, inflation);
+                            } catch (RejectedExecutionException e) {
+                                /* Leave it to apply() */
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            unpin();
+        }
     }
 
     /**
@@ -2033,1070 +4709,2234 @@ public class DuctTape {
      *             or because it was not possible to come to a conclusion on
      *             what to inject into a specific field.
      * @see #isRobust()
+     * @see #apply(Executor)
      */
     public final void apply() throws GluingException {
+        apply(null);
+    }
+
+    /**
+     * Works like {@link #apply()}, but assigns the injected values in parallel
+     * on the given executor. Everything that decides what to inject, including
+     * the creation of objects by factories, is still done on the calling
+     * thread, why the outcome is the same as for {@link #apply()}. All
+     * assignments are completed before this method returns.
+     * <p>
+     * This pays off for large object meshes, where the assignments are split
+     * into tasks covering a number of objects each. Small meshes are assigned
+     * on the calling thread.
+     * 
+     * @param executor The executor to assign the values on, or null to assign
+     *            them on the calling thread.
+     * @throws GluingException when an injection fails.
+     * @see #apply()
+     */
+    public final void apply(Executor executor) throws GluingException {
+        mPlan = null;
+        checkParent();
 
         /* Do nothing unless tape is needed */
+        pin();
+        try {
+            if (!mRobust && hasContent()) {
+                glue(executor, null);
+            }
+        } finally {
+            unpin();
+        }
+
+        /* Gluing completed */
+        mRobust = true;
+        mProcessed = true;
+    }
+
+    /**
+     * Calculates what to inject into all tagged fields and injects it. When a
+     * plan is given nothing is injected, and no views are looked up, instead
+     * both are left in the plan.
+     *
+     * @param executor The executor to assign the values on, or null.
+     * @param plan The plan to fill in, or null to inject at once.
+     * @throws GluingException when an injection fails.
+     */
+    private void glue(Executor executor, Plan plan) throws GluingException {
         int nodesLen = mNumNodes;
-        if (!mRobust && nodesLen > 0) {
 
-            /*
-             * Take height for objects that might be constructed by the
-             * factories
-             */
-            final int factoriesLen = mNumFactories;
+        /* Collect statistics when enabled or recorded */
+        /*
+         * NOTE: Every collection point checks for null, which is all it costs
+         * when disabled.
+         */
+        GlueStats stats = null;
+        long startTime = 0;
+        final Object event = FlightEvents.begin(FlightEvents.APPLY);
+        if (mStatsEnabled || event != null) {
+            stats = new GlueStats();
+            if (mStatsEnabled) {
+                mStats = stats;
+            }
+            startTime = System.nanoTime();
+        }
 
-            /* Prepare fields for quick access */
-            final Factory factories = mFactories;
 
-            /* Execute all pending removals */
-            /*
-             * NOTE: Clearing the head of this releases the rest of it in one
-             * sweep.
-             */
-            mPendingRemoval = null;
+        /*
+         * Take height for objects that might be constructed by the
+         * factories
+         */
+        final int factoriesLen = mNumFactories;
+
+        /* Prepare fields for quick access */
+        final Factory factories = mFactories;
+
+        /* Execute all pending removals */
+        /*
+         * NOTE: Clearing the head of this releases the rest of it in one
+         * sweep.
+         */
+        mPendingRemoval = null;
+
+        /* Recycle products no longer used */
+        final ArrayList<Object> dropped = mDropped;
+        if (dropped != null) {
+            mDropped = null;
+            recycle(dropped);
+        }
+
+        /* Forget objects used from the parent */
+        IdentityHashMap<Object, Node> inherited = null;
+        if (mParent != null) {
+            inherited = new IdentityHashMap<Object, Node>();
+        }
+        mInherited = inherited;
+
+        /* Reset factories */
+        Factory f = factories;
+        while (f != null) {
+            f.mStatus = Factory.NOT_PROCESSED;
+            f = f.mNext;
+        }
+
+        /* Pre-process all nodes */
+        View[] views = null;
+        int viewsLen = 0;
+        Node lastNode = mLastNode;
+        Node firstNode = mFirstNode;
+        Node node = firstNode;
+        while (node != null) {
 
-            /* Reset factories */
-            Factory f = factories;
-            while (f != null) {
-                f.mStatus = Factory.NOT_PROCESSED;
-                f = f.mNext;
+            /* Sort out special Android objects */
+            Object obj = node.mObject;
+            if (obj instanceof View) {
+                if (views == null) {
+                    views = new View[nodesLen];
+                }
+                views[viewsLen++] = (View)obj;
             }
 
-            /* Pre-process all nodes */
-            View[] views = null;
-            int viewsLen = 0;
-            Node lastNode = mLastNode;
-            Node firstNode = mFirstNode;
-            Node node = firstNode;
-            while (node != null) {
+            /* Reset node status */
+            node.mFlags = 0;
+            node.mChildren = null;
+            node.mChildrenLen = 0;
+
+            /* Traverse all objects */
+            node = node.mNext;
+        }
+
+        if (stats != null) {
+            stats.mPreprocessTime = System.nanoTime() - startTime;
+        }
+
+        /* Prepare storage */
+        final Trace trace = mTrace;
+        final OperationCounts counts = mCounts;
+        final Factory[] factoryPath = new Factory[factoriesLen];
+        HashMap<TaggedClass, Implementors> implCache = new HashMap<TaggedClass, Implementors>();
+        IdentityHashMap<Object[], Object[]> toBeSorted =
+                new IdentityHashMap<Object[], Object[]>();
+        HashMap<Integer, Object> idCache = new HashMap<Integer, Object>();
+        TaggedClass key = null;
+
+        /* Defer assignments when they are planned or made in parallel */
+        final Assignments assignments;
+        if (plan != null) {
+            assignments = plan.mAssignments;
+            plan.mViews = views;
+            plan.mViewsLen = viewsLen;
+        } else if (executor != null) {
+            assignments = new Assignments();
+        } else {
+            assignments = null;
+        }
+
+        /* Take over layouts being inflated in advance */
+        /*
+         * NOTE: When planning they are left for commit(), which does all
+         * lookups of views.
+         */
+        final HashMap<Integer, Inflation> inflations;
+        if (plan == null) {
+            inflations = mInflations;
+            mInflations = null;
+        } else {
+            inflations = null;
+        }
 
-                /* Sort out special Android objects */
-                Object obj = node.mObject;
-                if (obj instanceof View) {
-                    if (views == null) {
-                        views = new View[nodesLen];
+        /* Produce objects asked for through get() */
+        f = factories;
+        while (f != null) {
+            if (f.mDemanded
+                    && f.mStatus != Factory.EXECUTED
+                    && isResolvable(f, f.mContext, views, viewsLen, firstNode, nodesLen,
+                            factories, factoriesLen, factoryPath, idCache, inflations,
+                            plan != null, mParent, stats, trace, counts)) {
+                Node product = f.mProduct;
+                if (product == null) {
+                    product = new Node(produce(f, stats));
+                    product.mContext = f.mContext;
+                    final int[] factoryTags = f.mTags;
+                    if (factoryTags != null) {
+                        product.mTags = factoryTags;
+                        product.mTagsLen = f.mTagsLen;
                     }
-                    views[viewsLen++] = (View)obj;
+                    f.mProduct = product;
+                } else {
+                    product.mFlags = 0;
+                    product.mChildren = null;
+                    product.mChildrenLen = 0;
+                }
+                f.mStatus = Factory.EXECUTED;
+
+                /* Append to end of node list */
+                /*
+                 * NOTE: A mesh holding only factories gets a list of products
+                 * only, which is dropped with them afterwards.
+                 */
+                final Node last = lastNode;
+                product.mPrev = last;
+                product.mNext = null;
+                if (last != null) {
+                    last.mNext = product;
+                } else {
+                    firstNode = product;
+                }
+                lastNode = product;
+                nodesLen++;
+            }
+            f = f.mNext;
+        }
+
+        /* Visit all nodes up till first unused product */
+        node = firstNode;
+        while (node != null) {
+            final Object instance = node.mObject;
+
+            /* Only consider objects with injections */
+            if (instance instanceof Gluey) {
+
+                /* Provide fast access to object's context */
+                final Context ctxt = node.mContext;
+                final Resources res;
+                if (ctxt != null) {
+                    res = ctxt.getResources();
+                } else {
+                    res = null;
                 }
 
-                /* Reset node status */
-                node.mFlags = 0;
-                node.mChildren = null;
-                node.mNextMerged = null;
+                /*
+                 * Take over the products tracked by the last glue, keeping
+                 * them until all injection points are done.
+                 */
+                final Object[] products = node.mProducts;
+                final IdentityHashMap<InjectionPoint, IdentityHashMap<Class<?>, Tracked>> index =
+                        index(products, node.mProductsLen);
+                Object[] tracking = null;
+                int trackingLen = 0;
+
+                /* Visit all injection points */
+                final InjectionPoint[] points = getInjectionPoints(instance.getClass());
+                final int pointsLen = points.length;
+                for (int j = 0; j < pointsLen; j++) {
+                    final InjectionPoint point = points[j];
+                    final Field field = point.mField;
+                    final int[] tags = point.mTags;
+                    final boolean vital = point.mVital;
+                    final boolean sort = point.mSort;
+                    final int numTags = point.mNumTags;
+                    final int id = point.mId;
+                    final Class<?> array = point.mArray;
+                    Class<?> clazz = point.mClazz;
+
+                    /* Prepare caching of exact content type */
+                    boolean fieldChecked = false;
+                    Object fieldObject = null;
+                    Class<?> fieldObjectClazz = null;
+
+                    /* Look up matching objects in cache */
+                    if (key == null) {
+                        key = new TaggedClass(tags, clazz);
+                    } else {
+                        key.mTags = tags;
+                        key.mClazz = clazz;
+                    }
+                    Implementors cached = implCache.get(key);
+                    if (cached != null && array == null && !cached.mGeneric) {
+                        cached = null;
+                    }
+                    if (stats != null) {
+                        if (cached != null) {
+                            stats.mImplCacheHits++;
+                        } else {
+                            stats.mImplCacheMisses++;
+                        }
+                    }
+
+                    /* Find implementors on cache miss */
+                    boolean justCached = false;
+                    if (cached == null) {
+                        boolean directArray = false;
+                        long lookupStart = 0;
+                        long nestedTime = 0;
+                        if (stats != null) {
+                            lookupStart = System.nanoTime();
+                            nestedTime = stats.nestedTime();
+                        }
+
+                        /* Scan for existing implementing objects */
+                        int childrenLen = 1;
+                        Node[] children = new Node[1];
+                        int cacheLen = 0;
+                        Node n = firstNode;
+                        while (n != null) {
+                            if (counts != null) {
+                                counts.mNodeVisits++;
+                            }
+
+                            /* Add implementing object to cache */
+                            if ((n.mFlags & Node.DO_NOT_REUSE) == 0) {
+                                Object candidate = n.mObject;
+                                boolean include = false;
+                                if (isInstance(clazz, candidate, counts)
+                                        && (numTags == 0 || hasTag(n, tags, counts))) {
+                                    if (directArray) {
+                                        throw new GluingException(
+                                                "Conflicting injections "
+                                                        + niceClassName(children[cacheLen - 1].mObject
+                                                                .getClass())
+                                                        + " and "
+                                                        + niceClassName(candidate
+                                                                .getClass())
+                                                        + " for "
+                                                        + niceClassName(instance
+                                                                .getClass()) + "."
+                                                        + field.getName());
+                                    }
+                                    include = true;
+                                } else if (!directArray && array != null
+                                        && isInstance(array, candidate, counts)
+                                        && (numTags == 0 || hasTag(n, tags, counts))) {
+                                    if (cacheLen != 0) {
+                                        throw new GluingException(
+                                                "Conflicting injections "
+                                                        + niceClassName(children[cacheLen - 1].mObject
+                                                                .getClass())
+                                                        + " and "
+                                                        + niceClassName(candidate
+                                                                .getClass())
+                                                        + " for "
+                                                        + niceClassName(instance
+                                                                .getClass()) + "."
+                                                        + field.getName());
+                                    }
+                                    directArray = true;
+                                    include = true;
+                                }
+                                if (include) {
+                                    if (cacheLen == childrenLen) {
+                                        childrenLen += ARRAY_INCREMENT_SIZE;
+                                        Node[] temp = new Node[childrenLen];
+                                        System.arraycopy(children, 0, temp, 0, cacheLen);
+                                        children = temp;
+                                    }
+                                    children[cacheLen++] = n;
+                                }
+                            }
+                            n = n.mNext;
+                        }
+
+                        /*
+                         * Create implementing objects using all
+                         * factories.
+                         */
+                        boolean generic = true;
+                        if (vital) {
+                            Factory factory = factories;
+                            while (factory != null) {
+                                if (counts != null) {
+                                    counts.mFactoryVisits++;
+                                }
+                                if (factory.mStatus != Factory.UNRESOLVABLE
+                                        && (factory.mNonSingleton || factory.mStatus != Factory.EXECUTED)) {
+                                    /*
+                                     * Check that the product is
+                                     * applicable.
+                                     */
+                                    Class<?> factoryClazz = factory.mClazz;
+                                    if (clazz.isAssignableFrom(factoryClazz)
+                                            && (numTags == 0 || hasTag(factory, tags, counts))) {
+
+                                        /*
+                                         * Find the context of this
+                                         * factory.
+                                         */
+                                        Context prodCtxt = factory.mContext;
+
+                                        /*
+                                         * Make sure the class has
+                                         * access to all the types
+                                         * it needs.
+                                         */
+                                        if (factory.mStatus == Factory.EXECUTED
+                                                || isResolvable(factory, prodCtxt,
+                                                        views, viewsLen, firstNode,
+                                                        nodesLen, factories,
+                                                        factoriesLen, factoryPath,
+                                                        idCache, inflations, plan != null,
+                                                        mParent, stats, trace, counts)) {
+
+                                            /* Produce object */
+                                            Node product = factory.mProduct;
+
+                                            /*
+                                             * Inject the same
+                                             * product as last
+                                             * time in case this
+                                             * is not a
+                                             * singleton.
+                                             */
+                                            if (factory.mNonSingleton) {
+                                                product = tracked(index, point,
+                                                        factoryClazz);
+                                                if (product != null) {
+
+                                                    /*
+                                                     * Reset status
+                                                     * left from the
+                                                     * previous call.
+                                                     */
+                                                    product.mFlags = Node.DO_NOT_REUSE;
+                                                    product.mChildren = null;
+                                                    product.mChildrenLen = 0;
+                                                }
+                                            }
+
+                                            /*
+                                             * Skip creation in
+                                             * case this is not
+                                             * a singleton, the
+                                             * object is new to
+                                             * the mesh and
+                                             * there is already
+                                             * an instance of
+                                             * the product in
+                                             * the field.
+                                             */
+                                            /*
+                                             * NOTE: Since we
+                                             * are comparing
+                                             * class-types and
+                                             * different context
+                                             * sensitive classes
+                                             * are created using
+                                             * different
+                                             * class-loaders, it
+                                             * is safe to assume
+                                             * that on a match
+                                             * we have an
+                                             * instance having
+                                             * the expected
+                                             * origin.
+                                             */
+                                            if (mProcessed && factory.mNonSingleton
+                                                    && products == null) {
+                                                try {
+                                                    Object reuse = null;
+                                                    if (!fieldChecked) {
+                                                        if (stats != null) {
+                                                            stats.mReflectiveCalls++;
+                                                        }
+                                                        fieldObject = field
+                                                                .get(instance);
+                                                        if (fieldObject != null) {
+                                                            fieldObjectClazz = fieldObject
+                                                                    .getClass();
+                                                        }
+                                                        fieldChecked = true;
+                                                    }
+                                                    if (fieldObject != null) {
+                                                        if (array == null) {
+                                                            if (fieldObjectClazz == factoryClazz) {
+                                                                reuse = fieldObject;
+                                                            }
+                                                        } else {
+                                                            /*
+                                                             * Scan
+                                                             * the
+                                                             * array,
+                                                             * passing
+                                                             * entries
+                                                             * already
+                                                             * reused.
+                                                             */
+                                                            int skip = 0;
+                                                            for (int i = 0; i < cacheLen; i++) {
+                                                                if (children[i].mObject
+                                                                        .getClass() == factoryClazz) {
+                                                                    skip++;
+                                                                }
+                                                            }
+                                                            Object[] arr = (Object[])fieldObject;
+                                                            final int arrLen = arr.length;
+                                                            for (int i = 0; i < arrLen; i++) {
+                                                                Object entry = arr[i];
+                                                                if (factoryClazz == entry
+                                                                        .getClass()
+                                                                        && skip-- == 0) {
+                                                                    reuse = entry;
+                                                                    break;
+                                                                }
+                                                            }
+                                                        }
+                                                    }
+
+                                                    /*
+                                                     * Create
+                                                     * node for
+                                                     * reused
+                                                     * object
+                                                     */
+                                                    if (reuse != null) {
+                                                        product = new Node(reuse);
+                                                        product.mContext = prodCtxt;
+                                                        product.mFlags |= Node.DO_NOT_REUSE;
+                                                        final int[] factoryTags = factory.mTags;
+                                                        if (factoryTags != null) {
+                                                            product.mTags = factoryTags;
+                                                            product.mTagsLen = factory.mTagsLen;
+                                                        }
+                                                    }
+                                                } catch (IllegalArgumentException e) {
+                                                    /* Ignore */
+                                                } catch (IllegalAccessException e) {
+                                                    /* Ignore */
+                                                }
+                                            }
+
+                                            /*
+                                             * Only create
+                                             * product when one
+                                             * is not already
+                                             * available.
+                                             */
+                                            if (product == null) {
+
+                                                /*
+                                                 * Run the
+                                                 * factory.
+                                                 */
+                                                final Object obj = produce(factory, stats);
+
+                                                /*
+                                                 * Include
+                                                 * object.
+                                                 */
+                                                product = new Node(obj);
+
+                                                /*
+                                                 * Put in
+                                                 * correct
+                                                 * context.
+                                                 */
+                                                product.mContext = prodCtxt;
+
+                                                /*
+                                                 * Mark it with
+                                                 * same tags as
+                                                 * factory.
+                                                 */
+                                                final int[] factoryTags = factory.mTags;
+                                                if (factoryTags != null) {
+                                                    product.mTags = factoryTags;
+                                                    product.mTagsLen = factory.mTagsLen;
+                                                }
+
+                                                /*
+                                                 * Associate
+                                                 * product with
+                                                 * factory.
+                                                 */
+                                                if (factory.mNonSingleton) {
+                                                    product.mFlags |= Node.DO_NOT_REUSE;
+                                                } else {
+                                                    factory.mProduct = product;
+                                                }
+                                            } else if (product == factory.mProduct) {
+
+                                                /*
+                                                 * Reset status left
+                                                 * from the previous
+                                                 * call.
+                                                 */
+                                                product.mFlags = 0;
+                                                product.mChildren = null;
+                                                product.mChildrenLen = 0;
+                                            }
+
+                                            /*
+                                             * Keep track of the
+                                             * product of a
+                                             * non-singleton,
+                                             * which must not be
+                                             * shared with other
+                                             * objects.
+                                             */
+                                            if (factory.mNonSingleton) {
+                                                tracking = track(tracking, trackingLen,
+                                                        index, point, product);
+                                                trackingLen += 2;
+                                                generic = false;
+                                            }
 
-                /* Traverse all objects */
-                node = node.mNext;
-            }
+                                            /*
+                                             * Mark factory as
+                                             * used at least
+                                             * once.
+                                             */
+                                            factory.mStatus = Factory.EXECUTED;
 
-            /* Prepare storage */
-            final Factory[] factoryPath = new Factory[factoriesLen];
-            HashMap<TaggedClass, Implementors> implCache = new HashMap<TaggedClass, Implementors>();
-            ArrayList<Object[]> toBeSorted = new ArrayList<Object[]>();
-            HashMap<Integer, Object> idCache = new HashMap<Integer, Object>();
-            TaggedClass key = null;
+                                            /*
+                                             * Append to end of
+                                             * node list to
+                                             * ensure it will be
+                                             * processed.
+                                             */
+                                            final Node last = lastNode;
+                                            product.mPrev = last;
+                                            product.mNext = null;
+                                            last.mNext = product;
+                                            lastNode = product;
+                                            nodesLen++;
+
+                                            /* Add as child */
+                                            if (cacheLen == childrenLen) {
+                                                childrenLen += ARRAY_INCREMENT_SIZE;
+                                                Node[] temp = new Node[childrenLen];
+                                                System.arraycopy(children, 0, temp,
+                                                        0, cacheLen);
+                                                children = temp;
+                                            }
+                                            children[cacheLen++] = product;
+                                        }
+                                    }
+                                }
+                                factory = factory.mNext;
+                            }
+                        }
 
-            /* Visit all nodes up till first unused product */
-            node = firstNode;
-            while (node != null) {
-                final Object instance = node.mObject;
+                        /*
+                         * Look for compatible view in case such are
+                         * available.
+                         */
+                        Object obj = null;
+                        if (View.class.isAssignableFrom(clazz) && (id & 0xff000000) != 0) {
+                            if (plan != null) {
+
+                                /* Leave the lookup to commit() */
+                                if (array != null || cacheLen > 0) {
+                                    throw new GluingException("Unable to plan injection of "
+                                            + instance.getClass().getCanonicalName() + "."
+                                            + field.getName());
+                                }
+                                plan.addView(instance, field, clazz, id, ctxt, vital);
+                                if (stats != null) {
+                                    stats.addLookupTime(lookupStart, nestedTime);
+                                }
+                                continue;
+                            }
+                            obj = findView(clazz, id, ctxt, views, viewsLen, idCache,
+                                    inflations, stats);
+                        }
 
-                /* Only consider objects with injections */
-                if (instance instanceof Gluey) {
+                        /*
+                         * See if we can find something in the
+                         * context that can be injected.
+                         */
+                        if (ctxt != null && obj == null) {
+                            if (numTags == 0) {
+                                if (clazz == ApplicationInfo.class) {
+                                    obj = ctxt.getApplicationInfo();
+                                } else if (clazz == AssetManager.class) {
+                                    obj = ctxt.getAssets();
+                                } else if (clazz == ClassLoader.class) {
+                                    obj = ctxt.getClassLoader();
+                                } else if (clazz == ContentResolver.class) {
+                                    obj = ctxt.getContentResolver();
+                                } else if (clazz == Looper.class) {
+                                    obj = ctxt.getMainLooper();
+                                } else if (clazz == PackageManager.class) {
+                                    obj = ctxt.getPackageManager();
+                                } else if (clazz == Resources.class) {
+                                    obj = ctxt.getResources();
+                                } else if (clazz == AccessibilityManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.ACCESSIBILITY_SERVICE);
+                                } else if (clazz == AccountManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.ACCOUNT_SERVICE);
+                                } else if (clazz == ActivityManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.ACTIVITY_SERVICE);
+                                } else if (clazz == AlarmManager.class) {
+                                    obj = ctxt.getSystemService(Context.ALARM_SERVICE);
+                                } else if (clazz == AudioManager.class) {
+                                    obj = ctxt.getSystemService(Context.AUDIO_SERVICE);
+                                } else if (clazz == ConnectivityManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.CONNECTIVITY_SERVICE);
+                                } else if (clazz == DevicePolicyManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.DEVICE_POLICY_SERVICE);
+                                } else if (clazz == DropBoxManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.DROPBOX_SERVICE);
+                                } else if (clazz == InputMethodManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.INPUT_METHOD_SERVICE);
+                                } else if (clazz == KeyguardManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.KEYGUARD_SERVICE);
+                                } else if (clazz == LayoutInflater.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+                                } else if (clazz == LocationManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.LOCATION_SERVICE);
+                                } else if (clazz == NotificationManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.NOTIFICATION_SERVICE);
+                                } else if (clazz == PowerManager.class) {
+                                    obj = ctxt.getSystemService(Context.POWER_SERVICE);
+                                } else if (clazz == SearchManager.class) {
+                                    obj = ctxt.getSystemService(Context.SEARCH_SERVICE);
+                                } else if (clazz == ClipboardManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.CLIPBOARD_SERVICE);
+                                } else if (clazz == SensorManager.class) {
+                                    obj = ctxt.getSystemService(Context.SENSOR_SERVICE);
+                                } else if (clazz == TelephonyManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.TELEPHONY_SERVICE);
+                                } else if (clazz == UiModeManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.UI_MODE_SERVICE);
+                                } else if (clazz == Vibrator.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.VIBRATOR_SERVICE);
+                                } else if (clazz == WifiManager.class) {
+                                    obj = ctxt.getSystemService(Context.WIFI_SERVICE);
+                                } else if (clazz == WindowManager.class) {
+                                    obj = ctxt.getSystemService(Context.WINDOW_SERVICE);
+                                } else if (clazz == WallpaperManager.class) {
+                                    obj = ctxt
+                                            .getSystemService(Context.WALLPAPER_SERVICE);
+                                }
+                            } else if (res != null && (id & 0xff000000) != 0) {
 
-                    /* Visit all classes that are injection targets */
-                    Class<?> current = instance.getClass();
-                    while (Gluey.class.isAssignableFrom(current)) {
+                                /* Check in cache */
+                                Object o = idCache.get(id);
+                                if (clazz.isInstance(o)) {
+                                    if (stats != null) {
+                                        stats.mIdCacheHits++;
+                                    }
+                                    obj = o;
+                                } else {
+                                    if (stats != null) {
+                                        stats.mIdCacheMisses++;
+                                    }
+                                    try {
+                                        if (clazz == Integer.class) {
+                                            obj = res.getColor(id);
+                                        } else if (clazz == Boolean.class) {
+                                            obj = res.getBoolean(id);
+                                        } else if (clazz == Float.class) {
+                                            obj = res.getDimension(id);
+                                        } else if (clazz == String.class) {
+                                            obj = res.getString(id);
+                                        } else if (clazz == Drawable.class) {
+                                            obj = res.getDrawable(id);
+                                        } else if (clazz == ColorStateList.class) {
+                                            obj = res.getColorStateList(id);
+                                        } else if (clazz == XmlResourceParser.class
+                                                || clazz == XmlPullParser.class) {
+                                            obj = res.getXml(id);
+                                        }
+                                    } catch (NotFoundException e1) {
+                                        try {
+                                            if (!directArray && array != null) {
+                                                if (clazz == String.class) {
+                                                    obj = res.getStringArray(id);
+                                                    directArray = true;
+                                                } else if (clazz == Integer.class) {
+                                                    obj = res.getIntArray(id);
+                                                    directArray = true;
+                                                }
+                                            }
+                                        } catch (NotFoundException e2) {
+                                            /* Ignore */
+                                        }
+                                    }
 
-                        /* Provide fast access to object's context */
-                        Context ctxt = node.mContext;
-                        final Resources res;
-                        if (ctxt != null) {
-                            res = ctxt.getResources();
-                        } else {
-                            res = null;
+                                    /* Add to cache */
+                                    if (obj != null) {
+                                        idCache.put(id, obj);
+                                    }
+                                }
+                            }
                         }
 
-                        /* Get injection points */
-                        Field[] fields = current.getDeclaredFields();
-                        final int fieldsLen = fields.length;
-                        for (int j = 0; j < fieldsLen; j++) {
-                            Field field = fields[j];
-                            Glue injection = getInjection(field);
-                            if (injection != null) {
-                                final int[] tags = injection.value();
-                                final int tagsLen = tags.length;
-
-                                /* See if this injection is vital */
-                                boolean vital = true;
-                                boolean sort = false;
-                                int numTags = tagsLen;
-                                int id = 0;
-                                tagScan: for (int k = 0; k < tagsLen; k++) {
-                                    final int tag = tags[k];
-                                    switch (tag) {
-                                        case OPTIONAL:
-                                            vital = false;
-                                            numTags--;
-                                            if (sort) {
-                                                break tagScan;
-                                            }
-                                            break;
-                                        case ORDERED:
-                                            sort = true;
-                                            numTags--;
-                                            if (!vital) {
-                                                break tagScan;
-                                            }
-                                            break;
-                                        default:
-                                            id = tag;
-                                            break;
+                        /*
+                         * Read through to the parent for what is not
+                         * available here.
+                         */
+                        /*
+                         * NOTE: Local objects shadow those of the parent for
+                         * single references, while arrays get both.
+                         */
+                        if (inherited != null && !directArray
+                                && (array != null || (cacheLen == 0 && obj == null))) {
+                            final Object[] candidates = mParent.getAll(clazz, tags);
+                            final int candidatesLen = candidates.length;
+                            int inheritedLen = 0;
+                            candidateScan: for (int i = 0; i < candidatesLen; i++) {
+                                final Object candidate = candidates[i];
+
+                                /* Skip objects that are added to both */
+                                if (candidate == obj) {
+                                    continue;
+                                }
+                                for (int k = inheritedLen; k < cacheLen; k++) {
+                                    if (children[k].mObject == candidate) {
+                                        continue candidateScan;
                                     }
                                 }
 
-                                /* Ensure field is accessible */
-                                field.setAccessible(true);
+                                /* Share one node per object */
+                                Node inheritedNode = inherited.get(candidate);
+                                if (inheritedNode == null) {
+                                    inheritedNode = new Node(candidate);
+                                    inherited.put(candidate, inheritedNode);
+                                }
 
-                                /* Prepare caching of exact content type */
-                                boolean fieldChecked = false;
-                                Object fieldObject = null;
-                                Class<?> fieldObjectClazz = null;
+                                /* Add as child ahead of local objects */
+                                if (cacheLen == childrenLen) {
+                                    childrenLen += ARRAY_INCREMENT_SIZE;
+                                    Node[] temp = new Node[childrenLen];
+                                    System.arraycopy(children, 0, temp, 0, cacheLen);
+                                    children = temp;
+                                }
+                                System.arraycopy(children, inheritedLen, children,
+                                        inheritedLen + 1, cacheLen - inheritedLen);
+                                children[inheritedLen++] = inheritedNode;
+                                cacheLen++;
+                            }
+                        }
 
-                                /* Extract injection type information */
-                                Class<?> clazz = field.getType();
+                        /* Add as child */
+                        /*
+                         * The resource is not added as a node since
+                         * it was not included by the user, and we
+                         * would also get into some trouble figuring
+                         * out if an object was already added.
+                         */
+                        if (obj != null) {
+                            final Node product = new Node(obj);
+                            if (cacheLen == childrenLen) {
+                                childrenLen += ARRAY_INCREMENT_SIZE;
+                                Node[] temp = new Node[childrenLen];
+                                System.arraycopy(children, 0, temp, 0, cacheLen);
+                                children = temp;
+                            }
+                            children[cacheLen++] = product;
+                        }
 
-                                /* Unwrap array */
-                                final Class<?> array;
-                                if (clazz.isArray()) {
-                                    array = clazz;
-                                    clazz = clazz.getComponentType();
-                                } else {
-                                    array = null;
+                        /* Convert to primitive array when necessary */
+                        if (array != null && array.getComponentType().isPrimitive()
+                                && !directArray) {
+                            Object target = null;
+                            if (array == int[].class) {
+                                int[] temp = new int[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Integer)children[i].mObject).intValue();
                                 }
-                                clazz = wrapPrimitive(clazz);
-
-                                /* Look up matching objects in cache */
-                                if (key == null) {
-                                    key = new TaggedClass(tags, clazz);
-                                } else {
-                                    key.mTags = tags;
-                                    key.mClazz = clazz;
+                                target = temp;
+                            } else if (array == float[].class) {
+                                float[] temp = new float[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Float)children[i].mObject).floatValue();
+                                }
+                                target = temp;
+                            } else if (array == boolean[].class) {
+                                boolean[] temp = new boolean[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Boolean)children[i].mObject)
+                                            .booleanValue();
                                 }
-                                Implementors cached = implCache.get(key);
-                                if (cached != null && array == null && !cached.mGeneric) {
-                                    cached = null;
+                                target = temp;
+                            } else if (array == long[].class) {
+                                long[] temp = new long[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Long)children[i].mObject).longValue();
                                 }
+                                target = temp;
+                            } else if (array == double[].class) {
+                                double[] temp = new double[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Double)children[i].mObject)
+                                            .doubleValue();
+                                }
+                                target = temp;
+                            } else if (array == char[].class) {
+                                char[] temp = new char[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Character)children[i].mObject)
+                                            .charValue();
+                                }
+                                target = temp;
+                            } else if (array == short[].class) {
+                                short[] temp = new short[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Short)children[i].mObject).shortValue();
+                                }
+                                target = temp;
+                            } else if (array == byte[].class) {
+                                byte[] temp = new byte[cacheLen];
+                                for (int i = 0; i < cacheLen; i++) {
+                                    temp[i] = ((Byte)children[i].mObject).byteValue();
+                                }
+                                target = temp;
+                            }
+                            Node arr = new Node(target);
+                            children[0] = arr;
+                            cacheLen = 1;
+                            directArray = true;
+                        }
 
-                                /* Find implementors on cache miss */
-                                boolean justCached = false;
-                                if (cached == null) {
-                                    boolean directArray = false;
+                        /* Convert cache */
+                        /*
+                         * NOTE: This is the actual array that will
+                         * be injected later.
+                         */
+                        if (cacheLen > 0) {
+                            final Object[] typed;
+                            if (directArray) {
+                                clazz = array;
+                            }
+                            typed = (Object[])Array.newInstance(clazz, cacheLen);
+                            for (int k = 0; k < cacheLen; k++) {
+                                typed[k] = children[k].mObject;
+                            }
+                            justCached = true;
+                            cached = new Implementors(typed, children, cacheLen,
+                                    directArray, generic);
+                            implCache.put(key, cached);
+                            key = null;
+                        }
+                        if (trace != null) {
+                            trace.add(Trace.FIELD, field, cacheLen, null);
+                        }
+                        if (stats != null) {
+                            stats.addLookupTime(lookupStart, nestedTime);
+                        }
+                    }
 
-                                    /* Scan for existing implementing objects */
-                                    int childrenLen = 1;
-                                    Node[] children = new Node[1];
-                                    int cacheLen = 0;
-                                    Node n = firstNode;
-                                    while (n != null) {
-
-                                        /* Add implementing object to cache */
-                                        if ((n.mFlags & Node.DO_NOT_REUSE) == 0) {
-                                            Object candidate = n.mObject;
-                                            boolean include = false;
-                                            if (clazz.isInstance(candidate)
-                                                    && (numTags == 0 || n.hasTag(tags))) {
-                                                if (directArray) {
-                                                    throw new GluingException(
-                                                            "Conflicting injections "
-                                                                    + niceClassName(children[cacheLen - 1].mObject
-                                                                            .getClass())
-                                                                    + " and "
-                                                                    + niceClassName(candidate
-                                                                            .getClass())
-                                                                    + " for "
-                                                                    + niceClassName(instance
-                                                                            .getClass()) + "."
-                                                                    + field.getName());
-                                                }
-                                                include = true;
-                                            } else if (!directArray && array != null
-                                                    && array.isInstance(candidate)
-                                                    && (numTags == 0 || n.hasTag(tags))) {
-                                                if (cacheLen != 0) {
-                                                    throw new GluingException(
-                                                            "Conflicting injections "
-                                                                    + niceClassName(children[cacheLen - 1].mObject
-                                                                            .getClass())
-                                                                    + " and "
-                                                                    + niceClassName(candidate
-                                                                            .getClass())
-                                                                    + " for "
-                                                                    + niceClassName(instance
-                                                                            .getClass()) + "."
-                                                                    + field.getName());
-                                                }
-                                                directArray = true;
-                                                include = true;
-                                            }
-                                            if (include) {
-                                                if (cacheLen == childrenLen) {
-                                                    childrenLen += ARRAY_INCREMENT_SIZE;
-                                                    Node[] temp = new Node[childrenLen];
-                                                    System.arraycopy(children, 0, temp, 0, cacheLen);
-                                                    children = temp;
-                                                }
-                                                children[cacheLen++] = n;
-                                            }
-                                        }
-                                        n = n.mNext;
-                                    }
+                    try {
+                        if (cached != null) {
+
+                            /* Mark for sorting */
+                            Object[] objs = cached.mObjects;
+                            if (sort && !toBeSorted.containsKey(objs)) {
+                                toBeSorted.put(objs, objs);
+                                final Node[] children = cached.mNodes;
+                                final int numChildren = cached.mNumNodes;
+                                for (int i = 0; i < numChildren; i++) {
+                                    children[i].mFlags |= Node.WILL_BE_SORTED;
+                                }
+                            }
 
+                            /* Perform injection */
+                            if (array != null) {
+                                if (cached.mDirectArray) {
+                                    assign(assignments, instance, field, objs[0], stats);
+                                    if (vital) {
+                                        node.addChild(cached.mNodes[0]);
+                                    }
+                                } else {
                                     /*
-                                     * Create implementing objects using all
-                                     * factories.
+                                     * NOTE: When we just cached the
+                                     * array there is no need to do
+                                     * substitutions of
+                                     * non-singletons in it.
                                      */
-                                    boolean generic = true;
-                                    if (vital) {
-                                        Factory factory = factories;
-                                        while (factory != null) {
-                                            if (factory.mStatus != Factory.UNRESOLVABLE
-                                                    && (factory.mNonSingleton || factory.mStatus != Factory.EXECUTED)) {
+                                    if (cached.mGeneric || justCached) {
+                                        assign(assignments, instance, field, objs, stats);
+
+                                        /* Add dependencies to graph */
+                                        if (vital) {
+                                            node.addChildren(cached.mNodes,
+                                                    cached.mNumNodes);
+                                        }
+                                    } else {
+                                        /*
+                                         * Create new instances
+                                         * of non-singletons in
+                                         * an array.
+                                         */
+                                        Object[] cacheObjs = objs;
+                                        final int cacheObjsLen = cacheObjs.length;
+                                        Object[] unique = (Object[])Array
+                                                .newInstance(clazz, cacheObjsLen);
+                                        System.arraycopy(cacheObjs, 0, unique, 0,
+                                                cacheObjsLen);
+                                        Node[] uniqueChildren = new Node[cacheObjsLen];
+                                        System.arraycopy(cached.mNodes, 0,
+                                                uniqueChildren, 0, cacheObjsLen);
+                                        final Node[] cacheNodes = cached.mNodes;
+                                        for (int i = 0; i < cacheObjsLen; i++) {
+                                            Node original = cacheNodes[i];
+                                            if ((original.mFlags & Node.DO_NOT_REUSE) != 0) {
+                                                Class<?> factoryClazz = original.mObject
+                                                        .getClass();
+
                                                 /*
-                                                 * Check that the product is
-                                                 * applicable.
+                                                 * Inject the
+                                                 * same product
+                                                 * as last time
+                                                 * when there
+                                                 * is one.
                                                  */
-                                                Class<?> factoryClazz = factory.mClazz;
-                                                if (clazz.isAssignableFrom(factoryClazz)
-                                                        && (numTags == 0 || factory.hasTag(tags))) {
-
+                                                Node product = tracked(index,
+                                                        point, factoryClazz);
+                                                if (product != null) {
+                                                    product.mFlags = original.mFlags;
+                                                    product.mChildren = null;
+                                                    product.mChildrenLen = 0;
+                                                } else {
                                                     /*
-                                                     * Find the context of this
-                                                     * factory.
+                                                     * Run the factory,
+                                                     * using a recycled
+                                                     * product when there
+                                                     * is one.
                                                      */
-                                                    Context prodCtxt = factory.mContext;
+                                                    Factory factory = factories;
+                                                    while (factory != null
+                                                            && factory.mClazz != factoryClazz) {
+                                                        factory = factory.mNext;
+                                                    }
+                                                    Object obj = (factory != null ? produce(
+                                                            factory, stats) : construct(
+                                                            factoryClazz, stats));
+                                                    product = new Node(obj);
 
                                                     /*
-                                                     * Make sure the class has
-                                                     * access to all the types
-                                                     * it needs.
+                                                     * Inherit
+                                                     * from
+                                                     * original
                                                      */
-                                                    if (factory.mStatus == Factory.EXECUTED
-                                                            || isResolvable(factory, prodCtxt,
-                                                                    views, viewsLen, firstNode,
-                                                                    nodesLen, factories,
-                                                                    factoriesLen, factoryPath,
-                                                                    idCache)) {
-
-                                                        /* Produce object */
-                                                        try {
-                                                            Node product = factory.mProduct;
+                                                    product.mContext = original.mContext;
+                                                    product.mTags = original.mTags;
+                                                    product.mTagsLen = original.mTagsLen;
+                                                    product.mFlags |= original.mFlags;
+                                                }
+                                                tracking = track(tracking, trackingLen,
+                                                        index, point, product);
+                                                trackingLen += 2;
 
-                                                            /*
-                                                             * Skip creation in
-                                                             * case this is not
-                                                             * a singleton and
-                                                             * there is already
-                                                             * an instance of
-                                                             * the product in
-                                                             * the field.
-                                                             */
-                                                            /*
-                                                             * NOTE: Since we
-                                                             * are comparing
-                                                             * class-types and
-                                                             * different context
-                                                             * sensitive classes
-                                                             * are created using
-                                                             * different
-                                                             * class-loaders, it
-                                                             * is safe to assume
-                                                             * that on a match
-                                                             * we have an
-                                                             * instance having
-                                                             * the expected
-                                                             * origin.
-                                                             */
-                                                            if (mProcessed && factory.mNonSingleton) {
-                                                                try {
-                                                                    Object reuse = null;
-                                                                    if (!fieldChecked) {
-                                                                        fieldObject = field
-                                                                                .get(instance);
-                                                                        if (fieldObject != null) {
-                                                                            fieldObjectClazz = fieldObject
-                                                                                    .getClass();
-                                                                        }
-                                                                        fieldChecked = true;
-                                                                    }
-                                                                    if (fieldObject != null) {
-                                                                        if (array == null) {
-                                                                            if (fieldObjectClazz == factoryClazz) {
-                                                                                reuse = fieldObject;
-                                                                            }
-                                                                        } else {
-                                                                            /*
-                                                                             * Scan
-                                                                             * the
-                                                                             * array
-                                                                             */
-                                                                            Object[] arr = (Object[])fieldObject;
-                                                                            final int arrLen = arr.length;
-                                                                            for (int i = 0; i < arrLen; i++) {
-                                                                                Object entry = arr[i];
-                                                                                if (factoryClazz == entry
-                                                                                        .getClass()) {
-                                                                                    reuse = entry;
-                                                                                    break;
-                                                                                }
-                                                                            }
-                                                                        }
-                                                                    }
-
-                                                                    /*
-                                                                     * Create
-                                                                     * node for
-                                                                     * reused
-                                                                     * object
-                                                                     */
-                                                                    if (reuse != null) {
-                                                                        product = new Node(reuse);
-                                                                        product.mContext = prodCtxt;
-                                                                        product.mFlags |= Node.DO_NOT_REUSE;
-                                                                        final int[] factoryTags = factory.mTags;
-                                                                        if (factoryTags != null) {
-                                                                            product.mTags = factoryTags;
-                                                                            product.mTagsLen = factory.mTagsLen;
-                                                                        }
-                                                                    }
-                                                                } catch (IllegalArgumentException e) {
-                                                                    /* Ignore */
-                                                                } catch (IllegalAccessException e) {
-                                                                    /* Ignore */
-                                                                }
-                                                            }
+                                                /*
+                                                 * Append to end
+                                                 * of node list.
+                                                 */
+                                                final Node last = lastNode;
+                                                product.mPrev = last;
+                                                product.mNext = null;
+                                                last.mNext = product;
+                                                lastNode = product;
+                                                nodesLen++;
 
-                                                            /*
-                                                             * Only create
-                                                             * product when one
-                                                             * is not already
-                                                             * available.
-                                                             */
-                                                            if (product == null) {
-
-                                                                /*
-                                                                 * Run the
-                                                                 * factory.
-                                                                 */
-                                                                Constructor<?> constructor = factoryClazz
-                                                                        .getDeclaredConstructor();
-                                                                constructor.setAccessible(true);
-                                                                final Object obj = constructor
-                                                                        .newInstance();
-
-                                                                /*
-                                                                 * Include
-                                                                 * object.
-                                                                 */
-                                                                product = new Node(obj);
-
-                                                                /*
-                                                                 * Put in
-                                                                 * correct
-                                                                 * context.
-                                                                 */
-                                                                product.mContext = prodCtxt;
-
-                                                                /*
-                                                                 * Mark it with
-                                                                 * same tags as
-                                                                 * factory.
-                                                                 */
-                                                                final int[] factoryTags = factory.mTags;
-                                                                if (factoryTags != null) {
-                                                                    product.mTags = factoryTags;
-                                                                    product.mTagsLen = factory.mTagsLen;
-                                                                }
+                                                /*
+                                                 * Alter
+                                                 * reference
+                                                 * list copy.
+                                                 */
+                                                unique[i] = product.mObject;
+                                                uniqueChildren[i] = product;
+                                            }
+                                        }
 
-                                                                /*
-                                                                 * Associate
-                                                                 * product with
-                                                                 * factory.
-                                                                 */
-                                                                if (factory.mNonSingleton) {
-                                                                    product.mFlags |= Node.DO_NOT_REUSE;
-                                                                    generic = false;
-                                                                } else {
-                                                                    factory.mProduct = product;
-                                                                }
-                                                            }
+                                        /* Mark for sorting */
+                                        if (sort) {
+                                            toBeSorted.put(unique, unique);
+                                        }
 
-                                                            /*
-                                                             * Mark factory as
-                                                             * used at least
-                                                             * once.
-                                                             */
-                                                            factory.mStatus = Factory.EXECUTED;
+                                        /*
+                                         * Inject the unique
+                                         * reference list.
+                                         */
+                                        assign(assignments, instance, field, unique, stats);
 
-                                                            /*
-                                                             * Append to end of
-                                                             * node list to
-                                                             * ensure it will be
-                                                             * processed.
-                                                             */
-                                                            final Node last = lastNode;
-                                                            product.mPrev = last;
-                                                            product.mNext = null;
-                                                            last.mNext = product;
-                                                            lastNode = product;
-                                                            nodesLen++;
-
-                                                            /* Add as child */
-                                                            if (cacheLen == childrenLen) {
-                                                                childrenLen += ARRAY_INCREMENT_SIZE;
-                                                                Node[] temp = new Node[childrenLen];
-                                                                System.arraycopy(children, 0, temp,
-                                                                        0, cacheLen);
-                                                                children = temp;
-                                                            }
-                                                            children[cacheLen++] = product;
-                                                        } catch (InstantiationException e) {
-                                                            throw new GluingException(
-                                                                    "Factory class "
-                                                                            + factoryClazz
-                                                                                    .getCanonicalName()
-                                                                            + " is abstract");
-                                                        } catch (IllegalAccessException e) {
-                                                            throw new GluingException(
-                                                                    "Could not access constructor of "
-                                                                            + factoryClazz
-                                                                                    .getCanonicalName());
-                                                        } catch (InvocationTargetException e) {
-                                                            throw new GluingException(
-                                                                    "Uncaught exception during object creation",
-                                                                    e.getCause());
-                                                        } catch (SecurityException e) {
-                                                            throw new GluingException(
-                                                                    "Not allowed to access constructor of "
-                                                                            + factoryClazz
-                                                                                    .getCanonicalName());
-                                                        } catch (NoSuchMethodException e) {
-                                                            throw new GluingException(
-                                                                    factoryClazz.getCanonicalName()
-                                                                            + " has no constructor that takes zero arguments");
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                            factory = factory.mNext;
+                                        /*
+                                         * Add dependencies to
+                                         * graph.
+                                         */
+                                        if (vital) {
+                                            node.addChildren(uniqueChildren,
+                                                    cacheObjsLen);
                                         }
                                     }
+                                }
+                            } else {
+                                final int fieldDataLength = cached.mObjects.length;
+                                if (fieldDataLength != 1) {
+                                    if (trace != null) {
+                                        trace.add(Trace.FAIL, field, Trace.SEVERAL, null);
+                                    }
+                                    throw new GluingException(
+                                            "Several objects available for "
+                                                    + instance.getClass()
+                                                            .getCanonicalName() + "."
+                                                    + field.getName());
+                                }
+                                assign(assignments, instance, field, cached.mObjects[0], stats);
 
-                                    /*
-                                     * Look for compatible view in case such are
-                                     * available.
-                                     */
-                                    Object obj = null;
-                                    if (View.class.isAssignableFrom(clazz)
-                                            && (id & 0xff000000) != 0) {
-
-                                        /* Check in cache */
-                                        Object o = idCache.get(id);
-                                        if (clazz.isInstance(o)) {
-                                            obj = o;
-                                        } else {
+                                /* Add dependency to graph */
+                                if (vital) {
+                                    node.addChild(cached.mNodes[0]);
+                                }
+                            }
+                        } else if (vital) {
+                            if (trace != null) {
+                                trace.add(Trace.FAIL, field, Trace.NOTHING, null);
+                            }
+                            throw new GluingException("Nothing to inject into "
+                                    + instance.getClass().getCanonicalName() + "."
+                                    + field.getName());
+                        } else {
+                            assign(assignments, instance, field, null, stats);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        internalError(e);
+                    } catch (IllegalAccessException e) {
+                        internalError(e);
+                    }
+                }
 
-                                            /* Check all views for ID */
-                                            View v = null;
-                                            for (int l = 0; l < viewsLen; l++) {
-                                                View candidate = views[l].findViewById(id);
-                                                if (clazz.isInstance(candidate)) {
-                                                    v = candidate;
-                                                }
-                                            }
+                /* Forget products no longer injected */
+                node.mProducts = tracking;
+                node.mProductsLen = trackingLen;
+            }
 
-                                            /*
-                                             * Check activity for view when
-                                             * possible.
-                                             */
-                                            if (v == null && ctxt instanceof Activity) {
-                                                v = ((Activity)ctxt).findViewById(id);
-                                            }
+            /* Iterate over all objects */
+            node = node.mNext;
+        }
 
-                                            /* Attempt to inflate */
-                                            if (v == null && ctxt != null) {
-                                                try {
-                                                    v = ((LayoutInflater)ctxt
-                                                            .getSystemService(Service.LAYOUT_INFLATER_SERVICE))
-                                                            .inflate(id, null);
-                                                } catch (InflateException e) {
-                                                    /* Ignore */
-                                                } catch (NotFoundException e) {
-                                                    /* Ignore */
-                                                }
-                                            }
+        /* Calculate dependency sequence */
+        long sortStart = 0;
+        if (stats != null) {
+            sortStart = System.nanoTime();
+        }
+        Sequence sequence = mSequence;
+        if (!toBeSorted.isEmpty()) {
+            if (sequence == null) {
+                sequence = new Sequence();
+                mSequence = sequence;
+            }
+            sequence.update(firstNode, nodesLen, Node.WILL_BE_SORTED, counts);
+        }
 
-                                            /*
-                                             * Add view as node in when it is
-                                             * compatible with the class we are
-                                             * looking for.
-                                             */
-                                            if (clazz.isInstance(v)) {
-                                                obj = v;
+        /* Sort all entries in injected arrays by dependency order */
+        for (Object[] injected : toBeSorted.keySet()) {
+            /*
+             * NOTE: Each entry is represented by its position in the
+             * dependency sequence in the upper half and its current index
+             * in the lower half of a key, which makes the sort stable and
+             * lets entries sharing a position, or without one, keep their
+             * relative order.
+             */
+            final int injectedLen = injected.length;
+            long[] keys = new long[injectedLen];
+            for (int i = 0; i < injectedLen; i++) {
+                final long pos = sequence.position(injected[i]);
+                keys[i] = (pos << 32) | i;
+            }
+            Arrays.sort(keys);
+            Object sorted[] = new Object[injectedLen];
+            for (int i = 0; i < injectedLen; i++) {
+                sorted[i] = injected[(int)keys[i]];
+            }
 
-                                                /* Add to cache */
-                                                idCache.put(id, obj);
-                                            }
-                                        }
-                                    }
+            /* Order objects with circular dependencies among themselves */
+            int start = 0;
+            for (int i = 1; i <= injectedLen; i++) {
+                final long pos = keys[start] >>> 32;
+                if (i == injectedLen || (keys[i] >>> 32) != pos) {
+                    final int runLen = i - start;
+                    if (runLen > 1 && pos != Integer.MAX_VALUE) {
+                        long[] ranks = new long[runLen];
+                        for (int j = 0; j < runLen; j++) {
+                            ranks[j] = ((long)sequence.rank(sorted[start + j]) << 32) | j;
+                        }
+                        Arrays.sort(ranks);
+                        Object[] run = new Object[runLen];
+                        System.arraycopy(sorted, start, run, 0, runLen);
+                        for (int j = 0; j < runLen; j++) {
+                            sorted[start + j] = run[(int)ranks[j]];
+                        }
+                    }
+                    start = i;
+                }
+            }
 
-                                    /*
-                                     * See if we can find something in the
-                                     * context that can be injected.
-                                     */
-                                    if (ctxt != null && obj == null) {
-                                        if (numTags == 0) {
-                                            if (clazz == ApplicationInfo.class) {
-                                                obj = ctxt.getApplicationInfo();
-                                            } else if (clazz == AssetManager.class) {
-                                                obj = ctxt.getAssets();
-                                            } else if (clazz == ClassLoader.class) {
-                                                obj = ctxt.getClassLoader();
-                                            } else if (clazz == ContentResolver.class) {
-                                                obj = ctxt.getContentResolver();
-                                            } else if (clazz == Looper.class) {
-                                                obj = ctxt.getMainLooper();
-                                            } else if (clazz == PackageManager.class) {
-                                                obj = ctxt.getPackageManager();
-                                            } else if (clazz == Resources.class) {
-                                                obj = ctxt.getResources();
-                                            } else if (clazz == AccessibilityManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.ACCESSIBILITY_SERVICE);
-                                            } else if (clazz == AccountManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.ACCOUNT_SERVICE);
-                                            } else if (clazz == ActivityManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.ACTIVITY_SERVICE);
-                                            } else if (clazz == AlarmManager.class) {
-                                                obj = ctxt.getSystemService(Context.ALARM_SERVICE);
-                                            } else if (clazz == AudioManager.class) {
-                                                obj = ctxt.getSystemService(Context.AUDIO_SERVICE);
-                                            } else if (clazz == ConnectivityManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.CONNECTIVITY_SERVICE);
-                                            } else if (clazz == DevicePolicyManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.DEVICE_POLICY_SERVICE);
-                                            } else if (clazz == DropBoxManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.DROPBOX_SERVICE);
-                                            } else if (clazz == InputMethodManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.INPUT_METHOD_SERVICE);
-                                            } else if (clazz == KeyguardManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.KEYGUARD_SERVICE);
-                                            } else if (clazz == LayoutInflater.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-                                            } else if (clazz == LocationManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.LOCATION_SERVICE);
-                                            } else if (clazz == NotificationManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.NOTIFICATION_SERVICE);
-                                            } else if (clazz == PowerManager.class) {
-                                                obj = ctxt.getSystemService(Context.POWER_SERVICE);
-                                            } else if (clazz == SearchManager.class) {
-                                                obj = ctxt.getSystemService(Context.SEARCH_SERVICE);
-                                            } else if (clazz == ClipboardManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.CLIPBOARD_SERVICE);
-                                            } else if (clazz == SensorManager.class) {
-                                                obj = ctxt.getSystemService(Context.SENSOR_SERVICE);
-                                            } else if (clazz == TelephonyManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.TELEPHONY_SERVICE);
-                                            } else if (clazz == UiModeManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.UI_MODE_SERVICE);
-                                            } else if (clazz == Vibrator.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.VIBRATOR_SERVICE);
-                                            } else if (clazz == WifiManager.class) {
-                                                obj = ctxt.getSystemService(Context.WIFI_SERVICE);
-                                            } else if (clazz == WindowManager.class) {
-                                                obj = ctxt.getSystemService(Context.WINDOW_SERVICE);
-                                            } else if (clazz == WallpaperManager.class) {
-                                                obj = ctxt
-                                                        .getSystemService(Context.WALLPAPER_SERVICE);
-                                            }
-                                        } else if (res != null && (id & 0xff000000) != 0) {
+            /*
+             * NOTE: The sorted array is copied back to the injected array
+             * to automatically apply the changes across all affected
+             * objects (since they already reference that array).
+             */
+            System.arraycopy(sorted, 0, injected, 0, injectedLen);
+        }
 
-                                            /* Check in cache */
-                                            Object o = idCache.get(id);
-                                            if (clazz.isInstance(o)) {
-                                                obj = o;
-                                            } else {
-                                                try {
-                                                    if (clazz == Integer.class) {
-                                                        obj = res.getColor(id);
-                                                    } else if (clazz == Boolean.class) {
-                                                        obj = res.getBoolean(id);
-                                                    } else if (clazz == Float.class) {
-                                                        obj = res.getDimension(id);
-                                                    } else if (clazz == String.class) {
-                                                        obj = res.getString(id);
-                                                    } else if (clazz == Drawable.class) {
-                                                        obj = res.getDrawable(id);
-                                                    } else if (clazz == ColorStateList.class) {
-                                                        obj = res.getColorStateList(id);
-                                                    } else if (clazz == XmlResourceParser.class
-                                                            || clazz == XmlPullParser.class) {
-                                                        obj = res.getXml(id);
-                                                    }
-                                                } catch (NotFoundException e1) {
-                                                    try {
-                                                        if (!directArray && array != null) {
-                                                            if (clazz == String.class) {
-                                                                obj = res.getStringArray(id);
-                                                                directArray = true;
-                                                            } else if (clazz == Integer.class) {
-                                                                obj = res.getIntArray(id);
-                                                                directArray = true;
-                                                            }
-                                                        }
-                                                    } catch (NotFoundException e2) {
-                                                        /* Ignore */
-                                                    }
-                                                }
+        if (stats != null) {
+            stats.mSortTime = System.nanoTime() - sortStart;
+        }
 
-                                                /* Add to cache */
-                                                if (obj != null) {
-                                                    idCache.put(id, obj);
-                                                }
-                                            }
-                                        }
-                                    }
+        /* Make deferred assignments */
+        if (assignments != null && plan == null) {
+            long assignStart = 0;
+            if (stats != null) {
+                assignStart = System.nanoTime();
+            }
+            assignments.run(executor);
+            if (stats != null) {
+                stats.mAssignmentTime += System.nanoTime() - assignStart;
+                stats.mReflectiveCalls += assignments.mLen;
+            }
+        }
 
-                                    /* Add as child */
-                                    /*
-                                     * The resource is not added as a node since
-                                     * it was not included by the user, and we
-                                     * would also get into some trouble figuring
-                                     * out if an object was already added.
-                                     */
-                                    if (obj != null) {
-                                        final Node product = new Node(obj);
-                                        if (cacheLen == childrenLen) {
-                                            childrenLen += ARRAY_INCREMENT_SIZE;
-                                            Node[] temp = new Node[childrenLen];
-                                            System.arraycopy(children, 0, temp, 0, cacheLen);
-                                            children = temp;
-                                        }
-                                        children[cacheLen++] = product;
-                                    }
+        /* Forget factory products */
+        /*
+         * NOTE: Since the factories have references to their product, they
+         * will not be lost.
+         */
+        if (mLastNode != null) {
+            mLastNode.mNext = null;
+        }
+
+        /* Remember which state of the parent this is based on */
+        /*
+         * NOTE: This includes any changes made by the lookups in the parent.
+         */
+        if (mParent != null) {
+            mParentGeneration = mParent.generation();
+        }
+        if (stats != null) {
+            stats.mTotalTime = System.nanoTime() - startTime;
+        }
+        if (event != null) {
+            FlightEvents.commit(event, mNumNodes, mNumFactories, nodesLen,
+                    stats.mPreprocessTime, stats.mValidationTime, stats.mInstantiationTime,
+                    stats.mLookupTime, stats.mAssignmentTime, stats.mSortTime,
+                    stats.mConstructorCalls, stats.mResolveCalls);
+        }
+    }
+
+    /**
+     * Looks up the object of the given type that would be injected into a
+     * field of that type tagged with the given tags. The object mesh is glued
+     * together first unless it is already robust. Factories producing
+     * singletons are used just as for injections, and their products are kept
+     * for as long as the factory is part of the mesh. Factories of other
+     * classes are not used, since there would be nothing to own their
+     * products.
+     * <p>
+     * Answers are remembered until the mesh is changed, so repeated lookups
+     * are cheap.
+     * 
+     * @param clazz The type of the object to look up.
+     * @param tags The tags of the object, including {@link #OPTIONAL} when it
+     *            is acceptable that there is no such object.
+     * @return The object, or null when there is no such object and the lookup
+     *         is {@link #OPTIONAL}.
+     * @throws GluingException when there is no single object of the type
+     *             available, or when the mesh cannot be glued together.
+     * @see #getAll(Class, int...)
+     */
+    public final <T> T get(Class<T> clazz, int... tags) throws GluingException {
+        final T[] found = getAll(clazz, tags);
+        if (found.length == 1) {
+            return found[0];
+        } else if (found.length > 1) {
+            throw new GluingException("Several objects available for "
+                    + clazz.getCanonicalName());
+        }
+        for (int tag : tags) {
+            if (tag == OPTIONAL) {
+                return null;
+            }
+        }
+        throw new GluingException("Nothing available for " + clazz.getCanonicalName());
+    }
+
+    /**
+     * Looks up all objects of the given type that would be injected into an
+     * array of that type tagged with the given tags. Apart from that it works
+     * like {@link #get(Class, int...)}, and when the tags include
+     * {@link #ORDERED} the objects are given in dependency order.
+     * 
+     * @param clazz The type of the objects to look up.
+     * @param tags The tags of the objects.
+     * @return The objects, or an empty array when there are none. The array
+     *         must not be modified.
+     * @throws GluingException when the mesh cannot be glued together.
+     * @see #get(Class, int...)
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T[] getAll(Class<T> clazz, int... tags) throws GluingException {
+        pin();
+        try {
+            /* Look for a previous answer */
+            checkParent();
+            final TaggedClass key = new TaggedClass(tags, clazz);
+            HashMap<TaggedClass, Object[]> answers = mAnswers;
+            HashMap<TaggedClass, WeakReference<Object[]>> weakAnswers = mWeakAnswers;
+            if (mRobust && mAnswersModCount == mModCount) {
+                if (answers != null) {
+                    final Object[] answer = answers.get(key);
+                    if (answer != null) {
+                        return (T[])answer;
+                    }
+                }
+                if (weakAnswers != null) {
+                    final WeakReference<Object[]> ref = weakAnswers.get(key);
+                    final Object[] answer = (ref != null ? ref.get() : null);
+                    if (answer != null) {
+                        return (T[])answer;
+                    }
+                }
+            }
 
-                                    /* Convert to primitive array when necessary */
-                                    if (array != null && array.getComponentType().isPrimitive()
-                                            && !directArray) {
-                                        Object target = null;
-                                        if (array == int[].class) {
-                                            int[] temp = new int[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Integer)children[i].mObject).intValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == float[].class) {
-                                            float[] temp = new float[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Float)children[i].mObject).floatValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == boolean[].class) {
-                                            boolean[] temp = new boolean[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Boolean)children[i].mObject)
-                                                        .booleanValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == long[].class) {
-                                            long[] temp = new long[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Long)children[i].mObject).longValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == double[].class) {
-                                            double[] temp = new double[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Double)children[i].mObject)
-                                                        .doubleValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == char[].class) {
-                                            char[] temp = new char[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Character)children[i].mObject)
-                                                        .charValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == short[].class) {
-                                            short[] temp = new short[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Short)children[i].mObject).shortValue();
-                                            }
-                                            target = temp;
-                                        } else if (array == byte[].class) {
-                                            byte[] temp = new byte[cacheLen];
-                                            for (int i = 0; i < cacheLen; i++) {
-                                                temp[i] = ((Byte)children[i].mObject).byteValue();
-                                            }
-                                            target = temp;
-                                        }
-                                        Node arr = new Node(target);
-                                        children[0] = arr;
-                                        cacheLen = 1;
-                                        directArray = true;
-                                    }
+            /* Sort out the tags */
+            boolean vital = true;
+            boolean sort = false;
+            int numTags = 0;
+            for (int tag : tags) {
+                if (tag == OPTIONAL) {
+                    vital = false;
+                } else if (tag == ORDERED) {
+                    sort = true;
+                } else {
+                    numTags++;
+                }
+            }
 
-                                    /* Convert cache */
-                                    /*
-                                     * NOTE: This is the actual array that will
-                                     * be injected later.
-                                     */
-                                    if (cacheLen > 0) {
-                                        final Object[] typed;
-                                        if (directArray) {
-                                            clazz = array;
-                                        }
-                                        typed = (Object[])Array.newInstance(clazz, cacheLen);
-                                        for (int k = 0; k < cacheLen; k++) {
-                                            typed[k] = children[k].mObject;
-                                        }
-                                        justCached = true;
-                                        cached = new Implementors(typed, children, cacheLen,
-                                                directArray, generic);
-                                        implCache.put(key, cached);
-                                        key = null;
-                                    }
-                                }
+            /* Make sure products of matching singleton factories are available */
+            /*
+             * NOTE: A frozen mesh only gives what has already been produced.
+             */
+            if (vital && mFrozen == null) {
+                Factory factory = mFactories;
+                while (factory != null) {
+                    if (!factory.mDemanded && !factory.mNonSingleton
+                            && clazz.isAssignableFrom(factory.mClazz)
+                            && (numTags == 0 || factory.hasTag(tags))) {
+                        factory.mDemanded = true;
+                        mRobust = false;
+                        mModCount++;
+                    }
+                    factory = factory.mNext;
+                }
+            }
+            apply();
 
-                                try {
-                                    if (cached != null) {
+            /* Collect matching objects */
+            ArrayList<Object> found = new ArrayList<Object>();
+            boolean weak = false;
+            Node node = mFirstNode;
+            while (node != null) {
+                if (clazz.isInstance(node.mObject) && (numTags == 0 || node.hasTag(tags))) {
+                    found.add(node.mObject);
+                    if (node.mWeak != null) {
+                        weak = true;
+                    }
+                }
+                node = node.mNext;
+            }
+            Factory factory = mFactories;
+            while (factory != null) {
+                final Node product = factory.mProduct;
+                if (product != null && factory.mStatus == Factory.EXECUTED
+                        && clazz.isInstance(product.mObject)
+                        && (numTags == 0 || product.hasTag(tags))) {
+                    found.add(product.mObject);
+                }
+                factory = factory.mNext;
+            }
+            final T[] answer = found.toArray((T[])Array.newInstance(clazz, found.size()));
+
+            /* Sort by dependency */
+            if (sort && answer.length > 1) {
+                final Sequence sequence = lifecycle(false);
+                final int answerLen = answer.length;
+                long[] keys = new long[answerLen];
+                for (int i = 0; i < answerLen; i++) {
+                    keys[i] = ((long)sequence.position(answer[i]) << 32) | i;
+                }
+                Arrays.sort(keys);
+                final Object[] unsorted = answer.clone();
+                for (int i = 0; i < answerLen; i++) {
+                    answer[i] = (T)unsorted[(int)keys[i]];
+                }
+            }
 
-                                        /* Mark for sorting */
-                                        Object[] objs = cached.mObjects;
-                                        if (sort && !toBeSorted.contains(objs)) {
-                                            toBeSorted.add(objs);
-                                            final Node[] children = cached.mNodes;
-                                            final int numChildren = cached.mNumNodes;
-                                            for (int i = 0; i < numChildren; i++) {
-                                                children[i].mFlags |= Node.WILL_BE_SORTED;
-                                            }
-                                        }
+            /* Remember the answer */
+            /*
+             * NOTE: Collected objects are purged before the answers are
+             * looked at, and purging counts as a change, why an answer that
+             * is still referenced never includes a collected object.
+             */
+            if (mAnswersModCount != mModCount) {
+                answers = null;
+                weakAnswers = null;
+                mAnswers = null;
+                mWeakAnswers = null;
+                mAnswersModCount = mModCount;
+            }
+            key.mTags = tags.clone();
+            if (weak) {
+                if (weakAnswers == null) {
+                    weakAnswers = new HashMap<TaggedClass, WeakReference<Object[]>>();
+                    mWeakAnswers = weakAnswers;
+                }
+                weakAnswers.put(key, new WeakReference<Object[]>(answer));
+            } else {
+                if (answers == null) {
+                    answers = new HashMap<TaggedClass, Object[]>();
+                    mAnswers = answers;
+                }
+                answers.put(key, answer);
+            }
+            return answer;
+        } finally {
+            unpin();
+        }
+    }
 
-                                        /* Perform injection */
-                                        if (array != null) {
-                                            if (cached.mDirectArray) {
-                                                field.set(instance, objs[0]);
-                                                if (vital) {
-                                                    node.addChild(cached.mNodes[0]);
-                                                }
-                                            } else {
-                                                /*
-                                                 * NOTE: When we just cached the
-                                                 * array there is no need to do
-                                                 * substitutions of
-                                                 * non-singletons in it.
-                                                 */
-                                                if (cached.mGeneric || justCached) {
-                                                    field.set(instance, objs);
+    /**
+     * Gives the dependency sequence of all objects in the mesh, updating it
+     * only when the mesh has changed since it was last updated.
+     * 
+     * @param hold Whether to hold on to the sequence even when there are
+     *            weakly added objects, which it would keep from being
+     *            collected.
+     * @return The dependency sequence.
+     */
+    private Sequence lifecycle(boolean hold) {
+        Sequence lifecycle = mLifecycle;
+        if (lifecycle == null && mWeakLifecycle != null) {
+            lifecycle = mWeakLifecycle.get();
+        }
+        final boolean fresh = (lifecycle == null);
+        if (fresh) {
+            lifecycle = new Sequence();
+        }
+        if (fresh || mLifecycleModCount != mModCount) {
+            lifecycle.update(mFirstNode, mNumNodes, 0, mCounts);
+            mLifecycleModCount = mModCount;
+        }
 
-                                                    /* Add dependencies to graph */
-                                                    if (vital) {
-                                                        node.addChildren(cached.mNodes,
-                                                                cached.mNumNodes);
-                                                    }
-                                                } else {
-                                                    try {
-                                                        /*
-                                                         * Create new instances
-                                                         * of non-singletons in
-                                                         * an array.
-                                                         */
-                                                        Object[] cacheObjs = objs;
-                                                        final int cacheObjsLen = cacheObjs.length;
-                                                        Object[] unique = (Object[])Array
-                                                                .newInstance(clazz, cacheObjsLen);
-                                                        System.arraycopy(cacheObjs, 0, unique, 0,
-                                                                cacheObjsLen);
-                                                        Node[] uniqueChildren = new Node[cacheObjsLen];
-                                                        System.arraycopy(cached.mNodes, 0,
-                                                                uniqueChildren, 0, cacheObjsLen);
-                                                        final Node[] cacheNodes = cached.mNodes;
-                                                        for (int i = 0; i < cacheObjsLen; i++) {
-                                                            Node original = cacheNodes[i];
-                                                            if ((original.mFlags & Node.DO_NOT_REUSE) != 0) {
-                                                                Class<?> factoryClazz = original.mObject
-                                                                        .getClass();
-                                                                Constructor<?> constructor = factoryClazz
-                                                                        .getDeclaredConstructor();
-                                                                constructor.setAccessible(true);
-
-                                                                /*
-                                                                 * Include
-                                                                 * object.
-                                                                 */
-                                                                Object obj = constructor
-                                                                        .newInstance();
-                                                                Node product = new Node(obj);
-
-                                                                /*
-                                                                 * Inherit from
-                                                                 * original
-                                                                 */
-                                                                product.mContext = original.mContext;
-                                                                product.mTags = original.mTags;
-                                                                product.mTagsLen = original.mTagsLen;
-                                                                product.mFlags |= original.mFlags;
-
-                                                                /*
-                                                                 * Append to end
-                                                                 * of node list.
-                                                                 */
-                                                                final Node last = lastNode;
-                                                                product.mPrev = last;
-                                                                product.mNext = null;
-                                                                last.mNext = product;
-                                                                lastNode = product;
-                                                                nodesLen++;
-
-                                                                /*
-                                                                 * Alter
-                                                                 * reference
-                                                                 * list copy.
-                                                                 */
-                                                                unique[i] = obj;
-                                                            }
-                                                        }
+        /* Keep the sequence */
+        if (hold || mNumWeak == 0) {
+            mLifecycle = lifecycle;
+            mWeakLifecycle = null;
+        } else if (mLifecycle != null || mWeakLifecycle == null
+                || mWeakLifecycle.get() != lifecycle) {
+            mLifecycle = null;
+            mWeakLifecycle = new WeakReference<Sequence>(lifecycle);
+        }
+        return lifecycle;
+    }
 
-                                                        /* Mark for sorting */
-                                                        if (sort) {
-                                                            toBeSorted.add(unique);
-                                                        }
+    /**
+     * Injects all tagged fields of an object that is not part of the object
+     * mesh, using the objects of the mesh. Each field gets what
+     * {@link #get(Class, int...)}, or {@link #getAll(Class, int...)} for
+     * arrays, would give for its type and tags, why the answers remembered by
+     * those methods are reused. The mesh itself is only glued together again
+     * when it is not already robust, or when a singleton factory has to produce
+     * its object for the first time.
+     * <p>
+     * Factories of classes that are not singletons produce new objects for the
+     * target alone, just as they would for an object in the mesh. These
+     * objects are injected the same way as the target, and factories whose
+     * objects cannot be injected are left out.
+     * <p>
+     * Since the target is not part of the mesh, nothing is injected with the
+     * target, and it is not injected again when the mesh changes. Injections
+     * identified by resource or view IDs, as well as injections of services
+     * from the context, are not supported. Use {@link #add(Object)} for objects
+     * that need any of that.
+     * 
+     * @param target The object to inject.
+     * @throws GluingException when a field cannot be injected, or when the mesh
+     *             cannot be glued together.
+     * @see #get(Class, int...)
+     */
+    public final void inject(Object target) throws GluingException {
+        inject(target, null);
+    }
 
-                                                        /*
-                                                         * Inject the unique
-                                                         * reference list.
-                                                         */
-                                                        field.set(instance, unique);
+    /**
+     * Injects an object that is not part of the object mesh.
+     * 
+     * @param target The object to inject.
+     * @param path The non-singleton factories whose objects are being
+     *            injected, or null.
+     */
+    private void inject(Object target, ArrayList<Factory> path) throws GluingException {
+        if (!(target instanceof Gluey)) {
+            return;
+        }
+        final InjectionPoint[] points = getInjectionPoints(target.getClass());
+        final int pointsLen = points.length;
+        for (int i = 0; i < pointsLen; i++) {
+            final InjectionPoint point = points[i];
+            final Field field = point.mField;
+            if ((point.mId & 0xff000000) != 0) {
+                throw new GluingException("Unable to inject resource into "
+                        + target.getClass().getCanonicalName() + "." + field.getName());
+            }
 
-                                                        /*
-                                                         * Add dependencies to
-                                                         * graph.
-                                                         */
-                                                        if (vital) {
-                                                            node.addChildren(uniqueChildren,
-                                                                    cacheObjsLen);
-                                                        }
-                                                    } catch (InstantiationException e) {
-                                                        internalError(e);
-                                                    } catch (IllegalAccessException e) {
-                                                        internalError(e);
-                                                    } catch (SecurityException e) {
-                                                        internalError(e);
-                                                    } catch (NoSuchMethodException e) {
-                                                        internalError(e);
-                                                    } catch (InvocationTargetException e) {
-                                                        throw new GluingException(
-                                                                "Uncaught exception during object creation",
-                                                                e.getCause());
-                                                    }
-                                                }
-                                            }
-                                        } else {
-                                            final int fieldDataLength = cached.mObjects.length;
-                                            if (fieldDataLength != 1) {
-                                                throw new GluingException(
-                                                        "Several objects available for "
-                                                                + instance.getClass()
-                                                                        .getCanonicalName() + "."
-                                                                + field.getName());
-                                            }
-                                            field.set(instance, cached.mObjects[0]);
+            /* Look up the value */
+            Object[] found = getAll(point.mClazz, point.mTags);
+            if (point.mVital) {
+                found = produce(found, point, path);
+            }
+            final int foundLen = found.length;
+            final Class<?> array = point.mArray;
+            Object value = null;
+            if (array != null) {
+                /*
+                 * NOTE: The answer is copied, since it is shared with other
+                 * lookups and may need to become a primitive array.
+                 */
+                final Class<?> componentType = array.getComponentType();
+                value = Array.newInstance(componentType, foundLen);
+                if (componentType.isPrimitive()) {
+                    for (int j = 0; j < foundLen; j++) {
+                        Array.set(value, j, found[j]);
+                    }
+                } else {
+                    System.arraycopy(found, 0, value, 0, foundLen);
+                }
+            } else if (foundLen == 1) {
+                value = found[0];
+            } else if (foundLen > 1) {
+                throw new GluingException("Several objects available for "
+                        + target.getClass().getCanonicalName() + "." + field.getName());
+            } else if (point.mVital) {
+                throw new GluingException("Nothing to inject into "
+                        + target.getClass().getCanonicalName() + "." + field.getName());
+            }
 
-                                            /* Add dependency to graph */
-                                            if (vital) {
-                                                node.addChild(cached.mNodes[0]);
-                                            }
-                                        }
-                                    } else if (vital) {
-                                        throw new GluingException("Nothing to inject into "
-                                                + instance.getClass().getCanonicalName() + "."
-                                                + field.getName());
-                                    } else {
-                                        field.set(instance, null);
-                                    }
-                                } catch (IllegalArgumentException e) {
-                                    internalError(e);
-                                } catch (IllegalAccessException e) {
-                                    internalError(e);
-                                }
-                            }
-                        }
+            /* Inject */
+            try {
+                field.set(target, value);
+            } catch (IllegalArgumentException e) {
+                internalError(e);
+            } catch (IllegalAccessException e) {
+                internalError(e);
+            }
+        }
+    }
 
-                        /* Walk up hierarchy */
-                        current = current.getSuperclass();
+    /**
+     * Adds new objects from the matching non-singleton factories to the
+     * objects found in the mesh for an injection point of an object outside
+     * the mesh.
+     * 
+     * @param found The objects found in the mesh, which must not be modified.
+     * @param point The injection point.
+     * @param path The non-singleton factories whose objects are being
+     *            injected, or null.
+     * @return The objects found followed by the new objects.
+     */
+    private Object[] produce(Object[] found, InjectionPoint point, ArrayList<Factory> path)
+            throws GluingException {
+        final Class<?> clazz = point.mClazz;
+        ArrayList<Object> produced = null;
+        Factory factory = mFactories;
+        while (factory != null) {
+            if (factory.mNonSingleton && clazz.isAssignableFrom(factory.mClazz)
+                    && (point.mNumTags == 0 || factory.hasTag(point.mTags))
+                    && (path == null || !path.contains(factory))) {
+
+                /* Inject the new object, leaving the factory out on failure */
+                /*
+                 * NOTE: The factory is kept on the path while its object is
+                 * injected, so that circular dependencies are left out too.
+                 */
+                final Object obj = produce(factory, null);
+                if (path == null) {
+                    path = new ArrayList<Factory>();
+                }
+                path.add(factory);
+                try {
+                    inject(obj, path);
+                    if (produced == null) {
+                        produced = new ArrayList<Object>();
                     }
+                    produced.add(obj);
+                } catch (GluingException e) {
+                    /* Unresolvable */
+                } finally {
+                    path.remove(path.size() - 1);
                 }
+            }
+            factory = factory.mNext;
+        }
+        if (produced == null) {
+            return found;
+        }
+        final int foundLen = found.length;
+        final Object[] all = new Object[foundLen + produced.size()];
+        System.arraycopy(found, 0, all, 0, foundLen);
+        for (int i = foundLen; i < all.length; i++) {
+            all[i] = produced.get(i - foundLen);
+        }
+        return all;
+    }
 
-                /* Iterate over all objects */
-                node = node.mNext;
+    /**
+     * Glues the object mesh together and freezes it, so that any attempt to
+     * add or remove objects, or to clear the instance, throws an
+     * {@link java.lang.IllegalStateException} until {@link #thaw()} is called.
+     * Lookups through {@link #get(Class, int...)} are still possible, but no
+     * longer make singleton factories produce their objects.
+     * <p>
+     * All injections made in the mesh are returned as a
+     * {@link com.sonyericsson.inject.GlueGraph}, which can make them again much
+     * faster than {@link #apply()}. Calling this method on a frozen instance
+     * returns the same record again.
+     * 
+     * @return The record of all injections.
+     * @throws GluingException when the mesh cannot be glued together.
+     * @see #thaw()
+     */
+    public final GlueGraph freeze() throws GluingException {
+        pin();
+        try {
+            GlueGraph graph = mFrozen;
+            if (graph != null) {
+                return graph;
             }
+            apply();
+
+            /* Record every injection */
+            final ArrayList<Object> objs = new ArrayList<Object>();
+            final ArrayList<Object> injections = walk(objs, true);
+            final int injectionsLen = injections.size() / 3;
+            Object[] targets = new Object[injectionsLen];
+            Field[] fields = new Field[injectionsLen];
+            Object[] values = new Object[injectionsLen];
+            for (int i = 0; i < injectionsLen; i++) {
+                targets[i] = objs.get((Integer)injections.get(i * 3));
+                fields[i] = ((InjectionPoint)injections.get(i * 3 + 1)).mField;
+                values[i] = injections.get(i * 3 + 2);
+            }
+            graph = new GlueGraph(targets, fields, values);
+            mFrozen = graph;
+            return graph;
+        } finally {
+            unpin();
+        }
+    }
 
-            /* Calculate dependency sequence */
-            Node[] path = new Node[nodesLen];
-            Object[] depSeq = new Object[nodesLen];
-            int idx = 0;
-            node = firstNode;
+    /**
+     * Allows the instance to be changed again after a call to
+     * {@link #freeze()}. This method does nothing when the instance is not
+     * frozen.
+     * 
+     * @see #freeze()
+     */
+    public final void thaw() {
+        mFrozen = null;
+    }
+
+    /**
+     * Tells whether the instance is frozen.
+     * 
+     * @return <code>true</code> between the calls to {@link #freeze()} and
+     *         {@link #thaw()}.
+     */
+    public final boolean isFrozen() {
+        return mFrozen != null;
+    }
+
+    /**
+     * Glues the object mesh together and records the objects produced by the
+     * factories together with everything injected into them. The recording can
+     * then be used to create new copies of those objects, see
+     * {@link com.sonyericsson.inject.Blueprint} for details.
+     * <p>
+     * Products of singleton factories are always recorded, but only when they
+     * have been produced, e.g. because they were asked for by
+     * {@link #get(Class, int...)}. Products of other factories are recorded
+     * when injected into a recorded object.
+     * <p>
+     * Views inflated from layouts, drawables and XML parsers injected into the
+     * recorded objects are looked up again for every copy. Views found among
+     * the added views or in the activity cannot be copied, and neither can
+     * arrays holding views, drawables or XML parsers.
+     * 
+     * @return The recording.
+     * @throws GluingException when the mesh cannot be glued together, or when
+     *         a recorded object has an injection that cannot be copied.
+     */
+    public final Blueprint createBlueprint() throws GluingException {
+        pin();
+        try {
+            apply();
+
+            /* Find the products and their injections */
+            final ArrayList<Object> objs = new ArrayList<Object>();
+            final ArrayList<Object> injections = walk(objs, false);
+            final int objsLen = objs.size();
+            IdentityHashMap<Object, Integer> created = new IdentityHashMap<Object, Integer>();
+            for (int i = 0; i < objsLen; i++) {
+                created.put(objs.get(i), i);
+            }
+            IdentityHashMap<Object, Object> added = new IdentityHashMap<Object, Object>();
+            Node node = mFirstNode;
             while (node != null) {
-                if ((node.mFlags & (Node.WILL_BE_SORTED | Node.MERGED | Node.VISITED)) == Node.WILL_BE_SORTED) {
-                    int pathLen = 0;
-                    start: while (true) {
-                        if ((node.mFlags & Node.MERGED) == 0) {
-                            path[pathLen] = node;
-                            node.mFlags |= Node.VISITED;
-                            for (int j = node.mLastVisit; j < node.mChildrenLen; j++) {
-
-                                /* Check if child is already in path */
-                                /*
-                                 * NOTE: When this part of the graph has been
-                                 * detected as a cycle, we simply merge all the
-                                 * cyclic nodes into one single node. This new
-                                 * node contains references to all instances in
-                                 * the previous nodes, and all of their child
-                                 * references. We do not bother to remove child
-                                 * references to nodes that are removed since
-                                 * those will be skipped in all further
-                                 * processing anyway.
-                                 */
-                                Node child = node.mChildren[j];
-                                if (child != node && (child.mFlags & Node.MERGED) == 0) {
-                                    for (int k = 0; k < pathLen; k++) {
-                                        if (path[k] == child) {
-                                            /*
-                                             * Merge all cyclic nodes with this
-                                             * node.
-                                             */
-                                            for (int l = k; l < pathLen; l++) {
-                                                Node segment = path[l];
-                                                if ((segment.mFlags & Node.MERGED) == 0) {
-                                                    segment.mFlags = (segment.mFlags & ~Node.MERGED_HEAD)
-                                                            | Node.MERGED;
-                                                    node.mFlags |= Node.MERGED_HEAD;
-                                                    Node next = node.mNextMerged;
-                                                    if (next != null) {
-                                                        segment.mNextMerged = next;
-                                                    }
-                                                    node.mNextMerged = segment;
-                                                    node.addChildren(segment.mChildren,
-                                                            segment.mChildrenLen);
-                                                }
-                                            }
-                                            child = null;
-                                            break;
-                                        }
-                                    }
+                added.put(node.mObject, node.mObject);
+                node = node.mNext;
+            }
+            HashMap<Class<?>, Context> contexts = new HashMap<Class<?>, Context>();
+            Factory factory = mFactories;
+            while (factory != null) {
+                contexts.put(factory.mClazz, factory.mContext);
+                factory = factory.mNext;
+            }
 
-                                    /* Visit child when not cyclic */
-                                    if (child != null && (child.mFlags & Node.VISITED) == 0) {
-                                        node.mLastVisit = j + 1;
-                                        pathLen++;
-                                        node = child;
-                                        continue start;
-                                    }
+            /* Record the injections */
+            final int injectionsLen = injections.size() / 3;
+            ArrayList<Object> targets = new ArrayList<Object>();
+            for (int n = 0; n < injectionsLen; n++) {
+                final int i = (Integer)injections.get(n * 3);
+                final Object obj = objs.get(i);
+                final InjectionPoint point = (InjectionPoint)injections.get(n * 3 + 1);
+                final Field field = point.mField;
+                Object value = injections.get(n * 3 + 2);
+                int source;
+                int[] slots = null;
+                int id = 0;
+                if (point.mArray != null && value != null) {
+                    source = Blueprint.ARRAY;
+                    if (value instanceof Object[]) {
+                        final Object[] template = ((Object[])value).clone();
+                        final int templateLen = template.length;
+                        int slotsLen = 0;
+                        for (int k = 0; k < templateLen; k++) {
+                            if (isPrivate(point, template[k], added)) {
+                                throw new GluingException("Unable to record injection of "
+                                        + obj.getClass().getCanonicalName() + "."
+                                        + field.getName());
+                            }
+                            final Integer idx = (template[k] != null ? created.get(template[k])
+                                    : null);
+                            if (idx != null) {
+                                if (slots == null) {
+                                    slots = new int[templateLen * 2];
                                 }
+                                slots[slotsLen++] = k;
+                                slots[slotsLen++] = idx;
+                                template[k] = null;
                             }
                         }
+                        if (slots != null && slotsLen < slots.length) {
+                            slots = Arrays.copyOf(slots, slotsLen);
+                        }
+                        value = template;
+                    }
+                } else {
+                    final Integer idx = (value != null ? created.get(value) : null);
+                    source = (idx != null ? idx : Blueprint.CONSTANT);
+                    if (idx != null) {
+                        value = null;
+                    } else if (isPrivate(point, value, added)) {
+
+                        /* Look up again for every copy unless part of the mesh */
+                        final Context ctxt = contexts.get(obj.getClass());
+                        if (value instanceof View && isInMesh((View)value, point.mId, ctxt)) {
+                            throw new GluingException("Unable to record injection of "
+                                    + obj.getClass().getCanonicalName() + "."
+                                    + field.getName());
+                        }
+                        source = Blueprint.RESOLVE;
+                        id = point.mId;
+                        value = ctxt;
+                    }
+                }
+                targets.add(i);
+                targets.add(field);
+                targets.add(source);
+                targets.add(value);
+                targets.add(slots);
+                targets.add(id);
+            }
+
+            /* Flatten the recording */
+            Class<?>[] classes = new Class<?>[objsLen];
+            for (int i = 0; i < objsLen; i++) {
+                classes[i] = objs.get(i).getClass();
+            }
+            final int assignmentsLen = targets.size() / 6;
+            int[] indices = new int[assignmentsLen];
+            Field[] fields = new Field[assignmentsLen];
+            int[] sources = new int[assignmentsLen];
+            Object[] values = new Object[assignmentsLen];
+            int[][] slots = new int[assignmentsLen][];
+            int[] ids = new int[assignmentsLen];
+            for (int i = 0; i < assignmentsLen; i++) {
+                indices[i] = (Integer)targets.get(i * 6);
+                fields[i] = (Field)targets.get(i * 6 + 1);
+                sources[i] = (Integer)targets.get(i * 6 + 2);
+                values[i] = targets.get(i * 6 + 3);
+                slots[i] = (int[])targets.get(i * 6 + 4);
+                ids[i] = (Integer)targets.get(i * 6 + 5);
+            }
+            return new Blueprint(classes, indices, fields, sources, values, slots, ids);
+        } finally {
+            unpin();
+        }
+    }
 
-                        /* Reset first visiting index */
-                        node.mLastVisit = 0;
+    /**
+     * Walks the object mesh as it was last glued together, starting out with
+     * the products of singleton factories and following the injections to the
+     * products of other factories. Used by {@link #freeze()} and
+     * {@link #createBlueprint()}.
+     * 
+     * @param objs Receives the visited objects, in the order they were found.
+     * @param withAdded True if the added objects are to be visited as well,
+     *            ahead of all products.
+     * @return The injections into the visited objects that implement
+     *         {@link com.sonyericsson.inject.Gluey}, as triples of the index of
+     *         the object in <code>objs</code>, the injection point and the
+     *         injected value.
+     */
+    private ArrayList<Object> walk(ArrayList<Object> objs, boolean withAdded) {
 
-                        /* Add to dependency sequence */
-                        /*
-                         * NOTE: Nodes with several instances starts those
-                         * instances in random order, since they have circular
-                         * dependencies and it is impossible to start them in a
-                         * "correct" order.
-                         */
-                        if ((node.mFlags & Node.MERGED) == 0) {
-                            if ((node.mFlags & Node.MERGED_HEAD) != 0) {
-                                Node n = node;
-                                while (n != null) {
-                                    depSeq[idx++] = n.mObject;
-                                    n = n.mNextMerged;
-                                }
-                            } else {
-                                depSeq[idx++] = node.mObject;
-                            }
+        /* Start out with the singleton products, and the added objects if asked for */
+        IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        Node node = mFirstNode;
+        while (node != null) {
+            visited.put(node.mObject, node.mObject);
+            if (withAdded) {
+                objs.add(node.mObject);
+            }
+            node = node.mNext;
+        }
+        HashSet<Class<?>> nonSingletons = new HashSet<Class<?>>();
+        Factory factory = mFactories;
+        while (factory != null) {
+            final Node product = factory.mProduct;
+            if (factory.mNonSingleton) {
+                nonSingletons.add(factory.mClazz);
+            } else if (product != null && factory.mStatus == Factory.EXECUTED
+                    && !visited.containsKey(product.mObject)) {
+                visited.put(product.mObject, product.mObject);
+                objs.add(product.mObject);
+            }
+            factory = factory.mNext;
+        }
+
+        /* Visit the injections, finding the remaining products on the way */
+        ArrayList<Object> injections = new ArrayList<Object>();
+        for (int i = 0; i < objs.size(); i++) {
+            final Object obj = objs.get(i);
+            if (!(obj instanceof Gluey)) {
+                continue;
+            }
+            final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+            final int pointsLen = points.length;
+            for (int j = 0; j < pointsLen; j++) {
+                final InjectionPoint point = points[j];
+                Object value = null;
+                try {
+                    value = point.mField.get(obj);
+                } catch (IllegalArgumentException e) {
+                    internalError(e);
+                } catch (IllegalAccessException e) {
+                    internalError(e);
+                }
+                injections.add(i);
+                injections.add(point);
+                injections.add(value);
+
+                /* Follow products of non-singleton factories */
+                if (value instanceof Object[]) {
+                    for (Object entry : (Object[])value) {
+                        if (entry != null && nonSingletons.contains(entry.getClass())
+                                && !visited.containsKey(entry)) {
+                            visited.put(entry, entry);
+                            objs.add(entry);
                         }
+                    }
+                } else if (value != null && nonSingletons.contains(value.getClass())
+                        && !visited.containsKey(value)) {
+                    visited.put(value, value);
+                    objs.add(value);
+                }
+            }
+        }
+        return injections;
+    }
 
-                        /* Pop stack when not empty and resume visit of children */
-                        if (pathLen > 0) {
-                            pathLen--;
-                            node = path[pathLen];
-                            continue start;
-                        } else {
-                            break;
+    /**
+     * Tells whether an injected view or resource must not be shared by the
+     * copies made from a blueprint.
+     * 
+     * @param point The injection point.
+     * @param obj The injected object.
+     * @param added All objects that have been added.
+     * @return True if the object was found by ID and is a view, a drawable or
+     *         an XML parser that was not added.
+     */
+    private static boolean isPrivate(InjectionPoint point, Object obj,
+            IdentityHashMap<Object, Object> added) {
+        return (point.mId & 0xff000000) != 0
+                && (obj instanceof View || obj instanceof Drawable || obj instanceof XmlPullParser)
+                && !added.containsKey(obj);
+    }
+
+    /**
+     * Tells whether a view injected by ID was found among the added views or in
+     * the activity, rather than inflated.
+     * 
+     * @param view The injected view.
+     * @param id The ID of the injection.
+     * @param ctxt The context of the object the view was injected into.
+     * @return True if the view belongs to the mesh.
+     */
+    private boolean isInMesh(View view, int id, Context ctxt) {
+        Node node = mFirstNode;
+        while (node != null) {
+            if (node.mObject instanceof View && ((View)node.mObject).findViewById(id) == view) {
+                return true;
+            }
+            node = node.mNext;
+        }
+        return (ctxt instanceof Activity && ((Activity)ctxt).findViewById(id) == view);
+    }
+
+    /**
+     * Does everything {@link #apply()} does except looking up views and
+     * assigning the injected values, which is left for {@link #commit()}. This
+     * method does not touch any views, why it can be called on a background
+     * thread to keep most of the work away from the main thread. Objects
+     * created by factories are however constructed on the calling thread.
+     * <p>
+     * The instance must not be used by any other thread until this method
+     * returns, and the call must happen-before the call to {@link #commit()},
+     * e.g. by posting the commit to the main thread when done.
+     * 
+     * @see #commit()
+     */
+    public final void prepareApply() {
+        pin();
+        try {
+            mPlan = null;
+            checkParent();
+            if (!mRobust && hasContent()) {
+                final Plan plan = new Plan(mModCount);
+                try {
+                    glue(null, plan);
+                } catch (GluingException e) {
+                    /*
+                     * NOTE: The problem is reported by commit() when it falls back
+                     * to apply().
+                     */
+                    plan.mFailed = true;
+                    if (mLastNode != null) {
+                        mLastNode.mNext = null;
+                    }
+                }
+                mPlan = plan;
+            }
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * Completes what {@link #prepareApply()} started, by looking up and
+     * inflating views and assigning all injected values. When the object mesh
+     * has been changed since the call to {@link #prepareApply()}, when the plan
+     * could not be made, or when a view turns out to be missing, this method
+     * falls back to doing a complete {@link #apply()}.
+     * 
+     * @throws GluingException when an injection fails.
+     * @see #prepareApply()
+     */
+    public final void commit() throws GluingException {
+        checkParent();
+        final Plan plan = mPlan;
+        mPlan = null;
+        if (plan == null || plan.mFailed || plan.mModCount != mModCount) {
+            apply();
+            return;
+        }
+
+        /* Look up views */
+        final HashMap<Integer, Inflation> inflations = mInflations;
+        mInflations = null;
+        HashMap<Integer, Object> idCache = new HashMap<Integer, Object>();
+        final Assignments assignments = plan.mAssignments;
+        final ArrayList<Object> lookups = plan.mLookups;
+        final int lookupsLen = lookups.size();
+        for (int i = 0; i < lookupsLen; i += 6) {
+            final Object view = findView((Class<?>)lookups.get(i + 2),
+                    (Integer)lookups.get(i + 3), (Context)lookups.get(i + 4), plan.mViews,
+                    plan.mViewsLen, idCache, inflations, null);
+            if (view == null && (Boolean)lookups.get(i + 5)) {
+                /*
+                 * NOTE: Other objects might have been injected if it was known
+                 * that the view is missing, why everything is redone.
+                 */
+                mInflations = inflations;
+                apply();
+                return;
+            }
+            assignments.add(lookups.get(i), (Field)lookups.get(i + 1), view);
+        }
+
+        /* Assign all values */
+        try {
+            assignments.run(0, assignments.mLen);
+        } catch (IllegalArgumentException e) {
+            internalError(e);
+        } catch (IllegalAccessException e) {
+            internalError(e);
+        }
+
+        /* Gluing completed */
+        mRobust = true;
+        mProcessed = true;
+    }
+
+    /**
+     * Glues the object mesh together like {@link #apply()}, and then starts
+     * all objects in it that implement {@link com.sonyericsson.inject.Startable}
+     * and have not been started yet. An object is always started after the
+     * objects it depends on, where objects with circular dependencies among
+     * themselves are started in the order they were found. Dependencies on
+     * optional injections are not considered.
+     * <p>
+     * Started objects that are no longer part of the mesh are stopped before
+     * any new objects are started.
+     * 
+     * @throws GluingException when the injection fails, or when an object
+     *             throws while being started or stopped. The rest of the
+     *             level is still started, and objects started remain
+     *             started. An {@link java.lang.Error} thrown by an object is
+     *             passed on as it is.
+     * @see #start(Executor)
+     * @see #stop()
+     */
+    public final void start() throws GluingException {
+        start(null);
+    }
+
+    /**
+     * Works like {@link #start()}, but starts the objects that do not depend on
+     * each other in parallel on the given executor. The objects are divided
+     * into levels where each level only depends on the levels before it, and
+     * each level is completed before the next one is started.
+     * 
+     * @param executor The executor to start the objects on, or null to start
+     *            them one at a time on the calling thread.
+     * @throws GluingException when the injection fails, or when an object
+     *             throws while being started or stopped. In the latter case
+     *             the rest of the level is still started, just like
+     *             {@link #start()} does.
+     * @see #start()
+     * @see #stop()
+     */
+    public final void start(Executor executor) throws GluingException {
+        pin();
+        try {
+            apply();
+
+            /* Sort all objects in the mesh into levels */
+            final Sequence lifecycle = lifecycle(true);
+            final ArrayList<ArrayList<Object>> levels = lifecycle.levels(Startable.class);
+
+            /* Stop objects no longer in the mesh */
+            IdentityHashMap<Object, Object> started = new IdentityHashMap<Object, Object>();
+            ArrayList<Startable> startOrder = mStarted;
+            if (startOrder != null) {
+                ArrayList<Startable> removed = null;
+                final int startOrderLen = startOrder.size();
+                int len = 0;
+                for (int i = 0; i < startOrderLen; i++) {
+                    final Startable obj = startOrder.get(i);
+                    if (lifecycle.contains(obj)) {
+                        startOrder.set(len++, obj);
+                        started.put(obj, obj);
+                    } else {
+                        if (removed == null) {
+                            removed = new ArrayList<Startable>();
                         }
+                        removed.add(obj);
                     }
                 }
-                node = node.mNext;
+                startOrder.subList(len, startOrderLen).clear();
+                if (removed != null) {
+                    stop(removed);
+                }
+            } else {
+                startOrder = new ArrayList<Startable>();
+                mStarted = startOrder;
             }
 
-            /* Sort all entries in injected arrays by dependency order */
-            if (implCache != null) {
-                for (Object[] injected : toBeSorted) {
-                    /*
-                     * NOTE: The array is sorted by iterating the calculated
-                     * dependency sequence, copying only entries also present in
-                     * the injected array to a temporary array.
-                     */
-                    idx = 0;
-                    int injectedLen = injected.length;
-                    Object sorted[] = new Object[injectedLen];
-                    for (int i = 0; i < depSeq.length; i++) {
-                        for (int j = 0; j < injectedLen; j++) {
-                            if (injected[j] == depSeq[i]) {
-                                sorted[idx++] = injected[j];
-                                break;
-                            }
-                        }
+            /* Start new objects one level at a time */
+            /*
+             * NOTE: Objects from the parent are left for the parent to start.
+             */
+            final IdentityHashMap<Object, Node> inherited = mInherited;
+            final int levelsLen = levels.size();
+            for (int i = 0; i < levelsLen; i++) {
+                final ArrayList<Object> level = levels.get(i);
+                final int levelLen = level.size();
+                Startable[] pending = new Startable[levelLen];
+                int pendingLen = 0;
+                for (int j = 0; j < levelLen; j++) {
+                    final Object obj = level.get(j);
+                    if (!started.containsKey(obj)
+                            && (inherited == null || !inherited.containsKey(obj))) {
+                        pending[pendingLen++] = (Startable)obj;
                     }
+                }
+                startLevel(pending, pendingLen, executor, startOrder);
+            }
+        } finally {
+            unpin();
+        }
+    }
 
-                    /*
-                     * NOTE: The sorted array is copied back to the injected
-                     * array to automatically apply the changes across all
-                     * affected objects (since they already reference that
-                     * array).
-                     */
-                    System.arraycopy(sorted, 0, injected, 0, sorted.length);
+    /**
+     * Stops all objects that have been started, in the reverse order of how
+     * they were started. Objects are stopped even when they are no longer part
+     * of the object mesh.
+     * 
+     * @throws GluingException when an object throws while being stopped. All
+     *             other objects are still stopped.
+     * @see #start()
+     */
+    public final void stop() throws GluingException {
+        final ArrayList<Startable> startOrder = mStarted;
+        mStarted = null;
+        if (startOrder != null) {
+            stop(startOrder);
+        }
+    }
+
+    private static void stop(ArrayList<Startable> startOrder) throws GluingException {
+        GluingException error = null;
+        for (int i = startOrder.size() - 1; i >= 0; i--) {
+            final Startable obj = startOrder.get(i);
+            try {
+                obj.stop();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = new GluingException("Uncaught exception during stop of "
+                            + niceClassName(obj.getClass()), e);
                 }
             }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
 
-            /* Forget factory products */
-            /*
-             * NOTE: Since the factories have references to their product, they
-             * will not be lost.
-             */
-            mLastNode.mNext = null;
+    /**
+     * Starts the objects of one level, and reports the first failure once all
+     * of them have been attempted. Errors are passed on as they are, while
+     * other exceptions are wrapped in a {@link GluingException}.
+     */
+    private static void startLevel(Startable[] pending, int pendingLen, Executor executor,
+            ArrayList<Startable> startOrder) throws GluingException {
+
+        /* Hand out all objects but the last */
+        /*
+         * NOTE: The last object is started on this thread, which would
+         * otherwise only be waiting. Without an executor, or with a single
+         * object, all objects are started on this thread.
+         */
+        final CountDownLatch done = new CountDownLatch(pendingLen);
+        Startup[] startups = new Startup[pendingLen];
+        for (int i = 0; i < pendingLen; i++) {
+            final Startup startup = new Startup(pending[i], done);
+            startups[i] = startup;
+            if (executor == null || i == pendingLen - 1) {
+                startup.run();
+            } else {
+                try {
+                    executor.execute(startup);
+                } catch (RejectedExecutionException e) {
+                    startup.run();
+                }
+            }
         }
 
-        /* Gluing completed */
-        mRobust = true;
-        mProcessed = true;
+        /* Wait for the level to complete */
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        /* Remember started objects, in sequence order */
+        int failed = -1;
+        for (int i = 0; i < pendingLen; i++) {
+            if (startups[i].mError == null) {
+                startOrder.add(pending[i]);
+            } else if (failed < 0) {
+                failed = i;
+            }
+        }
+        if (failed >= 0) {
+            final Throwable t = startups[failed].mError;
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            throw new GluingException("Uncaught exception during start of "
+                    + niceClassName(pending[failed].getClass()), t);
+        }
     }
 
     /**
@@ -3117,7 +6957,7 @@ public class DuctTape {
         }
         return "DuctTape[robust=" + mRobust + ", objects=" + mNumNodes + " + " + numProducers
                 + " product" + (numProducers == 1 ? "" : "s") + ", factories=" + mNumFactories
-                + "]";
+                + (mStats != null ? ", " + mStats : "") + "]";
     }
 
     /**
@@ -3141,11 +6981,33 @@ public class DuctTape {
      * 
      * @return An indented multi-line representation of the current object
      *         relations as a graph.
+     * @see #toDotString(Appendable)
      * @see #toShortString()
      * @see #toString()
      */
     public final String toDotString() {
-        StringBuilder dump = new StringBuilder("digraph {");
+        StringBuilder dump = new StringBuilder();
+        try {
+            toDotString(dump);
+        } catch (IOException e) {
+            /* NOTE: Never thrown by a StringBuilder */
+            throw new IllegalStateException(e);
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Writes the same graph representation as {@link #toDotString()} to the
+     * given destination, without first building the whole text in memory. Use
+     * this for large object meshes, typically with a buffered writer as
+     * destination.
+     * 
+     * @param dump Where to write the graph.
+     * @throws IOException If the destination fails to accept the output.
+     * @see #toDotString()
+     */
+    public final void toDotString(Appendable dump) throws IOException {
+        dump.append("digraph {");
 
         /* Set up graphical look and feel */
         dump.append("\n\tnode [shape=component, fontsize=15, "
@@ -3158,157 +7020,78 @@ public class DuctTape {
         }
 
         /* Visit all objects */
-        String prefix = null;
-        int prefixEnd = 0;
-        ArrayList<Object> all = new ArrayList<Object>();
-        Node node = mFirstNode;
-        while (node != null) {
-            all.add(node.mObject);
-            node = node.mNext;
-        }
-        for (int pass = 0; pass < 2; pass++) {
-            for (int i = 0; i < all.size(); i++) {
-                final Object obj = all.get(i);
-                Class<?> clazz = obj.getClass();
-                if (pass == 0) {
-                    prefix = commonPrefix(prefix, obj.getClass().getCanonicalName());
+        final Listing listing = list(true);
+        final int prefixEnd = listing.mPrefixEnd;
+        final ArrayList<Object> all = listing.mAll;
+        final int allLen = all.size();
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+
+            /* Visit injected fields */
+            if (obj instanceof Gluey) {
+                String name = simpleName(prefixEnd, obj, listing).replace("\"", "\\\"");
+                if (i >= listing.mNumNodes) {
+                    dump.append("\t\"");
+                    dump.append(name);
+                    dump.append("\" [fillcolor=\"#e6f0c2\"];\n");
                 }
-
-                /* Visit injected fields */
-                if (obj instanceof Gluey) {
-                    if (pass == 1 && i >= mNumNodes) {
-                        dump.append("\t\"");
-                        dump.append(simpleName(prefixEnd, obj, all).replace("\"", "\\\""));
-                        dump.append("\" [fillcolor=\"#e6f0c2\"];\n");
-                    }
-                    while (Gluey.class.isAssignableFrom(clazz)) {
-                        final Field[] fields = clazz.getDeclaredFields();
-                        final int fieldsLen = fields.length;
-                        if (fieldsLen != 0) {
-                            for (int k = 0; k < fieldsLen; k++) {
-                                Field field = fields[k];
-                                Glue injection = getInjection(field);
-                                if (injection != null) {
-                                    try {
-                                        field.setAccessible(true);
-                                        Object fieldVal = field.get(obj);
-                                        if (fieldVal != null) {
-                                            Object refs[];
-                                            Class<?> fieldClazz = field.getType();
-                                            if (fieldClazz.isArray()) {
-                                                fieldClazz = fieldClazz.getComponentType();
-                                                if (fieldClazz.isPrimitive()) {
-                                                    /*
-                                                     * Find out if it is a
-                                                     * temporary array.
-                                                     */
-                                                    Node o = mFirstNode;
-                                                    while (o != null && o.mObject != fieldVal) {
-                                                        o = o.mNext;
-                                                    }
-                                                    if (o == null) {
-                                                        final int arrLen = Array
-                                                                .getLength(fieldVal);
-                                                        refs = new Object[arrLen];
-                                                        for (int j = 0; j < arrLen; j++) {
-                                                            Array.set(refs, j,
-                                                                    Array.get(fieldVal, j));
-                                                        }
-                                                    } else {
-                                                        refs = new Object[] {
-                                                            fieldVal
-                                                        };
-                                                    }
-                                                } else {
-                                                    refs = (Object[])fieldVal;
-                                                }
-                                            } else {
-                                                refs = new Object[] {
-                                                    fieldVal
-                                                };
-                                            }
-                                            final int[] tags = injection.value();
-                                            final int tagsLen = tags.length;
-                                            boolean optional = false;
-                                            boolean sorted = false;
-                                            for (int m = 0; m < tagsLen; m++) {
-                                                if (tags[m] == OPTIONAL) {
-                                                    optional = true;
-                                                }
-                                                if (tags[m] == ORDERED) {
-                                                    sorted = true;
-                                                }
-                                            }
-                                            final int refLen = refs.length;
-                                            for (int l = 0; l < refLen; l++) {
-                                                Object ref = refs[l];
-                                                if (pass == 0) {
-                                                    prefix = commonPrefix(prefix, ref.getClass()
-                                                            .getCanonicalName());
-                                                    prefix = commonPrefix(prefix,
-                                                            fieldClazz.getCanonicalName());
-                                                    if (!all.contains(ref)) {
-                                                        all.add(ref);
-                                                    }
-                                                } else {
-                                                    dump.append("\t\"");
-                                                    String name = simpleName(prefixEnd, obj, all)
-                                                            .replace("\"", "\\\"");
-                                                    dump.append(name);
-                                                    dump.append("\" -> \"");
-                                                    dump.append(simpleName(prefixEnd, ref, all)
-                                                            .replace("\"", "\\\""));
-                                                    dump.append("\"");
-                                                    final String label;
-                                                    if (!isPrimitive(fieldClazz)
-                                                            && fieldClazz != String.class) {
-                                                        label = simpleName(prefixEnd, fieldClazz);
-                                                    } else {
-                                                        label = field.getName();
-                                                    }
-                                                    dump.append(" [label=\"");
-                                                    dump.append(label);
-                                                    if (sorted && refLen > 1) {
-                                                        dump.append(" (");
-                                                        dump.append(l + 1);
-                                                        dump.append(")");
-                                                    }
-                                                    dump.append("\"");
-                                                    if (optional) {
-                                                        dump.append(", style=dashed, color=\"#000080\"");
-                                                    }
-                                                    dump.append("];\n");
-                                                }
-                                            }
-                                        }
-                                    } catch (IllegalAccessException e) {
-                                        /* Ignore */
-                                    }
+                final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+                final int pointsLen = points.length;
+                for (int k = 0; k < pointsLen; k++) {
+                    final InjectionPoint point = points[k];
+                    final Field field = point.mField;
+                    try {
+                        Object fieldVal = field.get(obj);
+                        if (fieldVal != null) {
+                            Class<?> fieldClazz = field.getType();
+                            if (fieldClazz.isArray()) {
+                                fieldClazz = fieldClazz.getComponentType();
+                            }
+                            final Object[] refs = refs(fieldVal, field.getType(), true, listing);
+                            final String label;
+                            if (!isPrimitive(fieldClazz) && fieldClazz != String.class) {
+                                label = simpleName(prefixEnd, fieldClazz);
+                            } else {
+                                label = field.getName();
+                            }
+                            final int refLen = refs.length;
+                            for (int l = 0; l < refLen; l++) {
+                                dump.append("\t\"");
+                                dump.append(name);
+                                dump.append("\" -> \"");
+                                dump.append(simpleName(prefixEnd, refs[l], listing).replace(
+                                        "\"", "\\\""));
+                                dump.append("\"");
+                                dump.append(" [label=\"");
+                                dump.append(label);
+                                if (point.mSort && refLen > 1) {
+                                    dump.append(" (");
+                                    dump.append(Integer.toString(l + 1));
+                                    dump.append(")");
                                 }
+                                dump.append("\"");
+                                if (!point.mVital) {
+                                    dump.append(", style=dashed, color=\"#000080\"");
+                                }
+                                dump.append("];\n");
                             }
                         }
-                        clazz = clazz.getSuperclass();
+                    } catch (IllegalAccessException e) {
+                        /* Ignore */
                     }
                 }
             }
-
-            /* Store package prefix */
-            if (pass == 0 && prefix != null) {
-                prefixEnd = prefix.lastIndexOf('.') + 1;
-            }
         }
 
         /* Change appearance of objects that are not injection targets */
-        for (Object obj : all) {
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
             if (!(obj instanceof Gluey)) {
                 Class<?> clazz = obj.getClass();
                 dump.append("\t\"");
-                dump.append(simpleName(prefixEnd, obj, all).replace("\"", "\\\""));
+                dump.append(simpleName(prefixEnd, obj, listing).replace("\"", "\\\""));
                 dump.append("\" [");
-                if (clazz == Integer.class || clazz == Boolean.class || clazz == Float.class
-                        || clazz == Double.class || clazz == Long.class || clazz == Character.class
-                        || clazz == Byte.class || clazz == Short.class || clazz == String.class
-                        || isPrimitive(clazz)) {
+                if (isValue(clazz) || isPrimitive(clazz)) {
                     dump.append("fillcolor=white, shape=ellipse");
                 } else {
                     dump.append("fillcolor=\"#c2e6f0\"");
@@ -3319,7 +7102,6 @@ public class DuctTape {
 
         /* End of graph */
         dump.append("}");
-        return dump.toString();
     }
 
     /**
@@ -3345,136 +7127,597 @@ public class DuctTape {
      * 
      * @return An indented multi-line representation of the current object
      *         relations as plain-text.
+     * @see #toString(Appendable)
      * @see #toShortString()
      * @see #toDotString()
      */
     @Override
     public final String toString() {
-        StringBuilder dump = new StringBuilder("DuctTape@");
+        StringBuilder dump = new StringBuilder();
+        try {
+            toString(dump);
+        } catch (IOException e) {
+            /* NOTE: Never thrown by a StringBuilder */
+            throw new IllegalStateException(e);
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Writes the same plain-text representation as {@link #toString()} to the
+     * given destination, without first building the whole text in memory. Use
+     * this for large object meshes, typically with a buffered writer as
+     * destination.
+     * 
+     * @param dump Where to write the text.
+     * @throws IOException If the destination fails to accept the output.
+     * @see #toString()
+     */
+    public final void toString(Appendable dump) throws IOException {
+        dump.append("DuctTape@");
         dump.append(Integer.toHexString(hashCode()));
         dump.append(" [\n\trobust = ");
-        dump.append(mRobust);
+        dump.append(String.valueOf(mRobust));
         dump.append("\n");
 
-        String prefix = null;
-        int prefixEnd = 0;
-        ArrayList<Object> all = new ArrayList<Object>();
-        Node node = mFirstNode;
-        while (node != null) {
-            all.add(node.mObject);
-            node = node.mNext;
+        /* Visit all objects */
+        final Listing listing = list(false);
+        final int prefixEnd = listing.mPrefixEnd;
+        if (listing.mPrefix != null) {
+            dump.append("\tpackage = ");
+            dump.append(listing.mPrefix, 0, prefixEnd - 1);
+            dump.append("\n");
         }
-        for (int pass = 0; pass < 2; pass++) {
-            for (int i = 0; i < all.size(); i++) {
-                final Object obj = all.get(i);
-                Class<?> clazz = obj.getClass();
-                if (pass == 0) {
-                    prefix = commonPrefix(prefix, obj.getClass().getCanonicalName());
+        final ArrayList<Object> all = listing.mAll;
+        final int allLen = all.size();
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+
+            /* Visit injected fields */
+            if (obj instanceof Gluey) {
+                dump.append("\t");
+                dump.append(simpleName(prefixEnd, obj, listing));
+                if (i >= listing.mNumNodes) {
+                    dump.append(" (product)");
+                }
+                dump.append(" [\n");
+                final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+                final int pointsLen = points.length;
+                for (int k = 0; k < pointsLen; k++) {
+                    final Field field = points[k].mField;
+                    try {
+                        Object fieldVal = field.get(obj);
+                        if (fieldVal != null) {
+                            final Class<?> fieldClazz = field.getType();
+                            final boolean array = fieldClazz.isArray()
+                                    && !fieldClazz.getComponentType().isPrimitive();
+                            final Object[] refs = refs(fieldVal, fieldClazz, false, listing);
+                            dump.append("\t\t");
+                            dump.append(field.getName());
+                            dump.append(" = ");
+                            if (array) {
+                                dump.append("[");
+                            }
+                            final int refLen = refs.length;
+                            for (int l = 0; l < refLen; l++) {
+                                if (l != 0) {
+                                    dump.append(", ");
+                                }
+                                dump.append(simpleName(prefixEnd, refs[l], listing));
+                            }
+                            if (array) {
+                                dump.append("]");
+                            }
+                            dump.append("\n");
+                        }
+                    } catch (IllegalAccessException e) {
+                        /* Ignore */
+                    }
+                }
+                dump.append("\t]\n");
+            } else {
+                dump.append("\t");
+                dump.append(simpleName(prefixEnd, obj, listing));
+                dump.append(" (untouched");
+                if (i >= listing.mNumNodes) {
+                    dump.append(" product");
                 }
+                dump.append(")\n");
+            }
+        }
+        dump.append("]");
+    }
 
-                /* Visit injected fields */
-                if (obj instanceof Gluey) {
-                    if (pass == 1) {
-                        dump.append("\t");
-                        dump.append(simpleName(prefixEnd, obj, all));
-                        if (i >= mNumNodes) {
-                            dump.append(" (product)");
+    /**
+     * Writes a structured description of the current object relations as <a
+     * href="http://www.json.org/">JSON</a>, intended for tools rather than for
+     * humans. The output is a single object on the form:
+     * 
+     * <pre>
+     * {"robust": true,
+     *  "contexts": [{"id": 0, "class": "..."}, ...],
+     *  "nodes": [{"id": 0, "class": "...", "origin": "added", "tags": [1, 4],
+     *             "context": 0, "value": "..."}, ...],
+     *  "edges": [{"from": 0, "to": 1, "class": "...", "field": "...",
+     *             "optional": false, "ordered": false, "index": -1}, ...]}
+     * </pre>
+     * <p>
+     * The origin of a node is one of <code>added</code>, <code>product</code>,
+     * <code>inherited</code>, <code>view</code>, <code>resource</code> and
+     * <code>service</code>, the latter being anything else provided by a
+     * context. The <code>context</code> is left out for nodes without context,
+     * and the <code>value</code> is only present for strings and primitives.
+     * The <code>class</code> of an edge is the class declaring the field, and
+     * the <code>index</code> is the position in case the field is an array,
+     * otherwise -1.
+     * <p>
+     * The same information is available in a more compact form through
+     * {@link #writeGraph(DataOutput)}.
+     * 
+     * @param json Where to write the description.
+     * @throws IOException If the destination fails to accept the output.
+     * @see #toDotString(Appendable)
+     */
+    public final void toJson(Appendable json) throws IOException {
+        final Listing listing = export();
+        final ArrayList<Object> all = listing.mAll;
+        final int allLen = all.size();
+        json.append("{\"robust\": ");
+        json.append(String.valueOf(mRobust));
+
+        /* Write contexts */
+        json.append(",\n\"contexts\": [");
+        final ArrayList<Context> contexts = listing.mContextTable;
+        final int contextsLen = contexts.size();
+        for (int i = 0; i < contextsLen; i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("{\"id\": ");
+            json.append(Integer.toString(i));
+            json.append(", \"class\": ");
+            appendJson(json, contexts.get(i).getClass().getName());
+            json.append("}");
+        }
+
+        /* Write nodes */
+        json.append("],\n\"nodes\": [");
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("{\"id\": ");
+            json.append(Integer.toString(i));
+            json.append(", \"class\": ");
+            appendJson(json, obj.getClass().getName());
+            json.append(", \"origin\": \"");
+            json.append(ORIGINS[listing.mOrigins[i]]);
+            json.append("\", \"tags\": [");
+            final int[] tags = listing.mTags[i];
+            final int tagsLen = listing.mTagsLen[i];
+            for (int k = 0; k < tagsLen; k++) {
+                if (k != 0) {
+                    json.append(", ");
+                }
+                json.append(Integer.toString(tags[k]));
+            }
+            json.append("]");
+            if (listing.mContexts[i] >= 0) {
+                json.append(", \"context\": ");
+                json.append(Integer.toString(listing.mContexts[i]));
+            }
+            if (isValue(obj.getClass())) {
+                json.append(", \"value\": ");
+                appendJson(json, obj.toString());
+            }
+            json.append("}");
+        }
+
+        /* Write edges */
+        json.append("],\n\"edges\": [");
+        boolean first = true;
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+            if (obj instanceof Gluey) {
+                final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+                final int pointsLen = points.length;
+                for (int k = 0; k < pointsLen; k++) {
+                    final InjectionPoint point = points[k];
+                    final Field field = point.mField;
+                    try {
+                        final Object fieldVal = field.get(obj);
+                        if (fieldVal != null) {
+                            final Class<?> fieldClazz = field.getType();
+                            final Object[] refs = refs(fieldVal, fieldClazz, false, listing);
+                            final boolean array = (refs == fieldVal);
+                            final int refLen = refs.length;
+                            for (int l = 0; l < refLen; l++) {
+                                json.append(first ? "\n" : ",\n");
+                                first = false;
+                                json.append("{\"from\": ");
+                                json.append(Integer.toString(i));
+                                json.append(", \"to\": ");
+                                json.append(Integer.toString(listing.indexOf(refs[l])));
+                                json.append(", \"class\": ");
+                                appendJson(json, field.getDeclaringClass().getName());
+                                json.append(", \"field\": ");
+                                appendJson(json, field.getName());
+                                json.append(", \"optional\": ");
+                                json.append(String.valueOf(!point.mVital));
+                                json.append(", \"ordered\": ");
+                                json.append(String.valueOf(point.mSort));
+                                json.append(", \"index\": ");
+                                json.append(Integer.toString(array ? l : -1));
+                                json.append("}");
+                            }
                         }
-                        dump.append(" [\n");
+                    } catch (IllegalAccessException e) {
+                        /* Ignore */
                     }
-                    while (Gluey.class.isAssignableFrom(clazz)) {
-                        final Field[] fields = clazz.getDeclaredFields();
-                        final int fieldsLen = fields.length;
-                        if (fieldsLen != 0) {
-                            for (int k = 0; k < fieldsLen; k++) {
-                                Field field = fields[k];
-                                Glue injection = getInjection(field);
-                                if (injection != null) {
-                                    try {
-                                        field.setAccessible(true);
-                                        Object fieldVal = field.get(obj);
-                                        if (fieldVal != null) {
-                                            Object refs[];
-                                            Class<?> fieldClazz = field.getType();
-                                            boolean array = fieldClazz.isArray();
-                                            if (array
-                                                    && !fieldClazz.getComponentType().isPrimitive()) {
-                                                refs = (Object[])fieldVal;
-                                            } else {
-                                                array = false;
-                                                refs = new Object[] {
-                                                    fieldVal
-                                                };
-                                            }
-                                            final int refLen = refs.length;
-                                            if (pass == 1) {
-                                                dump.append("\t\t");
-                                                dump.append(field.getName());
-                                                dump.append(" = ");
-                                                if (array) {
-                                                    dump.append("[");
-                                                }
-                                            }
-                                            for (int l = 0; l < refLen; l++) {
-                                                Object ref = refs[l];
-                                                if (pass == 0) {
-                                                    prefix = commonPrefix(prefix, ref.getClass()
-                                                            .getCanonicalName());
-                                                    prefix = commonPrefix(
-                                                            prefix,
-                                                            clazz.getCanonicalName() + "."
-                                                                    + field.getName());
-                                                    if (!all.contains(ref)) {
-                                                        all.add(ref);
-                                                    }
-                                                } else {
-                                                    if (l != 0) {
-                                                        dump.append(", ");
-                                                    }
-                                                    dump.append(simpleName(prefixEnd, ref, all));
-                                                }
-                                            }
-                                            if (pass == 1) {
-                                                if (array) {
-                                                    dump.append("]");
-                                                }
-                                                dump.append("\n");
-                                            }
-                                        }
-                                    } catch (IllegalAccessException e) {
-                                        /* Ignore */
-                                    }
-                                }
+                }
+            }
+        }
+        json.append("]}\n");
+    }
+
+    /**
+     * Writes the same structured description as {@link #toJson(Appendable)}
+     * in a compact binary form, suitable for large object meshes. All
+     * integers marked as varint below are written as unsigned base 128
+     * varints, with the lowest group of seven bits first and the top bit set
+     * in every byte but the last. Strings are written as a varint which is
+     * zero for a new string, that is then written as by
+     * {@link DataOutput#writeUTF(String)}, or one more than the number of
+     * new strings before it for a string that has already been written.
+     * 
+     * <pre>
+     * header:   &quot;DTG&quot; (3 bytes), version 1 (byte), robust (boolean)
+     * contexts: count (varint), class (string) * count
+     * nodes:    count (varint), node * count
+     * node:     class (string), origin (byte), context + 1 (varint),
+     *           number of tags (varint), tag (int) * number of tags,
+     *           value (string, only for strings and primitives)
+     * edges:    count (varint), edge * count
+     * edge:     from (varint), to (varint), class (string), field (string),
+     *           flags (byte, 1 = optional, 2 = ordered), index + 1 (varint)
+     * </pre>
+     * 
+     * The origin is the position in the list of origins given in
+     * {@link #toJson(Appendable)}.
+     * 
+     * @param out Where to write the description.
+     * @throws IOException If the destination fails to accept the output.
+     */
+    public final void writeGraph(DataOutput out) throws IOException {
+        final Listing listing = export();
+        final ArrayList<Object> all = listing.mAll;
+        final int allLen = all.size();
+        final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+        out.writeByte('D');
+        out.writeByte('T');
+        out.writeByte('G');
+        out.writeByte(1);
+        out.writeBoolean(mRobust);
+
+        /* Write contexts */
+        final ArrayList<Context> contexts = listing.mContextTable;
+        final int contextsLen = contexts.size();
+        writeVarInt(out, contextsLen);
+        for (int i = 0; i < contextsLen; i++) {
+            writeString(out, contexts.get(i).getClass().getName(), strings);
+        }
+
+        /* Write nodes */
+        writeVarInt(out, allLen);
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+            writeString(out, obj.getClass().getName(), strings);
+            out.writeByte(listing.mOrigins[i]);
+            writeVarInt(out, listing.mContexts[i] + 1);
+            final int[] tags = listing.mTags[i];
+            final int tagsLen = listing.mTagsLen[i];
+            writeVarInt(out, tagsLen);
+            for (int k = 0; k < tagsLen; k++) {
+                out.writeInt(tags[k]);
+            }
+            if (isValue(obj.getClass())) {
+                writeString(out, obj.toString(), strings);
+            }
+        }
+
+        /* Write edges */
+        writeVarInt(out, listing.mNumEdges);
+        for (int i = 0; i < allLen; i++) {
+            final Object obj = all.get(i);
+            if (obj instanceof Gluey) {
+                final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+                final int pointsLen = points.length;
+                for (int k = 0; k < pointsLen; k++) {
+                    final InjectionPoint point = points[k];
+                    final Field field = point.mField;
+                    try {
+                        final Object fieldVal = field.get(obj);
+                        if (fieldVal != null) {
+                            final Class<?> fieldClazz = field.getType();
+                            final Object[] refs = refs(fieldVal, fieldClazz, false, listing);
+                            final boolean array = (refs == fieldVal);
+                            final int refLen = refs.length;
+                            for (int l = 0; l < refLen; l++) {
+                                writeVarInt(out, i);
+                                writeVarInt(out, listing.indexOf(refs[l]));
+                                writeString(out, field.getDeclaringClass().getName(), strings);
+                                writeString(out, field.getName(), strings);
+                                out.writeByte((point.mVital ? 0 : 1) | (point.mSort ? 2 : 0));
+                                writeVarInt(out, array ? l + 1 : 0);
                             }
                         }
-                        clazz = clazz.getSuperclass();
+                    } catch (IllegalAccessException e) {
+                        /* Ignore */
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits all objects like {@link #list(boolean)} and finds out where each
+     * object comes from, which tags it has and from which context.
+     * 
+     * @return The visited objects.
+     */
+    private Listing export() {
+        pin();
+        try {
+            final Listing listing = list(false);
+            final ArrayList<Object> all = listing.mAll;
+            final int allLen = all.size();
+            final int[] origins = new int[allLen];
+            final int[][] allTags = new int[allLen][];
+            final int[] allTagsLen = new int[allLen];
+            final int[] allContexts = new int[allLen];
+            final ArrayList<Context> contexts = new ArrayList<Context>();
+            final IdentityHashMap<Context, Integer> contextIds =
+                    new IdentityHashMap<Context, Integer>();
+
+            /* Find the origin of all objects in the mesh */
+            final IdentityHashMap<Object, Tagged> tagged = new IdentityHashMap<Object, Tagged>();
+            final IdentityHashMap<Object, Context> origContexts =
+                    new IdentityHashMap<Object, Context>();
+            Node node = mFirstNode;
+            while (node != null) {
+                tagged.put(node.mObject, node);
+                origContexts.put(node.mObject, node.mContext);
+                node = node.mNext;
+            }
+            final HashMap<Class<?>, Factory> producers = new HashMap<Class<?>, Factory>();
+            Factory factory = mFactories;
+            while (factory != null) {
+                final Node product = factory.mProduct;
+                if (factory.mNonSingleton) {
+                    producers.put(factory.mClazz, factory);
+                } else if (product != null) {
+                    tagged.put(product.mObject, factory);
+                    origContexts.put(product.mObject, factory.mContext);
+                }
+                factory = factory.mNext;
+            }
+            final IdentityHashMap<Object, Node> inherited = mInherited;
+
+            /* Describe all objects */
+            for (int i = 0; i < allLen; i++) {
+                final Object obj = all.get(i);
+                Tagged t = tagged.get(obj);
+                Context ctxt = origContexts.get(obj);
+                if (i < listing.mNumNodes) {
+                    origins[i] = ORIGIN_ADDED;
+                } else if (inherited != null && inherited.containsKey(obj)) {
+                    origins[i] = ORIGIN_INHERITED;
+                } else if (t != null || producers.containsKey(obj.getClass())) {
+                    origins[i] = ORIGIN_PRODUCT;
+                    if (t == null) {
+                        final Factory producer = producers.get(obj.getClass());
+                        t = producer;
+                        ctxt = producer.mContext;
+                    }
+                } else if (obj instanceof View) {
+                    origins[i] = ORIGIN_VIEW;
+                } else {
+                    final InjectionPoint point = listing.mFoundBy.get(obj);
+                    if (point != null && (point.mId & 0xff000000) != 0) {
+                        origins[i] = ORIGIN_RESOURCE;
+                    } else {
+                        origins[i] = ORIGIN_SERVICE;
                     }
-                    if (pass == 1) {
-                        dump.append("\t]\n");
+                }
+                if (t != null && t.mTags != null) {
+                    allTags[i] = t.mTags;
+                    allTagsLen[i] = t.mTagsLen;
+                }
+                if (ctxt != null) {
+                    Integer id = contextIds.get(ctxt);
+                    if (id == null) {
+                        id = contexts.size();
+                        contexts.add(ctxt);
+                        contextIds.put(ctxt, id);
                     }
+                    allContexts[i] = id;
                 } else {
-                    if (pass == 1) {
-                        dump.append("\t");
-                        dump.append(simpleName(prefixEnd, obj, all));
-                        dump.append(" (untouched");
-                        if (i >= mNumNodes) {
-                            dump.append(" product");
+                    allContexts[i] = -1;
+                }
+            }
+            listing.mOrigins = origins;
+            listing.mTags = allTags;
+            listing.mTagsLen = allTagsLen;
+            listing.mContexts = allContexts;
+            listing.mContextTable = contexts;
+            return listing;
+        } finally {
+            unpin();
+        }
+    }
+
+    private static void appendJson(Appendable json, String text) throws IOException {
+        json.append('"');
+        final int len = text.length();
+        for (int i = 0; i < len; i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        final String hex = Integer.toHexString(c);
+                        json.append("\\u");
+                        json.append("0000", hex.length(), 4);
+                        json.append(hex);
+                    } else {
+                        json.append(c);
+                    }
+                    break;
+            }
+        }
+        json.append('"');
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeString(DataOutput out, String text,
+            HashMap<String, Integer> strings) throws IOException {
+        final Integer idx = strings.get(text);
+        if (idx != null) {
+            writeVarInt(out, idx + 1);
+        } else {
+            writeVarInt(out, 0);
+            out.writeUTF(text);
+            strings.put(text, strings.size());
+        }
+    }
+
+    /**
+     * Visits all objects reachable through injected fields, starting with the
+     * objects added to this instance, and finds the package prefix common to
+     * the classes involved.
+     * 
+     * @param graph Whether the listing is for a graph, where primitive arrays
+     *            that are not part of the mesh are split into their elements
+     *            and the prefix is based on the field types, or for plain-text,
+     *            where the prefix is based on the field names.
+     * @return The visited objects.
+     */
+    private Listing list(boolean graph) {
+        pin();
+        try {
+            final Listing listing = new Listing();
+            Node node = mFirstNode;
+            while (node != null) {
+                listing.add(node.mObject, true);
+                node = node.mNext;
+            }
+            final ArrayList<Object> all = listing.mAll;
+            listing.mNumNodes = all.size();
+            String prefix = null;
+            for (int i = 0; i < all.size(); i++) {
+                final Object obj = all.get(i);
+                prefix = commonPrefix(prefix, obj.getClass().getCanonicalName());
+                if (obj instanceof Gluey) {
+                    final InjectionPoint[] points = getInjectionPoints(obj.getClass());
+                    final int pointsLen = points.length;
+                    for (int k = 0; k < pointsLen; k++) {
+                        final InjectionPoint point = points[k];
+                        final Field field = point.mField;
+                        try {
+                            Object fieldVal = field.get(obj);
+                            if (fieldVal != null) {
+                                final Class<?> fieldClazz = field.getType();
+                                final Object[] refs = refs(fieldVal, fieldClazz, graph, listing);
+                                final int refLen = refs.length;
+                                listing.mNumEdges += refLen;
+                                if (refLen > 0) {
+                                    if (graph) {
+                                        prefix = commonPrefix(prefix,
+                                                (fieldClazz.isArray() ? fieldClazz
+                                                        .getComponentType() : fieldClazz)
+                                                        .getCanonicalName());
+                                    } else {
+                                        prefix = commonPrefix(prefix, field.getDeclaringClass()
+                                                .getCanonicalName() + "." + field.getName());
+                                    }
+                                }
+                                for (int l = 0; l < refLen; l++) {
+                                    final Object ref = refs[l];
+                                    prefix = commonPrefix(prefix, ref.getClass()
+                                            .getCanonicalName());
+                                    if (listing.add(ref, false)) {
+                                        listing.mFoundBy.put(ref, point);
+                                    }
+                                }
+                            }
+                        } catch (IllegalAccessException e) {
+                            /* Ignore */
                         }
-                        dump.append(")\n");
                     }
                 }
             }
 
             /* Store package prefix */
-            if (pass == 0 && prefix != null) {
-                prefixEnd = prefix.lastIndexOf('.') + 1;
-                dump.append("\tpackage = ");
-                dump.append(prefix.substring(0, prefixEnd - 1));
-                dump.append("\n");
+            if (prefix != null) {
+                listing.mPrefix = prefix;
+                listing.mPrefixEnd = prefix.lastIndexOf('.') + 1;
             }
+            listing.number();
+            return listing;
+        } finally {
+            unpin();
         }
-        dump.append("]");
-        return dump.toString();
+    }
+
+    /**
+     * Gets the objects referred to by an injected field.
+     * 
+     * @param fieldVal The value of the field, not null.
+     * @param fieldClazz The type of the field.
+     * @param split Whether to split primitive arrays that are not part of the
+     *            mesh into their elements.
+     * @param listing The objects visited so far.
+     * @return The referred objects.
+     */
+    private static Object[] refs(Object fieldVal, Class<?> fieldClazz, boolean split,
+            Listing listing) {
+        if (fieldClazz.isArray()) {
+            if (!fieldClazz.getComponentType().isPrimitive()) {
+                return (Object[])fieldVal;
+            } else if (split) {
+                /* Find out if it is a temporary array */
+                final Integer idx = listing.mIndex.get(fieldVal);
+                if (idx == null || idx >= listing.mNumNodes) {
+                    final int arrLen = Array.getLength(fieldVal);
+                    final Object[] refs = new Object[arrLen];
+                    for (int j = 0; j < arrLen; j++) {
+                        refs[j] = Array.get(fieldVal, j);
+                    }
+                    return refs;
+                }
+            }
+        }
+        return new Object[] {
+            fieldVal
+        };
     }
 
 }
@@ -0,0 +1,214 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits events to the JDK Flight Recorder when it is available on the
+ * runtime. The events are defined at run time through reflection, why nothing
+ * here depends on the recorder at compile time. On runtimes without the
+ * recorder, e.g. Android, all methods do nothing.
+ */
+final class FlightEvents {
+
+    /**
+     * A glue of an object mesh, with the time spent per phase and the size of
+     * the mesh.
+     */
+    static final int APPLY = 0;
+
+    /**
+     * The creation of an object by a factory.
+     */
+    static final int FACTORY = 1;
+
+    /**
+     * The inflation of a layout.
+     */
+    static final int INFLATION = 2;
+
+    /**
+     * The addition or removal of a batch of objects.
+     */
+    static final int CHANGE = 3;
+
+    private static final String PREFIX = "com.sonyericsson.inject.";
+
+    /**
+     * The event factories of each event type, or null when the recorder is
+     * not available.
+     */
+    private static final Object[] sFactories;
+
+    private static final Object[] sTypes;
+
+    private static Method sNewEvent;
+
+    private static Method sIsEnabled;
+
+    private static Method sBegin;
+
+    private static Method sEnd;
+
+    private static Method sCommit;
+
+    private static Method sSet;
+
+    static {
+        Object[] factories = null;
+        Object[] types = null;
+        try {
+            final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            final Method create = factoryClass.getMethod("create", List.class, List.class);
+            final Method getEventType = factoryClass.getMethod("getEventType");
+            sNewEvent = factoryClass.getMethod("newEvent");
+            sIsEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+            sBegin = eventClass.getMethod("begin");
+            sEnd = eventClass.getMethod("end");
+            sCommit = eventClass.getMethod("commit");
+            sSet = eventClass.getMethod("set", int.class, Object.class);
+
+            /* Define all events */
+            final Object[][] definitions = new Object[][] {
+                    {
+                            "Apply", "Apply", int.class, "objects", "Objects", int.class,
+                            "factories", "Factories", int.class, "nodes", "Nodes", long.class,
+                            "preprocessTime", "Preprocessing", long.class, "validationTime",
+                            "Validation", long.class, "instantiationTime", "Instantiation",
+                            long.class, "lookupTime", "Lookup", long.class, "assignmentTime",
+                            "Assignment", long.class, "sortTime", "Sorting", int.class,
+                            "constructorCalls", "Constructor Calls", int.class,
+                            "resolveCalls", "Factory Validations"
+                    }, {
+                            "Factory", "Factory Instantiation", String.class, "factoryClass",
+                            "Factory Class"
+                    }, {
+                            "Inflation", "Layout Inflation", int.class, "layoutId", "Layout ID"
+                    }, {
+                            "Change", "Add or Remove Batch", int.class, "added", "Added",
+                            int.class, "removed", "Removed", int.class, "objects", "Objects",
+                            int.class, "factories", "Factories"
+                    }
+            };
+            final int definitionsLen = definitions.length;
+            factories = new Object[definitionsLen];
+            types = new Object[definitionsLen];
+            for (int i = 0; i < definitionsLen; i++) {
+                final Object[] definition = definitions[i];
+                List<Object> annotations = new ArrayList<Object>();
+                annotations.add(annotation("jdk.jfr.Name", PREFIX + definition[0]));
+                annotations.add(annotation("jdk.jfr.Label", definition[1]));
+                annotations.add(annotation("jdk.jfr.Category", new String[] {
+                    "Duct Tape"
+                }));
+                List<Object> fields = new ArrayList<Object>();
+                for (int j = 2; j < definition.length; j += 3) {
+                    fields.add(field((Class<?>)definition[j], (String)definition[j + 1],
+                            (String)definition[j + 2]));
+                }
+                factories[i] = create.invoke(null, annotations, fields);
+                types[i] = getEventType.invoke(factories[i]);
+            }
+        } catch (Throwable t) {
+            /* Not available, which makes all events no-ops */
+            factories = null;
+            types = null;
+        }
+        sFactories = factories;
+        sTypes = types;
+    }
+
+    private FlightEvents() {
+    }
+
+    private static Object annotation(String type, Object value) throws Exception {
+        final Constructor<?> constructor = Class.forName("jdk.jfr.AnnotationElement")
+                .getConstructor(Class.class, Object.class);
+        return constructor.newInstance(Class.forName(type), value);
+    }
+
+    private static Object field(Class<?> type, String name, String label) throws Exception {
+        List<Object> annotations = new ArrayList<Object>();
+        annotations.add(annotation("jdk.jfr.Label", label));
+        if (name.endsWith("Time")) {
+            annotations.add(annotation("jdk.jfr.Timespan", "NANOSECONDS"));
+        }
+        final Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor")
+                .getConstructor(Class.class, String.class, List.class);
+        return constructor.newInstance(type, name, Collections.unmodifiableList(annotations));
+    }
+
+    /**
+     * Starts an event, unless the recorder is unavailable or not recording
+     * events of the type.
+     * 
+     * @param type The type of event.
+     * @return The started event, or null when nothing is to be recorded.
+     */
+    static Object begin(int type) {
+        final Object[] factories = sFactories;
+        if (factories == null) {
+            return null;
+        }
+        try {
+            if (!(Boolean)sIsEnabled.invoke(sTypes[type])) {
+                return null;
+            }
+            final Object event = sNewEvent.invoke(factories[type]);
+            sBegin.invoke(event);
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends and commits an event started by {@link #begin(int)}.
+     * 
+     * @param event The event.
+     * @param values The values of all fields of the event, in the order they
+     *            are defined.
+     */
+    static void commit(Object event, Object... values) {
+        try {
+            sEnd.invoke(event);
+            final int valuesLen = values.length;
+            for (int i = 0; i < valuesLen; i++) {
+                sSet.invoke(event, i, values[i]);
+            }
+            sCommit.invoke(event);
+        } catch (Exception e) {
+            /* Recording is best effort */
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.IdentityHashMap;
+
+/**
+ * <p>
+ * An immutable record of every injection made in a frozen
+ * {@link com.sonyericsson.inject.DuctTape}, kept as flat arrays of target
+ * object, field and injected value. The injections can be made again with
+ * {@link #reapply()}, e.g. after the fields have been reset, without any of the
+ * work done by {@link com.sonyericsson.inject.DuctTape#apply()}, and two
+ * records can be compared with {@link #diff(GlueGraph)}.
+ * </p>
+ * <p>
+ * Injected arrays are recorded as the very instances that were injected, why
+ * they are shared with the injected objects.
+ * </p>
+ * 
+ * @see com.sonyericsson.inject.DuctTape#freeze()
+ */
+public final class GlueGraph {
+
+    /**
+     * The object owning the field of each injection.
+     */
+    private final Object[] mTargets;
+
+    /**
+     * The field of each injection. The injections of each target are kept
+     * together.
+     */
+    private final Field[] mFields;
+
+    /**
+     * The injected value of each injection.
+     */
+    private final Object[] mValues;
+
+    GlueGraph(Object[] targets, Field[] fields, Object[] values) {
+        mTargets = targets;
+        mFields = fields;
+        mValues = values;
+    }
+
+    /**
+     * Gives the number of recorded injections.
+     * 
+     * @return The number of injections.
+     */
+    public int size() {
+        return mTargets.length;
+    }
+
+    /**
+     * Gives the object injected by an injection.
+     * 
+     * @param index The index of the injection.
+     * @return The object owning the field.
+     */
+    public Object getTarget(int index) {
+        return mTargets[index];
+    }
+
+    /**
+     * Gives the field injected by an injection.
+     * 
+     * @param index The index of the injection.
+     * @return The field.
+     */
+    public Field getField(int index) {
+        return mFields[index];
+    }
+
+    /**
+     * Gives the value injected by an injection.
+     * 
+     * @param index The index of the injection.
+     * @return The injected value.
+     */
+    public Object getValue(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * Makes all recorded injections again.
+     */
+    public void reapply() {
+        final Object[] targets = mTargets;
+        final Field[] fields = mFields;
+        final Object[] values = mValues;
+        final int len = targets.length;
+        try {
+            for (int i = 0; i < len; i++) {
+                fields[i].set(targets[i], values[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Internal error", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Internal error", e);
+        }
+    }
+
+    /**
+     * Finds the injections that differ between this and another record.
+     * Objects are compared by identity, and arrays entry by entry.
+     * 
+     * @param other The record to compare with.
+     * @return The indices of the injections in this record that inject
+     *         something else, or are missing, in the other record.
+     */
+    public int[] diff(GlueGraph other) {
+        final Object[] targets = mTargets;
+        final Field[] fields = mFields;
+        final Object[] values = mValues;
+        final Object[] otherTargets = other.mTargets;
+        final Field[] otherFields = other.mFields;
+        final Object[] otherValues = other.mValues;
+        final int len = targets.length;
+        final int otherLen = otherTargets.length;
+        int[] changed = new int[len];
+        int changedLen = 0;
+        IdentityHashMap<Object, Integer> starts = null;
+        for (int i = 0; i < len; i++) {
+            final Object target = targets[i];
+            final Field field = fields[i];
+
+            /* Find the same injection in the other record */
+            /*
+             * NOTE: Records of the same mesh usually list the injections in
+             * the same order, which is tried first.
+             */
+            int j = -1;
+            if (i < otherLen && otherTargets[i] == target && otherFields[i] == field) {
+                j = i;
+            } else {
+                if (starts == null) {
+                    starts = new IdentityHashMap<Object, Integer>();
+                    for (int k = otherLen - 1; k >= 0; k--) {
+                        starts.put(otherTargets[k], k);
+                    }
+                }
+                final Integer start = starts.get(target);
+                if (start != null) {
+                    for (int k = start; k < otherLen && otherTargets[k] == target; k++) {
+                        if (otherFields[k] == field) {
+                            j = k;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            /* Compare */
+            if (j < 0 || !same(values[i], otherValues[j], field.getType().isPrimitive())) {
+                changed[changedLen++] = i;
+            }
+        }
+        int[] result = new int[changedLen];
+        System.arraycopy(changed, 0, result, 0, changedLen);
+        return result;
+    }
+
+    private static boolean same(Object lhs, Object rhs, boolean primitive) {
+        if (lhs == rhs) {
+            return true;
+        } else if (lhs == null || rhs == null) {
+            return false;
+        } else if (primitive) {
+            return lhs.equals(rhs);
+        } else if (lhs.getClass().isArray() && lhs.getClass() == rhs.getClass()) {
+            final boolean primitiveArray = lhs.getClass().getComponentType().isPrimitive();
+            final int len = Array.getLength(lhs);
+            if (len != Array.getLength(rhs)) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (!same(Array.get(lhs, i), Array.get(rhs, i), primitiveArray)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+}
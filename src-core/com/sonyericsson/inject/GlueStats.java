@@ -0,0 +1,236 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+/**
+ * <p>
+ * Statistics on the last time a {@link com.sonyericsson.inject.DuctTape} glued
+ * its object mesh together, collected when enabled by
+ * {@link com.sonyericsson.inject.DuctTape#setStatsEnabled(boolean)}.
+ * </p>
+ * <p>
+ * The time spent is split into phases. Validation of factories and creation
+ * of objects are done while looking up what to inject, but the time spent on
+ * them is only included in their own phases. All times are given in
+ * nanoseconds.
+ * </p>
+ * 
+ * @see com.sonyericsson.inject.DuctTape#getStats()
+ */
+public final class GlueStats {
+
+    long mTotalTime;
+
+    long mPreprocessTime;
+
+    long mValidationTime;
+
+    long mInstantiationTime;
+
+    long mLookupTime;
+
+    long mAssignmentTime;
+
+    long mSortTime;
+
+    int mReflectiveCalls;
+
+    int mResolveCalls;
+
+    int mConstructorCalls;
+
+    int mInflations;
+
+    int mImplCacheHits;
+
+    int mImplCacheMisses;
+
+    int mIdCacheHits;
+
+    int mIdCacheMisses;
+
+    GlueStats() {
+    }
+
+    GlueStats(GlueStats other) {
+        mTotalTime = other.mTotalTime;
+        mPreprocessTime = other.mPreprocessTime;
+        mValidationTime = other.mValidationTime;
+        mInstantiationTime = other.mInstantiationTime;
+        mLookupTime = other.mLookupTime;
+        mAssignmentTime = other.mAssignmentTime;
+        mSortTime = other.mSortTime;
+        mReflectiveCalls = other.mReflectiveCalls;
+        mResolveCalls = other.mResolveCalls;
+        mConstructorCalls = other.mConstructorCalls;
+        mInflations = other.mInflations;
+        mImplCacheHits = other.mImplCacheHits;
+        mImplCacheMisses = other.mImplCacheMisses;
+        mIdCacheHits = other.mIdCacheHits;
+        mIdCacheMisses = other.mIdCacheMisses;
+    }
+
+    /**
+     * @return The total time spent gluing the mesh together.
+     */
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /**
+     * @return The time spent preparing the added objects.
+     */
+    public long getPreprocessTime() {
+        return mPreprocessTime;
+    }
+
+    /**
+     * @return The time spent finding out which factories can produce objects.
+     */
+    public long getValidationTime() {
+        return mValidationTime;
+    }
+
+    /**
+     * @return The time spent in constructors of factory products.
+     */
+    public long getInstantiationTime() {
+        return mInstantiationTime;
+    }
+
+    /**
+     * @return The time spent finding the objects to inject.
+     */
+    public long getLookupTime() {
+        return mLookupTime;
+    }
+
+    /**
+     * @return The time spent assigning injected values to fields.
+     */
+    public long getAssignmentTime() {
+        return mAssignmentTime;
+    }
+
+    /**
+     * @return The time spent sorting injected arrays by dependency.
+     */
+    public long getSortTime() {
+        return mSortTime;
+    }
+
+    /**
+     * @return The number of calls made through reflection, i.e. field reads
+     *         and writes, constructor calls and scans of declared fields while
+     *         validating factories.
+     */
+    public int getReflectiveCalls() {
+        return mReflectiveCalls;
+    }
+
+    /**
+     * @return The number of times a factory was validated.
+     */
+    public int getResolveCalls() {
+        return mResolveCalls;
+    }
+
+    /**
+     * @return The number of objects created by factories.
+     */
+    public int getConstructorCalls() {
+        return mConstructorCalls;
+    }
+
+    /**
+     * @return The number of layouts inflated, not counting those inflated in
+     *         advance.
+     */
+    public int getInflations() {
+        return mInflations;
+    }
+
+    /**
+     * @return The share of lookups of implementing objects that were answered
+     *         from the cache, between 0 and 1.
+     */
+    public float getImplCacheHitRate() {
+        return rate(mImplCacheHits, mImplCacheMisses);
+    }
+
+    /**
+     * @return The share of lookups of resources and views that were answered
+     *         from the cache, between 0 and 1.
+     */
+    public float getIdCacheHitRate() {
+        return rate(mIdCacheHits, mIdCacheMisses);
+    }
+
+    /**
+     * Gives the time spent in phases that are nested in the lookup phase.
+     */
+    long nestedTime() {
+        return mValidationTime + mInstantiationTime;
+    }
+
+    /**
+     * Adds the time spent validating a factory.
+     *
+     * @param start The time the validation started.
+     */
+    void addValidationTime(long start) {
+        mValidationTime += System.nanoTime() - start;
+    }
+
+    /**
+     * Adds the time spent in the lookup phase, not counting nested phases.
+     *
+     * @param start The time the lookup started.
+     * @param nested The time given by {@link #nestedTime()} when the lookup
+     *            started.
+     */
+    void addLookupTime(long start, long nested) {
+        mLookupTime += System.nanoTime() - start - (nestedTime() - nested);
+    }
+
+    private static float rate(int hits, int misses) {
+        final int total = hits + misses;
+        return (total > 0 ? (float)hits / total : 0f);
+    }
+
+    @Override
+    public String toString() {
+        return "GlueStats[total=" + mTotalTime / 1000 + "us, preprocess=" + mPreprocessTime
+                / 1000 + "us, validation=" + mValidationTime / 1000 + "us, instantiation="
+                + mInstantiationTime / 1000 + "us, lookup=" + mLookupTime / 1000
+                + "us, assignment=" + mAssignmentTime / 1000 + "us, sort=" + mSortTime / 1000
+                + "us, reflective=" + mReflectiveCalls + ", resolves=" + mResolveCalls
+                + ", constructors=" + mConstructorCalls + ", inflations=" + mInflations
+                + ", implCache=" + (int)(getImplCacheHitRate() * 100) + "%, idCache="
+                + (int)(getIdCacheHitRate() * 100) + "%]";
+    }
+
+}
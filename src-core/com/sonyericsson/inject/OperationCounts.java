@@ -0,0 +1,124 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject;
+
+/**
+ * <p>
+ * Counts of the basic operations a {@link com.sonyericsson.inject.DuctTape}
+ * performs, collected while attached by
+ * {@link com.sonyericsson.inject.DuctTape#setOperationCounts(OperationCounts)}.
+ * </p>
+ * <p>
+ * Unlike times, the counts are the same on every run, which makes them
+ * suitable for tests of how the work grows with the size of the mesh. The
+ * counts keep adding up over several operations and instances until
+ * {@link #reset()} is called. They are not safe to share between threads.
+ * </p>
+ * 
+ * @see com.sonyericsson.inject.GlueStats
+ */
+public final class OperationCounts {
+
+    long mNodeVisits;
+
+    long mFactoryVisits;
+
+    long mInstanceChecks;
+
+    long mTagChecks;
+
+    long mFieldScans;
+
+    long mSequencePlacements;
+
+    /**
+     * @return The number of times an added or produced object was visited
+     *         while looking for duplicates, candidates or objects to remove.
+     */
+    public long getNodeVisits() {
+        return mNodeVisits;
+    }
+
+    /**
+     * @return The number of times a factory was visited while looking for
+     *         duplicates, candidates or factories to remove.
+     */
+    public long getFactoryVisits() {
+        return mFactoryVisits;
+    }
+
+    /**
+     * @return The number of times an object was checked against the type of
+     *         an injected field.
+     */
+    public long getInstanceChecks() {
+        return mInstanceChecks;
+    }
+
+    /**
+     * @return The number of times the tags of an object or factory were
+     *         checked against the tags of an injected field.
+     */
+    public long getTagChecks() {
+        return mTagChecks;
+    }
+
+    /**
+     * @return The number of times the declared fields of a class were listed.
+     */
+    public long getFieldScans() {
+        return mFieldScans;
+    }
+
+    /**
+     * @return The number of times an object, or a group of objects with
+     *         circular dependencies, was placed in a dependency sequence.
+     */
+    public long getSequencePlacements() {
+        return mSequencePlacements;
+    }
+
+    /**
+     * Sets all counts to zero.
+     */
+    public void reset() {
+        mNodeVisits = 0;
+        mFactoryVisits = 0;
+        mInstanceChecks = 0;
+        mTagChecks = 0;
+        mFieldScans = 0;
+        mSequencePlacements = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationCounts[nodes=" + mNodeVisits + ", factories=" + mFactoryVisits
+                + ", instances=" + mInstanceChecks + ", tags=" + mTagChecks + ", fields="
+                + mFieldScans + "]";
+    }
+
+}
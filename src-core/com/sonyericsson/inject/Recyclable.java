@@ -0,0 +1,52 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject;
+
+/**
+ * When a class that is not a {@link com.sonyericsson.inject.Singleton}
+ * implements this interface the framework will recycle the objects its
+ * factory produces. Once the object a product was injected into has been
+ * removed from the mesh, the product is reset by {@link #recycle()} and handed
+ * to the next injection that needs a new product, instead of creating one. A
+ * few products are kept for each factory.
+ * <p>
+ * The removed object still refers to the product, why this interface should
+ * only be implemented by classes whose objects are not used by the objects
+ * they are injected into once those have been removed.
+ * 
+ * @see com.sonyericsson.inject.DuctTape#remove(Object)
+ */
+public interface Recyclable {
+
+    /**
+     * Called when the object is no longer part of the mesh, to bring it back
+     * to the state of a newly created object. Its fields are injected again
+     * when it is used again.
+     */
+    void recycle();
+
+}
@@ -0,0 +1,52 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+/**
+ * When a class implements this interface the framework will call
+ * {@link #start()} on its instances once they and everything they depend on
+ * have been glued together, and {@link #stop()} when they are shut down again.
+ * Objects are started after the objects they depend on, and stopped before
+ * them.
+ * 
+ * @see com.sonyericsson.inject.DuctTape#start()
+ * @see com.sonyericsson.inject.DuctTape#stop()
+ */
+public interface Startable {
+
+    /**
+     * Called when the object and all objects it depends on have been glued
+     * together, after all the objects it depends on have been started.
+     */
+    void start();
+
+    /**
+     * Called when the object is shut down, before any of the objects it
+     * depends on are stopped.
+     */
+    void stop();
+
+}
@@ -0,0 +1,206 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * A bounded record of the decisions made while resolving what to inject,
+ * where the oldest records are overwritten when it is full. Each record is
+ * encoded in a few integers, with classes and fields referred to by index into
+ * a table that only grows with the number of distinct classes and fields, why
+ * recording is cheap enough to be left on.
+ */
+final class Trace {
+
+    /**
+     * The validation of a factory started.
+     */
+    static final int ENTER = 0;
+
+    /**
+     * The validation of a factory ended, with the resulting status as detail.
+     */
+    static final int LEAVE = 1;
+
+    /**
+     * A field was evaluated, with the number of candidates found as detail.
+     */
+    static final int FIELD = 2;
+
+    /**
+     * A factory was found unable to produce its object because of a field,
+     * with the reason as detail.
+     */
+    static final int REJECT = 3;
+
+    /**
+     * A factory was found to depend on a factory already being validated.
+     */
+    static final int CYCLE = 4;
+
+    /**
+     * A factory was found unable to produce its object because a factory in
+     * the same cycle was.
+     */
+    static final int INVALIDATE = 5;
+
+    /**
+     * An injection failed, with the reason as detail.
+     */
+    static final int FAIL = 6;
+
+    /**
+     * There is nothing to inject.
+     */
+    static final int NOTHING = 0;
+
+    /**
+     * There are several objects for a single reference.
+     */
+    static final int SEVERAL = 1;
+
+    /**
+     * A factory of non-singletons is part of a cycle.
+     */
+    static final int NON_SINGLETON_CYCLE = 2;
+
+    private static final String[] KINDS = {
+            "enter", "leave", "field", "reject", "cycle", "invalidate", "fail"
+    };
+
+    private static final String[] REASONS = {
+            "nothing to inject", "several objects available", "non-singleton in cycle"
+    };
+
+    private static final String[] STATUSES = {
+            "not processed", "unresolvable", "resolvable", "processing", "executed"
+    };
+
+    private static final int RECORD_SIZE = 3;
+
+    private final int[] mRecords;
+
+    private final int mCapacity;
+
+    private long mCount;
+
+    private final ArrayList<Object> mSubjects = new ArrayList<Object>();
+
+    private final IdentityHashMap<Object, Integer> mSubjectIds =
+            new IdentityHashMap<Object, Integer>();
+
+    /**
+     * @param capacity The number of records to keep.
+     */
+    Trace(int capacity) {
+        mCapacity = capacity;
+        mRecords = new int[capacity * RECORD_SIZE];
+    }
+
+    /**
+     * Adds a record.
+     * 
+     * @param kind The kind of record.
+     * @param subject The class or field the record is about.
+     * @param detail Additional information depending on the kind.
+     * @param other A related class or field, or null.
+     */
+    void add(int kind, Object subject, int detail, Object other) {
+        final int idx = (int)(mCount++ % mCapacity) * RECORD_SIZE;
+        final int[] records = mRecords;
+        records[idx] = (kind << 24) | (detail & 0x00ffffff);
+        records[idx + 1] = id(subject);
+        records[idx + 2] = id(other);
+    }
+
+    private int id(Object subject) {
+        if (subject == null) {
+            return -1;
+        }
+        final Integer id = mSubjectIds.get(subject);
+        if (id != null) {
+            return id;
+        }
+        final int newId = mSubjects.size();
+        mSubjects.add(subject);
+        mSubjectIds.put(subject, newId);
+        return newId;
+    }
+
+    private String name(int id) {
+        final Object subject = mSubjects.get(id);
+        if (subject instanceof Field) {
+            final Field field = (Field)subject;
+            return field.getDeclaringClass().getName() + "." + field.getName();
+        }
+        return ((Class<?>)subject).getName();
+    }
+
+    /**
+     * Renders all kept records as text, one line per record, oldest first.
+     * 
+     * @return The text.
+     */
+    String dump() {
+        StringBuilder dump = new StringBuilder();
+        final long count = mCount;
+        final long first = Math.max(0, count - mCapacity);
+        if (first > 0) {
+            dump.append("(").append(first).append(" earlier records dropped)\n");
+        }
+        final int[] records = mRecords;
+        for (long i = first; i < count; i++) {
+            final int idx = (int)(i % mCapacity) * RECORD_SIZE;
+            final int kind = records[idx] >>> 24;
+            final int detail = records[idx] & 0x00ffffff;
+            dump.append(KINDS[kind]).append(' ').append(name(records[idx + 1]));
+            switch (kind) {
+                case LEAVE:
+                    dump.append(": ").append(STATUSES[detail]);
+                    break;
+                case FIELD:
+                    dump.append(": ").append(detail).append(" candidate")
+                            .append(detail == 1 ? "" : "s");
+                    break;
+                case REJECT:
+                case FAIL:
+                    dump.append(": ").append(REASONS[detail]);
+                    break;
+                default:
+                    break;
+            }
+            if (records[idx + 2] >= 0) {
+                dump.append(kind == CYCLE ? " -> " : " at ").append(name(records[idx + 2]));
+            }
+            dump.append('\n');
+        }
+        return dump.toString();
+    }
+
+}
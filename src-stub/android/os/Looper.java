@@ -28,6 +28,17 @@ package android.os;
 
 public class Looper {
 
-    /* Stub */
+    private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
+
+    public static void prepare() {
+        if (sThreadLocal.get() != null) {
+            throw new RuntimeException("Only one Looper may be created per thread");
+        }
+        sThreadLocal.set(new Looper());
+    }
+
+    public static Looper myLooper() {
+        return sThreadLocal.get();
+    }
 
 }
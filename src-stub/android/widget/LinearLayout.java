@@ -33,6 +33,8 @@ import android.view.View;
 
 public class LinearLayout extends View {
 
+    private final TextView mView1 = new TextView("abcd123", R.id.view1);
+
     public LinearLayout(int id) {
         super(id);
     }
@@ -41,7 +43,7 @@ public class LinearLayout extends View {
     public View findViewById(int id) {
         switch (id) {
             case R.id.view1:
-                return new TextView("abcd123", R.id.view1);
+                return mView1;
             default:
                 throw new NotFoundException();
         }
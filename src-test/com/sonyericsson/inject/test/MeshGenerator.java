@@ -0,0 +1,554 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import com.sonyericsson.inject.DuctTape;
+
+/**
+ * Generates object meshes of a given size and shape for scaling tests and
+ * benchmarks. The classes are defined at runtime, why there can be thousands
+ * of distinct classes without any of them being written by hand.
+ * <p>
+ * The classes are laid out in levels, where each class has a number of
+ * injected fields referring to randomly chosen classes on the next level. A
+ * class is referred to by its concrete type, or through an array of its
+ * interface when the interface is shared with other classes. Some classes are
+ * tagged, in which case they are only injected into fields with their tag.
+ * Some classes are added as factories rather than as objects, and of those
+ * some are singletons. Finally, some references have a matching reference
+ * back, forming a circular dependency. Classes in such cycles are always
+ * singletons, since a cycle of other factories cannot be resolved.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * MeshGenerator generator = new MeshGenerator(42);
+ * generator.setClasses(10000);
+ * generator.setFactoryRatio(0.5f);
+ * generator.generate();
+ *
+ * DuctTape dt = new DuctTape();
+ * generator.populate(dt);
+ * dt.apply();
+ * </pre>
+ *
+ * Note that products of factories that are not singletons are created for
+ * each field they are injected into, why a deep mesh with a large fan-out and
+ * few singletons can grow exponentially.
+ */
+public final class MeshGenerator {
+
+    /**
+     * The package of the generated classes.
+     */
+    private static final String PACKAGE = "com.sonyericsson.inject.test.generated";
+
+    private static final String GLUEY = "com/sonyericsson/inject/Gluey";
+
+    private static final String SINGLETON = "com/sonyericsson/inject/Singleton";
+
+    private static final String GLUE = "Lcom/sonyericsson/inject/Glue;";
+
+    private final long mSeed;
+
+    private int mClasses = 100;
+
+    private int mDepth = 4;
+
+    private int mFanOut = 2;
+
+    private int mClassesPerInterface = 0;
+
+    private float mTagDensity = 0f;
+
+    private float mFactoryRatio = 0f;
+
+    private float mSingletonRatio = 1f;
+
+    private float mCycleRatio = 0f;
+
+    private Class<?>[] mGenerated;
+
+    private boolean[] mFactory;
+
+    private int[] mTags;
+
+    private int mFieldCount;
+
+    /**
+     * Creates a generator of meshes with 100 classes in four levels, where
+     * each class refers to two classes on the next level, without interfaces,
+     * tags, factories or cycles.
+     *
+     * @param seed The seed of the random choices, why the same seed and
+     *            parameters always give the same mesh.
+     */
+    public MeshGenerator(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * @param classes The number of classes, at least one per level.
+     */
+    public void setClasses(int classes) {
+        mClasses = classes;
+    }
+
+    /**
+     * @param depth The number of levels.
+     */
+    public void setDepth(int depth) {
+        mDepth = depth;
+    }
+
+    /**
+     * @param fanOut The number of references from each class to classes on
+     *            the next level.
+     */
+    public void setFanOut(int fanOut) {
+        mFanOut = fanOut;
+    }
+
+    /**
+     * @param classesPerInterface The number of classes on the same level
+     *            sharing an interface, or 0 for classes without interfaces.
+     */
+    public void setClassesPerInterface(int classesPerInterface) {
+        mClassesPerInterface = classesPerInterface;
+    }
+
+    /**
+     * @param tagDensity The share of classes that are tagged, between 0 and 1.
+     */
+    public void setTagDensity(float tagDensity) {
+        mTagDensity = tagDensity;
+    }
+
+    /**
+     * @param factoryRatio The share of classes that are added as factories
+     *            rather than as objects, between 0 and 1.
+     */
+    public void setFactoryRatio(float factoryRatio) {
+        mFactoryRatio = factoryRatio;
+    }
+
+    /**
+     * @param singletonRatio The share of factories that are singletons,
+     *            between 0 and 1.
+     */
+    public void setSingletonRatio(float singletonRatio) {
+        mSingletonRatio = singletonRatio;
+    }
+
+    /**
+     * @param cycleRatio The share of references that have a matching
+     *            reference back, between 0 and 1.
+     */
+    public void setCycleRatio(float cycleRatio) {
+        mCycleRatio = cycleRatio;
+    }
+
+    /**
+     * Generates and defines the classes according to the current parameters.
+     */
+    public void generate() {
+        final Random random = new Random(mSeed);
+        final int numClasses = mClasses;
+        final int depth = Math.max(1, Math.min(mDepth, numClasses));
+
+        /* Lay out the levels */
+        final int[] levelStart = new int[depth + 1];
+        for (int l = 0; l <= depth; l++) {
+            levelStart[l] = (int)((long)numClasses * l / depth);
+        }
+        final int[] level = new int[numClasses];
+        for (int l = 0; l < depth; l++) {
+            Arrays.fill(level, levelStart[l], levelStart[l + 1], l);
+        }
+
+        /* Share interfaces between neighbors on the same level */
+        final int[] iface = new int[numClasses];
+        final int[] ifaceSize = new int[numClasses];
+        int numInterfaces = 0;
+        Arrays.fill(iface, -1);
+        if (mClassesPerInterface > 0) {
+            for (int l = 0; l < depth; l++) {
+                for (int i = levelStart[l]; i < levelStart[l + 1]; i++) {
+                    if ((i - levelStart[l]) % mClassesPerInterface == 0) {
+                        numInterfaces++;
+                    }
+                    iface[i] = numInterfaces - 1;
+                    ifaceSize[numInterfaces - 1]++;
+                }
+            }
+        }
+
+        /* Tag classes */
+        final int[] tags = new int[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            if (random.nextFloat() < mTagDensity) {
+                tags[i] = i + 1;
+            }
+        }
+
+        /* Pick references, where negative targets refer to interfaces */
+        final int[][] refs = new int[numClasses][];
+        final int[] refsLen = new int[numClasses];
+        final boolean[] cyclic = new boolean[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            refs[i] = new int[mFanOut + 1];
+        }
+        for (int i = 0; i < numClasses; i++) {
+            final int l = level[i];
+            if (l == depth - 1) {
+                continue;
+            }
+            final int start = levelStart[l + 1];
+            final int size = levelStart[l + 2] - start;
+            for (int k = 0; k < mFanOut; k++) {
+                final int target = start + random.nextInt(size);
+                final int shared = iface[target];
+                if (shared >= 0 && ifaceSize[shared] > 1) {
+                    add(refs, refsLen, i, -1 - shared);
+                } else {
+                    add(refs, refsLen, i, target);
+                }
+                if (random.nextFloat() < mCycleRatio) {
+                    add(refs, refsLen, target, i);
+                    cyclic[i] = true;
+                    cyclic[target] = true;
+                }
+            }
+        }
+
+        /* Decide how classes are added */
+        final boolean[] factory = new boolean[numClasses];
+        final boolean[] singleton = new boolean[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            factory[i] = random.nextFloat() < mFactoryRatio;
+            singleton[i] = factory[i] && (cyclic[i] || random.nextFloat() < mSingletonRatio);
+        }
+
+        /* Define the classes */
+        final HashMap<String, byte[]> definitions = new HashMap<String, byte[]>();
+        for (int k = 0; k < numInterfaces; k++) {
+            definitions.put(PACKAGE + ".I" + k, defineInterface(internalName("I" + k)));
+        }
+        int fieldCount = 0;
+        for (int i = 0; i < numClasses; i++) {
+            definitions.put(PACKAGE + ".C" + i, defineClass(i, refs[i], refsLen[i], iface[i],
+                    singleton[i], tags));
+            fieldCount += refsLen[i];
+        }
+        final Loader loader = new Loader(definitions);
+        final Class<?>[] generated = new Class<?>[numClasses];
+        try {
+            for (int i = 0; i < numClasses; i++) {
+                generated[i] = loader.loadClass(PACKAGE + ".C" + i);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        mGenerated = generated;
+        mFactory = factory;
+        mTags = tags;
+        mFieldCount = fieldCount;
+    }
+
+    /**
+     * @return The generated classes.
+     */
+    public Class<?>[] getClasses() {
+        return mGenerated.clone();
+    }
+
+    /**
+     * @return The total number of injected fields of the generated classes.
+     */
+    public int getFieldCount() {
+        return mFieldCount;
+    }
+
+    /**
+     * Adds a new object of each generated class to a tape, or the class
+     * itself for classes added as factories, with their tags.
+     *
+     * @param dt The tape.
+     * @return What was added, in the order of the generated classes.
+     */
+    public Object[] populate(DuctTape dt) {
+        final Class<?>[] generated = mGenerated;
+        final int generatedLen = generated.length;
+        final Object[] added = new Object[generatedLen];
+        for (int i = 0; i < generatedLen; i++) {
+            Object obj = generated[i];
+            if (!mFactory[i]) {
+                try {
+                    obj = generated[i].getConstructor().newInstance();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (mTags[i] != 0) {
+                dt.add(obj, mTags[i]);
+            } else {
+                dt.add(obj);
+            }
+            added[i] = obj;
+        }
+        return added;
+    }
+
+    private static void add(int[][] refs, int[] refsLen, int idx, int ref) {
+        if (refsLen[idx] == refs[idx].length) {
+            refs[idx] = Arrays.copyOf(refs[idx], refsLen[idx] * 2);
+        }
+        refs[idx][refsLen[idx]++] = ref;
+    }
+
+    private static String internalName(String simpleName) {
+        return PACKAGE.replace('.', '/') + "/" + simpleName;
+    }
+
+    private static byte[] defineInterface(String name) {
+        final ClassFile cf = new ClassFile();
+        final DataOutputStream body = cf.mBody;
+        try {
+            body.writeShort(0x0601);
+            body.writeShort(cf.classRef(name));
+            body.writeShort(cf.classRef("java/lang/Object"));
+            body.writeShort(0);
+            body.writeShort(0);
+            body.writeShort(0);
+            body.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return cf.toByteArray();
+    }
+
+    private static byte[] defineClass(int idx, int[] refs, int refsLen, int iface,
+            boolean singleton, int[] tags) {
+        final ClassFile cf = new ClassFile();
+        final DataOutputStream body = cf.mBody;
+        try {
+            /* Header */
+            body.writeShort(0x0021);
+            body.writeShort(cf.classRef(internalName("C" + idx)));
+            body.writeShort(cf.classRef("java/lang/Object"));
+
+            /* Interfaces */
+            final int numInterfaces = (refsLen > 0 ? 1 : 0) + (singleton ? 1 : 0)
+                    + (iface >= 0 ? 1 : 0);
+            body.writeShort(numInterfaces);
+            if (refsLen > 0) {
+                body.writeShort(cf.classRef(GLUEY));
+            }
+            if (singleton) {
+                body.writeShort(cf.classRef(SINGLETON));
+            }
+            if (iface >= 0) {
+                body.writeShort(cf.classRef(internalName("I" + iface)));
+            }
+
+            /* Injected fields */
+            body.writeShort(refsLen);
+            for (int k = 0; k < refsLen; k++) {
+                final int ref = refs[k];
+                final String desc;
+                final int tag;
+                if (ref < 0) {
+                    desc = "[L" + internalName("I" + (-1 - ref)) + ";";
+                    tag = 0;
+                } else {
+                    desc = "L" + internalName("C" + ref) + ";";
+                    tag = tags[ref];
+                }
+                body.writeShort(0x0001);
+                body.writeShort(cf.utf8("m" + k));
+                body.writeShort(cf.utf8(desc));
+                body.writeShort(1);
+                body.writeShort(cf.utf8("RuntimeVisibleAnnotations"));
+                body.writeInt(tag != 0 ? 14 : 6);
+                body.writeShort(1);
+                body.writeShort(cf.utf8(GLUE));
+                if (tag != 0) {
+                    body.writeShort(1);
+                    body.writeShort(cf.utf8("value"));
+                    body.writeByte('[');
+                    body.writeShort(1);
+                    body.writeByte('I');
+                    body.writeShort(cf.integer(tag));
+                } else {
+                    body.writeShort(0);
+                }
+            }
+
+            /* Default constructor */
+            body.writeShort(1);
+            body.writeShort(0x0001);
+            body.writeShort(cf.utf8("<init>"));
+            body.writeShort(cf.utf8("()V"));
+            body.writeShort(1);
+            body.writeShort(cf.utf8("Code"));
+            body.writeInt(17);
+            body.writeShort(1);
+            body.writeShort(1);
+            body.writeInt(5);
+            body.writeByte(0x2a);
+            body.writeByte(0xb7);
+            body.writeShort(cf.methodRef("java/lang/Object", "<init>", "()V"));
+            body.writeByte(0xb1);
+            body.writeShort(0);
+            body.writeShort(0);
+
+            /* No class attributes */
+            body.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return cf.toByteArray();
+    }
+
+    /**
+     * A minimal writer of class files, where the body is written after
+     * registering what it refers to in the constant pool.
+     */
+    private static final class ClassFile {
+
+        private final ByteArrayOutputStream mPoolBytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream mPool = new DataOutputStream(mPoolBytes);
+
+        private final HashMap<String, Integer> mEntries = new HashMap<String, Integer>();
+
+        private int mPoolCount = 1;
+
+        private final ByteArrayOutputStream mBodyBytes = new ByteArrayOutputStream();
+
+        final DataOutputStream mBody = new DataOutputStream(mBodyBytes);
+
+        int utf8(String text) throws IOException {
+            final Integer idx = mEntries.get("U" + text);
+            if (idx != null) {
+                return idx;
+            }
+            mPool.writeByte(1);
+            mPool.writeUTF(text);
+            return register("U" + text);
+        }
+
+        int classRef(String internalName) throws IOException {
+            final Integer idx = mEntries.get("C" + internalName);
+            if (idx != null) {
+                return idx;
+            }
+            final int name = utf8(internalName);
+            mPool.writeByte(7);
+            mPool.writeShort(name);
+            return register("C" + internalName);
+        }
+
+        int integer(int value) throws IOException {
+            final Integer idx = mEntries.get("I" + value);
+            if (idx != null) {
+                return idx;
+            }
+            mPool.writeByte(3);
+            mPool.writeInt(value);
+            return register("I" + value);
+        }
+
+        int methodRef(String owner, String name, String desc) throws IOException {
+            final int clazz = classRef(owner);
+            final int nameIdx = utf8(name);
+            final int descIdx = utf8(desc);
+            mPool.writeByte(12);
+            mPool.writeShort(nameIdx);
+            mPool.writeShort(descIdx);
+            final int nameAndType = mPoolCount++;
+            mPool.writeByte(10);
+            mPool.writeShort(clazz);
+            mPool.writeShort(nameAndType);
+            return mPoolCount++;
+        }
+
+        private int register(String key) {
+            final int idx = mPoolCount++;
+            mEntries.put(key, idx);
+            return idx;
+        }
+
+        byte[] toByteArray() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeInt(0xcafebabe);
+                out.writeShort(0);
+                out.writeShort(49);
+                out.writeShort(mPoolCount);
+                mPoolBytes.writeTo(out);
+                mBodyBytes.writeTo(out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+    }
+
+    /**
+     * Defines the generated classes as they are needed.
+     */
+    private static final class Loader extends ClassLoader {
+
+        private final HashMap<String, byte[]> mDefinitions;
+
+        Loader(HashMap<String, byte[]> definitions) {
+            super(MeshGenerator.class.getClassLoader());
+            mDefinitions = definitions;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] definition = mDefinitions.remove(name);
+            if (definition == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, definition, 0, definition.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import com.sonyericsson.inject.Blueprint;
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.GluingException;
+import com.sonyericsson.inject.R;
+import com.sonyericsson.inject.Singleton;
+
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * This class contains tests that make sure that blueprints recreate the
+ * recorded object meshes.
+ */
+public class TestBlueprint extends AndroidTestCase {
+
+    static final int S = 1;
+
+    interface A {
+    }
+
+    static class C1 implements A {
+    }
+
+    static class C2 implements Gluey {
+
+        @Glue
+        C1 m1;
+
+    }
+
+    static class C3 implements Gluey, Singleton {
+
+        @Glue
+        C1 m1;
+
+        @Glue
+        C2 m2;
+
+        @Glue
+        C4 m3;
+
+        @Glue
+        A[] m4;
+
+        @Glue(S)
+        int m5;
+
+    }
+
+    static class C4 implements Gluey, Singleton {
+
+        @Glue
+        C3 m1;
+
+    }
+
+    static class C5 implements Gluey, Singleton {
+
+        @Glue(R.layout.ducttape_layout)
+        View m1;
+
+        @Glue(R.drawable.icon)
+        Drawable m2;
+
+    }
+
+    static class C6 implements Gluey, Singleton {
+
+        @Glue(R.id.view1)
+        TextView m1;
+
+    }
+
+    /**
+     * Check that each instance gets its own products, wired like the recorded
+     * ones, while added objects are shared.
+     */
+    public void testInstantiate() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.add(Integer.valueOf(3), S);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.add(C4.class);
+        dt.get(C3.class);
+
+        Blueprint blueprint = dt.createBlueprint();
+        assertEquals(3, blueprint.size());
+
+        final int idx = blueprint.indexOf(C3.class);
+        assertTrue(idx >= 0);
+        assertEquals(-1, blueprint.indexOf(String.class));
+
+        Object[] first = blueprint.instantiate();
+        Object[] second = blueprint.instantiate();
+        C3 c3 = (C3)first[idx];
+        C3 other = (C3)second[idx];
+
+        assertNotSame(c3, other);
+        assertNotSame(dt.get(C3.class), c3);
+        assertEquals(c1, c3.m1);
+        assertEquals(c1, other.m1);
+        assertNotNull(c3.m2);
+        assertNotSame(c3.m2, other.m2);
+        assertEquals(c1, c3.m2.m1);
+        assertEquals(c3, c3.m3.m1);
+        assertEquals(other, other.m3.m1);
+        assertEquals(1, c3.m4.length);
+        assertEquals(c1, c3.m4[0]);
+        assertNotSame(c3.m4, other.m4);
+        assertEquals(3, c3.m5);
+    }
+
+    /**
+     * Check that a blueprint is not affected by later changes to the tape.
+     */
+    public void testImmutable() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.add(C4.class);
+        dt.add(Integer.valueOf(3), S);
+        dt.get(C3.class);
+
+        Blueprint blueprint = dt.createBlueprint();
+        dt.clear();
+
+        Object[] objs = blueprint.instantiate();
+        C3 c3 = (C3)objs[blueprint.indexOf(C3.class)];
+        assertEquals(c1, c3.m1);
+        assertEquals(c1, c3.m2.m1);
+    }
+
+    /**
+     * Check that each instance gets its own inflated views and drawables.
+     */
+    public void testViews() {
+        DuctTape dt = new DuctTape(getContext());
+
+        dt.add(C5.class);
+        final C5 c5 = dt.get(C5.class);
+
+        Blueprint blueprint = dt.createBlueprint();
+        final int idx = blueprint.indexOf(C5.class);
+        C5 first = (C5)blueprint.instantiate()[idx];
+        C5 second = (C5)blueprint.instantiate()[idx];
+
+        assertNotNull(first.m1);
+        assertNotNull(second.m1);
+        assertNotSame(first.m1, second.m1);
+        assertNotSame(c5.m1, first.m1);
+        assertNotNull(first.m2);
+        assertNotSame(first.m2, second.m2);
+    }
+
+    /**
+     * Check that views belonging to the mesh cannot be recorded.
+     */
+    public void testViewInMesh() {
+        DuctTape dt = new DuctTape(getContext());
+
+        dt.add(LayoutInflater.from(getContext()).inflate(R.layout.ducttape_layout, null));
+        dt.add(C6.class);
+        dt.get(C6.class);
+
+        try {
+            dt.createBlueprint();
+            fail();
+        } catch (GluingException e) {
+            assertEquals("Unable to record injection of " + C6.class.getCanonicalName()
+                    + ".m1", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,325 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import static com.sonyericsson.inject.DuctTape.ORDERED;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.OperationCounts;
+import com.sonyericsson.inject.Recyclable;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that the number of basic
+ * operations grows as expected with the size of the mesh. The operations are
+ * counted rather than timed, why the tests give the same result on every run.
+ * <p>
+ * Each test doubles the size of a mesh and compares the counts. Linear work
+ * should then double, while quadratic work grows four times. Where the work
+ * is known to be quadratic today, the tests make sure that it does not grow
+ * even faster.
+ */
+public class TestComplexity extends TestCase {
+
+    /**
+     * The size of the smaller mesh.
+     */
+    static final int N = 500;
+
+    /**
+     * The largest growth accepted for work that should be linear.
+     */
+    static final double LINEAR = 2.2;
+
+    /**
+     * The largest growth accepted for work that is quadratic.
+     */
+    static final double QUADRATIC = 4.4;
+
+    interface A {
+    }
+
+    static class C1 implements Gluey {
+
+        @Glue
+        A m1;
+
+        @Glue
+        C2 m2;
+
+    }
+
+    static class C2 implements Gluey, Singleton, A {
+
+        @Glue
+        C3[] m1;
+
+    }
+
+    static class C3 {
+    }
+
+    static class C4 implements Gluey, Singleton {
+
+        @Glue(ORDERED)
+        C5[] m1;
+
+    }
+
+    static class C5 implements Gluey {
+
+        @Glue
+        C3 m1;
+
+    }
+
+    static class C6 implements Gluey {
+
+        @Glue
+        C7 m1;
+
+    }
+
+    static class C7 implements Recyclable {
+
+        public void recycle() {
+        }
+
+    }
+
+    /**
+     * Adds N objects of a few classes to a tape and glues it.
+     */
+    private static OperationCounts applyShared(int size) {
+        final OperationCounts counts = new OperationCounts();
+        DuctTape dt = new DuctTape();
+        dt.setOperationCounts(counts);
+        for (int i = 0; i < size; i++) {
+            dt.add(new C1());
+            dt.add(new C3());
+        }
+        dt.add(C2.class);
+        counts.reset();
+        dt.apply();
+        return counts;
+    }
+
+    /**
+     * Generates a mesh of N distinct classes, adds them to a tape and glues
+     * it.
+     */
+    private static OperationCounts applyGenerated(int size, float factoryRatio) {
+        final MeshGenerator generator = new MeshGenerator(size);
+        generator.setClasses(size);
+        generator.setDepth(5);
+        generator.setFanOut(2);
+        generator.setClassesPerInterface(3);
+        generator.setTagDensity(0.1f);
+        generator.setFactoryRatio(factoryRatio);
+        generator.setCycleRatio(0.05f);
+        generator.generate();
+        final OperationCounts counts = new OperationCounts();
+        DuctTape dt = new DuctTape();
+        generator.populate(dt);
+        dt.setOperationCounts(counts);
+        dt.apply();
+        return counts;
+    }
+
+    private static double growth(long small, long large) {
+        return (double)large / small;
+    }
+
+    /**
+     * Make sure that adding objects only visits the objects already added
+     * when looking for duplicates, which makes it quadratic in total.
+     */
+    public void testRegistration() {
+        long[] visits = new long[2];
+        for (int k = 0; k < 2; k++) {
+            final OperationCounts counts = new OperationCounts();
+            DuctTape dt = new DuctTape();
+            dt.setOperationCounts(counts);
+            final int size = N << k;
+            for (int i = 0; i < size; i++) {
+                dt.add(new Object());
+                dt.add(new C1());
+            }
+            assertEquals(0, counts.getInstanceChecks());
+            assertEquals(0, counts.getFieldScans());
+            visits[k] = counts.getNodeVisits();
+        }
+        assertTrue(growth(visits[0], visits[1]) <= QUADRATIC);
+    }
+
+    /**
+     * Make sure that removing objects in the reverse order of adding them
+     * only visits the removed objects.
+     */
+    public void testRemoval() {
+        final OperationCounts counts = new OperationCounts();
+        DuctTape dt = new DuctTape();
+        final Object[] objs = new Object[N];
+        for (int i = 0; i < N; i++) {
+            objs[i] = new Object();
+            dt.add(objs[i]);
+        }
+        dt.setOperationCounts(counts);
+        for (int i = N - 1; i >= 0; i--) {
+            dt.remove(objs[i]);
+        }
+        assertEquals(N, counts.getNodeVisits());
+    }
+
+    /**
+     * Make sure that gluing many objects of a few classes is linear, since
+     * the objects implementing each type are only looked up once.
+     */
+    public void testApplySharedTypes() {
+        final OperationCounts small = applyShared(N);
+        final OperationCounts large = applyShared(N * 2);
+        assertTrue(growth(small.getNodeVisits(), large.getNodeVisits()) <= LINEAR);
+        assertTrue(growth(small.getInstanceChecks(), large.getInstanceChecks()) <= LINEAR);
+        assertTrue(growth(small.getTagChecks() + 1, large.getTagChecks() + 1) <= LINEAR);
+        assertEquals(small.getFactoryVisits(), large.getFactoryVisits());
+        assertEquals(small.getFieldScans(), large.getFieldScans());
+    }
+
+    /**
+     * Make sure that gluing a mesh that has not changed does nothing.
+     */
+    public void testApplyUnchanged() {
+        final OperationCounts counts = new OperationCounts();
+        DuctTape dt = new DuctTape();
+        for (int i = 0; i < N; i++) {
+            dt.add(new C1());
+            dt.add(new C3());
+        }
+        dt.add(C2.class);
+        dt.apply();
+        dt.setOperationCounts(counts);
+        dt.apply();
+        assertEquals(0, counts.getNodeVisits());
+        assertEquals(0, counts.getFactoryVisits());
+        assertEquals(0, counts.getFieldScans());
+    }
+
+    /**
+     * Make sure that gluing a mesh of distinct classes lists the fields of
+     * each class once, while the lookups of objects implementing each type
+     * are at most quadratic.
+     */
+    public void testApplyDistinctTypes() {
+        final OperationCounts small = applyGenerated(N, 0f);
+        final OperationCounts large = applyGenerated(N * 2, 0f);
+        assertTrue(small.getFieldScans() <= N);
+        assertTrue(large.getFieldScans() <= N * 2);
+        assertTrue(growth(small.getNodeVisits(), large.getNodeVisits()) <= QUADRATIC);
+        assertTrue(growth(small.getInstanceChecks(), large.getInstanceChecks()) <= QUADRATIC);
+        assertTrue(growth(small.getTagChecks(), large.getTagChecks()) <= QUADRATIC);
+    }
+
+    /**
+     * Make sure that validating factories of distinct classes lists the
+     * fields of each class at most twice, once to validate and once to inject,
+     * while the visits of factories are at most quadratic.
+     */
+    public void testApplyFactories() {
+        final OperationCounts small = applyGenerated(N, 0.5f);
+        final OperationCounts large = applyGenerated(N * 2, 0.5f);
+        assertTrue(small.getFieldScans() <= N * 2);
+        assertTrue(large.getFieldScans() <= N * 4);
+        assertTrue(growth(small.getFactoryVisits(), large.getFactoryVisits()) <= QUADRATIC);
+        assertTrue(growth(small.getNodeVisits(), large.getNodeVisits()) <= QUADRATIC);
+    }
+
+    /**
+     * Make sure that sorting an ordered injection again after adding or
+     * removing a single object only moves the objects whose position in the
+     * dependency sequence changes, no matter the size of the mesh.
+     */
+    public void testSequenceUpdate() {
+        long[] moves = new long[2];
+        for (int k = 0; k < 2; k++) {
+            final OperationCounts counts = new OperationCounts();
+            DuctTape dt = new DuctTape();
+            dt.setOperationCounts(counts);
+            final int size = N << k;
+            dt.add(new C4());
+            dt.add(new C3());
+            for (int i = 0; i < size; i++) {
+                dt.add(new C5());
+            }
+            dt.apply();
+            assertTrue(counts.getSequencePlacements() >= size);
+            counts.reset();
+            final C5 c5 = new C5();
+            dt.add(c5);
+            dt.apply();
+            dt.remove(c5);
+            dt.apply();
+            moves[k] = counts.getSequencePlacements();
+        }
+        assertTrue(moves[0] > 0);
+        assertEquals(moves[0], moves[1]);
+    }
+
+    /**
+     * Make sure that recycling the products of removed objects only visits
+     * the objects of the mesh once, no matter how many products there are.
+     */
+    public void testRecycle() {
+        long[] visits = new long[2];
+        for (int k = 0; k < 2; k++) {
+            final OperationCounts counts = new OperationCounts();
+            DuctTape dt = new DuctTape();
+            dt.setOperationCounts(counts);
+            final int size = N << k;
+            C6[] removed = new C6[size];
+            for (int i = 0; i < size; i++) {
+                removed[i] = new C6();
+                dt.add(removed[i]);
+                dt.add(new C3());
+            }
+            dt.add(C7.class);
+            dt.apply();
+            for (int i = 0; i < size; i++) {
+                dt.remove(removed[i]);
+            }
+            counts.reset();
+            dt.apply();
+            visits[k] = counts.getNodeVisits();
+        }
+        assertTrue(visits[0] >= N);
+        assertTrue(growth(visits[0], visits[1]) <= LINEAR);
+    }
+
+}
@@ -0,0 +1,303 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import java.lang.ref.WeakReference;
+
+import com.sonyericsson.inject.ConcurrentDuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.GlueStats;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that a tape can be shared between
+ * threads.
+ */
+public class TestConcurrent extends TestCase {
+
+    interface A {
+    }
+
+    interface B {
+    }
+
+    static ConcurrentDuctTape sTape;
+
+    static class C1 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    static class C2 implements A {
+    }
+
+    static class C3 implements Gluey, Singleton {
+
+        @Glue
+        B m1;
+
+    }
+
+    static class C4 implements Singleton, B {
+
+        public C4() {
+            sTape.add(new C2());
+        }
+
+    }
+
+    /**
+     * Check that objects added from several threads while the tape is being
+     * applied are all eventually glued.
+     */
+    public void testConcurrentAdd() throws InterruptedException {
+        final int numThreads = 4;
+        final int numObjects = 500;
+        final ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(new C2());
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numObjects; j++) {
+                        dt.add(new C2(), j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        boolean running = true;
+        while (running) {
+            dt.apply();
+            running = false;
+            for (int i = 0; i < numThreads; i++) {
+                running |= threads[i].isAlive();
+            }
+        }
+        for (int i = 0; i < numThreads; i++) {
+            threads[i].join();
+        }
+        dt.apply();
+
+        assertTrue(dt.isRobust());
+        assertNotNull(c1.m1);
+        assertEquals(numThreads * numObjects + 1, c1.m1.length);
+    }
+
+    /**
+     * Check that objects added while the tape is being applied are left for
+     * the next call to apply.
+     */
+    public void testAddDuringApply() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+        sTape = dt;
+
+        C1 c1 = new C1();
+        C3 c3 = new C3();
+        dt.add(c1);
+        dt.add(c3);
+        dt.add(C4.class);
+        dt.add(new C2());
+        dt.apply();
+
+        assertNotNull(c3.m1);
+        assertEquals(1, c1.m1.length);
+        assertFalse(dt.isRobust());
+
+        dt.apply();
+
+        assertTrue(dt.isRobust());
+        assertEquals(2, c1.m1.length);
+    }
+
+    /**
+     * Check that removals are queued in order with additions.
+     */
+    public void testQueuedRemove() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        dt.add(c1);
+        dt.add(c2);
+        dt.remove(c2);
+        dt.add(new C2[] {
+                c2, new C2()
+        });
+        dt.remove(0);
+        dt.add(new C2(), 0);
+        dt.apply();
+
+        assertEquals(3, c1.m1.length);
+
+        dt.remove(0);
+        dt.apply();
+
+        assertEquals(2, c1.m1.length);
+    }
+
+    /**
+     * Check that objects added between preparing and committing an injection
+     * are glued by the commit.
+     */
+    public void testPrepareApply() throws InterruptedException {
+        final ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(new C2());
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                dt.prepareApply();
+            }
+        };
+        worker.start();
+        worker.join();
+
+        assertNull(c1.m1);
+
+        dt.add(new C2());
+        dt.commit();
+
+        assertTrue(dt.isRobust());
+        assertEquals(2, c1.m1.length);
+    }
+
+    /**
+     * Check that lookups see the changes queued before them.
+     */
+    public void testGet() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        C2 c2 = new C2();
+        dt.add(c2);
+
+        assertSame(c2, dt.get(A.class));
+
+        dt.add(new C2());
+
+        assertEquals(2, dt.getAll(A.class).length);
+    }
+
+    /**
+     * Check that objects outside of the mesh are injected with the changes
+     * queued before.
+     */
+    public void testInject() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        dt.add(new C2());
+        C1 c1 = new C1();
+        dt.inject(c1);
+
+        assertEquals(1, c1.m1.length);
+    }
+
+    /**
+     * Check that weakly added objects are removed once collected.
+     */
+    public void testAddWeak() throws InterruptedException {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        dt.add(new C2());
+        WeakReference<Object> c1 = addWeak(dt, new C1());
+        dt.apply();
+
+        assertEquals(1, dt.getAll(C1.class).length);
+
+        for (int i = 0; i < 100 && c1.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(c1.get());
+        assertEquals(0, dt.getAll(C1.class).length);
+    }
+
+    /**
+     * Weakly adds an object without keeping any other reference to it.
+     */
+    private static WeakReference<Object> addWeak(ConcurrentDuctTape dt, Object obj) {
+        dt.addWeak(obj);
+        return new WeakReference<Object>(obj);
+    }
+
+    /**
+     * Check that statistics are collected for the changes carried out.
+     */
+    public void testStats() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        dt.setStatsEnabled(true);
+        dt.add(new C1());
+        dt.add(C2.class);
+        dt.apply();
+
+        GlueStats stats = dt.getStats();
+        assertNotNull(stats);
+        assertEquals(1, stats.getConstructorCalls());
+
+        dt.setStatsEnabled(false);
+
+        assertNull(dt.getStats());
+    }
+
+    /**
+     * Check that changes made while frozen are kept until thawed.
+     */
+    public void testFreeze() {
+        ConcurrentDuctTape dt = new ConcurrentDuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(new C2());
+        dt.freeze();
+
+        assertTrue(dt.isFrozen());
+
+        dt.add(new C2());
+        dt.apply();
+
+        assertEquals(1, c1.m1.length);
+        assertFalse(dt.isRobust());
+
+        dt.thaw();
+        dt.apply();
+
+        assertFalse(dt.isFrozen());
+        assertEquals(2, c1.m1.length);
+    }
+
+}
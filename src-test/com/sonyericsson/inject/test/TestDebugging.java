@@ -29,8 +29,13 @@ package com.sonyericsson.inject.test;
 import static com.sonyericsson.inject.DuctTape.OPTIONAL;
 import static com.sonyericsson.inject.DuctTape.ORDERED;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 import com.sonyericsson.inject.DuctTape;
 import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.GlueStats;
+import com.sonyericsson.inject.GluingException;
 import com.sonyericsson.inject.Gluey;
 import com.sonyericsson.inject.Singleton;
 
@@ -131,6 +136,16 @@ public class TestDebugging extends TestCase {
 
     }
 
+    static class C9 implements D {
+    }
+
+    static class C10 implements Gluey {
+
+        @Glue
+        D[] m1;
+
+    }
+
     static final void assertRowsInAnyOrder(String expected, String actual) {
         String[] actualRows = actual.split("\n");
         String[] expectedRows = expected.split("\n");
@@ -342,4 +357,151 @@ public class TestDebugging extends TestCase {
                 dt.toShortString());
     }
 
+    /**
+     * Make sure that the streamed debug output is the same as the one returned
+     * as strings.
+     */
+    public void testAppendable() throws IOException {
+        DuctTape dt = new DuctTape();
+        dt.add(new C1());
+        dt.add(new C1());
+        dt.add(new C2());
+        dt.add(C3.class);
+        dt.add(C4.class);
+        dt.add(C5.class);
+        dt.add(C6.class);
+        dt.add("hello");
+        dt.add(1, 4);
+        dt.add(2, 1);
+        dt.add(true);
+        dt.add(12.34f, 1);
+        dt.add(7.10f, 2);
+        dt.add('x');
+        dt.add(56.7);
+        dt.add(new int[] {
+                1, 2, 3
+        }, 22);
+        dt.apply();
+
+        StringWriter out = new StringWriter();
+        dt.toString(out);
+        assertEquals(dt.toString(), out.toString());
+
+        out = new StringWriter();
+        dt.toDotString(out);
+        assertEquals(dt.toDotString(), out.toString());
+    }
+
+    /**
+     * Make sure that statistics are only collected when enabled, and that they
+     * reflect the work done.
+     */
+    public void testStats() {
+        DuctTape dt = new DuctTape();
+        dt.add(new C2());
+        dt.add(C5.class);
+        dt.add(C6.class);
+        dt.add("hello");
+        dt.add(3, 1);
+        dt.add(7.10f, 2);
+        dt.add(56.7);
+        dt.apply();
+
+        assertNull(dt.getStats());
+
+        dt.setStatsEnabled(true);
+        dt.add(C7.class);
+        dt.apply();
+
+        GlueStats stats = dt.getStats();
+        assertNotNull(stats);
+        assertEquals(0, stats.getConstructorCalls());
+
+        DuctTape other = new DuctTape();
+        other.setStatsEnabled(true);
+        other.add(new C2());
+        other.add(C5.class);
+        other.add(C6.class);
+        other.add("hello");
+        other.add(3, 1);
+        other.add(7.10f, 2);
+        other.add(56.7);
+        other.apply();
+
+        stats = other.getStats();
+        assertEquals(2, stats.getConstructorCalls());
+        assertEquals(2, stats.getResolveCalls());
+        assertTrue(stats.getReflectiveCalls() >= 6);
+        assertEquals(0, stats.getInflations());
+        assertTrue(stats.getTotalTime() >= stats.getLookupTime()
+                + stats.getInstantiationTime());
+        assertTrue(dt.toShortString().contains(", GlueStats[total="));
+
+        /* Copies of an array get products of their own */
+        DuctTape copies = new DuctTape();
+        copies.setStatsEnabled(true);
+        copies.add(new C10());
+        copies.add(new C10());
+        copies.add(C9.class);
+        copies.apply();
+
+        stats = copies.getStats();
+        assertEquals(2, stats.getConstructorCalls());
+        assertTrue(stats.getReflectiveCalls() >= 2);
+        assertTrue(stats.getTotalTime() >= stats.getInstantiationTime());
+
+        dt.setStatsEnabled(false);
+        assertNull(dt.getStats());
+        assertEquals("DuctTape[robust=true, objects=5 + 2 products, factories=3]",
+                dt.toShortString());
+    }
+
+    /**
+     * Make sure that resolution decisions are only recorded when asked for,
+     * and that only the latest ones are kept.
+     */
+    public void testTrace() {
+        DuctTape dt = new DuctTape();
+        dt.add(3, 22);
+        dt.apply();
+
+        assertEquals("", dt.dumpTrace());
+
+        String c1 = C1.class.getName();
+        String c4 = C4.class.getName();
+        C1 obj = new C1();
+        dt.setTraceSize(100);
+        dt.add(obj);
+        dt.add(C4.class);
+        try {
+            dt.apply();
+            fail("Expected a GluingException");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+
+        String trace = dt.dumpTrace();
+        assertTrue(trace, trace.contains("enter " + c4 + "\n"));
+        assertTrue(trace, trace.contains("reject " + c4 + ": nothing to inject at " + c4
+                + ".m2\n"));
+        assertTrue(trace, trace.contains("leave " + c4 + ": unresolvable\n"));
+        assertTrue(trace, trace.endsWith("fail " + c1 + ".m2: nothing to inject\n"));
+
+        dt.setTraceSize(1);
+        try {
+            dt.apply();
+            fail("Expected a GluingException");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+
+        trace = dt.dumpTrace();
+        assertTrue(trace, trace.startsWith("("));
+        assertTrue(trace, trace.contains(" earlier records dropped)\n"));
+        assertEquals(trace, 2, trace.split("\n").length);
+
+        dt.setTraceSize(0);
+        assertEquals("", dt.dumpTrace());
+    }
+
 }
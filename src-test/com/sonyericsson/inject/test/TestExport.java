@@ -0,0 +1,207 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import static com.sonyericsson.inject.DuctTape.ORDERED;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.R;
+import com.sonyericsson.inject.Singleton;
+
+import android.test.AndroidTestCase;
+
+/**
+ * This class contains tests that make sure that the structured exports of the
+ * object mesh are correct.
+ */
+public class TestExport extends AndroidTestCase {
+
+    static final int S = 1;
+
+    interface A {
+    }
+
+    static class C1 implements Gluey, Singleton, A {
+
+        @Glue(R.string.s1)
+        String m1;
+
+        @Glue(ORDERED)
+        A[] m2;
+
+        @Glue
+        C2 m3;
+
+    }
+
+    static class C2 implements Singleton {
+    }
+
+    static class C3 implements A {
+    }
+
+    private DuctTape createTape() {
+        DuctTape dt = new DuctTape(getContext());
+        dt.add(new C1());
+        dt.add(new C3());
+        dt.add(C2.class, S);
+        dt.apply();
+        return dt;
+    }
+
+    /**
+     * Make sure that the JSON export describes all objects and references.
+     */
+    public void testJson() throws IOException {
+        DuctTape dt = createTape();
+        StringWriter out = new StringWriter();
+        dt.toJson(out);
+        String json = out.toString();
+
+        String c1 = C1.class.getName();
+        String c2 = C2.class.getName();
+        String c3 = C3.class.getName();
+        assertTrue(json, json.startsWith("{\"robust\": true,\n"));
+        assertTrue(json, json.contains("{\"id\": 0, \"class\": \"" + c3
+                + "\", \"origin\": \"added\", \"tags\": [], \"context\": 0}"));
+        assertTrue(json, json.contains("{\"id\": 2, \"class\": \"java.lang.String\", "
+                + "\"origin\": \"resource\", \"tags\": [], \"value\": \"blurp\"}"));
+        assertTrue(json, json.contains("{\"id\": 3, \"class\": \"" + c2
+                + "\", \"origin\": \"product\", \"tags\": [1], \"context\": 0}"));
+        assertTrue(json, json.contains("{\"from\": 1, \"to\": 0, \"class\": \"" + c1
+                + "\", \"field\": \"m2\", \"optional\": false, \"ordered\": true, "
+                + "\"index\": 0}"));
+        assertTrue(json, json.contains("{\"from\": 1, \"to\": 3, \"class\": \"" + c1
+                + "\", \"field\": \"m3\", \"optional\": false, \"ordered\": false, "
+                + "\"index\": -1}"));
+        assertTrue(json, json.endsWith("}]}\n"));
+    }
+
+    /**
+     * Make sure that the binary export can be read back.
+     */
+    public void testBinary() throws IOException {
+        DuctTape dt = createTape();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dt.writeGraph(new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        String[] strings = new String[32];
+        int[] numStrings = new int[1];
+
+        assertEquals('D', in.readByte());
+        assertEquals('T', in.readByte());
+        assertEquals('G', in.readByte());
+        assertEquals(1, in.readByte());
+        assertTrue(in.readBoolean());
+
+        /* Contexts */
+        assertEquals(1, readVarInt(in));
+        assertEquals("android.content.Context", readString(in, strings, numStrings));
+
+        /* Nodes */
+        assertEquals(4, readVarInt(in));
+        String[] classes = new String[4];
+        for (int i = 0; i < 4; i++) {
+            classes[i] = readString(in, strings, numStrings);
+            int origin = in.readByte();
+            int context = readVarInt(in);
+            int tagsLen = readVarInt(in);
+            int[] tags = new int[tagsLen];
+            for (int k = 0; k < tagsLen; k++) {
+                tags[k] = in.readInt();
+            }
+            if (classes[i].equals(String.class.getName())) {
+                assertEquals(4, origin);
+                assertEquals(0, context);
+                assertEquals("blurp", readString(in, strings, numStrings));
+            } else if (classes[i].equals(C2.class.getName())) {
+                assertEquals(1, origin);
+                assertEquals(1, context);
+                assertEquals(1, tagsLen);
+                assertEquals(S, tags[0]);
+            } else {
+                assertEquals(0, origin);
+                assertEquals(1, context);
+                assertEquals(0, tagsLen);
+            }
+        }
+
+        /* Edges */
+        assertEquals(4, readVarInt(in));
+        for (int i = 0; i < 4; i++) {
+            int from = readVarInt(in);
+            int to = readVarInt(in);
+            assertEquals(C1.class.getName(), classes[from]);
+            assertEquals(C1.class.getName(), readString(in, strings, numStrings));
+            String field = readString(in, strings, numStrings);
+            int flags = in.readByte();
+            int index = readVarInt(in) - 1;
+            if (field.equals("m2")) {
+                assertEquals(2, flags);
+                assertTrue(index >= 0);
+            } else {
+                assertEquals(0, flags);
+                assertEquals(-1, index);
+                assertEquals(field.equals("m1") ? String.class.getName() : C2.class.getName(),
+                        classes[to]);
+            }
+        }
+        assertEquals(-1, in.read());
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(DataInputStream in, String[] strings, int[] numStrings)
+            throws IOException {
+        int idx = readVarInt(in);
+        if (idx == 0) {
+            String text = in.readUTF();
+            strings[numStrings[0]++] = text;
+            return text;
+        }
+        return strings[idx - 1];
+    }
+
+}
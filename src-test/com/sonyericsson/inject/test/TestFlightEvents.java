@@ -0,0 +1,169 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that events are emitted to the JDK
+ * Flight Recorder when it is available. The recorder is only accessed through
+ * reflection, since it is not available on all runtimes.
+ */
+public class TestFlightEvents extends TestCase {
+
+    interface A {
+    }
+
+    static class C1 implements A {
+    }
+
+    static class C2 implements Gluey {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C3 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    /**
+     * Check that gluing works the same without any recording.
+     */
+    public void testNotRecording() {
+        DuctTape dt = new DuctTape();
+
+        C2 c2 = new C2();
+
+        dt.add(new Object[] {
+                c2, C1.class
+        });
+        dt.apply();
+
+        assertNotNull(c2.m1);
+    }
+
+    /**
+     * Check that the events show up in a recording.
+     */
+    public void testRecording() throws Exception {
+        C2 c2 = new C2();
+        final List<String> names = record(new Object[] {
+                c2, C1.class
+        });
+        if (names == null) {
+            /* Nothing to test on this runtime */
+            return;
+        }
+
+        assertTrue(names.contains("com.sonyericsson.inject.Apply"));
+        assertTrue(names.contains("com.sonyericsson.inject.Factory"));
+        assertTrue(names.contains("com.sonyericsson.inject.Change"));
+    }
+
+    /**
+     * Check that every product put in a copy of an array is recorded.
+     */
+    public void testRecordingArrays() throws Exception {
+        final List<String> names = record(new Object[] {
+                new C3(), new C3(), C1.class
+        });
+        if (names == null) {
+            /* Nothing to test on this runtime */
+            return;
+        }
+
+        int factories = 0;
+        for (String name : names) {
+            if (name.equals("com.sonyericsson.inject.Factory")) {
+                factories++;
+            }
+        }
+        assertEquals(2, factories);
+    }
+
+    /**
+     * Glues the given objects together while recording.
+     * 
+     * @param objs The objects to add.
+     * @return The names of all recorded events, or null when recording is not
+     *         available.
+     */
+    private static List<String> record(Object[] objs) throws Exception {
+        final Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        final Object recording = recordingClass.getDeclaredConstructor().newInstance();
+        final Method enable = recordingClass.getMethod("enable", String.class);
+        enable.invoke(recording, "com.sonyericsson.inject.Apply");
+        enable.invoke(recording, "com.sonyericsson.inject.Factory");
+        enable.invoke(recording, "com.sonyericsson.inject.Change");
+        recordingClass.getMethod("start").invoke(recording);
+
+        DuctTape dt = new DuctTape();
+        dt.add(objs);
+        dt.apply();
+
+        recordingClass.getMethod("stop").invoke(recording);
+        final File file = File.createTempFile("ducttape", ".jfr");
+        try {
+            final Class<?> pathClass = Class.forName("java.nio.file.Path");
+            final Object path = File.class.getMethod("toPath").invoke(file);
+            recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+            recordingClass.getMethod("close").invoke(recording);
+
+            /* Collect the names of all recorded events */
+            final List<?> events = (List<?>)Class
+                    .forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", pathClass).invoke(null, path);
+            ArrayList<String> names = new ArrayList<String>();
+            for (Object event : events) {
+                final Object type = event.getClass().getMethod("getEventType").invoke(event);
+                names.add((String)type.getClass().getMethod("getName").invoke(type));
+            }
+            return names;
+        } finally {
+            file.delete();
+        }
+    }
+
+}
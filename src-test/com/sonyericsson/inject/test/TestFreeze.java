@@ -0,0 +1,170 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.GlueGraph;
+import com.sonyericsson.inject.Gluey;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that frozen tapes keep a correct
+ * record of their injections.
+ */
+public class TestFreeze extends TestCase {
+
+    static final int S = 1;
+
+    interface A {
+    }
+
+    static class C1 implements A {
+    }
+
+    static class C2 implements Gluey {
+
+        @Glue
+        A m1;
+
+        @Glue
+        C3 m2;
+
+    }
+
+    static class C3 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+        @Glue(S)
+        int m2;
+
+    }
+
+    /**
+     * Check that all injections are recorded and can be made again.
+     */
+    public void testReapply() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+
+        dt.add(c1);
+        dt.add(c2);
+        dt.add(C3.class);
+        dt.add(Integer.valueOf(5), S);
+
+        GlueGraph graph = dt.freeze();
+        assertTrue(dt.isFrozen());
+        assertEquals(4, graph.size());
+        assertSame(graph, dt.freeze());
+
+        final C3 c3 = c2.m2;
+        assertNotNull(c3);
+        assertEquals(5, c3.m2);
+
+        /* Reset all fields */
+        c2.m1 = null;
+        c2.m2 = null;
+        c3.m1 = null;
+        c3.m2 = 0;
+
+        graph.reapply();
+        assertEquals(c1, c2.m1);
+        assertEquals(c3, c2.m2);
+        assertEquals(c1, c3.m1[0]);
+        assertEquals(5, c3.m2);
+    }
+
+    /**
+     * Check that changes to a frozen tape are rejected.
+     */
+    public void testRejectChanges() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.freeze();
+
+        try {
+            dt.add(new C1());
+            fail("Addition not rejected");
+        } catch (IllegalStateException e) {
+            /* Expected */
+        }
+        try {
+            dt.remove(c1);
+            fail("Removal not rejected");
+        } catch (IllegalStateException e) {
+            /* Expected */
+        }
+        try {
+            dt.clear();
+            fail("Clearing not rejected");
+        } catch (IllegalStateException e) {
+            /* Expected */
+        }
+
+        dt.thaw();
+        assertFalse(dt.isFrozen());
+        dt.remove(c1);
+    }
+
+    /**
+     * Check that the differences between two records are found.
+     */
+    public void testDiff() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+
+        dt.add(c1);
+        dt.add(c2);
+        dt.add(C3.class);
+        dt.add(Integer.valueOf(5), S);
+
+        GlueGraph before = dt.freeze();
+        assertEquals(0, before.diff(before).length);
+
+        dt.thaw();
+        dt.remove(c1);
+        C1 other = new C1();
+        dt.add(other);
+        GlueGraph after = dt.freeze();
+
+        int[] changed = before.diff(after);
+        assertEquals(2, changed.length);
+        for (int i = 0; i < changed.length; i++) {
+            assertEquals("m1", before.getField(changed[i]).getName());
+        }
+    }
+
+}
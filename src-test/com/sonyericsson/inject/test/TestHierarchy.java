@@ -0,0 +1,291 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.GluingException;
+import com.sonyericsson.inject.Singleton;
+import com.sonyericsson.inject.Startable;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that child tapes see the objects of
+ * their parents.
+ */
+public class TestHierarchy extends TestCase {
+
+    interface A {
+    }
+
+    interface B {
+    }
+
+    static class C1 implements A {
+    }
+
+    static class C2 implements Gluey {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C3 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    static class C4 implements Gluey, Singleton, B {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C5 implements Gluey {
+
+        @Glue
+        B m1;
+
+    }
+
+    static class C6 implements Gluey {
+
+        @Glue
+        C5 m1;
+
+    }
+
+    static class C7 implements Startable {
+
+        int mStarts;
+
+        public void start() {
+            mStarts++;
+        }
+
+        public void stop() {
+        }
+
+    }
+
+    static class C8 implements Gluey, Startable {
+
+        @Glue
+        C7 m1;
+
+        int mStarts;
+
+        public void start() {
+            mStarts++;
+        }
+
+        public void stop() {
+        }
+
+    }
+
+    /**
+     * Check that objects of the parent are injected in the child, but only
+     * when the child has none of its own.
+     */
+    public void testShadowing() {
+        DuctTape parent = new DuctTape();
+        DuctTape child = new DuctTape(parent, null);
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+
+        parent.add(c1);
+        child.add(c2);
+        child.apply();
+
+        assertEquals(c1, c2.m1);
+
+        C1 local = new C1();
+        child.add(local);
+        child.apply();
+
+        assertEquals(local, c2.m1);
+    }
+
+    /**
+     * Check that arrays are injected with the objects of both the parent and
+     * the child, with those of the parent first.
+     */
+    public void testExtension() {
+        DuctTape parent = new DuctTape();
+        DuctTape child = new DuctTape(parent, null);
+
+        C1 c1 = new C1();
+        C1 c2 = new C1();
+        C3 c3 = new C3();
+
+        parent.add(c1);
+        child.add(c2);
+        child.add(c1);
+        child.add(c3);
+        child.apply();
+
+        assertEquals(2, c3.m1.length);
+        assertEquals(c1, c3.m1[0]);
+        assertEquals(c2, c3.m1[1]);
+    }
+
+    /**
+     * Check that singletons of the parent are shared with all children, and
+     * that factories of the child can depend on objects of the parent.
+     */
+    public void testSharedSingleton() {
+        DuctTape parent = new DuctTape();
+        DuctTape child1 = new DuctTape(parent, null);
+        DuctTape child2 = new DuctTape(parent, null);
+
+        C1 c1 = new C1();
+        C5 c2 = new C5();
+        C6 c3 = new C6();
+
+        parent.add(c1);
+        parent.add(C4.class);
+        child1.add(c2);
+        child2.add(C5.class);
+        child2.add(c3);
+        child1.apply();
+        child2.apply();
+
+        assertNotNull(c2.m1);
+        assertEquals(c1, ((C4)c2.m1).m1);
+        assertNotNull(c3.m1);
+        assertEquals(c2.m1, c3.m1.m1);
+        assertEquals(c2.m1, parent.get(B.class));
+    }
+
+    /**
+     * Check that a child is glued together again when the parent is changed.
+     */
+    public void testParentChange() {
+        DuctTape parent = new DuctTape();
+        DuctTape child = new DuctTape(parent, null);
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+
+        parent.add(c1);
+        child.add(c2);
+        child.apply();
+
+        assertTrue(child.isRobust());
+
+        parent.remove(c1);
+
+        assertFalse(child.isRobust());
+        try {
+            child.apply();
+            fail("Missing object not detected");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+
+        C1 c3 = new C1();
+        parent.add(c3);
+        child.apply();
+
+        assertTrue(child.isRobust());
+        assertEquals(c3, c2.m1);
+    }
+
+    /**
+     * Check that objects of the parent are neither injected nor started by the
+     * child.
+     */
+    public void testParentObjectsUntouched() {
+        DuctTape parent = new DuctTape();
+        DuctTape child = new DuctTape(parent, null);
+
+        C7 c1 = new C7();
+        C1 c2 = new C1();
+        C2 c3 = new C2();
+        C8 c4 = new C8();
+
+        parent.add(c1);
+        parent.add(c2);
+        parent.add(c3);
+        child.add(c4);
+        child.add(new C1());
+        child.start();
+
+        assertEquals(c1, c4.m1);
+        assertEquals(1, c4.mStarts);
+        assertEquals(0, c1.mStarts);
+        assertEquals(c2, c3.m1);
+
+        parent.start();
+        child.start();
+
+        assertEquals(1, c1.mStarts);
+        assertEquals(1, c4.mStarts);
+    }
+
+    /**
+     * Check that a singleton product asked for by a child stays part of the
+     * parent, and is glued together by the parent from then on.
+     */
+    public void testParentKeepsProducts() {
+        DuctTape parent = new DuctTape();
+        DuctTape child = new DuctTape(parent, null);
+
+        C1 c11 = new C1();
+        C5 c5 = new C5();
+
+        parent.add(C4.class);
+        parent.add(c11);
+        parent.apply();
+
+        assertEquals(0, parent.getAll(C4.class, DuctTape.OPTIONAL).length);
+
+        child.add(c5);
+        child.apply();
+        final B b = c5.m1;
+
+        assertNotNull(b);
+        assertEquals(c11, ((C4)b).m1);
+
+        C1 c12 = new C1();
+        parent.remove(c11);
+        parent.add(c12);
+        parent.apply();
+
+        assertEquals(1, parent.getAll(C4.class, DuctTape.OPTIONAL).length);
+        assertSame(b, parent.getAll(C4.class, DuctTape.OPTIONAL)[0]);
+        assertEquals(c12, ((C4)b).m1);
+    }
+
+}
@@ -0,0 +1,180 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that objects keep the products of
+ * non-singleton factories injected into them when the mesh is glued again.
+ */
+public class TestIdentity extends TestCase {
+
+    interface A {
+    }
+
+    static class C1 implements Gluey {
+
+        @Glue
+        C2 m1;
+
+    }
+
+    static class C2 implements Gluey, A {
+
+        @Glue
+        C3 m1;
+
+    }
+
+    static class C3 {
+    }
+
+    static class C4 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    static class C5 implements A {
+    }
+
+    static class C6 implements Singleton, A {
+    }
+
+    /**
+     * Make sure that a product in a field, and its own product, stay the same
+     * over several applies.
+     */
+    public void testField() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c2 = c1.m1;
+        final C3 c3 = c2.m1;
+
+        for (int i = 0; i < 3; i++) {
+            dt.add(new Object());
+            dt.apply();
+
+            assertSame(c2, c1.m1);
+            assertSame(c3, c1.m1.m1);
+        }
+    }
+
+    /**
+     * Make sure that objects sharing the type of an array keep their own
+     * products over several applies.
+     */
+    public void testArrays() {
+        DuctTape dt = new DuctTape();
+
+        C4 c41 = new C4();
+        C4 c42 = new C4();
+        dt.add(c41);
+        dt.add(c42);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.add(C6.class);
+        dt.apply();
+        final A[] a1 = c41.m1.clone();
+        final A[] a2 = c42.m1.clone();
+
+        assertEquals(2, a1.length);
+        assertEquals(2, a2.length);
+
+        for (int i = 0; i < 3; i++) {
+            dt.add(new Object());
+            dt.apply();
+
+            assertEquals(2, c41.m1.length);
+            assertEquals(2, c42.m1.length);
+            for (int j = 0; j < 2; j++) {
+                assertSame(a1[j], c41.m1[j]);
+                assertSame(a2[j], c42.m1[j]);
+            }
+        }
+        final int i1 = a1[0] instanceof C2 ? 0 : 1;
+        final int i2 = a2[0] instanceof C2 ? 0 : 1;
+        assertNotSame(a1[i1], a2[i2]);
+        assertSame(a1[1 - i1], a2[1 - i2]);
+    }
+
+    /**
+     * Make sure that the product is injected again when the field has been
+     * changed outside of the mesh.
+     */
+    public void testReplaced() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c2 = c1.m1;
+        c1.m1 = new C2();
+        dt.add(new Object());
+        dt.apply();
+
+        assertSame(c2, c1.m1);
+    }
+
+    /**
+     * Make sure that products are only created for new slots.
+     */
+    public void testNewSlot() {
+        DuctTape dt = new DuctTape();
+
+        C4 c4 = new C4();
+        dt.add(c4);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+
+        assertEquals(1, c4.m1.length);
+        final A a = c4.m1[0];
+
+        dt.add(C5.class);
+        dt.apply();
+
+        assertEquals(2, c4.m1.length);
+        assertTrue(c4.m1[0] == a ^ c4.m1[1] == a);
+        assertTrue(c4.m1[0] instanceof C5 ^ c4.m1[1] instanceof C5);
+    }
+
+}
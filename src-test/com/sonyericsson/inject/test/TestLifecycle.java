@@ -0,0 +1,374 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.GluingException;
+import com.sonyericsson.inject.Singleton;
+import com.sonyericsson.inject.Startable;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that objects are started and stopped
+ * in dependency order.
+ */
+public class TestLifecycle extends TestCase {
+
+    interface A {
+    }
+
+    interface B {
+    }
+
+    interface C {
+    }
+
+    static final ArrayList<Object> sStarted = new ArrayList<Object>();
+
+    static final ArrayList<Object> sStopped = new ArrayList<Object>();
+
+    static class Service implements Startable {
+
+        boolean mRunning;
+
+        public void start() {
+            synchronized (sStarted) {
+                sStarted.add(this);
+            }
+            mRunning = true;
+        }
+
+        public void stop() {
+            synchronized (sStopped) {
+                sStopped.add(this);
+            }
+            mRunning = false;
+        }
+
+    }
+
+    static class C1 extends Service implements Gluey {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C2 extends Service implements Gluey, A {
+
+        @Glue
+        B m1;
+
+    }
+
+    static class C3 implements Gluey, B {
+
+        @Glue
+        C m1;
+
+    }
+
+    static class C4 extends Service implements C {
+    }
+
+    static class C5 extends Service implements Gluey, Singleton, C {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C6 extends Service implements Gluey {
+
+        @Glue
+        C[] m1;
+
+        @Override
+        public void start() {
+            for (C c : m1) {
+                assertTrue(((Service)c).mRunning);
+            }
+            super.start();
+        }
+
+    }
+
+    static class C7 extends Service implements C {
+
+        @Override
+        public void start() {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                /* Ignore */
+            }
+            super.start();
+        }
+
+    }
+
+    static class C8 extends Service implements C {
+
+        @Override
+        public void start() {
+            throw new IllegalStateException();
+        }
+
+    }
+
+    static class Failure extends Error {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    static class C9 extends Service implements C {
+
+        @Override
+        public void start() {
+            throw new Failure();
+        }
+
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        sStarted.clear();
+        sStopped.clear();
+    }
+
+    /**
+     * Check that objects are started after the objects they depend on, also
+     * through objects that are not started themselves, and stopped in reverse.
+     */
+    public void testStartOrder() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        C4 c4 = new C4();
+
+        dt.add(c1);
+        dt.add(c2);
+        dt.add(c3);
+        dt.add(c4);
+        dt.start();
+
+        assertEquals(c2, c1.m1);
+        assertEquals(3, sStarted.size());
+        assertEquals(c4, sStarted.get(0));
+        assertEquals(c2, sStarted.get(1));
+        assertEquals(c1, sStarted.get(2));
+
+        dt.stop();
+
+        assertEquals(3, sStopped.size());
+        assertEquals(c1, sStopped.get(0));
+        assertEquals(c2, sStopped.get(1));
+        assertEquals(c4, sStopped.get(2));
+    }
+
+    /**
+     * Check that products of factories are started as well, and that circular
+     * dependencies do not prevent objects from being started.
+     */
+    public void testStartProducts() {
+        DuctTape dt = new DuctTape();
+
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+
+        dt.add(c2);
+        dt.add(c3);
+        dt.add(C5.class);
+        dt.add(new C6());
+        dt.start();
+
+        assertEquals(3, sStarted.size());
+        assertTrue(sStarted.get(0) instanceof C5 || sStarted.get(1) instanceof C5);
+        assertTrue(sStarted.get(0) == c2 || sStarted.get(1) == c2);
+        assertTrue(sStarted.get(2) instanceof C6);
+    }
+
+    /**
+     * Check that only new objects are started when starting again, and that
+     * objects removed from the mesh are stopped.
+     */
+    public void testRestart() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        C4 c4 = new C4();
+
+        dt.add(c2);
+        dt.add(c3);
+        dt.add(c4);
+        dt.start();
+        dt.start();
+
+        assertEquals(2, sStarted.size());
+        assertEquals(0, sStopped.size());
+
+        dt.add(c1);
+        dt.start();
+
+        assertEquals(3, sStarted.size());
+        assertEquals(c1, sStarted.get(2));
+        assertEquals(0, sStopped.size());
+
+        dt.remove(c1);
+        dt.start();
+
+        assertEquals(3, sStarted.size());
+        assertEquals(1, sStopped.size());
+        assertEquals(c1, sStopped.get(0));
+
+        dt.stop();
+
+        assertEquals(3, sStopped.size());
+        assertEquals(c2, sStopped.get(1));
+        assertEquals(c4, sStopped.get(2));
+    }
+
+    /**
+     * Check that independent objects can be started in parallel, while the
+     * objects depending on them still wait for them.
+     */
+    public void testParallelStart() {
+        final int numObjects = 8;
+        DuctTape dt = new DuctTape();
+
+        C6 c6 = new C6();
+        dt.add(c6);
+        for (int i = 0; i < numObjects; i++) {
+            dt.add(new C7());
+        }
+        final ArrayList<Thread> threads = new ArrayList<Thread>();
+        dt.start(new Executor() {
+            public void execute(Runnable command) {
+                Thread t = new Thread(command);
+                threads.add(t);
+                t.start();
+            }
+        });
+
+        assertEquals(numObjects - 1, threads.size());
+        assertEquals(numObjects + 1, sStarted.size());
+        assertEquals(c6, sStarted.get(numObjects));
+        assertEquals(numObjects, c6.m1.length);
+        for (int i = 0; i < numObjects; i++) {
+            assertTrue(((C7)c6.m1[i]).mRunning);
+        }
+    }
+
+    /**
+     * Check that a failing start is reported, and that the objects that were
+     * started are still stopped.
+     */
+    public void testStartException() {
+        DuctTape dt = new DuctTape();
+
+        C4 c4 = new C4();
+        C6 c6 = new C6();
+
+        dt.add(c4);
+        dt.add(c6);
+        dt.add(new C8());
+        try {
+            dt.start(new Executor() {
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+            fail("Exception expected");
+        } catch (GluingException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(1, sStarted.size());
+        assertEquals(c4, sStarted.get(0));
+
+        dt.stop();
+
+        assertEquals(1, sStopped.size());
+        assertEquals(c4, sStopped.get(0));
+    }
+
+    /**
+     * Check that a failing start is reported the same way with and without an
+     * executor, and that the rest of the level is still started.
+     */
+    public void testStartFailures() {
+        final Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        checkStartFailure(new C8(), null);
+        checkStartFailure(new C8(), executor);
+        checkStartFailure(new C9(), null);
+        checkStartFailure(new C9(), executor);
+    }
+
+    private static void checkStartFailure(Service failing, Executor executor) {
+        sStarted.clear();
+        sStopped.clear();
+        DuctTape dt = new DuctTape();
+
+        C4 c4 = new C4();
+
+        dt.add(c4);
+        dt.add(failing);
+        try {
+            dt.start(executor);
+            fail("Exception expected");
+        } catch (GluingException e) {
+            assertTrue(failing instanceof C8);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } catch (Failure e) {
+            assertTrue(failing instanceof C9);
+        }
+
+        assertEquals(1, sStarted.size());
+        assertEquals(c4, sStarted.get(0));
+
+        dt.stop();
+
+        assertEquals(1, sStopped.size());
+        assertEquals(c4, sStopped.get(0));
+    }
+
+}
@@ -29,7 +29,10 @@ package com.sonyericsson.inject.test;
 import static com.sonyericsson.inject.DuctTape.OPTIONAL;
 import static com.sonyericsson.inject.DuctTape.ORDERED;
 
+import java.lang.reflect.Field;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.sonyericsson.inject.DuctTape;
 import com.sonyericsson.inject.Glue;
@@ -796,4 +799,111 @@ public class TestLoad extends TestCase {
         dt.apply();
     }
 
+    /**
+     * Make sure that a large set of objects gets the same injections when the
+     * values are assigned in parallel.
+     */
+    public void testParallelAssignments() {
+        final int numObjects = 2000;
+        DuctTape dt = new DuctTape();
+
+        C18[] objs = new C18[numObjects];
+        for (int i = 0; i < numObjects; i++) {
+            objs[i] = new C18();
+            dt.add(objs[i]);
+        }
+        C17 c17 = new C17();
+        dt.add(c17);
+        dt.add(C1.class);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.add(C4.class);
+        dt.add(C5.class);
+        dt.add(C6.class);
+        dt.add(C7.class);
+        dt.add(C8.class);
+        dt.add(C9.class);
+        dt.add(C10.class);
+        dt.add(C11.class);
+        dt.add(C12.class);
+        dt.add(C13.class);
+        dt.add(C14.class);
+        dt.add(C15.class);
+        dt.add(C16.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            dt.apply(executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertNotNull(c17.c);
+        for (int i = 0; i < numObjects; i++) {
+            final C18 c18 = objs[i];
+            assertEquals(c17.c, c18.m1);
+            assertEquals(c17.c.c, c18.m2);
+            assertEquals(c17.c.c.c, c18.m3);
+            assertNotNull(c18.m16);
+            assertEquals(c17, c18.m17);
+        }
+        assertEquals(c17, c17.c.c.c.c.c.c.c.c.c.c.c.c.c.c.c.c.c);
+    }
+
+    /**
+     * Make sure that every field in a large generated mesh of objects, with
+     * shared interfaces, tags and circular references, gets injected.
+     */
+    public void testGeneratedObjects() throws Exception {
+        final MeshGenerator generator = new MeshGenerator(1);
+        generator.setClasses(2000);
+        generator.setDepth(8);
+        generator.setFanOut(3);
+        generator.setClassesPerInterface(4);
+        generator.setTagDensity(0.2f);
+        generator.setCycleRatio(0.1f);
+        generator.generate();
+        DuctTape dt = new DuctTape();
+
+        final Object[] objs = generator.populate(dt);
+        dt.apply();
+
+        int numFields = 0;
+        for (Object obj : objs) {
+            for (Field field : obj.getClass().getDeclaredFields()) {
+                assertNotNull(field.get(obj));
+                numFields++;
+            }
+        }
+        assertEquals(generator.getFieldCount(), numFields);
+    }
+
+    /**
+     * Make sure that a large generated mesh mixing objects, singleton
+     * factories and other factories gets glued.
+     */
+    public void testGeneratedFactories() throws Exception {
+        final MeshGenerator generator = new MeshGenerator(2);
+        generator.setClasses(1000);
+        generator.setDepth(5);
+        generator.setClassesPerInterface(3);
+        generator.setTagDensity(0.1f);
+        generator.setFactoryRatio(0.5f);
+        generator.setSingletonRatio(0.5f);
+        generator.setCycleRatio(0.05f);
+        generator.generate();
+        DuctTape dt = new DuctTape();
+
+        final Object[] objs = generator.populate(dt);
+        dt.apply();
+
+        for (Object obj : objs) {
+            if (!(obj instanceof Class<?>)) {
+                for (Field field : obj.getClass().getDeclaredFields()) {
+                    assertNotNull(field.get(obj));
+                }
+            }
+        }
+    }
+
 }
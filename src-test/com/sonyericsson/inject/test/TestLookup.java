@@ -0,0 +1,322 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+package com.sonyericsson.inject.test;
+
+import static com.sonyericsson.inject.DuctTape.OPTIONAL;
+import static com.sonyericsson.inject.DuctTape.ORDERED;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.GluingException;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that objects can be looked up
+ * directly from the tape.
+ */
+public class TestLookup extends TestCase {
+
+    static final int S = 1;
+
+    static final int T = 2;
+
+    interface A {
+    }
+
+    interface B {
+    }
+
+    interface C {
+    }
+
+    static class C1 implements A {
+    }
+
+    static class C2 implements Gluey, Singleton, B {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C3 implements C {
+    }
+
+    static class C4 implements Gluey {
+
+        @Glue
+        B m1;
+
+    }
+
+    static class C5 implements Gluey, A {
+
+        @Glue
+        C1 m1;
+
+    }
+
+    static class C6 implements Gluey {
+
+        @Glue
+        A[] m1;
+
+        @Glue
+        B m2;
+
+        @Glue(OPTIONAL)
+        C m3;
+
+        @Glue(S)
+        Integer[] m4;
+
+        @Glue(S)
+        int[] m5;
+
+    }
+
+    static class C7 implements Gluey {
+
+        @Glue
+        C5 m1;
+
+    }
+
+    /**
+     * Check that an added object can be looked up by any of its types.
+     */
+    public void testGet() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+
+        assertEquals(c1, dt.get(A.class));
+        assertEquals(c1, dt.get(C1.class));
+        assertNull(dt.get(B.class, OPTIONAL));
+        try {
+            dt.get(B.class);
+            fail("Missing object not detected");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+
+        dt.add(new C1());
+        try {
+            dt.get(A.class);
+            fail("Several objects not detected");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+        assertEquals(2, dt.getAll(A.class).length);
+    }
+
+    /**
+     * Check that a root object can be looked up from a tape holding nothing
+     * but factories.
+     */
+    public void testGetFromFactoriesOnly() {
+        DuctTape dt = new DuctTape();
+
+        dt.add(C2.class);
+        dt.add(C1.class);
+
+        final B b = dt.get(B.class);
+
+        assertNotNull(b);
+        assertEquals(C2.class, b.getClass());
+        assertNotNull(((C2)b).m1);
+        assertEquals(C1.class, ((C2)b).m1.getClass());
+        assertSame(b, dt.get(B.class));
+        assertEquals(1, dt.getAll(C2.class).length);
+
+        dt.add(C3.class);
+        dt.apply();
+
+        assertSame(b, dt.get(B.class));
+    }
+
+    /**
+     * Check that singleton factories produce their objects when looked up,
+     * and that the same object is given every time, while other factories are
+     * not used.
+     */
+    public void testGetFromFactory() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(C3.class);
+
+        assertNull(dt.get(B.class, OPTIONAL));
+
+        B b = dt.get(B.class);
+        assertNotNull(b);
+        assertEquals(C2.class, b.getClass());
+        assertEquals(c1, ((C2)b).m1);
+        assertEquals(b, dt.get(B.class));
+        assertEquals(b, dt.get(B.class, OPTIONAL));
+        assertEquals(0, dt.getAll(C.class).length);
+
+        /* The product is also injected when needed */
+        C4 c4 = new C4();
+        dt.add(c4);
+        dt.apply();
+        assertEquals(b, c4.m1);
+        assertEquals(b, dt.get(B.class));
+    }
+
+    /**
+     * Check that lookups respect tags, and that answers reflect changes made
+     * to the mesh.
+     */
+    public void testGetTagged() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C1 c2 = new C1();
+        C1 c3 = new C1();
+
+        dt.add(c1, S);
+        dt.add(c2, T);
+
+        assertEquals(c1, dt.get(A.class, S));
+        assertEquals(c2, dt.get(A.class, T));
+        assertEquals(2, dt.getAll(A.class, S, T).length);
+        assertEquals(0, dt.getAll(A.class, 3).length);
+
+        dt.add(c3, S);
+
+        assertEquals(2, dt.getAll(A.class, S).length);
+        dt.remove(c1);
+        assertEquals(c3, dt.get(A.class, S));
+    }
+
+    /**
+     * Check that ordered lookups give the objects in dependency order.
+     */
+    public void testGetOrdered() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C5 c5 = new C5();
+
+        dt.add(c1);
+        dt.add(c5);
+
+        A[] all = dt.getAll(A.class, ORDERED);
+        assertEquals(2, all.length);
+        assertEquals(c1, all[0]);
+        assertEquals(c5, all[1]);
+    }
+
+    /**
+     * Check that an object outside of the mesh can be injected without gluing
+     * the mesh together again.
+     */
+    public void testInject() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(Integer.valueOf(7), S);
+        dt.apply();
+
+        C6 c6 = new C6();
+        dt.inject(c6);
+
+        assertTrue(dt.isRobust());
+        assertEquals(1, c6.m1.length);
+        assertEquals(c1, c6.m1[0]);
+        assertEquals(C2.class, c6.m2.getClass());
+        assertEquals(c1, ((C2)c6.m2).m1);
+        assertNull(c6.m3);
+        assertEquals(1, c6.m4.length);
+        assertEquals(7, c6.m5[0]);
+
+        /* The target is not part of the mesh */
+        C4 c4 = new C4();
+        dt.add(c4);
+        dt.apply();
+        assertEquals(c6.m2, c4.m1);
+
+        C6 other = new C6();
+        dt.inject(other);
+        assertEquals(c6.m2, other.m2);
+        assertNotSame(c6.m1, other.m1);
+    }
+
+    /**
+     * Check that missing objects are reported when injecting an object outside
+     * of the mesh.
+     */
+    public void testInjectMissing() {
+        DuctTape dt = new DuctTape();
+
+        dt.add(new C1());
+
+        try {
+            dt.inject(new C6());
+            fail("Missing object not detected");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+    }
+
+    /**
+     * Check that factories of classes that are not singletons produce new
+     * objects for each object injected outside of the mesh.
+     */
+    public void testInjectNonSingleton() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+        dt.add(C5.class);
+
+        C7 c71 = new C7();
+        C7 c72 = new C7();
+        dt.inject(c71);
+        dt.inject(c72);
+
+        assertNotNull(c71.m1);
+        assertNotNull(c72.m1);
+        assertNotSame(c71.m1, c72.m1);
+        assertEquals(c1, c71.m1.m1);
+        assertEquals(c1, c72.m1.m1);
+        assertEquals(0, dt.getAll(C5.class, OPTIONAL).length);
+    }
+
+}
@@ -0,0 +1,236 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Recyclable;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that recyclable factory products
+ * are reset and reused once the objects they were injected into are removed.
+ */
+public class TestRecycle extends TestCase {
+
+    interface A {
+    }
+
+    static class C1 implements Gluey {
+
+        @Glue
+        C2 m1;
+
+    }
+
+    static class C2 implements Gluey, Recyclable {
+
+        @Glue
+        C3 m1;
+
+        int mRecycled;
+
+        public void recycle() {
+            mRecycled++;
+        }
+
+    }
+
+    static class C3 implements Recyclable {
+
+        int mRecycled;
+
+        public void recycle() {
+            mRecycled++;
+        }
+
+    }
+
+    static class C4 implements Gluey {
+
+        @Glue
+        C5 m1;
+
+    }
+
+    static class C5 {
+    }
+
+    static class C6 implements Gluey {
+
+        @Glue
+        C2[] m1;
+
+    }
+
+    /**
+     * Make sure that the products of a removed object, and their products in
+     * turn, are recycled and used again.
+     */
+    public void testReused() {
+        DuctTape dt = new DuctTape();
+
+        C1 c11 = new C1();
+        dt.add(c11);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c2 = c11.m1;
+        final C3 c3 = c2.m1;
+        dt.remove(c11);
+
+        C1 c12 = new C1();
+        dt.add(c12);
+        dt.apply();
+
+        assertEquals(1, c2.mRecycled);
+        assertEquals(1, c3.mRecycled);
+        assertEquals(c2, c12.m1);
+        assertEquals(c3, c12.m1.m1);
+    }
+
+    /**
+     * Make sure that the products of an object that is added again before the
+     * mesh is glued are left alone.
+     */
+    public void testAddedAgain() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c2 = c1.m1;
+        dt.remove(c1);
+        dt.add(c1);
+        dt.apply();
+
+        assertEquals(0, c2.mRecycled);
+        assertEquals(c2, c1.m1);
+    }
+
+    /**
+     * Make sure that products in arrays are recycled.
+     */
+    public void testArray() {
+        DuctTape dt = new DuctTape();
+
+        C6 c6 = new C6();
+        C1 c1 = new C1();
+        dt.add(c6);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c2 = c6.m1[0];
+        dt.remove(c6);
+        dt.add(c1);
+        dt.apply();
+
+        assertEquals(1, c2.mRecycled);
+        assertEquals(c2, c1.m1);
+    }
+
+    /**
+     * Make sure that recycled products are used again in every copy of an
+     * array.
+     */
+    public void testArrayCopies() {
+        DuctTape dt = new DuctTape();
+
+        C6 c61 = new C6();
+        C6 c62 = new C6();
+        dt.add(c61);
+        dt.add(c62);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.apply();
+        final C2 c21 = c61.m1[0];
+        final C2 c22 = c62.m1[0];
+        dt.remove(c61);
+        dt.remove(c62);
+
+        C6 c63 = new C6();
+        C6 c64 = new C6();
+        dt.add(c63);
+        dt.add(c64);
+        dt.apply();
+
+        assertEquals(1, c21.mRecycled);
+        assertEquals(1, c22.mRecycled);
+        assertNotSame(c63.m1[0], c64.m1[0]);
+        assertTrue(c63.m1[0] == c21 || c63.m1[0] == c22);
+        assertTrue(c64.m1[0] == c21 || c64.m1[0] == c22);
+    }
+
+    /**
+     * Make sure that other products are not reused.
+     */
+    public void testNotRecyclable() {
+        DuctTape dt = new DuctTape();
+
+        C4 c41 = new C4();
+        dt.add(c41);
+        dt.add(C5.class);
+        dt.apply();
+        dt.remove(c41);
+
+        C4 c42 = new C4();
+        dt.add(c42);
+        dt.apply();
+
+        assertNotNull(c42.m1);
+        assertNotSame(c41.m1, c42.m1);
+    }
+
+    /**
+     * Make sure that trim() lets go of recycled products.
+     */
+    public void testTrim() {
+        DuctTape dt = new DuctTape();
+
+        C1 c11 = new C1();
+        dt.add(c11);
+        dt.add(C2.class);
+        dt.add(C3.class);
+        dt.add(new Object());
+        dt.apply();
+        dt.remove(c11);
+        dt.apply();
+        assertEquals(2, dt.trim());
+
+        C1 c12 = new C1();
+        dt.add(c12);
+        dt.apply();
+
+        assertNotSame(c11.m1, c12.m1);
+        assertEquals(1, c11.m1.mRecycled);
+    }
+
+}
@@ -196,6 +196,9 @@ public class TestSequence extends TestCase {
 
     }
 
+    static class C19 implements All {
+    }
+
     /*
      * Check that the sequence of references injected into arrays reflects the
      * dependencies between the referenced objects.
@@ -365,4 +368,225 @@ public class TestSequence extends TestCase {
         assertTrue(c182.m1[0] == c182 ^ c182.m1[1] == c182 ^ c182.m1[2] == c182);
     }
 
+    /**
+     * Check that a sequence with a large number of objects gets sorted, and
+     * that the dependencies are still respected.
+     */
+    public void testLargeSequence() {
+        final int numObjects = 10000;
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        C4 c4 = new C4();
+        C5 c5 = new C5();
+
+        dt.add(c1);
+        for (int i = 0; i < numObjects / 2; i++) {
+            dt.add(new C19());
+        }
+        dt.add(c2);
+        dt.add(c3);
+        dt.add(c4);
+        dt.add(c5);
+        for (int i = 0; i < numObjects / 2; i++) {
+            dt.add(new C19());
+        }
+        dt.apply();
+
+        assertNotNull(c1.m1);
+        assertEquals(numObjects + 4, c1.m1.length);
+        int i2 = -1, i3 = -1, i4 = -1, i5 = -1;
+        for (int i = 0; i < c1.m1.length; i++) {
+            assertNotNull(c1.m1[i]);
+            if (c1.m1[i] == c2) {
+                i2 = i;
+            } else if (c1.m1[i] == c3) {
+                i3 = i;
+            } else if (c1.m1[i] == c4) {
+                i4 = i;
+            } else if (c1.m1[i] == c5) {
+                i5 = i;
+            }
+        }
+        assertTrue(i5 >= 0);
+        assertTrue(i5 < i4);
+        assertTrue(i4 < i3);
+        assertTrue(i3 < i2);
+    }
+
+    /**
+     * Check that the sequence is kept correct when the dependency graph is
+     * changed between applies, both when new dependencies are added and when
+     * a circular dependency is introduced.
+     */
+    public void testReappliedSequence() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        C4 c4 = new C4();
+        C5 c5 = new C5();
+        C11 c11 = new C11();
+
+        dt.add(c1);
+        dt.add(c3);
+        dt.add(c4);
+        dt.add(c5);
+        dt.apply();
+
+        assertNotNull(c1.m1);
+        assertEquals(3, c1.m1.length);
+        assertEquals(c5, c1.m1[0]);
+        assertEquals(c4, c1.m1[1]);
+        assertEquals(c3, c1.m1[2]);
+
+        dt.add(c2);
+        dt.apply();
+
+        assertEquals(4, c1.m1.length);
+        assertEquals(c5, c1.m1[0]);
+        assertEquals(c4, c1.m1[1]);
+        assertEquals(c3, c1.m1[2]);
+        assertEquals(c2, c1.m1[3]);
+
+        dt.remove(c5);
+        dt.add(c11);
+        dt.apply();
+
+        assertEquals(4, c1.m1.length);
+        assertTrue(c4 == c1.m1[0] || c3 == c1.m1[0] || c11 == c1.m1[0]);
+        assertTrue(c4 == c1.m1[1] || c3 == c1.m1[1] || c11 == c1.m1[1]);
+        assertTrue(c4 == c1.m1[2] || c3 == c1.m1[2] || c11 == c1.m1[2]);
+        assertEquals(c2, c1.m1[3]);
+
+        dt.remove(c11);
+        dt.add(c5);
+        dt.apply();
+
+        assertEquals(4, c1.m1.length);
+        assertEquals(c5, c1.m1[0]);
+        assertEquals(c4, c1.m1[1]);
+        assertEquals(c3, c1.m1[2]);
+        assertEquals(c2, c1.m1[3]);
+    }
+
+    /**
+     * Check that independent objects are ordered the same way no matter which
+     * changes the mesh went through before being applied.
+     */
+    public void testSequenceIndependentOfHistory() {
+        DuctTape dt1 = new DuctTape();
+
+        C1 c11 = new C1();
+        C5 c51 = new C5();
+        C19 c191 = new C19();
+        C19 c192 = new C19();
+
+        dt1.add(c11);
+        dt1.add(c191);
+        dt1.add(c51);
+        dt1.apply();
+        dt1.add(c192);
+        dt1.apply();
+        dt1.remove(c191);
+        dt1.apply();
+        dt1.add(c191);
+        dt1.apply();
+
+        DuctTape dt2 = new DuctTape();
+
+        C1 c12 = new C1();
+        C5 c52 = new C5();
+        C19 c193 = new C19();
+        C19 c194 = new C19();
+
+        dt2.add(c12);
+        dt2.add(c52);
+        dt2.add(c194);
+        dt2.add(c193);
+        dt2.apply();
+
+        assertEquals(3, c11.m1.length);
+        assertEquals(3, c12.m1.length);
+        for (int i = 0; i < 3; i++) {
+            if (c11.m1[i] == c51) {
+                assertEquals(c52, c12.m1[i]);
+            } else if (c11.m1[i] == c191) {
+                assertEquals(c193, c12.m1[i]);
+            } else {
+                assertEquals(c194, c12.m1[i]);
+            }
+        }
+    }
+
+    /**
+     * Check that the sequence is the same no matter which dependencies were
+     * added and removed before being applied, also when a circle was closed
+     * and broken again on the way.
+     */
+    public void testSequenceIndependentOfChanges() {
+        DuctTape dt1 = new DuctTape();
+
+        C1 c11 = new C1();
+        C2 c21 = new C2();
+        C3 c31 = new C3();
+        C4 c41 = new C4();
+        C5 c51 = new C5();
+        C11 c111 = new C11();
+        C19 c191 = new C19();
+        C19 c192 = new C19();
+
+        dt1.add(c11);
+        dt1.add(c191);
+        dt1.add(c31);
+        dt1.add(c41);
+        dt1.add(c111);
+        dt1.apply();
+        dt1.add(c192);
+        dt1.apply();
+        dt1.remove(c111);
+        dt1.add(c51);
+        dt1.apply();
+        dt1.remove(c191);
+        dt1.add(c21);
+        dt1.add(c191);
+        dt1.apply();
+
+        DuctTape dt2 = new DuctTape();
+
+        C1 c12 = new C1();
+        C2 c22 = new C2();
+        C3 c32 = new C3();
+        C4 c42 = new C4();
+        C5 c52 = new C5();
+        C19 c193 = new C19();
+        C19 c194 = new C19();
+
+        dt2.add(c12);
+        dt2.add(c32);
+        dt2.add(c42);
+        dt2.add(c194);
+        dt2.add(c52);
+        dt2.add(c22);
+        dt2.add(c193);
+        dt2.apply();
+
+        final Object[] objs1 = {
+                c21, c31, c41, c51, c191, c192
+        };
+        final Object[] objs2 = {
+                c22, c32, c42, c52, c193, c194
+        };
+        assertEquals(6, c11.m1.length);
+        assertEquals(6, c12.m1.length);
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 6; j++) {
+                assertEquals(c11.m1[i] == objs1[j], c12.m1[i] == objs2[j]);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,159 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import java.lang.ref.WeakReference;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that unused products of singleton
+ * factories are released by trim(), and produced again when needed.
+ */
+public class TestTrim extends TestCase {
+
+    interface A {
+    }
+
+    static class C1 implements Gluey {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C2 implements Singleton, A {
+    }
+
+    static class C3 implements A {
+    }
+
+    /**
+     * Glues a consumer of A and removes it again, leaving a product that is
+     * not injected anywhere.
+     */
+    private static WeakReference<Object> useAndRemove(DuctTape dt) {
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.apply();
+        dt.remove(c1);
+        dt.apply();
+        return new WeakReference<Object>(c1.m1);
+    }
+
+    /**
+     * Make sure that products in use are kept.
+     */
+    public void testInUse() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.add(C2.class);
+        dt.apply();
+
+        assertEquals(0, dt.trim());
+        assertTrue(dt.isRobust());
+        assertEquals(1, dt.getAll(A.class).length);
+        assertEquals(c1.m1, dt.get(A.class));
+    }
+
+    /**
+     * Make sure that a released product that is still alive is used again.
+     */
+    public void testReleased() {
+        DuctTape dt = new DuctTape();
+
+        dt.add(C2.class);
+        dt.add(new Object());
+        final Object product = useAndRemove(dt).get();
+        assertNotNull(product);
+        assertEquals(1, dt.trim());
+        assertTrue(dt.isRobust());
+        assertEquals(0, dt.trim());
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.apply();
+
+        assertEquals(product, c1.m1);
+    }
+
+    /**
+     * Make sure that products are released when everything has been removed.
+     */
+    public void testEmpty() {
+        DuctTape dt = new DuctTape();
+
+        dt.add(C2.class);
+        useAndRemove(dt);
+
+        assertEquals(1, dt.trim());
+    }
+
+    /**
+     * Make sure that a released product that has been collected is created
+     * again when needed.
+     */
+    public void testRecreated() throws InterruptedException {
+        DuctTape dt = new DuctTape();
+
+        dt.add(C2.class);
+        dt.add(new Object());
+        WeakReference<Object> product = useAndRemove(dt);
+        assertEquals(1, dt.trim());
+        for (int i = 0; i < 100 && product.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(product.get());
+
+        C1 c1 = new C1();
+        dt.add(c1);
+        dt.apply();
+
+        assertTrue(c1.m1 instanceof C2);
+    }
+
+    /**
+     * Make sure that factories of other objects are left alone.
+     */
+    public void testNonSingleton() {
+        DuctTape dt = new DuctTape();
+
+        dt.add(C3.class);
+        useAndRemove(dt);
+
+        assertEquals(0, dt.trim());
+    }
+
+}
@@ -26,12 +26,17 @@
 
 package com.sonyericsson.inject.test;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
 import com.sonyericsson.inject.DuctTape;
 import com.sonyericsson.inject.Glue;
 import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.GluingException;
 import com.sonyericsson.inject.R;
 import com.sonyericsson.inject.Singleton;
 
+import android.os.Looper;
 import android.test.AndroidTestCase;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -68,6 +73,16 @@ public class TestViews extends AndroidTestCase {
 
     }
 
+    static class C4 implements Gluey, Singleton {
+
+        @Glue
+        A[] m1;
+
+    }
+
+    static class C5 implements A {
+    }
+
     /**
      * Make sure that when a non-inflated layout is referred in an injection it
      * is properly inflated and injected when there is a context available.
@@ -142,4 +157,174 @@ public class TestViews extends AndroidTestCase {
         assertEquals(C3.class, c2.m1.getClass());
     }
 
+    /**
+     * Make sure that layouts inflated in advance on a worker thread are
+     * injected into objects produced by factories.
+     */
+    public void testPreInflation() throws InterruptedException {
+        DuctTape dt = new DuctTape(getContext());
+
+        final ArrayList<Thread> workers = new ArrayList<Thread>();
+        final boolean[] prepared = new boolean[1];
+        Executor executor = new Executor() {
+            public void execute(final Runnable command) {
+                Thread worker = new Thread() {
+                    @Override
+                    public void run() {
+                        command.run();
+                        prepared[0] = Looper.myLooper() != null;
+                    }
+                };
+                workers.add(worker);
+                worker.start();
+            }
+        };
+
+        C2 c2 = new C2();
+
+        dt.add(c2);
+        dt.add(C1.class);
+
+        dt.preInflate(executor);
+        assertEquals(1, workers.size());
+        workers.get(0).join();
+        assertTrue(prepared[0]);
+
+        dt.apply();
+
+        assertNotNull(c2.m1);
+        assertEquals(C1.class, c2.m1.getClass());
+        assertNotNull(((C1)c2.m1).m1);
+    }
+
+    /**
+     * Make sure that layouts that were requested to be inflated in advance,
+     * but never got inflated, are inflated as usual during the injection.
+     */
+    public void testPreInflationNotStarted() {
+        DuctTape dt = new DuctTape(getContext());
+
+        final ArrayList<Runnable> queue = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+
+        C1 c1 = new C1();
+
+        dt.add(c1);
+
+        dt.preInflate(executor);
+        assertEquals(1, queue.size());
+
+        dt.apply();
+
+        assertNotNull(c1.m1);
+        assertEquals(LinearLayout.class, c1.m1.getClass());
+
+        /* Running it late must not have any effect */
+        queue.get(0).run();
+        assertNull(Looper.myLooper());
+    }
+
+    /**
+     * Make sure that an injection prepared on a worker thread does not inject
+     * anything until it is committed, and that views are then looked up.
+     */
+    public void testPrepareApply() throws InterruptedException {
+        final DuctTape dt = new DuctTape(getContext());
+
+        C2 c2 = new C2();
+
+        dt.add(c2);
+        dt.add(C1.class);
+
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                dt.prepareApply();
+            }
+        };
+        worker.start();
+        worker.join();
+
+        assertNull(c2.m1);
+        assertFalse(dt.isRobust());
+
+        dt.commit();
+
+        assertTrue(dt.isRobust());
+        assertNotNull(c2.m1);
+        assertEquals(C1.class, c2.m1.getClass());
+        assertNotNull(((C1)c2.m1).m1);
+        assertEquals(LinearLayout.class, ((C1)c2.m1).m1.getClass());
+    }
+
+    /**
+     * Make sure that changes made between preparing and committing an
+     * injection are not lost.
+     */
+    public void testCommitAfterChange() {
+        DuctTape dt = new DuctTape(getContext());
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+
+        dt.add(c2);
+        dt.prepareApply();
+        dt.add(c1);
+        dt.commit();
+
+        assertTrue(dt.isRobust());
+        assertEquals(c1, c2.m1);
+        assertNotNull(c1.m1);
+    }
+
+    /**
+     * Make sure that objects removed by tag between preparing and committing
+     * an injection are not injected, even when the mesh was already changed.
+     */
+    public void testCommitAfterRemoval() {
+        DuctTape dt = new DuctTape(getContext());
+
+        C4 c4 = new C4();
+        C5 c51 = new C5();
+        C5 c52 = new C5();
+
+        dt.add(c4);
+        dt.add(c51);
+        dt.add(c52, 1);
+        dt.prepareApply();
+        dt.remove(new int[] {
+            1
+        });
+        dt.commit();
+
+        assertTrue(dt.isRobust());
+        assertEquals(1, c4.m1.length);
+        assertEquals(c51, c4.m1[0]);
+    }
+
+    /**
+     * Make sure that a view that was assumed to be available when preparing
+     * an injection is reported as missing when committing it.
+     */
+    public void testCommitMissingView() {
+        DuctTape dt = new DuctTape(getContext());
+
+        C2 c2 = new C2();
+
+        dt.add(c2);
+        dt.add(C3.class);
+        dt.prepareApply();
+        try {
+            dt.commit();
+            fail("Missing view not detected");
+        } catch (GluingException e) {
+            /* Expected */
+        }
+        assertNull(c2.m1);
+    }
+
 }
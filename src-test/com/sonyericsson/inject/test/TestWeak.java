@@ -0,0 +1,205 @@
+/* 
+ * Duct Tape  Dependency Injection Framework
+ * Copyright (c) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * Author: 
+ *   Pr Spjuth (par.spjuth@sonyericsson.com)
+ */
+
+package com.sonyericsson.inject.test;
+
+import static com.sonyericsson.inject.DuctTape.OPTIONAL;
+import static com.sonyericsson.inject.DuctTape.ORDERED;
+
+import java.lang.ref.WeakReference;
+
+import com.sonyericsson.inject.DuctTape;
+import com.sonyericsson.inject.Glue;
+import com.sonyericsson.inject.Gluey;
+import com.sonyericsson.inject.Singleton;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains tests that make sure that weakly added objects are
+ * injected like other objects, and are removed from the mesh once collected.
+ */
+public class TestWeak extends TestCase {
+
+    interface A {
+    }
+
+    static class C1 implements Gluey {
+
+        @Glue
+        A m1;
+
+    }
+
+    static class C2 implements A {
+    }
+
+    static class C3 implements Gluey, Singleton {
+
+        @Glue(OPTIONAL)
+        A[] m1;
+
+    }
+
+    /**
+     * Weakly adds an object without keeping any other reference to it.
+     */
+    private static WeakReference<Object> addWeak(DuctTape dt, Object obj, int... tags) {
+        dt.addWeak(obj, tags);
+        return new WeakReference<Object>(obj);
+    }
+
+    /**
+     * Waits for an object to be collected.
+     */
+    private static void collect(WeakReference<Object> ref) throws InterruptedException {
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    /**
+     * Make sure that weakly added objects are injected and injected into.
+     */
+    public void testInjected() {
+        DuctTape dt = new DuctTape();
+
+        C1 c1 = new C1();
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        dt.addWeak(c1);
+        dt.addWeak(c2);
+        dt.add(c3);
+        dt.apply();
+
+        assertEquals(c2, c1.m1);
+        assertEquals(1, c3.m1.length);
+        assertEquals(c2, c3.m1[0]);
+        assertEquals(1, dt.getAll(C1.class).length);
+        assertTrue(dt.toString().contains("C1"));
+    }
+
+    /**
+     * Make sure that a weakly added object that is collected before the mesh
+     * is glued is not injected.
+     */
+    public void testCollectedBeforeApply() throws InterruptedException {
+        DuctTape dt = new DuctTape();
+
+        C2 c21 = new C2();
+        C3 c3 = new C3();
+        dt.add(c3);
+        dt.addWeak(c21, new int[] {
+            1
+        });
+        WeakReference<Object> c22 = addWeak(dt, new C2(), 2);
+        collect(c22);
+        dt.apply();
+
+        assertEquals(1, c3.m1.length);
+        assertEquals(c21, c3.m1[0]);
+    }
+
+    /**
+     * Make sure that the mesh is no longer robust once a weakly added object
+     * has been collected, and that it is removed.
+     */
+    public void testCollectedAfterApply() throws InterruptedException {
+        DuctTape dt = new DuctTape();
+
+        dt.add(new C2());
+        WeakReference<Object> c1 = addWeak(dt, new C1());
+        dt.apply();
+        assertTrue(dt.isRobust());
+        collect(c1);
+        for (int i = 0; i < 100 && dt.isRobust(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(dt.isRobust());
+        assertEquals(0, dt.getAll(C1.class).length);
+        dt.apply();
+        assertTrue(dt.isRobust());
+    }
+
+    /**
+     * Make sure that an object that is also added as usual is kept.
+     */
+    public void testAddedAgain() throws InterruptedException {
+        DuctTape dt = new DuctTape();
+
+        WeakReference<Object> c2 = addWeak(dt, new C2());
+        dt.add(c2.get());
+        WeakReference<Object> c21 = addWeak(dt, new C2());
+        collect(c21);
+
+        assertNotNull(c2.get());
+        assertEquals(1, dt.getAll(C2.class).length);
+    }
+
+    /**
+     * Make sure that weakly added objects can be removed.
+     */
+    public void testRemoved() {
+        DuctTape dt = new DuctTape();
+
+        C2 c2 = new C2();
+        C3 c3 = new C3();
+        dt.addWeak(c2);
+        dt.add(c3);
+        dt.apply();
+        dt.remove(c2);
+        dt.apply();
+
+        assertNull(c3.m1);
+    }
+
+    /**
+     * Make sure that lookups including weakly added objects are remembered
+     * without keeping the objects from being collected.
+     */
+    public void testLookedUp() throws InterruptedException {
+        DuctTape dt = new DuctTape();
+
+        dt.add(new C2());
+        WeakReference<Object> c2 = addWeak(dt, new C2());
+        A[] all = dt.getAll(A.class);
+        A[] ordered = dt.getAll(A.class, ORDERED);
+        assertEquals(2, all.length);
+        assertEquals(2, ordered.length);
+        assertSame(all, dt.getAll(A.class));
+        assertSame(ordered, dt.getAll(A.class, ORDERED));
+        all = null;
+        ordered = null;
+        collect(c2);
+
+        assertEquals(1, dt.getAll(A.class).length);
+        assertEquals(1, dt.getAll(A.class, ORDERED).length);
+    }
+
+}